@@ -0,0 +1,26 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import xyz.janboerman.scalaloader.compat.Compat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads the bytecode of classes on the classpath, without loading them.
+ */
+public final class ClassBytes {
+
+    private ClassBytes() {}
+
+    public static byte[] of(String className) {
+        String path = className.replace('.', '/') + ".class";
+        try (InputStream inputStream = ClassBytes.class.getClassLoader().getResourceAsStream(path)) {
+            if (inputStream == null) throw new IllegalArgumentException("Class not found on the classpath: " + className);
+            return Compat.readAllBytes(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
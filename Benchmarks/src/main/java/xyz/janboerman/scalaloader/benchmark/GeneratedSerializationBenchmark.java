@@ -0,0 +1,48 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableTransformations;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the serialize method and deserialization constructor that the configurationserializable transformation generates,
+ * using {@link SerializablePoint}. Deserialization goes through Bukkit's {@link ConfigurationSerialization}, just like when a configuration is loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneratedSerializationBenchmark {
+
+    private Class<? extends ConfigurationSerializable> pointClass;
+    private ConfigurationSerializable point;
+    private Map<String, Object> serialized;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        String className = SerializablePoint.class.getName();
+        ClassLoader classLoader = new TransformingClassLoader(getClass().getClassLoader(), className,
+                classBytes -> ConfigurationSerializableTransformations.transform(classBytes, getClass().getClassLoader(), null));
+
+        pointClass = Class.forName(className, true, classLoader).asSubclass(ConfigurationSerializable.class);
+        point = pointClass.getConstructor().newInstance();
+        serialized = point.serialize();
+    }
+
+    @Benchmark
+    public Map<String, Object> serialize() {
+        return point.serialize();
+    }
+
+    @Benchmark
+    public ConfigurationSerializable deserialize() {
+        return ConfigurationSerialization.deserializeObject(serialized, pointClass);
+    }
+
+}
@@ -0,0 +1,175 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.plugin.runtime.ClassFile;
+import xyz.janboerman.scalaloader.plugin.runtime.PersistentClasses;
+import xyz.janboerman.scalaloader.util.Base64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks storing generated classes. The binary archive that PersistentClasses uses is benchmarked on disk, in a temporary folder.
+ * The YAML format that older versions of PersistentClasses used is benchmarked as well: every class is a {@link ClassFile} whose bytecode is
+ * Base64-encoded, and the list of ClassFiles is saved as YAML. The file itself is left out there, the YAML is saved to and loaded from a String.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistentClassesBenchmark {
+
+    private static final String CLASS_FILES = "class-files";
+
+    private static final String[] CLASS_NAMES = {
+            "xyz.janboerman.scalaloader.example.java.ExamplePlugin",
+            "xyz.janboerman.scalaloader.example.java.ArraySerializable",
+            "xyz.janboerman.scalaloader.example.java.ListSerializable",
+            "xyz.janboerman.scalaloader.example.java.MapSerializable",
+            "xyz.janboerman.scalaloader.example.scala.HomeTeleportEvent",
+            "xyz.janboerman.scalaloader.example.scala.HomeManager$",
+            "xyz.janboerman.scalaloader.example.scala.Home",
+            "xyz.janboerman.scalaloader.example.scala.ExamplePlugin$",
+    };
+
+    @Param({"1", "10", "100"})
+    public int classCount;
+
+    private byte[] byteCode;
+    private String encoded;
+    private ClassFile classFile;
+    private Map<String, Object> serializedClassFile;
+    private List<ClassFile> classFiles;
+    private String yaml;
+    private File storeFolder;
+    private Logger logger;
+
+    @Setup
+    public void setup() throws IOException {
+        ClassFile.register();
+
+        classFiles = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            String className = CLASS_NAMES[i % CLASS_NAMES.length];
+            //every generated class has a unique name
+            classFiles.add(new ClassFile(className + "$Generated" + i, ClassBytes.of(className)));
+        }
+
+        classFile = classFiles.get(0);
+        byteCode = classFile.getByteCode();
+        encoded = Base64.encode(byteCode);
+        serializedClassFile = classFile.serialize();
+        yaml = save();
+
+        logger = Logger.getLogger(PersistentClassesBenchmark.class.getName());
+        storeFolder = Files.createTempDirectory("scalaloader-benchmark").toFile();
+        PersistentClasses persistentClasses = new PersistentClasses(storeFolder, "Benchmark", logger);
+        for (ClassFile classFile : classFiles) {
+            persistentClasses.save(classFile);
+        }
+        persistentClasses.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        deleteFolder(storeFolder);
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyStore {
+        private File folder;
+
+        @Setup(Level.Invocation)
+        public void setup() throws IOException {
+            folder = Files.createTempDirectory("scalaloader-benchmark").toFile();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            deleteFolder(folder);
+        }
+    }
+
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Benchmark
+    public PersistentClasses storeSave(EmptyStore store) {
+        //save the classes one by one, like the ScalaPluginClassLoader does when it generates them, and write them like close() does.
+        PersistentClasses persistentClasses = new PersistentClasses(store.folder, "Benchmark", logger);
+        for (ClassFile classFile : classFiles) {
+            persistentClasses.save(classFile);
+        }
+        persistentClasses.flush();
+        return persistentClasses;
+    }
+
+    @Benchmark
+    public Map<String, String> storeLoad() {
+        //only reads the index
+        return new PersistentClasses(storeFolder, "Benchmark", logger).load();
+    }
+
+    @Benchmark
+    public List<byte[]> storeLoadAndRead() {
+        //reads the index and the bytecode of every class, like the ScalaPluginClassLoader does when all persisted classes are needed
+        PersistentClasses persistentClasses = new PersistentClasses(storeFolder, "Benchmark", logger);
+        List<byte[]> byteCodes = new ArrayList<>(classCount);
+        for (String className : persistentClasses.load().keySet()) {
+            byteCodes.add(persistentClasses.read(className));
+        }
+        return byteCodes;
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.encode(byteCode);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.decode(encoded);
+    }
+
+    @Benchmark
+    public ClassFile classFileRoundTrip() {
+        return ClassFile.deserialize(classFile.serialize());
+    }
+
+    @Benchmark
+    public ClassFile classFileDeserialize() {
+        return ClassFile.deserialize(serializedClassFile);
+    }
+
+    @Benchmark
+    public String save() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set(CLASS_FILES, classFiles);
+        return config.saveToString();
+    }
+
+    @Benchmark
+    public List<?> load() throws InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString(yaml);
+        return config.getList(CLASS_FILES);
+    }
+
+}
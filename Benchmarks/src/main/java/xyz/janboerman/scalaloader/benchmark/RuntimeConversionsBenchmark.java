@@ -0,0 +1,107 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.ParameterType;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.RuntimeConversions;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.types.Tuple;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the runtime (de)serialization fallback, for each type family that RuntimeConversions supports out of the box.
+ * <p>
+ * The Scala type families (tuples, Option, Either, Scala maps) need a ScalaPluginClassLoader that can see the Scala standard library,
+ * which can't be constructed without a running server. The benchmarks run without a ScalaPluginClassLoader,
+ * so for those families only the type check that every value which is not a Java type goes through is benchmarked.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeConversionsBenchmark {
+
+    public enum Colour { RED, GREEN, BLUE }
+
+    //the generic types of these fields are used as the ParameterTypes
+    private static Byte byteType;
+    private static Long longType;
+    private static UUID uuidType;
+    private static BigInteger bigIntegerType;
+    private static BigDecimal bigDecimalType;
+    private static Colour enumType;
+    private static long[] longArrayType;
+    private static String[][] stringArrayType;
+    private static List<Integer> listType;
+    private static Set<UUID> setType;
+    private static Map<String, List<Long>> mapType;
+
+    @Param({"byte", "long", "uuid", "biginteger", "bigdecimal", "enum", "long-array", "string-array", "list", "set", "map"})
+    public String family;
+
+    private ParameterType type;
+    private Object live;
+    private Object serialized;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        switch (family) {
+            case "byte":            live = (byte) 42;                                                       type = typeOf("byteType"); break;
+            case "long":            live = 1337L;                                                           type = typeOf("longType"); break;
+            case "uuid":            live = UUID.randomUUID();                                               type = typeOf("uuidType"); break;
+            case "biginteger":      live = new BigInteger("123456789012345678901234567890");                type = typeOf("bigIntegerType"); break;
+            case "bigdecimal":      live = new BigDecimal("3.14159265358979323846");                        type = typeOf("bigDecimalType"); break;
+            case "enum":            live = Colour.GREEN;                                                    type = typeOf("enumType"); break;
+            case "long-array":      live = new long[] {1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L};                     type = typeOf("longArrayType"); break;
+            case "string-array":    live = new String[][] {{"a", "b"}, {"c", "d", "e"}};                    type = typeOf("stringArrayType"); break;
+            case "list":            live = new ArrayList<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8));          type = typeOf("listType"); break;
+            case "set":
+                Set<UUID> uuids = new LinkedHashSet<>();
+                for (int i = 0; i < 8; i++) uuids.add(UUID.randomUUID());
+                live = uuids;
+                type = typeOf("setType");
+                break;
+            case "map":
+                Map<String, List<Long>> map = new LinkedHashMap<>();
+                for (int i = 0; i < 8; i++) map.put("key" + i, Arrays.asList((long) i, i * 2L));
+                live = map;
+                type = typeOf("mapType");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type family: " + family);
+        }
+
+        serialized = RuntimeConversions.serialize(live, type, null);
+    }
+
+    private static ParameterType typeOf(String fieldName) throws NoSuchFieldException {
+        return ParameterType.from(RuntimeConversionsBenchmark.class.getDeclaredField(fieldName).getGenericType());
+    }
+
+    @Benchmark
+    public Object serialize() {
+        return RuntimeConversions.serialize(live, type, null);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return RuntimeConversions.deserialize(serialized, type, null);
+    }
+
+    @Benchmark
+    public boolean isTuple() {
+        return Tuple.isTuple(live);
+    }
+
+}
@@ -0,0 +1,54 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScanResult;
+import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScanner;
+import xyz.janboerman.scalaloader.plugin.description.DescriptionScanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the scanners that ScalaPluginLoader runs over every class in a plugin's jar file when it looks for the main class.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    @Param({
+            "xyz.janboerman.scalaloader.example.java.ExamplePlugin",
+            "xyz.janboerman.scalaloader.example.java.ArraySerializable",
+            "xyz.janboerman.scalaloader.example.scala.ExamplePlugin$",
+            "xyz.janboerman.scalaloader.example.scala.HomeManager$",
+    })
+    public String className;
+
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() {
+        classBytes = ClassBytes.of(className);
+    }
+
+    @Benchmark
+    public DescriptionScanner descriptionScanner() {
+        return new DescriptionScanner(classBytes);
+    }
+
+    @Benchmark
+    public GlobalScanResult globalScanner() {
+        return new GlobalScanner().scan(classBytes);
+    }
+
+    @Benchmark
+    public void jarEntryScan(Blackhole blackhole) {
+        //ScalaPluginLoader runs both scanners for every class in the jar
+        blackhole.consume(new DescriptionScanner(classBytes));
+        blackhole.consume(new GlobalScanner().scan(classBytes));
+    }
+
+}
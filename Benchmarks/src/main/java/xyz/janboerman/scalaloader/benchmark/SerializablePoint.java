@@ -0,0 +1,48 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import xyz.janboerman.scalaloader.configurationserializable.ConfigurationSerializable;
+import xyz.janboerman.scalaloader.configurationserializable.InjectionPoint;
+import xyz.janboerman.scalaloader.configurationserializable.Scan;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The input for {@link GeneratedSerializationBenchmark}. Its serialize method and deserialization constructor are generated
+ * by {@link GeneratedSerializationBenchmark} at runtime. It only has properties that the generated code converts without RuntimeConversions.
+ */
+@ConfigurationSerializable(as = "SerializablePoint", scan = @Scan(Scan.Type.FIELDS), registerAt = InjectionPoint.CLASS_INITIALIZER)
+public class SerializablePoint {
+
+    private int x;
+    private long y;
+    private double z;
+    private boolean visible;
+    private String name;
+    private BigDecimal weight;
+    private UUID owner;
+    private int[] coordinates;
+    private List<String> tags;
+    private Map<String, Integer> scores;
+
+    public SerializablePoint() {
+        this.x = 1;
+        this.y = 2L;
+        this.z = 3.5;
+        this.visible = true;
+        this.name = "origin";
+        this.weight = new BigDecimal("0.25");
+        this.owner = new UUID(11L, 7L);
+        this.coordinates = new int[] {1, 2, 3};
+        this.tags = new ArrayList<>(Arrays.asList("spawn", "safe"));
+        this.scores = new LinkedHashMap<>();
+        this.scores.put("alice", 10);
+        this.scores.put("bob", 20);
+    }
+
+}
@@ -0,0 +1,84 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.compat.Migration;
+import xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableTransformations;
+import xyz.janboerman.scalaloader.event.transform.EventTransformations;
+import xyz.janboerman.scalaloader.util.TransformationPrefilter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the bytecode transformations that ClassLoaderUtils#transform applies to the classes of a ScalaPlugin,
+ * using real classes from the example plugins as input.
+ * <p>
+ * ClassLoaderUtils#transform itself needs a ScalaPluginClassLoader, which can't be constructed without a running server.
+ * Therefore the stages are benchmarked through their own entry points, in the same order as the staged pipeline.
+ * The configurationserializable transformation runs without a ScalaPluginClassLoader,
+ * so the classes are chosen such that their serialization code does not fall back to RuntimeConversions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark {
+
+    @Param({
+            "xyz.janboerman.scalaloader.example.java.ExamplePlugin",             //main class
+            "xyz.janboerman.scalaloader.example.java.ArraySerializable",         //configurationserializable
+            "xyz.janboerman.scalaloader.example.java.ListSerializable",          //configurationserializable
+            "xyz.janboerman.scalaloader.example.scala.HomeTeleportEvent",        //event
+            "xyz.janboerman.scalaloader.example.scala.HomeManager$",             //no transformations apply
+    })
+    public String className;
+
+    private byte[] classBytes;
+    private ClassLoader definer;
+
+    @Setup
+    public void setup() {
+        classBytes = ClassBytes.of(className);
+        definer = getClass().getClassLoader();
+    }
+
+    @Benchmark
+    public int prefilter() {
+        return TransformationPrefilter.scan(classBytes);
+    }
+
+    @Benchmark
+    public byte[] migration() {
+        return Migration.transform(classBytes, definer);
+    }
+
+    @Benchmark
+    public byte[] event() {
+        return EventTransformations.transform(classBytes, definer);
+    }
+
+    @Benchmark
+    public byte[] configurationSerializable() {
+        return ConfigurationSerializableTransformations.transform(classBytes, definer, null);
+    }
+
+    @Benchmark
+    public byte[] staged() {
+        byte[] bytes = Migration.transform(classBytes, definer);
+        bytes = EventTransformations.transform(bytes, definer);
+        bytes = ConfigurationSerializableTransformations.transform(bytes, definer, null);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] prefilteredStaged() {
+        int stages = TransformationPrefilter.scan(classBytes);
+        byte[] bytes = classBytes;
+        if ((stages & TransformationPrefilter.MIGRATION) != 0) bytes = Migration.transform(bytes, definer);
+        if ((stages & TransformationPrefilter.EVENT) != 0) bytes = EventTransformations.transform(bytes, definer);
+        if ((stages & TransformationPrefilter.CONFIGURATION_SERIALIZABLE) != 0) bytes = ConfigurationSerializableTransformations.transform(bytes, definer, null);
+        return bytes;
+    }
+
+}
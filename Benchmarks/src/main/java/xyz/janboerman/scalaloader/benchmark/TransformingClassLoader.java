@@ -0,0 +1,34 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Defines a transformed copy of a class that is also on the classpath. All other classes are loaded by the parent.
+ */
+final class TransformingClassLoader extends ClassLoader {
+
+    private final String className;
+    private final UnaryOperator<byte[]> transformation;
+
+    TransformingClassLoader(ClassLoader parent, String className, UnaryOperator<byte[]> transformation) {
+        super(parent);
+        this.className = className;
+        this.transformation = transformation;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!className.equals(name)) return super.loadClass(name, resolve);
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] classBytes = transformation.apply(ClassBytes.of(name));
+                clazz = defineClass(name, classBytes, 0, classBytes.length);
+            }
+            if (resolve) resolveClass(clazz);
+            return clazz;
+        }
+    }
+
+}
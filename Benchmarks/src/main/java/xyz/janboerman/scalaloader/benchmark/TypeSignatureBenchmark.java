@@ -0,0 +1,33 @@
+package xyz.janboerman.scalaloader.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.bytecode.TypeSignature;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing generic signatures, which the configurationserializable transformations do for every property.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypeSignatureBenchmark {
+
+    @Param({
+            "Ljava/lang/String;",
+            "[[Z",
+            "Ljava/util/List<Ljava/lang/Long;>;",
+            "Ljava/util/Map<Ljava/lang/String;Ljava/util/List<[Ljava/lang/Integer;>;>;",
+            "Lscala/collection/immutable/Map<Ljava/lang/String;Lscala/Option<Lscala/Tuple2<Ljava/lang/Object;Ljava/util/UUID;>;>;>;",
+    })
+    public String signature;
+
+    @Benchmark
+    public TypeSignature ofSignature() {
+        return TypeSignature.ofSignature(signature);
+    }
+
+}
@@ -0,0 +1,45 @@
+package xyz.janboerman.scalaloader.plugin.description;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.janboerman.scalaloader.benchmark.ClassBytes;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the header-only parse of the {@link DescriptionScanner} against a full parse of the class.
+ * This benchmark lives in the package of DescriptionScanner because the constructor that takes the parsing options is package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DescriptionScannerBenchmark {
+
+    @Param({
+            "xyz.janboerman.scalaloader.example.java.ExamplePlugin",
+            "xyz.janboerman.scalaloader.example.java.ArraySerializable",
+            "xyz.janboerman.scalaloader.example.scala.ExamplePlugin$",
+            "xyz.janboerman.scalaloader.example.scala.HomeManager$",
+    })
+    public String className;
+
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() {
+        classBytes = ClassBytes.of(className);
+    }
+
+    @Benchmark
+    public DescriptionScanner headerOnly() {
+        return new DescriptionScanner(classBytes, DescriptionScanner.HEADER_ONLY);
+    }
+
+    @Benchmark
+    public DescriptionScanner fullParse() {
+        return new DescriptionScanner(classBytes, 0);
+    }
+
+}
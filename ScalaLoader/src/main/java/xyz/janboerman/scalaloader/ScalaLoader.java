@@ -15,14 +15,25 @@ import org.bstats.bukkit.Metrics;
 import org.bstats.charts.DrilldownPie;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -30,14 +41,19 @@ import java.util.stream.Collectors;
 import xyz.janboerman.scalaloader.commands.DumpClass;
 import xyz.janboerman.scalaloader.commands.ListScalaPlugins;
 import xyz.janboerman.scalaloader.commands.ResetScalaUrls;
+import xyz.janboerman.scalaloader.commands.ScalaPluginTimings;
 import xyz.janboerman.scalaloader.commands.SetDebug;
 import xyz.janboerman.scalaloader.compat.Compat;
+import xyz.janboerman.scalaloader.dependency.PluginYamlLibraryLoader;
 import xyz.janboerman.scalaloader.plugin.ScalaPlugin;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginLoader;
 import xyz.janboerman.scalaloader.plugin.PluginScalaVersion;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginLoaderException;
 import xyz.janboerman.scalaloader.plugin.description.ScalaVersion;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassFile;
+import xyz.janboerman.scalaloader.util.Hashing;
+import xyz.janboerman.scalaloader.util.StartupTimings;
+import xyz.janboerman.scalaloader.util.TransformedClassCache;
 
 /**
  * The ScalaLoader plugin's main class! ScalaLoader enables you to write plugins in Scala. Just depend on ScalaLoader,
@@ -47,7 +63,7 @@ import xyz.janboerman.scalaloader.plugin.runtime.ClassFile;
  */
 public final class ScalaLoader extends JavaPlugin {
 
-    private final Map<String, ScalaLibraryClassLoader> scalaLibraryClassLoaders = new HashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<ScalaLibraryClassLoader>> scalaLibraryClassLoaders = new ConcurrentHashMap<>();
     private final DebugSettings debugSettings = new DebugSettings(this);
 
     private final boolean iActuallyManagedToOverrideTheDefaultJavaPluginLoader;
@@ -56,6 +72,7 @@ public final class ScalaLoader extends JavaPlugin {
     private Map<Pattern, PluginLoader> pluginLoaderMap;
     private Pattern[] javaPluginLoaderPatterns;
     private final Map<File, UnknownDependencyException> scalaPluginsWaitingOnJavaPlugins = new HashMap<>();
+    private TransformedClassCache transformedClassCache;
 
     public ScalaLoader() {
         //setup scala plugins folder (can't do this in initializer yet because the super() constructor initializes the dataFolder)
@@ -113,6 +130,14 @@ public final class ScalaLoader extends JavaPlugin {
         return javaPluginLoaderPatterns;
     }
 
+    /**
+     * Get the on-disk cache of transformed ScalaPlugin classes.
+     * @return the cache, or null if caching is disabled in the config
+     */
+    public TransformedClassCache getTransformedClassCache() {
+        return transformedClassCache;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public void onLoad() {
@@ -124,7 +149,13 @@ public final class ScalaLoader extends JavaPlugin {
             //don't call getServer().getPluginManager().loadPlugins(scalaPluginsFolder);
             //because at this point some javaplugins that are dependencies of scalaplugins may not have been loaded yet.
 
-            for (File file : scalaPluginsFolder.listFiles((File dir, String name) -> name.endsWith(".jar"))) {
+            File[] files = scalaPluginsFolder.listFiles((File dir, String name) -> name.endsWith(".jar"));
+            if (isLoadingPluginsInParallel()) {
+                //prepare plugins concurrently, then load them in the order of their dependencies.
+                files = ScalaPluginLoader.getInstance().preparePlugins(files);
+            }
+
+            for (File file : files) {
                 try {
                     getServer().getPluginManager().loadPlugin(file);
                 } catch (UnknownDependencyException ude) {
@@ -134,6 +165,9 @@ public final class ScalaLoader extends JavaPlugin {
                     getLogger().log(Level.SEVERE, "Could not load plugin from file: " + file.getAbsolutePath(), e);
                 }
             }
+            //the last plugin is registered now, load the plugins that were waiting for it.
+            ScalaPluginLoader.getInstance().loadWaitingDependents();
+            ScalaPluginLoader.getInstance().savePluginJarScanCache();
 
             //don't re-register the JavaPluginLoader again.
             //doing so would break hot-reloading of ScalaPlugins
@@ -171,6 +205,8 @@ public final class ScalaLoader extends JavaPlugin {
                 getServer().getPluginManager().enablePlugin(plugin);
             }
         }
+        //plugins that were loaded by the PluginManager were scanned when their descriptions were read.
+        ScalaPluginLoader.getInstance().savePluginJarScanCache();
 
         //initialize bStats
         final int pluginId = 9150;
@@ -196,12 +232,23 @@ public final class ScalaLoader extends JavaPlugin {
         getCommand("dumpClass").setExecutor(new DumpClass(this));
         getCommand("setDebug").setExecutor(new SetDebug(getDebugSettings()));
         getCommand("listScalaPlugins").setExecutor(new ListScalaPlugins());
+        getCommand("scalaPluginTimings").setExecutor(new ScalaPluginTimings());
+
+        //the first tick runs when all plugins are enabled.
+        getServer().getScheduler().runTask(this, this::saveStartupTimings);
 
     }
 
     @Override
     public void onDisable() {
         //Do we want to disable the scala plugins? I don't think so
+
+        //don't leave threads behind after a reload.
+        ScalaPluginLoader scalaPluginLoader = ScalaPluginLoader.getInstance();
+        if (scalaPluginLoader != null) {
+            scalaPluginLoader.savePluginJarScanCache();
+            scalaPluginLoader.shutdownScanPool();
+        }
     }
 
     /**
@@ -232,6 +279,18 @@ public final class ScalaLoader extends JavaPlugin {
         }
     }
 
+    /**
+     * Writes the time spent in each phase of loading the ScalaPlugins to startup-timings.yml in ScalaLoader's data folder,
+     * so that startup times can be compared between deployments.
+     */
+    public void saveStartupTimings() {
+        try {
+            StartupTimings.write(new File(getDataFolder(), "startup-timings.yml"), getDescription().getVersion(), getServer().getVersion());
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Could not write startup timings.", e);
+        }
+    }
+
     private void configure() {
         //ScalaLoader config stuff
         saveDefaultConfig();
@@ -242,6 +301,10 @@ public final class ScalaLoader extends JavaPlugin {
             getConfig().set("scala-versions", Arrays.stream(ScalaVersion.values()).map(PluginScalaVersion::fromScalaVersion).collect(Collectors.toList()));
             saveConfig();
         }
+        if (config.getBoolean("transformed-class-cache.enabled", true)) {
+            long maxSize = config.getLong("transformed-class-cache.max-size-mb", 256L) * 1024L * 1024L;
+            transformedClassCache = new TransformedClassCache(new File(getDataFolder(), "cache" + File.separator + "classes"), maxSize, getLogger());
+        }
 
         //ScalaPlugin config stuff
         xyz.janboerman.scalaloader.configurationserializable.runtime.types.Primitives.registerWithConfigurationSerialization();
@@ -257,17 +320,88 @@ public final class ScalaLoader extends JavaPlugin {
         return getConfig().getBoolean("load-libraries-from-disk", true);
     }
 
+    /**
+     * Whether ScalaPlugins that use the same libraries (defined in their plugin.yml) share the classes of those libraries.
+     * @return true if library classloaders are shared, otherwise false
+     */
+    public boolean isSharingLibraries() {
+        return getConfig().getBoolean("shared-libraries", false);
+    }
+
+    /**
+     * Whether the resolved libraries of ScalaPlugins are recorded in lockfiles, so that they don't need to be resolved again.
+     * @return true if lockfiles are used, otherwise false
+     */
+    public boolean isUsingLibraryLockFiles() {
+        return getConfig().getBoolean("libraries.lockfiles", true);
+    }
+
+    /**
+     * Whether ScalaPlugins are prepared concurrently before they are loaded.
+     * @return true if the plugins are prepared concurrently, otherwise false
+     */
+    public boolean isLoadingPluginsInParallel() {
+        return getConfig().getBoolean("parallel-plugin-loading", false);
+    }
+
+    /**
+     * Get the url of the repository from which libraries of ScalaPlugins are downloaded.
+     * @return the url of Maven Central, or the url of the repository that is configured to be used instead
+     */
+    public String getMavenCentralUrl() {
+        return getConfig().getString("libraries.maven-central", PluginYamlLibraryLoader.MAVEN_CENTRAL_URL);
+    }
+
     /**
      * Get a (fresh or cached) {@link ScalaLibraryClassLoader} that loads standard library classes from a specific Scala version.
      * The classloader can either load classes from over the network directly, or use downloaded library archives (jar files).
+     * <p>
+     * This method can be called from multiple threads concurrently. When multiple threads request the same Scala version,
+     * the libraries are downloaded and the classloader is created only once, and all threads get the same classloader.
+     * Different Scala versions are resolved independently of each other.
      * @param scalaVersion the scala version
      * @return the class loader
      * @throws ScalaPluginLoaderException if a url is malformed.
      */
     public ScalaLibraryClassLoader loadOrGetScalaVersion(PluginScalaVersion scalaVersion) throws ScalaPluginLoaderException {
-        //try to get from cache
-        ScalaLibraryClassLoader scalaLibraryLoader = scalaLibraryClassLoaders.get(scalaVersion.getScalaVersion());
-        if (scalaLibraryLoader != null) return scalaLibraryLoader;
+        //try to get from cache, or from the thread that is already resolving this version
+        CompletableFuture<ScalaLibraryClassLoader> future = scalaLibraryClassLoaders.get(scalaVersion.getScalaVersion());
+        if (future == null) {
+            CompletableFuture<ScalaLibraryClassLoader> ourFuture = new CompletableFuture<>();
+            future = scalaLibraryClassLoaders.putIfAbsent(scalaVersion.getScalaVersion(), ourFuture);
+            if (future == null) {
+                //we are the first thread that requests this version
+                future = ourFuture;
+                try {
+                    ourFuture.complete(resolveScalaVersion(scalaVersion));
+                } catch (Throwable e) {
+                    //don't cache failures, so that the next request tries again.
+                    //errors must complete the future too, otherwise the threads that wait for this version would wait forever.
+                    scalaLibraryClassLoaders.remove(scalaVersion.getScalaVersion(), ourFuture);
+                    ourFuture.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ScalaPluginLoaderException) {
+                throw new ScalaPluginLoaderException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new ScalaPluginLoaderException("Could not load Scala " + scalaVersion.getScalaVersion() + " libraries", cause);
+            }
+        }
+    }
+
+    private ScalaLibraryClassLoader resolveScalaVersion(PluginScalaVersion scalaVersion) throws ScalaPluginLoaderException {
+        ScalaLibraryClassLoader scalaLibraryLoader;
 
         if (!downloadScalaJarFiles()) {
             //load classes over the network
@@ -296,42 +430,10 @@ public final class ScalaLoader extends JavaPlugin {
             if (jarFiles.length == 0) {
                 //no jar files found - download dem files
                 getLogger().info("Tried to load Scala " + scalaVersion + " libraries from disk, but they were not present. Downloading...");
-
-                Map<String, String> urlMap = scalaVersion.getUrls();
-                jarFiles = new File[urlMap.size()];
-                int i = 0;
-                for (Map.Entry<String, String> entry : urlMap.entrySet()) {
-                    String key = entry.getKey();
-                    String value = entry.getValue();
-
-                    String fileName;
-                    if (key.endsWith("-url")) {
-                        fileName = key.substring(0, key.length() - 3) + scalaVersion.getScalaVersion() + ".jar";
-                    } else if (key.endsWith(".jar")) {
-                        fileName = key;
-                    } else {
-                        fileName = key + "-" + scalaVersion.getScalaVersion() + ".jar";
-                    }
-
-                    File scalaRuntimeJarFile = new File(versionFolder, fileName);
-
-                    try {
-                        scalaRuntimeJarFile.createNewFile();
-                    } catch (IOException e) {
-                        throw new ScalaPluginLoaderException("Could not create new jar file", e);
-                    }
-
-                    try {
-                        URL url = new URL(value);
-                        downloadFile(url, scalaRuntimeJarFile);
-                    } catch (MalformedURLException e) {
-                        throw new ScalaPluginLoaderException("Invalid url for key: " + key, e);
-                    } catch (IOException e) {
-                        throw new ScalaPluginLoaderException("Could not open or close channel", e);
-                    }
-
-                    jarFiles[i++] = scalaRuntimeJarFile;
-                }
+                jarFiles = downloadScalaRuntime(scalaVersion, versionFolder);
+            } else if (!verifyScalaRuntime(scalaVersion, versionFolder)) {
+                getLogger().warning("Scala " + scalaVersion + " libraries on disk are incomplete or corrupt. Downloading them again...");
+                jarFiles = downloadScalaRuntime(scalaVersion, versionFolder);
             }
 
             getLogger().info("Loading Scala " + scalaVersion.getScalaVersion() + " libraries from disk");
@@ -348,21 +450,187 @@ public final class ScalaLoader extends JavaPlugin {
             scalaLibraryLoader = new ScalaLibraryClassLoader(scalaVersion.getScalaVersion(), urls, getClass().getClassLoader());
         }
 
-        //cache the resolved scala library classloader
-        scalaLibraryClassLoaders.put(scalaVersion.getScalaVersion(), scalaLibraryLoader);
         return scalaLibraryLoader;
     }
 
-    private static void downloadFile(URL inputResourceLocation, File outputFile) throws IOException {
-        ReadableByteChannel rbc = null;
-        FileOutputStream fos = null;
+    /**
+     * Checks whether all jar files of a Scala version are present, and whether they match their hashes.
+     * @param scalaVersion the scala version
+     * @param versionFolder the folder in which the jar files are stored
+     * @return true if the jar files are complete and intact, otherwise false
+     */
+    private boolean verifyScalaRuntime(PluginScalaVersion scalaVersion, File versionFolder) {
+        for (String key : scalaVersion.getUrls().keySet()) {
+            File jarFile = new File(versionFolder, jarFileName(key, scalaVersion.getScalaVersion()));
+            if (!jarFile.isFile()) {
+                getLogger().warning("Missing Scala library " + jarFile.getName());
+                return false;
+            }
+
+            String sha256 = expectedSha256(scalaVersion, key);
+            if (sha256 == null) continue;
+            try {
+                String actualSha256 = Hashing.sha256(jarFile);
+                if (!sha256.equalsIgnoreCase(actualSha256)) {
+                    getLogger().warning("SHA-256 hash of " + jarFile.getName() + " is " + actualSha256 + ", but expected " + sha256);
+                    return false;
+                }
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Could not read Scala library " + jarFile.getName(), e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String jarFileName(String urlKey, String scalaVersion) {
+        if (urlKey.endsWith("-url")) {
+            return urlKey.substring(0, urlKey.length() - 3) + scalaVersion + ".jar";
+        } else if (urlKey.endsWith(".jar")) {
+            return urlKey;
+        } else {
+            return urlKey + "-" + scalaVersion + ".jar";
+        }
+    }
+
+    private static String expectedSha256(PluginScalaVersion scalaVersion, String urlKey) {
+        String sha256 = scalaVersion.getSha256(urlKey);
+        if (sha256 != null) return sha256;
+
+        //configs that were saved before hashes were added can still be verified, as long as they use the url of the built-in version.
+        ScalaVersion builtIn = ScalaVersion.fromVersionString(scalaVersion.getScalaVersion());
+        if (builtIn != null && Objects.equals(builtIn.getUrls().get(urlKey), scalaVersion.getUrls().get(urlKey))) {
+            return builtIn.getSha256Hashes().get(urlKey);
+        }
+        return null;
+    }
+
+    /**
+     * Downloads the jar files of a Scala version concurrently.
+     * The jar files are only moved into the version folder once all of them are downloaded and verified.
+     * If moving one of them fails, then the jar files that were moved already are deleted again,
+     * so that the version folder does not keep an incomplete set of jar files.
+     * @param scalaVersion the scala version
+     * @param versionFolder the folder in which the jar files are stored
+     * @return the jar files
+     * @throws ScalaPluginLoaderException if a url is malformed, if a jar file could not be downloaded, or if a jar file does not match its hash
+     */
+    private File[] downloadScalaRuntime(PluginScalaVersion scalaVersion, File versionFolder) throws ScalaPluginLoaderException {
+        Map<String, String> urlMap = scalaVersion.getUrls();
+        File[] jarFiles = new File[urlMap.size()];
+        List<CompletableFuture<Path>> downloads = new ArrayList<>(urlMap.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, urlMap.size()), runnable -> {
+            Thread thread = new Thread(runnable, "ScalaLoader-Download");
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            rbc = Channels.newChannel(inputResourceLocation.openStream());
-            fos = new FileOutputStream(outputFile);
-            fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+            int i = 0;
+            for (Map.Entry<String, String> entry : urlMap.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+
+                String fileName = jarFileName(key, scalaVersion.getScalaVersion());
+                jarFiles[i++] = new File(versionFolder, fileName);
+
+                URL url;
+                try {
+                    //a url that ends with a slash is a directory (for example a local mirror), which contains the jar file.
+                    url = new URL(value.endsWith("/") ? value + fileName : value);
+                } catch (MalformedURLException e) {
+                    throw new ScalaPluginLoaderException("Invalid url for key: " + key, e);
+                }
+
+                String sha256 = expectedSha256(scalaVersion, key);
+                downloads.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return downloadFile(url, versionFolder, fileName, sha256);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+
+            //wait for all downloads to complete
+            List<Path> tempFiles = new ArrayList<>(downloads.size());
+            ScalaPluginLoaderException failure = null;
+            for (CompletableFuture<Path> download : downloads) {
+                try {
+                    tempFiles.add(download.join());
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                    if (failure == null) {
+                        failure = new ScalaPluginLoaderException("Could not download Scala " + scalaVersion.getScalaVersion() + " libraries", cause);
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                for (Path tempFile : tempFiles) {
+                    try { Files.deleteIfExists(tempFile); } catch (IOException e) { failure.addSuppressed(e); }
+                }
+                throw failure;
+            }
+
+            //all jar files are complete, move them into place
+            for (int j = 0; j < jarFiles.length; j++) {
+                Path tempFile = tempFiles.get(j);
+                Path jarFile = jarFiles[j].toPath();
+                try {
+                    try {
+                        Files.move(tempFile, jarFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tempFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (IOException e) {
+                    //don't leave an incomplete set of jar files behind
+                    ScalaPluginLoaderException moveFailure = new ScalaPluginLoaderException("Could not move downloaded file to " + jarFile, e);
+                    for (int k = 0; k < jarFiles.length; k++) {
+                        try {
+                            Files.deleteIfExists(k < j ? jarFiles[k].toPath() : tempFiles.get(k));
+                        } catch (IOException suppressed) {
+                            moveFailure.addSuppressed(suppressed);
+                        }
+                    }
+                    throw moveFailure;
+                }
+            }
         } finally {
-            if (rbc != null) try { rbc.close(); } catch (IOException e) { e.printStackTrace(); }
-            if (fos != null) try { fos.close(); } catch (IOException e) { e.printStackTrace(); }
+            executor.shutdown();
+        }
+
+        return jarFiles;
+    }
+
+    /**
+     * Downloads a file to a temporary file.
+     * @param url the location of the file
+     * @param folder the folder in which the temporary file is created
+     * @param fileName the name of the file
+     * @param sha256 the expected SHA-256 hash of the file in hexadecimal form, or null if the file should not be verified
+     * @return the temporary file
+     * @throws IOException if the file could not be downloaded, or if it does not match the expected hash
+     */
+    private Path downloadFile(URL url, File folder, String fileName, String sha256) throws IOException {
+        getLogger().info("Downloading " + url);
+
+        Path tempFile = Files.createTempFile(folder.toPath(), fileName, ".part");
+        try {
+            MessageDigest digest = Hashing.sha256();
+            try (InputStream inputStream = new DigestInputStream(url.openStream(), digest)) {
+                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            String actualSha256 = Hashing.hex(digest.digest());
+            if (sha256 != null && !sha256.equalsIgnoreCase(actualSha256)) {
+                throw new IOException("SHA-256 hash of " + url + " is " + actualSha256 + ", but expected " + sha256);
+            }
+            return tempFile;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
         }
     }
 
@@ -0,0 +1,99 @@
+package xyz.janboerman.scalaloader.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import xyz.janboerman.scalaloader.compat.Compat;
+import xyz.janboerman.scalaloader.util.StartupTimings;
+import xyz.janboerman.scalaloader.util.StartupTimings.Phase;
+import xyz.janboerman.scalaloader.util.TransformationPrefilter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ScalaPluginTimings implements TabExecutor {
+
+    //the phases that don't overlap with each other
+    private static final Phase[] LOADING_PHASES = {
+            Phase.JAR_SCAN, Phase.SCALA_LIBRARY, Phase.LIBRARIES, Phase.CLASSLOADER, Phase.MAIN_CLASS_LOAD,
+            Phase.CONSTRUCTOR, Phase.PERSISTENT_CLASSES, Phase.ON_LOAD, Phase.ON_ENABLE,
+    };
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        List<StartupTimings> allTimings = new ArrayList<>(StartupTimings.all());
+        allTimings.sort(Comparator.comparingLong(ScalaPluginTimings::totalNanos).reversed());
+
+        if (args.length == 0) {
+            sender.sendMessage(ChatColor.GREEN + "=== ScalaPlugin load times (ms) ===");
+            sender.sendMessage(ChatColor.DARK_AQUA + String.format("%-24s %10s %10s %10s %10s", "plugin", "total", "load", "enable", "classes"));
+            for (StartupTimings timings : allTimings) {
+                sender.sendMessage(ChatColor.AQUA + String.format("%-24s %10.2f %10.2f %10.2f %10d",
+                        timings.getPluginName(),
+                        millis(totalNanos(timings)),
+                        millis(totalNanos(timings) - timings.getNanos(Phase.ON_ENABLE)),
+                        millis(timings.getNanos(Phase.ON_ENABLE)),
+                        timings.getCount(Phase.DEFINE_CLASS)));
+            }
+            sender.sendMessage(ChatColor.DARK_AQUA + String.format("Transformation prefilter: %d classes scanned, %d not transformed at all. Skipped stages: migration %d, event %d, configurationserializable %d, targeted %d.",
+                    TransformationPrefilter.getClassesScanned(),
+                    TransformationPrefilter.getAllSkipped(),
+                    TransformationPrefilter.getMigrationSkipped(),
+                    TransformationPrefilter.getEventSkipped(),
+                    TransformationPrefilter.getConfigurationSerializableSkipped(),
+                    TransformationPrefilter.getTargetedSkipped()));
+            sender.sendMessage(ChatColor.GREEN + "Use /" + label + " <plugin> for a breakdown per phase.");
+        } else {
+            StartupTimings timings = null;
+            for (StartupTimings candidate : allTimings) {
+                if (candidate.getPluginName().equalsIgnoreCase(args[0])) {
+                    timings = candidate;
+                    break;
+                }
+            }
+            if (timings == null) {
+                sender.sendMessage(ChatColor.RED + "No timings recorded for plugin " + args[0] + ".");
+                return true;
+            }
+
+            sender.sendMessage(ChatColor.GREEN + "=== Load times of " + timings.getPluginName() + " ===");
+            sender.sendMessage(ChatColor.DARK_AQUA + String.format("%-28s %10s %10s", "phase", "ms", "count"));
+            for (Phase phase : Phase.values()) {
+                long count = timings.getCount(phase);
+                if (count == 0L) continue;
+                //class loading happens during the other phases, so indent those.
+                String phaseName = phase.ordinal() > Phase.ON_ENABLE.ordinal() ? "  " + phase.getLabel() : phase.getLabel();
+                sender.sendMessage(ChatColor.AQUA + String.format("%-28s %10.2f %10d", phaseName, millis(timings.getNanos(phase)), count));
+            }
+        }
+
+        return true;
+    }
+
+    private static long totalNanos(StartupTimings timings) {
+        long total = 0L;
+        for (Phase phase : LOADING_PHASES) {
+            total += timings.getNanos(phase);
+        }
+        return total;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000D;
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1) {
+            return StartupTimings.all().stream()
+                    .map(StartupTimings::getPluginName)
+                    .filter(name -> name.regionMatches(true, 0, args[0], 0, args[0].length()))
+                    .collect(Collectors.toList());
+        }
+
+        return Compat.emptyList();
+    }
+}
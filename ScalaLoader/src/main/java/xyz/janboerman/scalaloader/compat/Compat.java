@@ -110,6 +110,11 @@ public class Compat {
         return new JarFile(jarFile);
     }
 
+    public static int multiReleaseVersion(JarFile jarFile) {
+        //Java 8 does not support Multi-Release jars, so the versioned entries are never used.
+        return 8;
+    }
+
     public static String getPackageName(Class<?> clazz) {
         return clazz.getPackage().getName();
     }
@@ -0,0 +1,96 @@
+package xyz.janboerman.scalaloader.compat;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Emits JDK Flight Recorder events for class loading, bytecode transformation, class generation, runtime (de)serialization
+ * and persistent class I/O. JDK Flight Recorder is not available on Java 8, so this implementation does nothing.
+ * The implementation for Java 11 and newer lives in the Multi-Release overlay (src/main/java11).
+ * <p>
+ * Every begin method returns a handle that must be passed to the corresponding end method.
+ * The handle is null when the event is not being recorded, in which case the end method returns immediately.
+ */
+public final class FlightRecording {
+
+    private FlightRecording() {}
+
+    public static Object beginFindClass() {
+        return null;
+    }
+
+    /**
+     * Ends a class lookup by a ScalaPluginClassLoader.
+     * @param event the handle obtained from {@link #beginFindClass()}
+     * @param plugin the name of the plugin
+     * @param className the name of the class
+     * @param cacheHit whether the class was already loaded by the ScalaPluginClassLoader
+     * @param servedBy where the class was found, or null if the class was not found
+     */
+    public static void endFindClass(Object event, String plugin, String className, boolean cacheHit, String servedBy) {
+    }
+
+    public static Object beginTransform() {
+        return null;
+    }
+
+    /**
+     * Ends a stage of the bytecode transformation of a class.
+     * @param event the handle obtained from {@link #beginTransform()}
+     * @param plugin the name of the plugin
+     * @param className the name of the class
+     * @param stage the name of the transformation stage
+     * @param bytesIn the size of the bytecode before the stage
+     * @param bytesOut the size of the bytecode after the stage
+     */
+    public static void endTransform(Object event, String plugin, String className, String stage, int bytesIn, int bytesOut) {
+    }
+
+    public static Object beginGenerateClass() {
+        return null;
+    }
+
+    /**
+     * Ends the generation of a class at runtime.
+     * @param event the handle obtained from {@link #beginGenerateClass()}
+     * @param plugin the name of the plugin
+     * @param className the name of the generated class
+     * @param isNew whether the class was defined, or whether it was defined already by another thread
+     * @param persist whether the class will be re-generated the next time the plugin loads
+     * @param byteCodeSize the size of the generated bytecode
+     */
+    public static void endGenerateClass(Object event, String plugin, String className, boolean isNew, boolean persist, int byteCodeSize) {
+    }
+
+    public static Object beginConversion() {
+        return null;
+    }
+
+    /**
+     * Ends a runtime serialization or deserialization of a value that has no built-in conversion,
+     * i.e. a value that is converted by a registered codec or by one of the fallbacks.
+     * @param event the handle obtained from {@link #beginConversion()}
+     * @param plugin the name of the plugin
+     * @param serialize true for serialization, false for deserialization
+     * @param type the declared type of the value
+     * @param input the value before the conversion
+     * @param output the value after the conversion
+     */
+    public static void endConversion(Object event, String plugin, boolean serialize, String type, Object input, Object output) {
+    }
+
+    public static Object beginPersistentClasses() {
+        return null;
+    }
+
+    /**
+     * Ends reading or writing the generated classes of a plugin.
+     * @param event the handle obtained from {@link #beginPersistentClasses()}
+     * @param plugin the name of the plugin
+     * @param operation the kind of I/O, for example "load" or "save"
+     * @param classCount the number of classes that were read or written
+     * @param fileSize the size of the file after the operation
+     */
+    public static void endPersistentClasses(Object event, String plugin, String operation, int classCount, long fileSize) {
+    }
+
+}
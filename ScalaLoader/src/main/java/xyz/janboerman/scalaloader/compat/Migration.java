@@ -23,13 +23,19 @@ public class Migration {
             }
         };
 
-        ClassVisitor combinedTransformer = classWriter;
+        ClassVisitor combinedTransformer = transformer(classWriter);
+
+        new ClassReader(byteCode).accept(combinedTransformer, ClassReader.EXPAND_FRAMES);
+        return classWriter.toByteArray();
+    }
+
+    public static ClassVisitor transformer(ClassVisitor delegate) {
+        ClassVisitor combinedTransformer = delegate;
 
         combinedTransformer = new NumericRangeUpdater(combinedTransformer);
         //there is room for more here.
 
-        new ClassReader(byteCode).accept(combinedTransformer, ClassReader.EXPAND_FRAMES);
-        return classWriter.toByteArray();
+        return combinedTransformer;
     }
 
 }
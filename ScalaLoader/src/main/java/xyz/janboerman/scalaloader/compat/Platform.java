@@ -22,11 +22,10 @@ public enum Platform {
         private boolean attempted = false;
 
         @Override
-        public byte[] transform(String jarEntryPath, byte[] classBytes, ScalaPluginClassLoader pluginClassLoader) throws Throwable {
+        public byte[] transform(String jarEntryPath, byte[] classBytes, Server craftServer, ApiVersion apiVersion) throws Throwable {
             if (!attempted) {
                 attempted = true;
                 MethodHandles.Lookup lookup = MethodHandles.lookup();
-                Server craftServer = pluginClassLoader.getServer();
                 try {
                     Class<?> commodoreClass = Class.forName(getPackageName(craftServer.getClass()) + ".util.Commodore");
                     String methodName = "convert";
@@ -38,7 +37,7 @@ public enum Platform {
             }
 
             if (commodoreConvert != null) {
-                boolean isModern = pluginClassLoader.getApiVersion() != ApiVersion.LEGACY;
+                boolean isModern = apiVersion != ApiVersion.LEGACY;
                 classBytes = (byte[]) commodoreConvert.invoke(classBytes, isModern);
             }
 
@@ -58,16 +57,28 @@ public enum Platform {
 
     private Boolean conversionMethodExists = null;
 
-    @SuppressWarnings("deprecation")
     public byte[] transform(String jarEntryPath, byte[] original, ScalaPluginClassLoader currentPluginClassLoader) throws Throwable {
+        return transform(jarEntryPath, original, currentPluginClassLoader.getServer(), currentPluginClassLoader.getApiVersion());
+    }
+
+    /**
+     * Transforms a class without a plugin, for classes that are shared by multiple plugins.
+     *
+     * @param jarEntryPath the path of the class in its jar file
+     * @param original the bytecode of the class
+     * @param server the server
+     * @param apiVersion bukkit's api version that's used by the plugins that use the class
+     * @return the transformed bytecode
+     * @throws Throwable if the server implementation could not transform the class
+     */
+    @SuppressWarnings("deprecation")
+    public byte[] transform(String jarEntryPath, byte[] original, Server server, ApiVersion apiVersion) throws Throwable {
         if (conversionMethodExists == null || conversionMethodExists) {
             try {
-                Server server = currentPluginClassLoader.getServer();
                 UnsafeValues unsafeValues = server.getUnsafe();
                 String fakeDescription = "name: Fake" + System.lineSeparator() +
                         "version: 1.0" + System.lineSeparator() +
                         "main: xyz.janboerman.scalaloader.FakePlugin" + System.lineSeparator();
-                ApiVersion apiVersion = currentPluginClassLoader.getApiVersion();
                 if (apiVersion != ApiVersion.LEGACY) {
                     //If api-version is not set, this will be ApiVersion.latest(). We assume all ScalaPlugins are made in the post-1.13 era.
                     fakeDescription += "api-version: " + apiVersion.getVersionString() + System.lineSeparator();
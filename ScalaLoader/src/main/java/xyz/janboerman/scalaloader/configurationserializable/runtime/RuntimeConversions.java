@@ -2,6 +2,7 @@ package xyz.janboerman.scalaloader.configurationserializable.runtime;
 
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import xyz.janboerman.scalaloader.bytecode.Called;
+import xyz.janboerman.scalaloader.compat.FlightRecording;
 import xyz.janboerman.scalaloader.configurationserializable.runtime.types.*;
 import xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableError;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
@@ -41,6 +42,42 @@ public class RuntimeConversions {
 
     private static final Map<ScalaPluginClassLoader, Registrations> registrations = new HashMap<>();
 
+    //how to (de)serialize a value is decided by its raw type, its live class and the shape of its ParameterType.
+    //the strategies are resolved once per class, for every shape at once.
+    private static final ClassValue<RawTypeKind> RAW_TYPE_KINDS = new ClassValue<RawTypeKind>() {
+        @Override
+        protected RawTypeKind computeValue(Class<?> rawType) {
+            return RawTypeKind.of(rawType);
+        }
+    };
+    private static final ClassValue<LiveKind> LIVE_KINDS = new ClassValue<LiveKind>() {
+        @Override
+        protected LiveKind computeValue(Class<?> liveClass) {
+            return LiveKind.of(liveClass);
+        }
+    };
+    private static final ClassValue<SerializeStrategy[]> SERIALIZE_STRATEGIES = new ClassValue<SerializeStrategy[]>() {
+        @Override
+        protected SerializeStrategy[] computeValue(Class<?> liveClass) {
+            LiveKind liveKind = LIVE_KINDS.get(liveClass);
+            SerializeStrategy[] strategies = new SerializeStrategy[Shape.VALUES.length];
+            for (Shape shape : Shape.VALUES) {
+                strategies[shape.ordinal()] = SerializeStrategy.of(liveClass, liveKind, shape);
+            }
+            return strategies;
+        }
+    };
+    private static final ClassValue<DeserializeStrategy[]> DESERIALIZE_STRATEGIES = new ClassValue<DeserializeStrategy[]>() {
+        @Override
+        protected DeserializeStrategy[] computeValue(Class<?> rawType) {
+            DeserializeStrategy[] strategies = new DeserializeStrategy[Shape.VALUES.length];
+            for (Shape shape : Shape.VALUES) {
+                strategies[shape.ordinal()] = DeserializeStrategy.of(rawType, shape);
+            }
+            return strategies;
+        }
+    };
+
     private RuntimeConversions() {
     }
 
@@ -101,70 +138,55 @@ public class RuntimeConversions {
     @Called
     public static Object serialize(Object live, ParameterType type, ScalaPluginClassLoader pluginClassLoader) {
         if (live == null) return null;
+
         Class<?> rawType = type.getRawType();
         assert rawType.isInstance(live) : "live object is not an instance of " + type;
 
-        //out-of-the-box supported
-        if (ConfigurationSerializable.class.isAssignableFrom(rawType)
-            || rawType == String.class
-            || rawType == Integer.class || rawType == int.class
-            || rawType == Double.class || rawType == double.class
-            || rawType == Boolean.class || rawType == boolean.class) {
-            return live;
-        }
-
-        //other primitives
-        else if (rawType == Byte.class || rawType == byte.class) {
-            return ((Byte) live).intValue();
-        } else if (rawType == Short.class || rawType == short.class) {
-            return ((Short) live).intValue();
-        } else if (rawType == Long.class || rawType == long.class) {
-            return ((Long) live).toString();
-        } else if (rawType == Float.class || rawType == float.class) {
-            return ((Float) live).doubleValue();
-        } else if (rawType == Character.class || rawType == char.class) {
-            return ((Character) live).toString();
-        } else if (rawType == Void.class || rawType == void.class) {
-            return null;
-        }
-
-        //built-ins
-        else if (rawType == UUID.class) {
-            return ((UUID) live).toString();
-        } else if (rawType == BigInteger.class) {
-            return ((BigInteger) live).toString();
-        } else if (rawType == BigDecimal.class) {
-            return ((BigDecimal) live).toString();
-        } else if (rawType.isEnum()) {
-            return ((Enum<?>) live).name();
+        switch (RAW_TYPE_KINDS.get(rawType)) {
+            //out-of-the-box supported
+            case AS_IS:         return live;
+            //other primitives
+            case BYTE:          return ((Byte) live).intValue();
+            case SHORT:         return ((Short) live).intValue();
+            case LONG:          return ((Long) live).toString();
+            case FLOAT:         return ((Float) live).doubleValue();
+            case CHARACTER:     return ((Character) live).toString();
+            case VOID:          return null;
+            //built-ins
+            case UUID:          return ((UUID) live).toString();
+            case BIG_INTEGER:   return ((BigInteger) live).toString();
+            case BIG_DECIMAL:   return ((BigDecimal) live).toString();
+            case ENUM:          return ((Enum<?>) live).name();
         }
 
-        //java containers
-        else if (type instanceof ArrayParameterType) {
-            return serializeArray(live, (ArrayParameterType) type, pluginClassLoader);
-        } else if (type instanceof ParameterizedParameterType && live instanceof Collection) {
-            return serializeCollection(live, (ParameterizedParameterType) type, pluginClassLoader);
-        } else if (type instanceof ParameterizedParameterType && live instanceof Map) {
-            return serializeMap(live, (ParameterizedParameterType) type, pluginClassLoader);
-        } else if (JavaCollection.isRawtypeCollection(live, type)) {
-            return JavaCollection.serialize(live, type, pluginClassLoader);
-        } else if (JavaMap.isRawtypeMap(live, type)) {
-            return JavaMap.serialize(live, type, pluginClassLoader);
-        }
-
-        //scala containers
-        else if (Tuple.isTuple(live)) {
-            return Tuple.serialize(live, type, pluginClassLoader);
-        } else if (Option.isOption(live, pluginClassLoader)) {
-            return Option.serialize(live, type, pluginClassLoader);
-        } else if (Either.isEither(live, pluginClassLoader)) {
-            return Either.serialize(live, type, pluginClassLoader);
-        } else if (ScalaMap.isMap(live, pluginClassLoader)) {
-            return ScalaMap.serialize(live, type, pluginClassLoader);
+        final Class<?> liveClass = live.getClass();
+        switch (serializeStrategy(liveClass, type)) {
+            //java containers
+            case ARRAY:             return serializeArray(live, (ArrayParameterType) type, pluginClassLoader);
+            case COLLECTION:        return serializeCollection(live, (ParameterizedParameterType) type, pluginClassLoader);
+            case MAP:               return serializeMap(live, (ParameterizedParameterType) type, pluginClassLoader);
+            case RAW_COLLECTION:    return JavaCollection.serialize(live, type, pluginClassLoader);
+            case RAW_MAP:           return JavaMap.serialize(live, type, pluginClassLoader);
+            //scala containers. Option and Either don't need the plugin, the others generate adapters for the plugin.
+            //adapters that are shared by multiple plugins call RuntimeConversions without a plugin, but they never contain scala types.
+            case TUPLE:             if (pluginClassLoader != null) return Tuple.serialize(live, type, pluginClassLoader); break;
+            case OPTION:            return Option.serialize(live, type, pluginClassLoader);
+            case EITHER:            return Either.serialize(live, type, pluginClassLoader);
+            case SCALA_MAP:         if (pluginClassLoader != null) return ScalaMap.serialize(live, type, pluginClassLoader); break;
         }
         //TODO scala collections (need to special-case Range, NumericRange, WrappedString and ArrayBuilder)
         //TODO scala.math.BigInt, scala.math.BigDecimal
 
+        //only the slow fallbacks are recorded, the conversions above are cheap and happen for every element of a container.
+        Object event = FlightRecording.beginConversion();
+        Object serialized = serializeFallback(live, liveClass, type, pluginClassLoader);
+        if (event != null) { //only describe the type when the event is recorded
+            FlightRecording.endConversion(event, pluginName(pluginClassLoader), true, type.toString(), live, serialized);
+        }
+        return serialized;
+    }
+
+    private static Object serializeFallback(Object live, Class<?> liveClass, ParameterType type, ScalaPluginClassLoader pluginClassLoader) {
         //check plugin registrations
         Registrations registrations = RuntimeConversions.registrations.get(pluginClassLoader);
         if (registrations != null) {
@@ -190,34 +212,23 @@ public class RuntimeConversions {
         }
 
         //try to adapt some common cases:
-        if (live instanceof Byte) {
-            return new Primitives.Byte((Byte) live);
-        } else if (live instanceof Short) {
-            return new Primitives.Short((Short) live);
-        } else if (live instanceof Integer) {
-            return new Primitives.Integer((Integer) live);
-        } else if (live instanceof Long) {
-            return new Primitives.Long((Long) live);
-        } else if (live instanceof Float) {
-            return new Primitives.Float((Float) live);
-        } else if (live instanceof Double) {
-            return new Primitives.Double((Double) live);
-        } else if (live instanceof Boolean) {
-            return new Primitives.Boolean((Boolean) live);
-        } else if (live instanceof Character) {
-            return new Primitives.Character((Character) live);
-        } else if (live instanceof UUID) {
-            return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.UUID((UUID) live);
-        } else if (live instanceof BigInteger) {
-            return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.BigInteger((BigInteger) live);
-        } else if (live instanceof BigDecimal) {
-            return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.BigDecimal((BigDecimal) live);
-        } else if (live instanceof Enum) {
-            return xyz.janboerman.scalaloader.configurationserializable.runtime.types.Enum.forEnum((Enum) live, pluginClassLoader);
+        switch (LIVE_KINDS.get(liveClass)) {
+            case BYTE:          return new Primitives.Byte((Byte) live);
+            case SHORT:         return new Primitives.Short((Short) live);
+            case INTEGER:       return new Primitives.Integer((Integer) live);
+            case LONG:          return new Primitives.Long((Long) live);
+            case FLOAT:         return new Primitives.Float((Float) live);
+            case DOUBLE:        return new Primitives.Double((Double) live);
+            case BOOLEAN:       return new Primitives.Boolean((Boolean) live);
+            case CHARACTER:     return new Primitives.Character((Character) live);
+            case UUID:          return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.UUID((UUID) live);
+            case BIG_INTEGER:   return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.BigInteger((BigInteger) live);
+            case BIG_DECIMAL:   return new xyz.janboerman.scalaloader.configurationserializable.runtime.types.BigDecimal((BigDecimal) live);
+            case ENUM:          return xyz.janboerman.scalaloader.configurationserializable.runtime.types.Enum.forEnum((Enum) live, pluginClassLoader);
         }
 
         //if the type is not ConfigurationSerializable, warn the plugin author
-        if (!(live instanceof ConfigurationSerializable)) {
+        if (!(live instanceof ConfigurationSerializable) && pluginClassLoader != null) {
             pluginClassLoader.getPlugin().getLogger().warning("No Codec found for " + live.getClass().getName() + ", please register one using " + RuntimeConversions.class.getName() + "#registerCodec");
             pluginClassLoader.getPlugin().getLogger().warning("If you don't do this, then behaviour might break in the future!");
         }
@@ -345,54 +356,35 @@ public class RuntimeConversions {
     @Called
     public static Object deserialize(Object serialized, ParameterType type, ScalaPluginClassLoader pluginClassLoader) {
         if (serialized == null) return null;
+
         Class<?> rawType = type.getRawType();
 
-        //out-of-the-box supported
-        if (ConfigurationSerializable.class.isAssignableFrom(rawType)
-                || rawType == String.class
-                || rawType == Integer.class || rawType == int.class
-                || rawType == Double.class || rawType == double.class
-                || rawType == Boolean.class || rawType == boolean.class) {
-            return serialized;
-        }
-
-        //other primitives
-        else if (rawType == Byte.class || rawType == byte.class) {
-            return ((Integer) serialized).byteValue();
-        } else if (rawType == Short.class || rawType == short.class) {
-            return ((Integer) serialized).shortValue();
-        } else if (rawType == Long.class || rawType == long.class) {
-            return Long.parseLong(((String) serialized));
-        } else if (rawType == Float.class || rawType == float.class) {
-            return ((Double) serialized).floatValue();
-        } else if (rawType == Character.class || rawType == char.class) {
-            return ((String) serialized).charAt(0);
-        } else if (rawType == Void.class || rawType == void.class) {
-            return null;
-        }
-
-        //built-ins
-        else if (rawType == UUID.class) {
-            return UUID.fromString((String) serialized);
-        } else if (rawType == BigInteger.class) {
-            return new BigInteger((String) serialized);
-        } else if (rawType == BigDecimal.class) {
-            return new BigDecimal((String) serialized);
-        } else if (rawType.isEnum()) {
-            return Enum.valueOf((Class<Enum>) rawType, (String) serialized);
+        switch (RAW_TYPE_KINDS.get(rawType)) {
+            //out-of-the-box supported
+            case AS_IS:         return serialized;
+            //other primitives
+            case BYTE:          return ((Integer) serialized).byteValue();
+            case SHORT:         return ((Integer) serialized).shortValue();
+            case LONG:          return Long.parseLong(((String) serialized));
+            case FLOAT:         return ((Double) serialized).floatValue();
+            case CHARACTER:     return ((String) serialized).charAt(0);
+            case VOID:          return null;
+            //built-ins
+            case UUID:          return UUID.fromString((String) serialized);
+            case BIG_INTEGER:   return new BigInteger((String) serialized);
+            case BIG_DECIMAL:   return new BigDecimal((String) serialized);
+            case ENUM:          return Enum.valueOf((Class<Enum>) rawType, (String) serialized);
         }
 
         //java containers
-        else if (type instanceof ArrayParameterType) {
-            return deserializeArray((List<?>) serialized, (ArrayParameterType) type, pluginClassLoader);
-        } else if (type instanceof ParameterizedParameterType && Collection.class.isAssignableFrom(type.getRawType())) {
-            return deserializeCollection((Collection<?>) serialized, (ParameterizedParameterType) type, pluginClassLoader);
-        } else if (type instanceof ParameterizedParameterType && Map.class.isAssignableFrom(type.getRawType())) {
-            return deserializeMap((Map<?, ?>) serialized, (ParameterizedParameterType) type, pluginClassLoader);
+        switch (deserializeStrategy(rawType, type)) {
+            case ARRAY:         return deserializeArray((List<?>) serialized, (ArrayParameterType) type, pluginClassLoader);
+            case COLLECTION:    return deserializeCollection((Collection<?>) serialized, (ParameterizedParameterType) type, pluginClassLoader);
+            case MAP:           return deserializeMap((Map<?, ?>) serialized, (ParameterizedParameterType) type, pluginClassLoader);
         }
 
         //scala built-ins (tuples are covered by Adapter)
-        else if (Option.isSerializedOption(serialized)) {
+        if (Option.isSerializedOption(serialized)) {
             return Option.deserialize(serialized, type, pluginClassLoader);
         } else if (Either.isSerializedEither(serialized)) {
             return Either.deserialize(serialized, type, pluginClassLoader);
@@ -400,6 +392,16 @@ public class RuntimeConversions {
         //TODO scala collections
         //TODO scala.math.BigInt, scala.math.BigDecimal
 
+        //only the slow fallbacks are recorded, like in serialize.
+        Object event = FlightRecording.beginConversion();
+        Object live = deserializeFallback(serialized, type, pluginClassLoader);
+        if (event != null) {
+            FlightRecording.endConversion(event, pluginName(pluginClassLoader), false, type.toString(), serialized, live);
+        }
+        return live;
+    }
+
+    private static Object deserializeFallback(Object serialized, ParameterType type, ScalaPluginClassLoader pluginClassLoader) {
         //check plugin registrations
         Registrations registrations = RuntimeConversions.registrations.get(pluginClassLoader);
         if (registrations != null) {
@@ -417,7 +419,7 @@ public class RuntimeConversions {
         }
 
         //if the type is not ConfigurationSerializable, warn the plugin author
-        if (!(serialized instanceof ConfigurationSerializable)) {
+        if (!(serialized instanceof ConfigurationSerializable) && pluginClassLoader != null) {
             //TODO do I really want to keep these error messages? right now I'm getting them in the scala3 example plugin for String and Object.
             //TODO the scala compiler has a habit of just emitting rawtypes, so this occurs rather often.
             //TODO but the types that I need are already handled correctly by SnakeYAML, so the warning is useless.
@@ -434,9 +436,8 @@ public class RuntimeConversions {
 
     private static Object deserializeArray(List<?> serialized, ArrayParameterType type, ScalaPluginClassLoader plugin) {
         ParameterType componentType = type.getComponentType();
-        Class<?> componentClass = Array.newInstance(componentType.getRawType(), 0).getClass();
 
-        Object array = Array.newInstance(componentClass, serialized.size());
+        Object array = Array.newInstance(componentType.getRawType(), serialized.size());
 
         for (int index = 0; index < serialized.size(); index++) {
             //Array#set unwraps the element if the array is of a primitive type. Thanks Java! :)
@@ -545,46 +546,184 @@ public class RuntimeConversions {
 
     // ======================================================
 
+    static SerializeStrategy serializeStrategy(Class<?> liveClass, ParameterType type) {
+        return SERIALIZE_STRATEGIES.get(liveClass)[Shape.of(type).ordinal()];
+    }
+
+    static DeserializeStrategy deserializeStrategy(Class<?> rawType, ParameterType type) {
+        return DESERIALIZE_STRATEGIES.get(rawType)[Shape.of(type).ordinal()];
+    }
+
+    //the kinds of ParameterType that the conversions distinguish between.
+    private enum Shape {
+        PLAIN, ARRAY, PARAMETERIZED, OTHER;
+
+        private static final Shape[] VALUES = values();
+
+        private static Shape of(ParameterType type) {
+            if (type.getClass() == ParameterType.class) return PLAIN;
+            else if (type instanceof ArrayParameterType) return ARRAY;
+            else if (type instanceof ParameterizedParameterType) return PARAMETERIZED;
+            else return OTHER;
+        }
+    }
+
+    //what serialize does after the raw type turned out not to be a built-in. CODEC means: use a codec of the plugin, or adapt the live value.
+    enum SerializeStrategy {
+        ARRAY, COLLECTION, MAP, RAW_COLLECTION, RAW_MAP, TUPLE, OPTION, EITHER, SCALA_MAP, CODEC;
+
+        private static SerializeStrategy of(Class<?> liveClass, LiveKind liveKind, Shape shape) {
+            boolean collection = Collection.class.isAssignableFrom(liveClass);
+            boolean map = Map.class.isAssignableFrom(liveClass);
+
+            if (shape == Shape.ARRAY) return ARRAY;
+            else if (shape == Shape.PARAMETERIZED && collection) return COLLECTION;
+            else if (shape == Shape.PARAMETERIZED && map) return MAP;
+            else if (shape == Shape.PLAIN && collection) return RAW_COLLECTION;
+            else if (shape == Shape.PLAIN && map) return RAW_MAP;
+
+            switch (liveKind) {
+                case TUPLE:     return TUPLE;
+                case OPTION:    return OPTION;
+                case EITHER:    return EITHER;
+                case SCALA_MAP: return SCALA_MAP;
+                default:        return CODEC;
+            }
+        }
+    }
+
+    //what deserialize does after the raw type turned out not to be a built-in. OTHER means: look at the serialized value.
+    enum DeserializeStrategy {
+        ARRAY, COLLECTION, MAP, OTHER;
+
+        private static DeserializeStrategy of(Class<?> rawType, Shape shape) {
+            if (shape == Shape.ARRAY) return ARRAY;
+            else if (shape == Shape.PARAMETERIZED && Collection.class.isAssignableFrom(rawType)) return COLLECTION;
+            else if (shape == Shape.PARAMETERIZED && Map.class.isAssignableFrom(rawType)) return MAP;
+            else return OTHER;
+        }
+    }
+
+    private enum RawTypeKind {
+        AS_IS, BYTE, SHORT, LONG, FLOAT, CHARACTER, VOID, UUID, BIG_INTEGER, BIG_DECIMAL, ENUM, OTHER;
+
+        private static RawTypeKind of(Class<?> rawType) {
+            if (ConfigurationSerializable.class.isAssignableFrom(rawType)
+                    || rawType == String.class
+                    || rawType == Integer.class || rawType == int.class
+                    || rawType == Double.class || rawType == double.class
+                    || rawType == Boolean.class || rawType == boolean.class) return AS_IS;
+            else if (rawType == Byte.class || rawType == byte.class) return BYTE;
+            else if (rawType == Short.class || rawType == short.class) return SHORT;
+            else if (rawType == Long.class || rawType == long.class) return LONG;
+            else if (rawType == Float.class || rawType == float.class) return FLOAT;
+            else if (rawType == Character.class || rawType == char.class) return CHARACTER;
+            else if (rawType == Void.class || rawType == void.class) return VOID;
+            else if (rawType == java.util.UUID.class) return UUID;
+            else if (rawType == BigInteger.class) return BIG_INTEGER;
+            else if (rawType == BigDecimal.class) return BIG_DECIMAL;
+            else if (rawType.isEnum()) return ENUM;
+            else return OTHER;
+        }
+    }
+
+    private enum LiveKind {
+        TUPLE, OPTION, EITHER, SCALA_MAP,
+        BYTE, SHORT, INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, CHARACTER, UUID, BIG_INTEGER, BIG_DECIMAL, ENUM, OTHER;
+
+        private static LiveKind of(Class<?> liveClass) {
+            //the scala types are recognised by name, so that the scala library does not need to be loaded to classify classes that are not scala types.
+            if (Tuple.isTupleClass(liveClass)) return TUPLE;
+            else if (isSubtypeOf(liveClass, "scala.Option")) return OPTION;
+            else if (isSubtypeOf(liveClass, "scala.util.Either")) return EITHER;
+            else if (isSubtypeOf(liveClass, "scala.collection.Map")) return SCALA_MAP;
+            else if (liveClass == Byte.class) return BYTE;
+            else if (liveClass == Short.class) return SHORT;
+            else if (liveClass == Integer.class) return INTEGER;
+            else if (liveClass == Long.class) return LONG;
+            else if (liveClass == Float.class) return FLOAT;
+            else if (liveClass == Double.class) return DOUBLE;
+            else if (liveClass == Boolean.class) return BOOLEAN;
+            else if (liveClass == Character.class) return CHARACTER;
+            else if (liveClass == java.util.UUID.class) return UUID;
+            else if (BigInteger.class.isAssignableFrom(liveClass)) return BIG_INTEGER;
+            else if (BigDecimal.class.isAssignableFrom(liveClass)) return BIG_DECIMAL;
+            else if (Enum.class.isAssignableFrom(liveClass)) return ENUM;
+            else return OTHER;
+        }
+
+        private static boolean isSubtypeOf(Class<?> clazz, String typeName) {
+            for (Class<?> superClass = clazz; superClass != null; superClass = superClass.getSuperclass()) {
+                if (typeName.equals(superClass.getName())) return true;
+                for (Class<?> superInterface : superClass.getInterfaces()) {
+                    if (isSubtypeOf(superInterface, typeName)) return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    //adapters that are shared by multiple plugins call RuntimeConversions without a plugin.
+    private static String pluginName(ScalaPluginClassLoader pluginClassLoader) {
+        return pluginClassLoader == null ? null : pluginClassLoader.getPlugin().getName();
+    }
+
     private static class Registrations {
         private final ScalaPluginClassLoader classLoader;
 
         private final Map<ParameterType, Codec<?, ?>> absoluteCodecs = new HashMap<>();
         private final Map<Predicate<? super ParameterType>, Function<? super ParameterType, ? extends Codec<?, ?>>> bestEffortCodecs = new LinkedHashMap<>();
+        //the codec that is used for a type is looked up once, until another codec is registered.
+        private final ConcurrentMap<ParameterType, Maybe<Codec<?, ?>>> resolvedCodecs = new ConcurrentHashMap<>();
 
         private Registrations(ScalaPluginClassLoader classLoader) {
             this.classLoader = classLoader;
         }
 
         private boolean register(ParameterType type, Codec<?, ?> codec) {
-            return absoluteCodecs.putIfAbsent(type, codec) == null;
+            boolean registered = absoluteCodecs.putIfAbsent(type, codec) == null;
+            if (registered) resolvedCodecs.clear();
+            return registered;
         }
 
         private boolean register(Predicate<? super ParameterType> type, Function<? super ParameterType, ? extends Codec<?, ?>> codecFactory) {
-            return bestEffortCodecs.putIfAbsent(type, codecFactory) == null;
+            boolean registered = bestEffortCodecs.putIfAbsent(type, codecFactory) == null;
+            if (registered) resolvedCodecs.clear();
+            return registered;
         }
 
-        private Maybe<Object> serialize(ParameterType parameterType, Object live) {
-            Codec codec = absoluteCodecs.get(parameterType);
-            if (codec != null) return Maybe.just(codec.serialize(live));
+        private Maybe<Codec<?, ?>> getCodec(ParameterType parameterType) {
+            Maybe<Codec<?, ?>> codec = resolvedCodecs.get(parameterType);
+            if (codec == null) {
+                codec = resolveCodec(parameterType);
+                resolvedCodecs.put(parameterType, codec);
+            }
+            return codec;
+        }
+
+        private Maybe<Codec<?, ?>> resolveCodec(ParameterType parameterType) {
+            Codec<?, ?> codec = absoluteCodecs.get(parameterType);
+            if (codec != null) return Maybe.just(codec);
 
             for (Map.Entry<Predicate<? super ParameterType>, Function<? super ParameterType, ? extends Codec<?, ?>>> entry : bestEffortCodecs.entrySet()) {
                 Predicate<? super ParameterType> predicate = entry.getKey();
-                Function<? super ParameterType, ? extends Codec> codecFactory = entry.getValue();
-                if (predicate.test(parameterType)) return Maybe.just(codecFactory.apply(parameterType).serialize(live));
+                Function<? super ParameterType, ? extends Codec<?, ?>> codecFactory = entry.getValue();
+                if (predicate.test(parameterType)) return Maybe.just(codecFactory.apply(parameterType));
             }
 
             return Maybe.nothing();
         }
 
-        private Maybe<Object> deserialize(ParameterType parameterType, Object serialized) {
-            Codec codec = absoluteCodecs.get(parameterType);
-            if (codec != null) return Maybe.just(codec.deserialize(serialized));
+        private Maybe<Object> serialize(ParameterType parameterType, Object live) {
+            Maybe<Codec<?, ?>> codec = getCodec(parameterType);
+            if (codec.isPresent()) return Maybe.just(((Codec) codec.get()).serialize(live));
 
-            for (Map.Entry<Predicate<? super ParameterType>, Function<? super ParameterType, ? extends Codec<?, ?>>> entry : bestEffortCodecs.entrySet()) {
-                Predicate<? super ParameterType> predicate = entry.getKey();
-                Function<? super ParameterType, ? extends Codec> codecFactory = entry.getValue();
-                if (predicate.test(parameterType)) return Maybe.just(codecFactory.apply(parameterType).deserialize(serialized));
-            }
+            return Maybe.nothing();
+        }
+
+        private Maybe<Object> deserialize(ParameterType parameterType, Object serialized) {
+            Maybe<Codec<?, ?>> codec = getCodec(parameterType);
+            if (codec.isPresent()) return Maybe.just(((Codec) codec.get()).deserialize(serialized));
 
             return Maybe.nothing();
         }
@@ -15,6 +15,18 @@ public abstract class Either<L, R> implements ConfigurationSerializable {
     private static final String LEFT = "scala.util.Left";
     private static final String RIGHT = "scala.util.Right";
 
+    //the value methods of Left and Right, per Scala standard library. Left and Right are final, so they are recognised by their name.
+    private static final ClassValue<Method> VALUE_METHODS = new ClassValue<Method>() {
+        @Override
+        protected Method computeValue(Class<?> leftOrRightClass) {
+            try {
+                return leftOrRightClass.getMethod("value");
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+
     Either() {}
 
     public static void registerWithConfigurationSerialization() {
@@ -32,29 +44,30 @@ public abstract class Either<L, R> implements ConfigurationSerializable {
     }
 
     public static ConfigurationSerializable serialize(Object scalaEither, ParameterType type, ScalaPluginClassLoader plugin) {
-        assert isEither(scalaEither, plugin) : "Not a " + EITHER;
+        assert plugin == null || isEither(scalaEither, plugin) : "Not a " + EITHER;
 
         final RuntimeException ex = new RuntimeException("Could not serialize either: " + scalaEither + ", of type: " + type);
 
         try {
-            Class<?> leftClass = Class.forName(LEFT, false, plugin);
-            if (leftClass.isInstance(scalaEither)) {
-                Method method = leftClass.getMethod("value");
+            Class<?> eitherClass = scalaEither.getClass();
+            if (LEFT.equals(eitherClass.getName())) {
+                Method method = VALUE_METHODS.get(eitherClass);
+                if (method == null) throw new NoSuchMethodException(LEFT + ".value()");
                 Object liveValue = method.invoke(scalaEither);
                 ParameterType elementType = type instanceof ParameterizedParameterType ? ((ParameterizedParameterType) type).getTypeParameter(0) : ParameterType.from(Object.class);
                 Object serializedValue = RuntimeConversions.serialize(liveValue, elementType, plugin);
                 return new Left(serializedValue);
             }
 
-            Class<?> rightClass = Class.forName(RIGHT, false, plugin);
-            if (rightClass.isInstance(scalaEither)) {
-                Method method = rightClass.getMethod("value");
+            if (RIGHT.equals(eitherClass.getName())) {
+                Method method = VALUE_METHODS.get(eitherClass);
+                if (method == null) throw new NoSuchMethodException(RIGHT + ".value()");
                 Object liveValue = method.invoke(scalaEither);
                 ParameterType elementType = type instanceof ParameterizedParameterType ? ((ParameterizedParameterType) type).getTypeParameter(1) : ParameterType.from(Object.class);
                 Object serializedValue = RuntimeConversions.serialize(liveValue, elementType, plugin);
                 return new Right(serializedValue);
             }
-        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             ex.addSuppressed(e);
         }
 
@@ -9,6 +9,7 @@ import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
 
 import org.objectweb.asm.*;
 import static org.objectweb.asm.Opcodes.*;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 
 import java.lang.reflect.Constructor;
@@ -46,7 +47,8 @@ public abstract class Enum<E extends java.lang.Enum<E>> implements Adapter<E> {
         String enumClassName = enumClazz.getName();
         String generatedClassName = PREFIX_USING_DOTS + enumClassName;
 
-        ClassDefineResult classDefineResult = classLoader.getOrDefineClass(generatedClassName, name -> make(name, enumClassName), true);
+        ClassDefineResult classDefineResult = classLoader.getOrDefineAdapterClass(AdapterDescription.of(generatedClassName, enumClazz),
+                (name, plugin) -> make(name, enumClassName));
         Class<? extends Enum> wrapperClazz = (Class<? extends Enum>) classDefineResult.getClassDefinition();
         if (classDefineResult.isNew()) {
             ConfigurationSerialization.registerClass(wrapperClazz, enumClassName);      //use the original enum class name as the alias
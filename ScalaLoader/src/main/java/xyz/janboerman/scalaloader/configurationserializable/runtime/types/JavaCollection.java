@@ -6,6 +6,7 @@ import xyz.janboerman.scalaloader.bytecode.OperandStack;
 import xyz.janboerman.scalaloader.configurationserializable.runtime.*;
 import static xyz.janboerman.scalaloader.configurationserializable.runtime.types.Types.*;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 
 import java.lang.reflect.Constructor;
@@ -36,9 +37,8 @@ public abstract class JavaCollection<T> implements Adapter<Collection<? extends
 
         if (live instanceof EnumSet) {
             //ForEnumSet
-            ClassDefineResult classDefineResult = plugin.getOrDefineClass(FOR_ENUMSET,
-                    name -> makeForEnumSet(name, elementType, plugin),
-                    true);
+            ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(AdapterDescription.of(FOR_ENUMSET, EnumSet.class, elementType),
+                    (name, adapterPlugin) -> makeForEnumSet(name, elementType, adapterPlugin));
             Class<? extends JavaCollection> ForEnumSetClass = (Class<? extends JavaCollection>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 ConfigurationSerialization.registerClass(ForEnumSetClass, FOR_ENUMSET_ALIAS);
@@ -59,9 +59,8 @@ public abstract class JavaCollection<T> implements Adapter<Collection<? extends
             if (ForGenericClass == null) {
                 final String className = FOR_GENERIC + "$" + collClass.getName();
                 final String alias = collClass.getName();
-                ClassDefineResult classDefineResult = plugin.getOrDefineClass(className,
-                        name -> makeForGeneric(alias, name, collClass, elementType, plugin),
-                        true);
+                ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(AdapterDescription.of(className, collClass, elementType),
+                        (name, adapterPlugin) -> makeForGeneric(alias, name, collClass, elementType, adapterPlugin));
                 ForGenericClass = (Class<? extends JavaCollection<?>>) classDefineResult.getClassDefinition();
                 if (classDefineResult.isNew()) {
                     ConfigurationSerialization.registerClass(ForGenericClass, alias);
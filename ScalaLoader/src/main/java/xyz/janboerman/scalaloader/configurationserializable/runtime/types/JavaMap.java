@@ -7,6 +7,7 @@ import xyz.janboerman.scalaloader.bytecode.OperandStack;
 import xyz.janboerman.scalaloader.configurationserializable.runtime.*;
 import static xyz.janboerman.scalaloader.configurationserializable.runtime.types.Types.*;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 
 import java.lang.reflect.Constructor;
@@ -48,9 +49,8 @@ public abstract class JavaMap<K, V> implements Adapter<Map<? extends K, ? extend
         if (ForGenericClass == null) {
             final String className = FOR_GENERIC + "$" + mapClass.getName();
             final String alias = mapClass.getName();
-            ClassDefineResult classDefineResult = plugin.getOrDefineClass(className,
-                    name -> makeForGeneric(alias, name, mapClass, keyType, valueType, plugin),
-                    true);
+            ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(AdapterDescription.of(className, mapClass, keyType, valueType),
+                    (name, adapterPlugin) -> makeForGeneric(alias, name, mapClass, keyType, valueType, adapterPlugin));
             ForGenericClass = (Class<? extends JavaMap<K, V>>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 ConfigurationSerialization.registerClass(ForGenericClass, alias);
@@ -412,4 +412,4 @@ final class MapAdapter<K, V> extends JavaMap<K, V> {
         return Objects.toString(getValue());
     }
 }
-*/
\ No newline at end of file
+*/
\ No newline at end of file
@@ -15,6 +15,18 @@ public abstract class Option<T> implements ConfigurationSerializable {
     private static final String SOME = "scala.Some";
     private static final String NONE = "scala.None$";
 
+    //the Some class and its get method, per Scala standard library. Some and None$ are final, so they are recognised by their name.
+    private static final ClassValue<Method> SOME_GET = new ClassValue<Method>() {
+        @Override
+        protected Method computeValue(Class<?> someClass) {
+            try {
+                return someClass.getMethod("get");
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+
     Option() {}
 
     public static void registerWithConfigurationSerialization() {
@@ -32,25 +44,25 @@ public abstract class Option<T> implements ConfigurationSerializable {
     }
 
     public static ConfigurationSerializable serialize(Object scalaOption, ParameterType type, ScalaPluginClassLoader plugin) {
-        assert isOption(scalaOption, plugin) : "Not a " + OPTION;
+        assert plugin == null || isOption(scalaOption, plugin) : "Not a " + OPTION;
 
         final RuntimeException ex = new RuntimeException("Could not serialize option: " + scalaOption + ", of type: " + type);
 
         try {
-            Class<?> someClass = Class.forName(SOME, false, plugin);
-            if (someClass.isInstance(scalaOption)) {
-                Method get = someClass.getMethod("get");
+            Class<?> optionClass = scalaOption.getClass();
+            if (SOME.equals(optionClass.getName())) {
+                Method get = SOME_GET.get(optionClass);
+                if (get == null) throw new NoSuchMethodException(SOME + ".get()");
                 Object containedValue = get.invoke(scalaOption);
                 ParameterType containedValueType = type instanceof ParameterizedParameterType ? ((ParameterizedParameterType) type).getTypeParameter(0) : ParameterType.from(Object.class);
                 Object serializedValue = RuntimeConversions.serialize(containedValue, containedValueType, plugin);
                 return new Some(serializedValue);
             }
 
-            Class<?> noneClass = Class.forName(NONE, false, plugin);
-            if (noneClass.isInstance(scalaOption)) {
+            if (NONE.equals(optionClass.getName())) {
                 return None.INSTANCE;
             }
-        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             ex.addSuppressed(e);
         }
 
@@ -10,6 +10,7 @@ import xyz.janboerman.scalaloader.compat.Compat;
 import xyz.janboerman.scalaloader.configurationserializable.runtime.*;
 import static xyz.janboerman.scalaloader.configurationserializable.runtime.types.Types.*;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 
 import java.util.OptionalInt;
@@ -71,14 +72,14 @@ public abstract class ScalaMap implements Adapter/*<scala.collection.Map>*/ {
         final Class<?> ourMapClass = live.getClass();
         final String alias = ourMapClass.getName();
         final String generatedClassName = PREFIX_USING_DOTS + "ScalaMap$" + alias;
+        final AdapterDescription adapterDescription = AdapterDescription.of(generatedClassName, ourMapClass, keyType, valueType);
 
         final OptionalInt isMapN = IntStream.rangeClosed(1, 4).filter(N -> isMapN(alias, N)).findAny();
         if (isMapN.isPresent()) {
             final int N = isMapN.getAsInt();
 
-            ClassDefineResult classDefineResult = plugin.getOrDefineClass(generatedClassName,
-                    name -> makeMapN(N, generatedClassName, ourMapClass, alias, keyType, valueType, plugin),
-                    true);
+            ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(adapterDescription,
+                    (name, adapterPlugin) -> makeMapN(N, name, ourMapClass, alias, keyType, valueType, adapterPlugin));
             Class<? extends ScalaMap> wrapperClass = (Class<? extends ScalaMap>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 ConfigurationSerialization.registerClass(wrapperClass, alias);
@@ -96,9 +97,8 @@ public abstract class ScalaMap implements Adapter/*<scala.collection.Map>*/ {
         //TODO because only then we could generate a meaningful Ordering instance.
 
         else if (isImmutableMap(live, plugin)) {
-            ClassDefineResult classDefineResult = plugin.getOrDefineClass(generatedClassName,
-                    name -> makeImmutableMap(generatedClassName, ourMapClass, alias, keyType, valueType, plugin),
-                    true);
+            ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(adapterDescription,
+                    (name, adapterPlugin) -> makeImmutableMap(name, ourMapClass, alias, keyType, valueType, adapterPlugin));
             Class<? extends ScalaMap> wrapperClass = (Class<? extends ScalaMap>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 ConfigurationSerialization.registerClass(wrapperClass, alias);
@@ -113,9 +113,8 @@ public abstract class ScalaMap implements Adapter/*<scala.collection.Map>*/ {
         }
 
         else if (isMutableMap(live, plugin)) {
-            ClassDefineResult classDefineResult = plugin.getOrDefineClass(generatedClassName,
-                    name -> makeMutableMap(generatedClassName, ourMapClass, alias, keyType, valueType, plugin),
-                    true);
+            ClassDefineResult classDefineResult = plugin.getOrDefineAdapterClass(adapterDescription,
+                    (name, adapterPlugin) -> makeMutableMap(name, ourMapClass, alias, keyType, valueType, adapterPlugin));
             Class<? extends ScalaMap> wrapperClass = (Class<? extends ScalaMap>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 ConfigurationSerialization.registerClass(wrapperClass, alias);
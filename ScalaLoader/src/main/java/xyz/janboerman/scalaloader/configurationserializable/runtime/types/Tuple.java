@@ -6,11 +6,11 @@ import xyz.janboerman.scalaloader.compat.Compat;
 import xyz.janboerman.scalaloader.configurationserializable.runtime.*;
 import static xyz.janboerman.scalaloader.configurationserializable.runtime.types.Types.*;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 
 import java.lang.reflect.Constructor;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import org.objectweb.asm.*;
 import static org.objectweb.asm.Opcodes.*;
@@ -24,16 +24,11 @@ public class Tuple {
     public static boolean isTuple(Object live) {
         if (live == null) return false;
 
-        String rawTypeName = live.getClass().getName();
-
-        for (int arity = 1; arity <= 22; arity++)
-            if (("scala.Tuple" + arity).equals(rawTypeName))
-                return true;
-
-        if (TUPLE_XXL.equals(rawTypeName))
-            return true;
+        return isTupleClass(live.getClass());
+    }
 
-        return false;
+    public static boolean isTupleClass(Class<?> clazz) {
+        return getArity(clazz) != 0;
     }
 
     private static int getArity(Class<?> scalaTupleClass) {
@@ -75,17 +70,14 @@ public class Tuple {
                 ParameterizedParameterType ppt = (ParameterizedParameterType) type;
                 tupleTypeArguments = ppt.getTypeParameters();
             } else {
-                tupleTypeArguments = java.util.stream.Stream.generate(() -> ParameterType.from(Object.class))
-                        .limit(arity)
-                        .collect(Collectors.toList());
+                tupleTypeArguments = Collections.nCopies(arity, ParameterType.from(Object.class));
             }
 
             String serializedClassName = "scala.Tuple" + arity;
             String generatedClassName = PREFIX_USING_DOTS + serializedClassName;
 
-            ClassDefineResult classDefineResult = pluginClassLoader.getOrDefineClass(generatedClassName,
-                    className -> makeTupleN(className, tupleTypeArguments, pluginClassLoader),
-                    true);
+            ClassDefineResult classDefineResult = pluginClassLoader.getOrDefineAdapterClass(AdapterDescription.of(generatedClassName, scalaTuple.getClass(), tupleTypeArguments),
+                    (className, plugin) -> makeTupleN(className, tupleTypeArguments, plugin));
             Class<? extends ConfigurationSerializable> wrapperClazz = (Class<? extends ConfigurationSerializable>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 //put plugin name in the name of the generated class? to workaround a design flaw in bukkit?
@@ -104,9 +96,9 @@ public class Tuple {
             String serializedClassName = TUPLE_XXL;
             String generatedClassName = PREFIX_USING_DOTS + serializedClassName;
 
-            ClassDefineResult classDefineResult = pluginClassLoader.getOrDefineClass(generatedClassName,
-                    className -> makeTupleXXL(className, pluginClassLoader),
-                    true);
+            //the elements of a TupleXXL are serialized as java.lang.Object, so this adapter is never shared.
+            ClassDefineResult classDefineResult = pluginClassLoader.getOrDefineAdapterClass(AdapterDescription.of(generatedClassName, scalaTuple.getClass(), ParameterType.from(Object.class)),
+                    (className, plugin) -> makeTupleXXL(className, plugin));
             Class<? extends ConfigurationSerializable> wrapperClazz = (Class<? extends ConfigurationSerializable>) classDefineResult.getClassDefinition();
             if (classDefineResult.isNew()) {
                 //put plugin name in the name of the generated class? to work around a design flaw in bukkit?
@@ -21,6 +21,13 @@ class Types {
 
     //adapted from Conversions#genScalaPluginClassLoader
     static void genScalaPluginClassLoader(MethodVisitor methodVisitor, ScalaPluginClassLoader plugin, OperandStack operandStack) {
+        if (plugin == null) {
+            //the adapter is shared by multiple plugins, RuntimeConversions does not need a plugin for its element types.
+            methodVisitor.visitInsn(ACONST_NULL);
+            operandStack.push(Type.getType(ScalaPluginClassLoader.class));
+            return;
+        }
+
         String main = plugin.getMainClassName();
         Type mainType = Type.getType("L" + main.replace('.', '/') + ";");
 
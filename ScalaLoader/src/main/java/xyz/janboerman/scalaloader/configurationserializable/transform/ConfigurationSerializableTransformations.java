@@ -125,15 +125,43 @@ public class ConfigurationSerializableTransformations {
             }
         };
 
-        ClassVisitor combinedTransformer = classWriter;
-        if (localResult.annotatedByDelegateSerialization)
-            combinedTransformer = new DelegateTransformer(combinedTransformer, localResult);
-        if (localResult.annotatedByConfigurationSerializable)
-            combinedTransformer = new SerializableTransformer(combinedTransformer, localResult, pluginClassLoader);
+        ClassVisitor combinedTransformer = transformer(localResult, classWriter, pluginClassLoader);
 
         new ClassReader(clazz).accept(combinedTransformer, 0);
 
         return classWriter.toByteArray();
     }
 
+    /**
+     * Creates a scanner that collects the information needed by {@link #transformer(LocalScanner, ClassVisitor, ScalaPluginClassLoader)}.
+     * The scanner does not forward what it visits, so it must be the last visitor in the chain.
+     *
+     * @return the scanner
+     */
+    public static LocalScanner scanner() {
+        return new LocalScanner();
+    }
+
+    /**
+     * Creates the visitor that generates the serialization and deserialization methods for the scanned class.
+     *
+     * @param scanner a scanner that has visited the class already
+     * @param delegate the next visitor in the chain
+     * @param pluginClassLoader the classloader of the plugin that the class belongs to
+     * @return the transforming visitor, or the delegate if the class is not annotated by {@link ConfigurationSerializable} or {@link DelegateSerialization}
+     * @throws ConfigurationSerializableError if the scanned class is not a valid ConfigurationSerializable class
+     */
+    public static ClassVisitor transformer(LocalScanner scanner, ClassVisitor delegate, ScalaPluginClassLoader pluginClassLoader) throws ConfigurationSerializableError {
+        return transformer(scanner.getResult(), delegate, pluginClassLoader);
+    }
+
+    private static ClassVisitor transformer(LocalScanResult localResult, ClassVisitor delegate, ScalaPluginClassLoader pluginClassLoader) {
+        ClassVisitor combinedTransformer = delegate;
+        if (localResult.annotatedByDelegateSerialization)
+            combinedTransformer = new DelegateTransformer(combinedTransformer, localResult);
+        if (localResult.annotatedByConfigurationSerializable)
+            combinedTransformer = new SerializableTransformer(combinedTransformer, localResult, pluginClassLoader);
+        return combinedTransformer;
+    }
+
 }
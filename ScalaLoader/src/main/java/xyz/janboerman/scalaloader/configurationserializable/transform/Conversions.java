@@ -12,6 +12,7 @@ import xyz.janboerman.scalaloader.configurationserializable.runtime.types.Numeri
 import static xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableTransformations.*;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
 import xyz.janboerman.scalaloader.util.Pair;
+import xyz.janboerman.scalaloader.util.TransformDependencies;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -1137,11 +1138,14 @@ class Conversions {
         //fallback - try to classload the collection class and check whether it is assignable to java.util.Collection.
         if (knownCollectionClasses == null) knownCollectionClasses = new HashMap<>();
         final Pair<String, ClassLoader> pair = new Pair<>(typeName, pluginClassLoader);
-        if (knownCollectionClasses.containsKey(pair)) return true;
-
         String jvmClassName = typeName.replace('/', '.');
+        if (knownCollectionClasses.containsKey(pair)) {
+            TransformDependencies.record(jvmClassName);
+            return true;
+        }
+
         try {
-            Class<?> clazz = Class.forName(jvmClassName, false, pluginClassLoader);
+            Class<?> clazz = TransformDependencies.forName(jvmClassName, pluginClassLoader);
             if (Collection.class.isAssignableFrom(clazz)) {
                 knownCollectionClasses.put(pair, clazz);
                 return true;
@@ -1188,11 +1192,14 @@ class Conversions {
         //fallback, try to classload the map class and check whether it is assignable to java.util.Map.
         if (knownMapClasses == null) knownMapClasses = new HashMap<>();
         final Pair<String, ClassLoader> pair = new Pair<>(typeName, pluginClassLoader);
-        if (knownMapClasses.containsKey(pair)) return true;
-
         String jvmClassName = typeName.replace('/', '.');
+        if (knownMapClasses.containsKey(pair)) {
+            TransformDependencies.record(jvmClassName);
+            return true;
+        }
+
         try {
-            Class<?> clazz = Class.forName(jvmClassName, false, pluginClassLoader);
+            Class<?> clazz = TransformDependencies.forName(jvmClassName, pluginClassLoader);
             if (Map.class.isAssignableFrom(clazz)) {
                 knownMapClasses.put(pair, clazz);
                 return true;
@@ -1421,7 +1428,7 @@ class ScalaConversions {
 
         //not one of the built-ins: try to class-load
         try {
-            Class<?> daClass = Class.forName(typeName.replace('/', '.'), false, pluginClassLoader);
+            Class<?> daClass = TransformDependencies.forName(typeName.replace('/', '.'), pluginClassLoader);
             Class<?> seqClass = Class.forName("scala.collection.Seq", false, pluginClassLoader);
             Class<?> setClass = Class.forName("scala.collection.Set", false, pluginClassLoader);
             //both immutable.Seq and mutable.Seq inherit from collection.Seq, and similar for Set.
@@ -1482,7 +1489,7 @@ class ScalaConversions {
 
         //try to class-load
         try {
-            Class<?> daClass = Class.forName(typeName.replace('/', '.'), false, pluginClassLoader);
+            Class<?> daClass = TransformDependencies.forName(typeName.replace('/', '.'), pluginClassLoader);
             Class<?> mapClass = Class.forName("scala.collection.Map", false, pluginClassLoader);
             //both immutable.Map and mutable.Map inherit from collection.Map.
             if (mapClass.isAssignableFrom(daClass)) {
@@ -2075,4 +2082,4 @@ class ScalaConversions {
     }
 
 
-}
\ No newline at end of file
+}
\ No newline at end of file
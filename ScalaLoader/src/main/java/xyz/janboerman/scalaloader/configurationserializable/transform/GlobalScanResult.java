@@ -4,7 +4,12 @@ import org.objectweb.asm.Type;
 import xyz.janboerman.scalaloader.configurationserializable.InjectionPoint;
 import xyz.janboerman.scalaloader.configurationserializable.Scan;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * This class is NOT part of the public API!
@@ -22,4 +27,54 @@ public class GlobalScanResult {
 
     Set<Type> sumAlternatives;
 
+    /**
+     * Tests whether this scan result causes {@link PluginTransformer#addTo} or {@link AddVariantTransformer#addTo} to register transformers.
+     * @return true if transformers will be registered, otherwise false
+     */
+    public boolean registersTransformers() {
+        return annotatedByConfigurationSerializable || annotatedByDelegateSerialization || sumAlternatives != null;
+    }
+
+    /**
+     * Converts this scan result to plain data, so that it can be cached.
+     * @return the data
+     * @see #deserialize(Map)
+     */
+    public Map<String, Object> serialize() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("class-name", className);
+        map.put("interface", isInterface);
+        map.put("delegate-serialization", annotatedByDelegateSerialization);
+        map.put("configuration-serializable", annotatedByConfigurationSerializable);
+        if (registerAt != null) map.put("register-at", registerAt.name());
+        if (scanType != null) map.put("scan-type", scanType.name());
+        if (sumAlternatives != null) map.put("sum-alternatives", sumAlternatives.stream().map(Type::getDescriptor).collect(Collectors.toList()));
+        return map;
+    }
+
+    /**
+     * Recreates a scan result from data produced by {@link #serialize()}.
+     * @param map the data
+     * @return the scan result
+     */
+    public static GlobalScanResult deserialize(Map<String, Object> map) {
+        GlobalScanResult result = new GlobalScanResult();
+        result.className = (String) map.get("class-name");
+        result.isInterface = Boolean.TRUE.equals(map.get("interface"));
+        result.annotatedByDelegateSerialization = Boolean.TRUE.equals(map.get("delegate-serialization"));
+        result.annotatedByConfigurationSerializable = Boolean.TRUE.equals(map.get("configuration-serializable"));
+        Object registerAt = map.get("register-at");
+        if (registerAt != null) result.registerAt = InjectionPoint.valueOf(registerAt.toString());
+        Object scanType = map.get("scan-type");
+        if (scanType != null) result.scanType = Scan.Type.valueOf(scanType.toString());
+        Object sumAlternatives = map.get("sum-alternatives");
+        if (sumAlternatives != null) {
+            result.sumAlternatives = new LinkedHashSet<>();
+            for (Object descriptor : (List<?>) sumAlternatives) {
+                result.sumAlternatives.add(Type.getType(descriptor.toString()));
+            }
+        }
+        return result;
+    }
+
 }
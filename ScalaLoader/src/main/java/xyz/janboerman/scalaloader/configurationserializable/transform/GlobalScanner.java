@@ -34,6 +34,10 @@ public class GlobalScanner extends ClassVisitor {
         return result;
     }
 
+    public GlobalScanResult scan(byte[] classBytes) {
+        return scan(new ClassReader(classBytes));
+    }
+
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         result.className = name;
@@ -18,7 +18,7 @@ import static xyz.janboerman.scalaloader.configurationserializable.transform.Con
 /**
  * This class is NOT part of the public API!
  */
-class LocalScanner extends ClassVisitor {
+public class LocalScanner extends ClassVisitor {
 
     private final LocalScanResult result = new LocalScanResult();
 
@@ -43,6 +43,10 @@ class LocalScanner extends ClassVisitor {
     LocalScanResult scan(ClassReader classReader) throws ConfigurationSerializableError {
         classReader.accept(this, 0);
 
+        return getResult();
+    }
+
+    LocalScanResult getResult() throws ConfigurationSerializableError {
         if (result.annotatedByConfigurationSerializable && result.annotatedByDelegateSerialization) {
             throw new ConfigurationSerializableError(className.replace('/', '.') + " is annotated by both @ConfigurationSerializable and @DelegateSerialization");
         }
@@ -1,10 +1,16 @@
 package xyz.janboerman.scalaloader.dependency;
 
+import org.bukkit.Server;
 import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
 import xyz.janboerman.scalaloader.util.ClassLoaderUtils;
 import xyz.janboerman.scalaloader.bytecode.TransformerRegistry;
 import xyz.janboerman.scalaloader.compat.Compat;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.description.ApiVersion;
+import xyz.janboerman.scalaloader.util.ClassLookupResult;
+import xyz.janboerman.scalaloader.util.ClassNameIndex;
+import xyz.janboerman.scalaloader.util.StartupTimings;
+import xyz.janboerman.scalaloader.util.TransformedClassCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,6 +20,10 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.CodeSigner;
 import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -36,20 +46,111 @@ public class LibraryClassLoader extends URLClassLoader {
     private final ConcurrentHashMap<String, Class<?>> classes = new ConcurrentHashMap<>();
     private final File[] jarFiles;
     private final Logger logger;
-    private final ScalaPluginClassLoader plugin;
+    private final ScalaPluginClassLoader plugin;     //null if the libraries are shared by multiple plugins
+    private final StartupTimings startupTimings;    //null if the libraries are shared by multiple plugins, or if no timings are recorded
+    private final Server server;
+    private final ApiVersion apiVersion;
     private final TransformerRegistry transformerRegistry;
+    private final TransformedClassCache.Scope[] transformedClassCaches;
+    private final URL[] jarUrls;
+    private final JarFile[] openJarFiles;
+    private final Map<String, LibraryEntry> entries;    //effectively immutable after construction
+    private final ClassNameIndex classNameIndex;
+    private volatile boolean urlsAdded;
 
     public LibraryClassLoader(File[] jarFiles, ScalaLibraryClassLoader parent, Logger logger, ScalaPluginClassLoader plugin, TransformerRegistry transformerRegistry) {
+        this(jarFiles, parent, logger, plugin, transformerRegistry, null, null);
+    }
+
+    /**
+     * Construct a LibraryClassLoader that caches the transformed classes of the libraries.
+     *
+     * @param jarFiles the library jar files
+     * @param parent the parent classloader
+     * @param logger the logger used to report errors
+     * @param plugin the classloader of the plugin that uses the libraries
+     * @param transformerRegistry the transformers that were registered by the plugin
+     * @param transformedClassCache the cache of transformed classes of the plugin (of which the key includes the hashes of the library jars), or null
+     * @param startupTimings the timings of the plugin, to which the time spent transforming the library classes is attributed, or null
+     */
+    public LibraryClassLoader(File[] jarFiles, ScalaLibraryClassLoader parent, Logger logger, ScalaPluginClassLoader plugin, TransformerRegistry transformerRegistry, TransformedClassCache.Scope transformedClassCache, StartupTimings startupTimings) {
+        this(jarFiles, parent, logger, plugin, plugin.getServer(), plugin.getApiVersion(), transformerRegistry, transformedClassCache, startupTimings);
+    }
+
+    /**
+     * Construct a LibraryClassLoader of which the classes are shared by multiple plugins.
+     * The classes are transformed without any plugin, see {@link ClassLoaderUtils#transformSharedLibraryClass(String, byte[], ClassLoader, Server, ApiVersion, Logger, TransformedClassCache.Scope)}.
+     *
+     * @param jarFiles the library jar files
+     * @param parent the parent classloader
+     * @param logger the logger used to report errors
+     * @param server the server
+     * @param apiVersion bukkit's api version that's used by the plugins that share the libraries
+     * @param transformedClassCache the cache of transformed classes (of which the key includes the hashes of the library jars), or null
+     */
+    public LibraryClassLoader(File[] jarFiles, ScalaLibraryClassLoader parent, Logger logger, Server server, ApiVersion apiVersion, TransformedClassCache.Scope transformedClassCache) {
+        this(jarFiles, parent, logger, null, server, apiVersion, new TransformerRegistry(), transformedClassCache, null);
+    }
+
+    private LibraryClassLoader(File[] jarFiles, ScalaLibraryClassLoader parent, Logger logger, ScalaPluginClassLoader plugin, Server server, ApiVersion apiVersion, TransformerRegistry transformerRegistry, TransformedClassCache.Scope transformedClassCache, StartupTimings startupTimings) {
         super(urls(jarFiles), parent);
         this.jarFiles = jarFiles;
+        this.jarUrls = urls(jarFiles);
         this.logger = logger;
         this.plugin = plugin;
+        this.startupTimings = startupTimings;
+        this.server = server;
+        this.apiVersion = apiVersion;
         this.transformerRegistry = transformerRegistry;
+        this.transformedClassCaches = new TransformedClassCache.Scope[jarFiles.length];
+        if (transformedClassCache != null) {
+            for (int i = 0; i < jarFiles.length; i++) {
+                transformedClassCaches[i] = transformedClassCache.scope(jarFiles[i].getName());
+            }
+        }
+
+        //open the jars once, and index the classes of all jars so that a lookup does not need to search through the jars one by one.
+        //if multiple jars contain the same class, the first jar wins, just like the order of the urls.
+        this.openJarFiles = new JarFile[jarFiles.length];
+        this.entries = new HashMap<>();
+        List<String> allClassNames = new ArrayList<>();
+        for (int i = 0; i < jarFiles.length; i++) {
+            File file = jarFiles[i];
+            try {
+                JarFile jarFile = Compat.jarFile(file);
+                openJarFiles[i] = jarFile;
+                //the code signers of a class in a signed jar are only known once its entry is read, so those classes are not taken from the cache.
+                if (ClassLoaderUtils.isSigned(jarFile)) transformedClassCaches[i] = null;
+                for (String internalName : ClassNameIndex.of(jarFile).getClassNames()) {
+                    String className = internalName.replace('/', '.');
+                    if (entries.containsKey(className)) continue;
+
+                    //if running on Java 9 or higher, this will find the class meant for the newest compatible release of Java.
+                    JarEntry jarEntry = jarFile.getJarEntry(internalName + ".class");
+                    if (jarEntry != null) {
+                        entries.put(className, new LibraryEntry(i, jarEntry));
+                        allClassNames.add(internalName);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "File " + file + ", is not a valid jar file", e);
+            }
+        }
+        this.classNameIndex = ClassNameIndex.of(allClassNames);
+    }
+
+    /**
+     * Get the classes of the library jars. Classes from urls added using {@link #addURL(URL)} are not included.
+     * @return the index of the classes
+     */
+    public ClassNameIndex getClassNameIndex() {
+        return classNameIndex;
     }
 
     @Override
     public void addURL(URL url) {
         super.addURL(url);
+        urlsAdded = true;
     }
 
     /*
@@ -62,69 +163,141 @@ public class LibraryClassLoader extends URLClassLoader {
      */
     @Override
     public Class<?> findClass(String name) throws ClassNotFoundException {
+        ClassLookupResult lookupResult = lookupClass(name);
+        if (lookupResult.isFound()) return lookupResult.getClassDefinition();
+
+        throw lookupResult.toException(name);
+    }
+
+    /**
+     * Finds a class in the library jars, without throwing an exception when the class can't be found.
+     *
+     * @param name the name of the class
+     * @return the result of the lookup
+     * @see #findClass(String)
+     */
+    public ClassLookupResult lookupClass(String name) {
         //search in cache
         Class<?> found = classes.get(name);
-        if (found != null) return found;
+        if (found != null) return ClassLookupResult.found(found);
 
         //search in jars
-        String path = name.replace('.', '/') + ".class";
-        for (File file : jarFiles) {
-            try {
-                JarFile jarFile = Compat.jarFile(file);
-                JarEntry jarEntry = jarFile.getJarEntry(path);
-
-                if (jarEntry != null) {
-                    try (InputStream inputStream = jarFile.getInputStream(jarEntry)) {
-                        byte[] classBytes = Compat.readAllBytes(inputStream);
-                        URL url = file.toURI().toURL();
-
-                        //transform the bytecode
-                        classBytes = ClassLoaderUtils.transform(name, classBytes, this, transformerRegistry, plugin, logger);
-
-                        //define the package
-                        int dotIndex = name.lastIndexOf('.');
-                        if (dotIndex != -1) {
-                            String packageName = name.substring(0, dotIndex);
-                            if (getPackage(packageName) == null) {
-                                try {
-                                    Manifest manifest = jarFile.getManifest();
-                                    if (manifest != null) {
-                                        definePackage(packageName, manifest, url);
-                                    } else {
-                                        definePackage(packageName, null, null, null, null, null, null, null);
-                                    }
-                                } catch (IllegalArgumentException e) {
-                                    if (getPackage(packageName) == null) {
-                                        throw new IllegalStateException("Cannot find package " + packageName);
-                                    }
-                                }
-                            }
-                        }
+        LibraryEntry libraryEntry = entries.get(name);
+        if (libraryEntry != null) {
+            //the ScalaPluginClassLoaders call this method directly rather than through loadClass, so we need to take the class loading lock ourselves.
+            synchronized (getClassLoadingLock(name)) {
+                found = classes.get(name);
+                if (found != null) return ClassLookupResult.found(found);
 
-                        //define the class
-                        CodeSigner[] codeSigners = jarEntry.getCodeSigners();
-                        CodeSource codeSource = new CodeSource(url, codeSigners);
-                        found = defineClass(name, classBytes, 0, classBytes.length, codeSource);
+                return defineLibraryClass(name, libraryEntry);
+            }
+        }
 
-                        //cache the class, possibly racing against other threads
-                        Class<?> newClass = found;
-                        return classes.computeIfAbsent(name, k -> newClass);
+        //dive in our own jars again, because the class that we are looking for might have become available
+        //because somebody possibly called #addURL(URL).
+        //see: https://hub.spigotmc.org/jira/browse/SPIGOT-3723
+        if (urlsAdded) {
+            synchronized (getClassLoadingLock(name)) {
+                found = classes.get(name);
+                if (found != null) return ClassLookupResult.found(found);
+
+                try {
+                    Class<?> newClass = super.findClass(name);
+                    classes.put(name, newClass);
+                    return ClassLookupResult.found(newClass);
+                } catch (ClassNotFoundException ignored) {}
+            }
+        }
+
+        return ClassLookupResult.notFound();
+    }
+
+    //must be called while holding the class loading lock for the class name.
+    private ClassLookupResult defineLibraryClass(String name, LibraryEntry libraryEntry) {
+        int i = libraryEntry.jarIndex;
+        JarFile jarFile = openJarFiles[i];
+        JarEntry jarEntry = libraryEntry.jarEntry;
+        URL url = jarUrls[i];
+
+        try {
+            //classes that were transformed before don't need to be read from the jar at all.
+            byte[] classBytes = plugin != null
+                    ? ClassLoaderUtils.getCachedTransformation(name, plugin, startupTimings, transformedClassCaches[i])
+                    : ClassLoaderUtils.getCachedSharedLibraryTransformation(name, this, transformedClassCaches[i]);
+            if (classBytes == null) {
+                try (InputStream inputStream = jarFile.getInputStream(jarEntry)) {
+                    classBytes = Compat.readAllBytes(inputStream);
+                }
+
+                //transform the bytecode
+                classBytes = plugin != null
+                        ? ClassLoaderUtils.transform(name, classBytes, this, transformerRegistry, plugin, logger, null, transformedClassCaches[i], startupTimings)
+                        : ClassLoaderUtils.transformSharedLibraryClass(name, classBytes, this, server, apiVersion, logger, transformedClassCaches[i]);
+            }
+
+            //define the package
+            int dotIndex = name.lastIndexOf('.');
+            if (dotIndex != -1) {
+                String packageName = name.substring(0, dotIndex);
+                if (getPackage(packageName) == null) {
+                    try {
+                        Manifest manifest = jarFile.getManifest();
+                        if (manifest != null) {
+                            definePackage(packageName, manifest, url);
+                        } else {
+                            definePackage(packageName, null, null, null, null, null, null, null);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        if (getPackage(packageName) == null) {
+                            throw new IllegalStateException("Cannot find package " + packageName);
+                        }
                     }
                 }
+            }
+
+            //define the class
+            CodeSigner[] codeSigners = jarEntry.getCodeSigners();
+            CodeSource codeSource = new CodeSource(url, codeSigners);
+            Class<?> found = defineClass(name, classBytes, 0, classBytes.length, codeSource);
 
+            //cache the class
+            classes.put(name, found);
+            return ClassLookupResult.found(found);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read class " + name + " from " + jarFiles[i], e);
+            return ClassLookupResult.failed(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        try {
+            super.close();
+        } catch (IOException e) {
+            exception = e;
+        }
+
+        for (JarFile jarFile : openJarFiles) {
+            if (jarFile == null) continue;
+            try {
+                jarFile.close();
             } catch (IOException e) {
-                logger.log(Level.SEVERE, "File " + file + ", is not a valid jar file", e);
+                if (exception == null) exception = e; else exception.addSuppressed(e);
             }
         }
 
-        //dive in our own jars again, because the class that we are looking for might have become available
-        //because somebody possibly called #addURL(URL).
-        //see: https://hub.spigotmc.org/jira/browse/SPIGOT-3723
-        try {
-            super.findClass(name);
-        } catch (ClassNotFoundException ignored) {}
+        if (exception != null) throw exception;
+    }
 
-        throw new ClassNotFoundException(name);
+    private static final class LibraryEntry {
+        private final int jarIndex;
+        private final JarEntry jarEntry;
+
+        private LibraryEntry(int jarIndex, JarEntry jarEntry) {
+            this.jarIndex = jarIndex;
+            this.jarEntry = jarEntry;
+        }
     }
 
     private static URL[] urls(File[] files) {
@@ -1,6 +1,13 @@
 package xyz.janboerman.scalaloader.dependency;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.logging.*;
 
@@ -15,12 +22,14 @@ import org.eclipse.aether.spi.connector.*;
 import org.eclipse.aether.spi.connector.transport.*;
 import org.eclipse.aether.transfer.*;
 import org.eclipse.aether.transport.http.*;
-//import org.eclipse.aether.transport.file.*;
+import org.eclipse.aether.transport.file.*;
 import org.eclipse.aether.impl.*;
 import org.eclipse.aether.graph.*;
+import org.yaml.snakeyaml.Yaml;
 
 import xyz.janboerman.scalaloader.compat.Compat;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginLoaderException;
+import xyz.janboerman.scalaloader.util.Hashing;
 
 /* Re-Implementation of:
  * https://hub.spigotmc.org/stash/projects/SPIGOT/repos/bukkit/commits/146a7e4bd764990c56bb326643e92eb69f24d27e#src/main/java/org/bukkit/plugin/java/LibraryLoader.java
@@ -30,26 +39,48 @@ import xyz.janboerman.scalaloader.plugin.ScalaPluginLoaderException;
  * This class is NOT part of the public API!
  * <br>
  * But it implements loading of libraries that are defined in the plugin.yml.
- * Libraries can be downloaded from <a href="https://repo.maven.apache.org/maven2/">Maven Central</a> or <a href="https://repo.codemc.org/repository/maven-public/">CodeMC</a>.
+ * Libraries can be downloaded from <a href="https://repo.maven.apache.org/maven2/">Maven Central</a> (or a mirror of it) or <a href="https://repo.codemc.org/repository/maven-public/">CodeMC</a>.
+ * <p>
+ * The resolved libraries of every plugin are recorded in a lockfile, together with the SHA-256 hashes of their jar files and the urls of the repositories they were resolved from.
+ * As long as the libraries in the plugin.yml and the repositories stay the same and the jar files still match their hashes,
+ * the libraries are loaded from the lockfile and the repository system is not used at all, so no network access is needed.
  *
  * @see <a href="https://hub.spigotmc.org/javadocs/bukkit/org/bukkit/plugin/PluginDescriptionFile.html#getLibraries()">PluginDescriptionFile.getLibraries()</a>
  */
 public class PluginYamlLibraryLoader {
 
-    private static final RemoteRepository MAVEN_CENTRAL = new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2").build();
+    public static final String MAVEN_CENTRAL_URL = "https://repo.maven.apache.org/maven2";
     private static final RemoteRepository CODE_MC = new RemoteRepository.Builder("CodeMC", "default", "https://repo.codemc.org/repository/maven-public/").build();
 
+    private static final int LOCKFILE_FORMAT = 2;   //version 2 added the repository urls
+
     private final Logger logger;
-    private final RepositorySystem system;
-    private final RepositorySystemSession session;
-    private final List<RemoteRepository> repositories;
+    private final File localRepoDir;
+    private final File lockFileDir;
+    private final RemoteRepository mavenCentral;
+
+    //the repository system is only created when a plugin's libraries need to be resolved.
+    private RepositorySystem system;
+    private RepositorySystemSession session;
+    private List<RemoteRepository> repositories;
 
     public PluginYamlLibraryLoader(Logger logger, File localRepoDir) {
-        this.logger = logger;
+        this(logger, localRepoDir, null, MAVEN_CENTRAL_URL);
+    }
 
-        this.system = getRepositorySystem();
-        this.session = getSession(system, logger, localRepoDir);
-        this.repositories = system.newResolutionRepositories(session, Compat.listOf(MAVEN_CENTRAL, CODE_MC));
+    /**
+     * Construct the library loader.
+     *
+     * @param logger the logger used to report progress and errors
+     * @param localRepoDir the directory of the local repository to which the libraries are downloaded
+     * @param lockFileDir the directory in which the lockfiles are stored, or null if lockfiles should not be used
+     * @param mavenCentralUrl the url of Maven Central, or the url of a repository that should be used instead (for example a mirror or a file:// url)
+     */
+    public PluginYamlLibraryLoader(Logger logger, File localRepoDir, File lockFileDir, String mavenCentralUrl) {
+        this.logger = logger;
+        this.localRepoDir = localRepoDir;
+        this.lockFileDir = lockFileDir;
+        this.mavenCentral = new RemoteRepository.Builder("central", "default", mavenCentralUrl).build();
     }
 
     public Collection<File> getJarFiles(Map<String, Object> pluginYaml) throws ScalaPluginLoaderException {
@@ -60,8 +91,7 @@ public class PluginYamlLibraryLoader {
         if (list.isEmpty()) return Compat.emptySet();
 
         final int size = list.size();
-        logger.log(Level.INFO, "Loading {0} libraries... please wait", size);
-
+        final List<String> libraries = new ArrayList<>(size);
         final List<Dependency> dependencies = new ArrayList<>(size);
 
         for (Object item : list) {
@@ -71,19 +101,39 @@ public class PluginYamlLibraryLoader {
                 Artifact artifact = new DefaultArtifact(library);
                 Dependency dependency = new Dependency(artifact, "compile");
                 dependencies.add(dependency);
+                libraries.add(library);
             }
         }
         if (dependencies.isEmpty()) return Compat.emptySet();
 
+        final File lockFile = getLockFile(pluginYaml.get("name"));
+        if (lockFile != null) {
+            List<File> lockedJarFiles = readLockFile(lockFile, libraries);
+            if (lockedJarFiles != null) return lockedJarFiles;
+        }
+
+        logger.log(Level.INFO, "Loading {0} libraries... please wait", size);
+
         try {
-            CollectRequest collectRequest = new CollectRequest((Dependency) null, dependencies, repositories);
-            DependencyRequest request = new DependencyRequest(collectRequest, null);
-            DependencyResult result = system.resolveDependencies(session, request);
+            CollectRequest collectRequest;
+            DependencyResult result;
+            synchronized (this) {
+                initRepositorySystem();
+                collectRequest = new CollectRequest((Dependency) null, dependencies, repositories);
+                DependencyRequest request = new DependencyRequest(collectRequest, null);
+                result = system.resolveDependencies(session, request);
+            }
 
+            List<Artifact> artifacts = new ArrayList<>(result.getArtifactResults().size());
             List<File> jarFiles = new ArrayList<>(dependencies.size());
             for (ArtifactResult artifactResult : result.getArtifactResults()) {
+                artifacts.add(artifactResult.getArtifact());
                 jarFiles.add(artifactResult.getArtifact().getFile());
             }
+
+            if (lockFile != null) {
+                writeLockFile(lockFile, libraries, artifacts);
+            }
             return jarFiles;
 
         } catch (DependencyResolutionException e) {
@@ -91,6 +141,99 @@ public class PluginYamlLibraryLoader {
         }
     }
 
+    //the libraries that were resolved from other repositories might not be the same.
+    private List<String> getRepositoryUrls() {
+        return Compat.listOf(mavenCentral.getUrl(), CODE_MC.getUrl());
+    }
+
+    private void initRepositorySystem() {
+        if (system == null) {
+            this.system = getRepositorySystem();
+            this.session = getSession(system, logger, localRepoDir);
+            this.repositories = system.newResolutionRepositories(session, Compat.listOf(mavenCentral, CODE_MC));
+        }
+    }
+
+    private File getLockFile(Object pluginName) {
+        if (lockFileDir == null || !(pluginName instanceof String)) return null;
+
+        String fileName = ((String) pluginName).replaceAll("[^A-Za-z0-9._-]", "_") + ".lock.yml";
+        return new File(lockFileDir, fileName);
+    }
+
+    /**
+     * Reads the jar files of the libraries from a lockfile, and verifies that they were not changed since the lockfile was written.
+     * @param lockFile the lockfile
+     * @param libraries the libraries as defined in the plugin.yml
+     * @return the jar files, or null if the lockfile doesn't exist, if the libraries or repositories were changed, or if any of the jar files doesn't match its hash
+     */
+    List<File> readLockFile(File lockFile, List<String> libraries) {
+        if (!lockFile.exists()) return null;
+
+        try (Reader reader = Files.newBufferedReader(lockFile.toPath(), StandardCharsets.UTF_8)) {
+            Map<String, Object> data = (Map<String, Object>) new Yaml().load(reader);
+            if (data == null
+                    || !Integer.valueOf(LOCKFILE_FORMAT).equals(data.get("format"))
+                    || !libraries.equals(data.get("libraries"))
+                    || !getRepositoryUrls().equals(data.get("repositories"))) {
+                return null;
+            }
+
+            File localRepo = localRepoDir.getCanonicalFile();
+            List<Map<String, Object>> artifacts = (List<Map<String, Object>>) data.get("artifacts");
+            List<File> jarFiles = new ArrayList<>(artifacts.size());
+            for (Map<String, Object> artifact : artifacts) {
+                File jarFile = localRepoDir.toPath().resolve((String) artifact.get("path")).toFile();
+                if (!jarFile.isFile() || !Hashing.sha256(jarFile).equals(artifact.get("sha256"))) {
+                    logger.log(Level.WARNING, "Library " + artifact.get("coordinates") + " does not match lockfile " + lockFile.getName() + ", libraries will be resolved again.");
+                    //the repository system trusts the files in the local repository, so remove the file to make sure that it is downloaded again.
+                    //but never delete files outside of the local repository, the lockfile could contain any path.
+                    if (jarFile.getCanonicalFile().toPath().startsWith(localRepo.toPath())) {
+                        jarFile.delete();
+                    }
+                    return null;
+                }
+                jarFiles.add(jarFile);
+            }
+            return jarFiles;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not read lockfile " + lockFile.getName() + ", libraries will be resolved again.", e);
+            return null;
+        }
+    }
+
+    void writeLockFile(File lockFile, List<String> libraries, List<Artifact> artifacts) {
+        try {
+            Path localRepoPath = localRepoDir.toPath().toAbsolutePath();
+            List<Map<String, Object>> lockedArtifacts = new ArrayList<>(artifacts.size());
+            for (Artifact artifact : artifacts) {
+                File jarFile = artifact.getFile();
+                Path jarPath = jarFile.toPath().toAbsolutePath();
+                Map<String, Object> lockedArtifact = new LinkedHashMap<>();
+                lockedArtifact.put("coordinates", artifact.toString());
+                //paths are relative to the local repository, so that the server folder can be moved.
+                lockedArtifact.put("path", (jarPath.startsWith(localRepoPath) ? localRepoPath.relativize(jarPath) : jarPath).toString().replace(File.separatorChar, '/'));
+                lockedArtifact.put("sha256", Hashing.sha256(jarFile));
+                lockedArtifacts.add(lockedArtifact);
+            }
+
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("format", LOCKFILE_FORMAT);
+            data.put("libraries", libraries);
+            data.put("repositories", getRepositoryUrls());
+            data.put("artifacts", lockedArtifacts);
+
+            lockFileDir.mkdirs();
+            Path tempFile = Files.createTempFile(lockFileDir.toPath(), lockFile.getName(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                new Yaml().dump(data, writer);
+            }
+            Files.move(tempFile, lockFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write lockfile " + lockFile.getName(), e);
+        }
+    }
+
     private static RepositorySystemSession getSession(RepositorySystem system, Logger logger, File localRepoDir) {
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
 
@@ -110,7 +253,7 @@ public class PluginYamlLibraryLoader {
     private static RepositorySystem getRepositorySystem() {
         DefaultServiceLocator serviceLocator = MavenRepositorySystemUtils.newServiceLocator();
         serviceLocator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
-        //serviceLocator.addService(TransporterFactory.class, FileTransporterFactory.class);
+        serviceLocator.addService(TransporterFactory.class, FileTransporterFactory.class);
         serviceLocator.addService(TransporterFactory.class, HttpTransporterFactory.class);
 
         return serviceLocator.getService(RepositorySystem.class);
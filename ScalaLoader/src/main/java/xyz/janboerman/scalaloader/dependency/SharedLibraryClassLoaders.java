@@ -0,0 +1,129 @@
+package xyz.janboerman.scalaloader.dependency;
+
+import org.bukkit.Server;
+import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
+import xyz.janboerman.scalaloader.plugin.description.ApiVersion;
+import xyz.janboerman.scalaloader.util.TransformedClassCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Keeps track of {@link LibraryClassLoader}s that are shared by ScalaPlugins which use the exact same libraries.
+ * Plugins share a LibraryClassLoader when their libraries resolve to the same jar files,
+ * they use the same Scala standard library classloader, and they use the same bukkit api version
+ * (because the server implementation transforms classes based on the api version).
+ * <p>
+ * Classes of shared libraries are transformed without the plugin-specific transformers of the plugins that use them,
+ * and without the configurationserializable transformations, because no single plugin owns them.
+ * The LibraryClassLoader is closed when the last plugin that uses it releases it.
+ */
+public final class SharedLibraryClassLoaders {
+
+    private final Map<Key, Shared> sharedLoaders = new HashMap<>();
+    private final Map<LibraryClassLoader, Key> keys = new IdentityHashMap<>();
+
+    /**
+     * Gets the shared LibraryClassLoader for a set of libraries, or creates it if no plugin uses these libraries yet.
+     * Every call to this method must be paired with a call to {@link #release(LibraryClassLoader)}.
+     *
+     * @param jarFiles the library jar files
+     * @param parent the parent classloader
+     * @param apiVersion bukkit's api version that's used by the plugin
+     * @param logger the logger used to report errors
+     * @param server the server
+     * @param transformedClassCache the cache of transformed library classes, or null
+     * @return the LibraryClassLoader
+     */
+    public synchronized LibraryClassLoader acquire(File[] jarFiles, ScalaLibraryClassLoader parent, ApiVersion apiVersion, Logger logger,
+                                                   Server server, TransformedClassCache.Scope transformedClassCache) {
+        Key key = new Key(jarFiles, parent, apiVersion);
+        Shared shared = sharedLoaders.get(key);
+        if (shared == null) {
+            LibraryClassLoader libraryClassLoader = new LibraryClassLoader(jarFiles, parent, logger, server, apiVersion, transformedClassCache);
+            shared = new Shared(libraryClassLoader);
+            sharedLoaders.put(key, shared);
+            keys.put(libraryClassLoader, key);
+        }
+        shared.references += 1;
+        return shared.libraryClassLoader;
+    }
+
+    /**
+     * Tests whether a LibraryClassLoader is shared.
+     * @param libraryClassLoader the LibraryClassLoader
+     * @return true if the LibraryClassLoader was obtained using {@link #acquire(File[], ScalaLibraryClassLoader, ApiVersion, Logger, Server, TransformedClassCache.Scope)}
+     *          and it is not yet released by all plugins, otherwise false
+     */
+    public synchronized boolean isShared(LibraryClassLoader libraryClassLoader) {
+        return keys.containsKey(libraryClassLoader);
+    }
+
+    /**
+     * Releases a LibraryClassLoader. If the LibraryClassLoader is not shared, or if this was the last plugin that used it, then it is closed.
+     * @param libraryClassLoader the LibraryClassLoader
+     * @throws IOException if the LibraryClassLoader could not be closed
+     */
+    public void release(LibraryClassLoader libraryClassLoader) throws IOException {
+        synchronized (this) {
+            Key key = keys.get(libraryClassLoader);
+            if (key != null) {
+                Shared shared = sharedLoaders.get(key);
+                shared.references -= 1;
+                if (shared.references > 0) return;
+
+                sharedLoaders.remove(key);
+                keys.remove(libraryClassLoader);
+            }
+        }
+
+        libraryClassLoader.close();
+    }
+
+    private static final class Shared {
+        private final LibraryClassLoader libraryClassLoader;
+        private int references;
+
+        private Shared(LibraryClassLoader libraryClassLoader) {
+            this.libraryClassLoader = libraryClassLoader;
+        }
+    }
+
+    private static final class Key {
+        private final List<String> jarPaths;
+        private final ScalaLibraryClassLoader parent;
+        private final ApiVersion apiVersion;
+
+        private Key(File[] jarFiles, ScalaLibraryClassLoader parent, ApiVersion apiVersion) {
+            //the libraries are resolved into the local repository, so the paths of the jar files identify the artifacts (groupId, artifactId, version).
+            this.jarPaths = new ArrayList<>(jarFiles.length);
+            for (File jarFile : jarFiles) {
+                jarPaths.add(jarFile.getAbsolutePath());
+            }
+            this.parent = parent;
+            this.apiVersion = apiVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+            return this.jarPaths.equals(that.jarPaths) && this.parent == that.parent && this.apiVersion == that.apiVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return jarPaths.hashCode() * 31 + System.identityHashCode(parent) * 17 + apiVersion.hashCode();
+        }
+    }
+}
@@ -7,7 +7,10 @@ import xyz.janboerman.scalaloader.event.Cancellable;
 import static org.objectweb.asm.Opcodes.*;
 import static xyz.janboerman.scalaloader.event.transform.EventTransformations.*;
 
-class EventScanner extends ClassVisitor {
+/**
+ * This class is NOT part of the public API!
+ */
+public class EventScanner extends ClassVisitor {
 
     private final ScanResult result = new ScanResult();
 
@@ -15,9 +18,21 @@ class EventScanner extends ClassVisitor {
         super(ASM_API);
     }
 
+    /**
+     * Creates a scanner that passes every event it visits on to the delegate, so that it can take part in a pre-scan that is shared with other scanners.
+     * @param delegate the next visitor in the chain
+     */
+    EventScanner(ClassVisitor delegate) {
+        super(ASM_API, delegate);
+    }
+
     ScanResult scan(ClassReader classReader) throws EventError {
         classReader.accept(this, ClassReader.EXPAND_FRAMES);
 
+        return getResult();
+    }
+
+    ScanResult getResult() throws EventError {
         if (result.implementsScalaLoaderCancellable && (result.hasValidSetCancelled != result.hasValidIsCancelled)) {
             throw new EventError("Event class " + result.className.replace('/', '.') + " implements " + Cancellable.class.getName() + ", "
                     + "but only overrides " + (result.hasValidSetCancelled ? "setCancelled" : "isCancelled") + ". "
@@ -45,6 +60,8 @@ class EventScanner extends ClassVisitor {
                 result.implementsScalaLoaderEventExecutor = true;
             }
         }
+
+        super.visit(version, access, name, signature, superName, interfaces);
     }
 
     @Override
@@ -52,11 +69,13 @@ class EventScanner extends ClassVisitor {
         if ((access & ACC_STATIC) == ACC_STATIC && HANDLERLIST_DESCRIPTOR.equals(descriptor)) {
             result.staticHandlerListFieldName = name;
         }
-        return null;
+        return super.visitField(access, name, descriptor, signature, value);
     }
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        MethodVisitor superVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+
         if (GETHANDLERLIST_METHODNAME.equals(name) && (access & ACC_STATIC) == ACC_STATIC && GETHANDLERLIST_DESCRIPTOR.equals(descriptor)) {
             result.hasGetHandlerList = true;
         }
@@ -68,9 +87,10 @@ class EventScanner extends ClassVisitor {
         else if (SETCANCELLED_NAME.equals(name) && (access & ACC_STATIC) == 0 && SETCANCELLED_DESCRIPTOR.equals(descriptor)) {
             result.hasValidSetCancelled = true;
 
-            return new MethodVisitor(ASM_API) {
+            return new MethodVisitor(ASM_API, superVisitor) {
                 @Override
                 public void visitMethodInsn(int opCode, String owner, String name, String descriptor, boolean isInterface) {
+                    super.visitMethodInsn(opCode, owner, name, descriptor, isInterface);
                     if (opCode == INVOKESPECIAL && SCALALOADER_CANCELLABLE_NAME.equals(owner) && SETCANCELLED_NAME.equals(name) && SETCANCELLED_DESCRIPTOR.equals(descriptor) && isInterface) {
                         //encountered a scala-compiler generated call to the default method of the interface
                         //why does scalac even output this crap? interfaces are not traits.
@@ -83,9 +103,10 @@ class EventScanner extends ClassVisitor {
         else if (ISCANCELLED_NAME.equals(name) && (access & ACC_STATIC) == 0 && ISCANCELLED_DESCRIPTOR.equals(descriptor)) {
             result.hasValidIsCancelled = true;
 
-            return new MethodVisitor(ASM_API) {
+            return new MethodVisitor(ASM_API, superVisitor) {
                 @Override
                 public void visitMethodInsn(int opCode, String owner, String name, String descriptor, boolean isInterface) {
+                    super.visitMethodInsn(opCode, owner, name, descriptor, isInterface);
                     if (opCode == INVOKESPECIAL && SCALALOADER_CANCELLABLE_NAME.equals(owner) && ISCANCELLED_NAME.equals(name) && ISCANCELLED_DESCRIPTOR.equals(descriptor) && isInterface) {
                         //encountered a scala-compiler generated call to the default method of the interface
                         //why does scalac even output this crap? interfaces are not traits.
@@ -99,7 +120,7 @@ class EventScanner extends ClassVisitor {
             result.hasClassInitializer = true;
         }
 
-        return null;
+        return superVisitor;
     }
 
 }
@@ -101,7 +101,38 @@ public class EventTransformations {
             }
         };
 
-        ClassVisitor combinedTransformer = classWriter;
+        ClassVisitor combinedTransformer = transformer(eventResult, classWriter);
+
+        new ClassReader(clazz).accept(combinedTransformer, ClassReader.EXPAND_FRAMES);
+
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Creates a scanner that collects the information needed by {@link #transformer(EventScanner, ClassVisitor)}.
+     * The scanner forwards everything it visits to the delegate, so that it can be part of a pre-scan that is shared with other transformations.
+     *
+     * @param delegate the next visitor in the chain, or null
+     * @return the scanner
+     */
+    public static EventScanner scanner(ClassVisitor delegate) {
+        return new EventScanner(delegate);
+    }
+
+    /**
+     * Creates the visitor that applies the transformations described by {@link #transform(byte[], ClassLoader)}.
+     *
+     * @param scanner a scanner that has visited the class already
+     * @param delegate the next visitor in the chain
+     * @return the transforming visitor
+     * @throws EventError if the scanned class is not a valid event
+     */
+    public static ClassVisitor transformer(EventScanner scanner, ClassVisitor delegate) throws EventError {
+        return transformer(scanner.getResult(), delegate);
+    }
+
+    private static ClassVisitor transformer(ScanResult eventResult, ClassVisitor delegate) {
+        ClassVisitor combinedTransformer = delegate;
         if (eventResult.extendsScalaLoaderEvent)
             combinedTransformer = new EventTransformer(eventResult, combinedTransformer);
         if (eventResult.implementsScalaLoaderCancellable)
@@ -110,10 +141,7 @@ public class EventTransformations {
             combinedTransformer = new EventExecutorTransformer(combinedTransformer);
         combinedTransformer = new EventBusUserTransformer(combinedTransformer);
         combinedTransformer = new EventUserTransformer(combinedTransformer);
-
-        new ClassReader(clazz).accept(combinedTransformer, ClassReader.EXPAND_FRAMES);
-
-        return classWriter.toByteArray();
+        return combinedTransformer;
     }
 
 }
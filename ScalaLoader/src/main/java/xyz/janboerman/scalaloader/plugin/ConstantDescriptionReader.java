@@ -0,0 +1,456 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginLoadOrder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import xyz.janboerman.scalaloader.bytecode.AsmConstants;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Derives the {@link ScalaPluginDescription} of a ScalaPlugin from the bytecode of its main class, without loading the main class.
+ * <p>
+ * This works when the constructor of the main class passes a constant expression to the super constructor {@link ScalaPlugin#ScalaPlugin(ScalaPluginDescription)},
+ * for example {@code new ScalaPluginDescription("MyPlugin", "1.0").addHardDepend("OtherPlugin")}, or when it calls {@link ScalaPlugin#ScalaPlugin()}.
+ * A constant expression consists of constructor calls and method calls on {@link ScalaPluginDescription}, {@link ScalaPluginDescription.Command}
+ * and {@link ScalaPluginDescription.Permission} whose arguments are literals, enum constants, arrays of those, or constant expressions themselves.
+ * These calls are replayed on real instances, so no code from the plugin is run.
+ * <p>
+ * If the constructor does anything else before it calls the super constructor, then the description can't be derived,
+ * and the plugin must be instantiated to get its description.
+ * <p>
+ * The constructor can do other things after it calls the super constructor, but it could also change the description there.
+ * So the description can't be derived either if the constructor gets the description after calling the super constructor,
+ * if it calls a method that is declared by the main class (which could get the description),
+ * or if the main class overrides {@link ScalaPlugin#getDescription()} or {@link ScalaPlugin#getName()}.
+ * Methods that are called from elsewhere, e.g. from onLoad, are not checked: they run after the plugin's dependencies were resolved anyway.
+ */
+class ConstantDescriptionReader extends ClassVisitor {
+
+    private static final String SCALAPLUGIN_CLASS_NAME = Type.getInternalName(ScalaPlugin.class);
+    private static final String DESCRIPTION_CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ScalaPluginDescription.class));
+    private static final String NULLARY_CONSTRUCTOR_DESCRIPTOR = "()V";
+    //the methods of ScalaPlugin that give the description
+    private static final Set<String> DESCRIPTION_GETTERS = new HashSet<>(Arrays.asList("getScalaDescription", "getDescription"));
+    //the methods of ScalaPlugin that the main class can override to replace (parts of) the description
+    private static final Set<String> DESCRIPTION_OVERRIDES = new HashSet<>(Arrays.asList(
+            "getScalaDescription" + Type.getMethodDescriptor(Type.getType(ScalaPluginDescription.class)),
+            "getDescription()Lorg/bukkit/plugin/PluginDescriptionFile;",
+            "getName()Ljava/lang/String;"));
+
+    //the types of which constructors and methods can be replayed
+    private static final Map<String, Class<?>> BUILDER_TYPES = new HashMap<>();
+    //the types that can occur as arguments
+    private static final Map<String, Class<?>> ARGUMENT_TYPES = new HashMap<>();
+    static {
+        for (Class<?> builderType : new Class<?>[] {ScalaPluginDescription.class, ScalaPluginDescription.Command.class, ScalaPluginDescription.Permission.class}) {
+            BUILDER_TYPES.put(Type.getDescriptor(builderType), builderType);
+            ARGUMENT_TYPES.put(Type.getDescriptor(builderType), builderType);
+            ARGUMENT_TYPES.put(Type.getDescriptor(Array.newInstance(builderType, 0).getClass()), Array.newInstance(builderType, 0).getClass());
+        }
+        for (Class<?> argumentType : new Class<?>[] {String.class, String[].class, PermissionDefault.class, PluginLoadOrder.class, int.class, boolean.class}) {
+            ARGUMENT_TYPES.put(Type.getDescriptor(argumentType), argumentType);
+        }
+    }
+
+    private static final Object THIS = new Object();
+    private static final Object NULL = new Object();
+
+    private String className;
+    private boolean extendsScalaPlugin;
+    private boolean nullarySuperConstructor;
+    private ScalaPluginDescription description;
+
+    //what the main class does apart from calling the super constructor
+    private final Set<String> declaredMethods = new HashSet<>();
+    private final Set<String> calledOwnMethods = new HashSet<>();
+    private boolean getsDescription;
+
+    private ConstantDescriptionReader() {
+        super(AsmConstants.ASM_API);
+    }
+
+    /**
+     * Derives the description of a ScalaPlugin.
+     *
+     * @param mainClassBytes the bytecode of the main class
+     * @param mainClassName the name of the main class
+     * @param pluginYaml the contents of the plugin.yml file
+     * @param apiVersion bukkit's api version that's used by the plugin (see {@link xyz.janboerman.scalaloader.plugin.description.ApiVersion#getVersionString()})
+     * @return the description, equal to the description that the plugin would have when instantiated,
+     *          or null if the description can't be derived without instantiating the plugin
+     */
+    static ScalaPluginDescription read(byte[] mainClassBytes, String mainClassName, Map<String, Object> pluginYaml, String apiVersion) {
+        ConstantDescriptionReader reader = new ConstantDescriptionReader();
+        new ClassReader(mainClassBytes).accept(reader, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        if (reader.mayChangeDescription()) return null;
+
+        //replicate what the constructors of ScalaPlugin do.
+        if (reader.nullarySuperConstructor) {
+            Object name = pluginYaml.get("name");
+            Object version = pluginYaml.get("version");
+            //let the plugin's constructor report the error
+            if (name == null || version == null) return null;
+
+            ScalaPluginDescription description = new ScalaPluginDescription(name.toString(), version.toString());
+            description.setMain(mainClassName);
+            description.setApiVersion(apiVersion);
+            description.readFromPluginYamlData(pluginYaml);
+            return description;
+        } else if (reader.description != null) {
+            ScalaPluginDescription description = reader.description;
+            description.setMain(mainClassName);
+            description.addYaml(pluginYaml);
+            description.setApiVersion(apiVersion);
+            return description;
+        } else {
+            return null;
+        }
+    }
+
+    private boolean mayChangeDescription() {
+        if (getsDescription) return true;
+        for (String method : declaredMethods) {
+            if (DESCRIPTION_OVERRIDES.contains(method)) return true;
+        }
+        //a method of the main class could get the description
+        for (String method : calledOwnMethods) {
+            if (declaredMethods.contains(method)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        className = name;
+        //if the main class extends a subclass of ScalaPlugin, then the subclass could do anything with the description.
+        extendsScalaPlugin = SCALAPLUGIN_CLASS_NAME.equals(superName);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        if ((access & Opcodes.ACC_STATIC) == 0 && !"<init>".equals(name)) {
+            declaredMethods.add(name + descriptor);
+        }
+        if (extendsScalaPlugin && "<init>".equals(name) && NULLARY_CONSTRUCTOR_DESCRIPTOR.equals(descriptor)) {
+            return new ConstructorInterpreter();
+        }
+        return null;
+    }
+
+    /**
+     * Interprets the instructions of the constructor up to and including the call to the super constructor.
+     * Any instruction that is not part of a constant expression aborts the interpretation.
+     * After the call to the super constructor, only the methods that are called are recorded.
+     */
+    private class ConstructorInterpreter extends MethodVisitor {
+
+        private final List<Object> stack = new ArrayList<>();
+        private boolean done;
+
+        private ConstructorInterpreter() {
+            super(AsmConstants.ASM_API);
+        }
+
+        private void fail() {
+            //instructions after the call to the super constructor don't matter
+            if (done) return;
+            done = true;
+            description = null;
+            nullarySuperConstructor = false;
+        }
+
+        private void push(Object value) {
+            stack.add(value == null ? NULL : value);
+        }
+
+        private Object pop() {
+            if (stack.isEmpty()) { fail(); return NULL; }
+            return stack.remove(stack.size() - 1);
+        }
+
+        private Object[] popArguments(Class<?>[] parameterTypes) {
+            Object[] arguments = new Object[parameterTypes.length];
+            for (int i = parameterTypes.length - 1; i >= 0; i--) {
+                Object argument = pop();
+                if (argument == NULL) {
+                    arguments[i] = null;
+                } else if (parameterTypes[i] == boolean.class && argument instanceof Integer) {
+                    arguments[i] = (Integer) argument != 0;
+                } else if (parameterTypes[i] == int.class && argument instanceof Integer) {
+                    arguments[i] = argument;
+                } else if (!parameterTypes[i].isPrimitive() && parameterTypes[i].isInstance(argument)) {
+                    arguments[i] = argument;
+                } else {
+                    fail();
+                    return null;
+                }
+            }
+            return arguments;
+        }
+
+        private Class<?>[] parameterTypes(String methodDescriptor) {
+            Type[] argumentTypes = Type.getArgumentTypes(methodDescriptor);
+            Class<?>[] parameterTypes = new Class<?>[argumentTypes.length];
+            for (int i = 0; i < argumentTypes.length; i++) {
+                parameterTypes[i] = ARGUMENT_TYPES.get(argumentTypes[i].getDescriptor());
+                if (parameterTypes[i] == null) return null;
+            }
+            return parameterTypes;
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int varIndex) {
+            if (done) return;
+            if (opcode == Opcodes.ALOAD && varIndex == 0) {
+                push(THIS);
+            } else {
+                fail();
+            }
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (done) return;
+            switch (opcode) {
+                case Opcodes.ACONST_NULL: push(null); break;
+                case Opcodes.ICONST_M1: case Opcodes.ICONST_0: case Opcodes.ICONST_1: case Opcodes.ICONST_2:
+                case Opcodes.ICONST_3: case Opcodes.ICONST_4: case Opcodes.ICONST_5:
+                    push(opcode - Opcodes.ICONST_0);
+                    break;
+                case Opcodes.DUP:
+                    Object top = pop();
+                    stack.add(top);
+                    stack.add(top);
+                    break;
+                case Opcodes.POP:
+                    pop();
+                    break;
+                case Opcodes.AASTORE:
+                    Object value = pop();
+                    Object index = pop();
+                    Object array = pop();
+                    if (done) return;
+                    if (!(index instanceof Integer) || array == NULL || !array.getClass().isArray()) { fail(); return; }
+                    try {
+                        Array.set(array, (Integer) index, value == NULL ? null : value);
+                    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                        fail();
+                    }
+                    break;
+                default:
+                    fail();
+            }
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            if (done) return;
+            if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+                push(operand);
+            } else {
+                fail();
+            }
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            if (done) return;
+            if (value instanceof String || value instanceof Integer) {
+                push(value);
+            } else {
+                fail();
+            }
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            if (done) return;
+            String descriptor = Type.getObjectType(type).getDescriptor();
+            switch (opcode) {
+                case Opcodes.NEW:
+                    if (BUILDER_TYPES.containsKey(descriptor)) {
+                        push(new Uninitialized(BUILDER_TYPES.get(descriptor)));
+                    } else {
+                        fail();
+                    }
+                    break;
+                case Opcodes.ANEWARRAY:
+                    Class<?> componentType = ARGUMENT_TYPES.get(descriptor);
+                    Object length = pop();
+                    if (done) return;
+                    if (componentType == null || componentType.isArray() || componentType.isPrimitive() || !(length instanceof Integer) || (Integer) length < 0) {
+                        fail();
+                    } else {
+                        push(Array.newInstance(componentType, (Integer) length));
+                    }
+                    break;
+                case Opcodes.CHECKCAST:
+                    Class<?> castType = ARGUMENT_TYPES.get(descriptor);
+                    Object operand = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+                    if (castType == null || operand == null || (operand != NULL && !castType.isInstance(operand))) {
+                        fail();
+                    }
+                    break;
+                default:
+                    fail();
+            }
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            if (done) return;
+            Class<?> enumType = ARGUMENT_TYPES.get(descriptor);
+            Object constant = null;
+            if (opcode == Opcodes.GETSTATIC && enumType != null && enumType.isEnum() && Type.getDescriptor(enumType).equals(Type.getObjectType(owner).getDescriptor())) {
+                constant = enumConstant(enumType, name);
+            }
+            if (constant != null) {
+                push(constant);
+            } else {
+                fail();
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            if (done) {
+                //the rest of the constructor could still change the description
+                if (DESCRIPTION_GETTERS.contains(name)) getsDescription = true;
+                if (className.equals(owner)) calledOwnMethods.add(name + descriptor);
+                return;
+            }
+
+            if (opcode == Opcodes.INVOKESPECIAL && "<init>".equals(name) && SCALAPLUGIN_CLASS_NAME.equals(owner)) {
+                //the call to the super constructor
+                if (DESCRIPTION_CONSTRUCTOR_DESCRIPTOR.equals(descriptor)) {
+                    Object argument = pop();
+                    Object self = pop();
+                    if (!done && self == THIS && argument instanceof ScalaPluginDescription && !stack.contains(argument)) {
+                        description = (ScalaPluginDescription) argument;
+                        done = true;
+                    } else {
+                        fail();
+                    }
+                } else if (NULLARY_CONSTRUCTOR_DESCRIPTOR.equals(descriptor)) {
+                    Object self = pop();
+                    if (!done && self == THIS) {
+                        nullarySuperConstructor = true;
+                        done = true;
+                    } else {
+                        fail();
+                    }
+                } else {
+                    fail();
+                }
+                return;
+            }
+
+            Class<?> ownerType = BUILDER_TYPES.get(Type.getObjectType(owner).getDescriptor());
+            Class<?>[] parameterTypes = parameterTypes(descriptor);
+            if (ownerType == null || parameterTypes == null) { fail(); return; }
+
+            try {
+                if (opcode == Opcodes.INVOKESPECIAL && "<init>".equals(name)) {
+                    Object[] arguments = popArguments(parameterTypes);
+                    Object uninitialized = pop();
+                    if (done) return;
+                    if (!(uninitialized instanceof Uninitialized) || ((Uninitialized) uninitialized).type != ownerType) { fail(); return; }
+
+                    Constructor<?> constructor = ownerType.getConstructor(parameterTypes);
+                    Object instance = constructor.newInstance(arguments);
+                    //replace the duplicates of the uninitialized instance
+                    for (int i = 0; i < stack.size(); i++) {
+                        if (stack.get(i) == uninitialized) stack.set(i, instance);
+                    }
+                } else if (opcode == Opcodes.INVOKEVIRTUAL) {
+                    Object[] arguments = popArguments(parameterTypes);
+                    Object receiver = pop();
+                    if (done) return;
+                    if (!ownerType.isInstance(receiver)) { fail(); return; }
+
+                    Method method = ownerType.getMethod(name, parameterTypes);
+                    Type returnType = Type.getReturnType(descriptor);
+                    if (!returnType.getDescriptor().equals(Type.getDescriptor(method.getReturnType()))) { fail(); return; }
+
+                    Object result = method.invoke(receiver, arguments);
+                    if (returnType.getSort() != Type.VOID) push(result);
+                } else {
+                    fail();
+                }
+            } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException | IllegalArgumentException e) {
+                //e.g. a null plugin name, let the plugin's constructor report the error.
+                fail();
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            fail();
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            fail();
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            fail();
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            fail();
+        }
+
+        @Override
+        public void visitIincInsn(int varIndex, int increment) {
+            fail();
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            fail();
+        }
+
+        @Override
+        public void visitEnd() {
+            //the super constructor was never called
+            if (!done) fail();
+        }
+    }
+
+    private static Object enumConstant(Class<?> enumType, String name) {
+        for (Object constant : enumType.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) return constant;
+        }
+        return null;
+    }
+
+    private static final class Uninitialized {
+        private final Class<?> type;
+
+        private Uninitialized(Class<?> type) {
+            this.type = Objects.requireNonNull(type);
+        }
+    }
+
+}
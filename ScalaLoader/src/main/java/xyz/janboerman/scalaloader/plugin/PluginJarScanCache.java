@@ -0,0 +1,205 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import org.yaml.snakeyaml.Yaml;
+import xyz.janboerman.scalaloader.bytecode.TransformerRegistry;
+import xyz.janboerman.scalaloader.configurationserializable.transform.AddVariantTransformer;
+import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScanResult;
+import xyz.janboerman.scalaloader.configurationserializable.transform.PluginTransformer;
+import xyz.janboerman.scalaloader.plugin.description.DescriptionScanner;
+import xyz.janboerman.scalaloader.util.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches {@link PluginJarScanResult}s on disk, so that unchanged plugin jars don't need to be scanned again after a restart.
+ * <p>
+ * Entries are keyed by the absolute path of the jar file. An entry is used when the size and the modification time of the jar are unchanged,
+ * or when they did change but the SHA-256 hash of the jar's contents is still the same.
+ * The {@link TransformerRegistry} is not stored directly; instead the {@link GlobalScanResult}s it was built from are stored,
+ * and the registry is rebuilt from those.
+ */
+class PluginJarScanCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final String scalaLoaderVersion;
+    private final Logger logger;
+    private final ConcurrentMap<String, Map<String, Object>> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    PluginJarScanCache(File file, String scalaLoaderVersion, Logger logger) {
+        this.file = file;
+        this.scalaLoaderVersion = scalaLoaderVersion;
+        this.logger = logger;
+        load();
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Map<String, Object> data = (Map<String, Object>) new Yaml().load(reader);
+            //the DescriptionScanner contains the built-in scala versions which may differ between versions of ScalaLoader
+            if (data == null
+                    || !Integer.valueOf(FORMAT_VERSION).equals(data.get("format"))
+                    || !scalaLoaderVersion.equals(data.get("scalaloader-version"))) {
+                dirty = true;
+                return;
+            }
+
+            Map<String, Map<String, Object>> jars = (Map<String, Map<String, Object>>) data.get("jars");
+            if (jars != null) {
+                entries.putAll(jars);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not read plugin scan cache " + file.getName() + ", plugins will be scanned again.", e);
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    /**
+     * Get the cached scan result of a jar file.
+     * @param jarFile the jar file
+     * @return the scan result, or null if the jar file was not scanned before or if it has changed since
+     */
+    PluginJarScanResult get(File jarFile) {
+        String key = jarFile.getAbsolutePath();
+        Map<String, Object> entry = entries.get(key);
+        if (entry == null) return null;
+
+        try {
+            long size = ((Number) entry.get("size")).longValue();
+            long lastModified = ((Number) entry.get("last-modified")).longValue();
+            if (size != jarFile.length() || lastModified != jarFile.lastModified()) {
+                //the file was touched, but maybe its contents are still the same
+                String hash = Hashing.sha256(jarFile);
+                if (!hash.equals(entry.get("sha256"))) {
+                    entries.remove(key);
+                    dirty = true;
+                    return null;
+                }
+
+                Map<String, Object> updated = new HashMap<>(entry);
+                updated.put("size", jarFile.length());
+                updated.put("last-modified", jarFile.lastModified());
+                entries.put(key, updated);
+                dirty = true;
+            }
+
+            return deserialize(entry);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Invalid plugin scan cache entry for " + jarFile.getName() + ", the jar will be scanned again.", e);
+            entries.remove(key);
+            dirty = true;
+            return null;
+        }
+    }
+
+    /**
+     * Stores the scan result of a jar file.
+     * @param jarFile the jar file
+     * @param scanResult the scan result
+     */
+    void put(File jarFile, PluginJarScanResult scanResult) {
+        try {
+            Map<String, Object> entry = serialize(scanResult);
+            entry.put("size", jarFile.length());
+            entry.put("last-modified", jarFile.lastModified());
+            entry.put("sha256", Hashing.sha256(jarFile));
+            entries.put(jarFile.getAbsolutePath(), entry);
+            dirty = true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not compute hash of plugin jar " + jarFile.getName() + ", its scan result will not be cached.", e);
+        }
+    }
+
+    /**
+     * Writes the cache to disk, if it changed. Entries of jar files that no longer exist are dropped.
+     */
+    synchronized void save() {
+        entries.keySet().removeIf(path -> {
+            boolean gone = !new File(path).exists();
+            if (gone) dirty = true;
+            return gone;
+        });
+        if (!dirty) return;
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("format", FORMAT_VERSION);
+        data.put("scalaloader-version", scalaLoaderVersion);
+        data.put("jars", new TreeMap<>(entries));
+
+        try {
+            file.getParentFile().mkdirs();
+            Path tempFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                new Yaml().dump(data, writer);
+            }
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write plugin scan cache " + file.getName(), e);
+        }
+    }
+
+    private static Map<String, Object> serialize(PluginJarScanResult scanResult) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("java-plugin", scanResult.isJavaPluginExplicitly);
+        if (!scanResult.isJavaPluginExplicitly) {
+            if (scanResult.mainClassCandidate != null) map.put("main-class-candidate", scanResult.mainClassCandidate.serialize());
+            map.put("plugin-yaml", scanResult.pluginYaml);
+            List<Map<String, Object>> globalScanResults = new ArrayList<>(scanResult.globalScanResults.size());
+            for (GlobalScanResult globalScanResult : scanResult.globalScanResults) {
+                globalScanResults.add(globalScanResult.serialize());
+            }
+            map.put("transformers", globalScanResults);
+        }
+        return map;
+    }
+
+    private static PluginJarScanResult deserialize(Map<String, Object> map) {
+        PluginJarScanResult result = new PluginJarScanResult();
+        result.isJavaPluginExplicitly = Boolean.TRUE.equals(map.get("java-plugin"));
+        if (!result.isJavaPluginExplicitly) {
+            Map<String, Object> mainClassCandidate = (Map<String, Object>) map.get("main-class-candidate");
+            if (mainClassCandidate != null) result.mainClassCandidate = DescriptionScanner.deserialize(mainClassCandidate);
+            Map<String, Object> pluginYaml = (Map<String, Object>) map.get("plugin-yaml");
+            result.pluginYaml = pluginYaml == null ? new HashMap<>() : new HashMap<>(pluginYaml);
+
+            //rebuild the transformer registry in the same order as scanJar built it
+            TransformerRegistry transformerRegistry = new TransformerRegistry();
+            List<GlobalScanResult> globalScanResults = new ArrayList<>();
+            List<Map<String, Object>> transformers = (List<Map<String, Object>>) map.get("transformers");
+            if (transformers != null) {
+                for (Map<String, Object> transformer : transformers) {
+                    GlobalScanResult globalScanResult = GlobalScanResult.deserialize(transformer);
+                    PluginTransformer.addTo(transformerRegistry, globalScanResult);
+                    AddVariantTransformer.addTo(transformerRegistry, globalScanResult);
+                    globalScanResults.add(globalScanResult);
+                }
+            }
+            result.transformerRegistry = transformerRegistry;
+            result.globalScanResults = globalScanResults;
+        }
+        return result;
+    }
+
+}
@@ -1,8 +1,10 @@
 package xyz.janboerman.scalaloader.plugin;
 
 import xyz.janboerman.scalaloader.bytecode.TransformerRegistry;
+import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScanResult;
 import xyz.janboerman.scalaloader.plugin.description.DescriptionScanner;
 
+import java.util.List;
 import java.util.Map;
 
 class PluginJarScanResult {
@@ -11,6 +13,7 @@ class PluginJarScanResult {
     Map<String, Object> pluginYaml;
     boolean isJavaPluginExplicitly;
     TransformerRegistry transformerRegistry;
+    List<GlobalScanResult> globalScanResults;   //the scan results from which the transformerRegistry was built
 
     PluginJarScanResult() {
     }
@@ -23,6 +23,7 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
     public static final String SCALA2_LIBRARY_URL = "scala-library-url";
     public static final String SCALA3_LIBRARY_URL = "scala3-library-url";
     public static final String TASTY_CORE_URL = "tasty-core-url";
+    private static final String SHA256_SUFFIX = "-sha256";
 
     //private static final String SCALA3_STAGING_URL = "scala3-staging-url";
     //private static final String TASTY_INSPECTOR_URL = "tasty-inspector-url";
@@ -30,6 +31,7 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
 
     private final String scalaVersion;
     private final Map<String, String> urls;
+    private final Map<String, String> sha256Hashes;
 
     /**
      * @deprecated since Scala 3 there are more artifacts than just the scala standard library and the scala reflection library
@@ -42,14 +44,28 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
 
         this.scalaVersion = scalaVersion;
         this.urls = mapOf(mapEntry(SCALA2_LIBRARY_URL, libraryUrl), mapEntry(SCALA2_REFLECT_URL, reflectUrl));
+        this.sha256Hashes = emptyMap();
     }
 
     public PluginScalaVersion(String scalaVersion, Map<String, String> urls) {
+        this(scalaVersion, urls, emptyMap());
+    }
+
+    /**
+     * Construct a scala version of which the downloaded jar files are verified.
+     * @param scalaVersion the version of scala
+     * @param urls the urls of the jar files
+     * @param sha256Hashes the SHA-256 hashes of the jar files, in hexadecimal form, using the same keys as the urls.
+     *                     Hashes may be absent for some or all of the jar files
+     */
+    public PluginScalaVersion(String scalaVersion, Map<String, String> urls, Map<String, String> sha256Hashes) {
         Objects.requireNonNull(scalaVersion, "scalaVersion cannot be null!");
         Objects.requireNonNull(urls, "urls cannot be null!");
+        Objects.requireNonNull(sha256Hashes, "sha256Hashes cannot be null!");
 
         this.scalaVersion = scalaVersion;
         this.urls = mapCopy(urls);
+        this.sha256Hashes = mapCopy(sha256Hashes);
     }
 
 
@@ -61,6 +77,15 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
         return Collections.unmodifiableMap(urls);
     }
 
+    /**
+     * Get the expected SHA-256 hash of a jar file.
+     * @param urlKey the key of the url of the jar file, for example {@value #SCALA2_LIBRARY_URL}
+     * @return the hash in hexadecimal form, or null if no hash is configured for the jar file
+     */
+    public String getSha256(String urlKey) {
+        return sha256Hashes.get(urlKey);
+    }
+
     @Deprecated
     public String getScalaLibraryUrl() {
         return urls.get(SCALA2_LIBRARY_URL);
@@ -101,6 +126,9 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
         for (Map.Entry<String, String> urlEntry : urls.entrySet()) {
             map.put(urlEntry.getKey(), urlEntry.getValue());
         }
+        for (Map.Entry<String, String> hashEntry : sha256Hashes.entrySet()) {
+            map.put(hashKey(hashEntry.getKey()), hashEntry.getValue());
+        }
 
         return map;
     }
@@ -111,16 +139,34 @@ public final class PluginScalaVersion implements ConfigurationSerializable {
         String scalaVersion = map.remove(SCALA_VERSION).toString();
 
         Map<String, String> urls = new HashMap<>();
+        Map<String, String> hashes = new HashMap<>();
         for (Map.Entry<String, Object> entry : map.entrySet()) {
-            urls.put(entry.getKey(), entry.getValue().toString());
+            if (entry.getKey().endsWith(SHA256_SUFFIX)) {
+                hashes.put(entry.getKey(), entry.getValue().toString());
+            } else {
+                urls.put(entry.getKey(), entry.getValue().toString());
+            }
+        }
+
+        //scala-library-sha256 belongs to scala-library-url
+        Map<String, String> sha256Hashes = new HashMap<>();
+        for (String urlKey : urls.keySet()) {
+            String hash = hashes.get(hashKey(urlKey));
+            if (hash != null) sha256Hashes.put(urlKey, hash);
         }
 
-        return new PluginScalaVersion(scalaVersion, urls);
+        return new PluginScalaVersion(scalaVersion, urls, sha256Hashes);
+    }
+
+    private static String hashKey(String urlKey) {
+        String base = urlKey.endsWith("-url") ? urlKey.substring(0, urlKey.length() - 4) : urlKey;
+        return base + SHA256_SUFFIX;
     }
 
     public static PluginScalaVersion fromScalaVersion(ScalaVersion scalaVersion) {
         return new PluginScalaVersion(
                 scalaVersion.getVersion(),
-                scalaVersion.getUrls());
+                scalaVersion.getUrls(),
+                scalaVersion.getSha256Hashes());
     }
 }
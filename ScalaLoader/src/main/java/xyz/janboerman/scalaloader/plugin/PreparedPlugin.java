@@ -0,0 +1,31 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * The parts of a ScalaPlugin that can be prepared before its main class is instantiated, and which don't depend on other plugins.
+ * These can be prepared for multiple plugins concurrently.
+ */
+class PreparedPlugin {
+
+    PluginScalaVersion scalaVersion;                    //the latest compatible scala version
+    ScalaLibraryClassLoader scalaLibraryClassLoader;
+    Collection<File> dependencies;                      //the jar files of the libraries from the plugin.yml
+    boolean warmUpClasses;                              //whether the classes should be loaded concurrently once the plugin is instantiated
+
+    PreparedPlugin() {
+    }
+
+    public String toString() {
+        return "PreparedPlugin"
+                + "{scalaVersion=" + scalaVersion
+                + ",scalaLibraryClassLoader=" + scalaLibraryClassLoader
+                + ",dependencies=" + dependencies
+                + ",warmUpClasses=" + warmUpClasses
+                + "}";
+    }
+
+}
@@ -7,6 +7,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.StringJoiner;
 
+/**
+ * Keeps track of the latest known Scala version per binary compatible release.
+ * All methods are synchronized, so that ScalaPlugins can be loaded concurrently.
+ */
 class ScalaCompatMap {
 
     private final Map<ScalaRelease, String> compatReleaseToLatestVersionMap = new HashMap<>();  //e.g. ["2.12"->"2.12.11", "2.13"->"2.13.4"]
@@ -15,7 +19,7 @@ class ScalaCompatMap {
     ScalaCompatMap() {
     }
 
-    void add(PluginScalaVersion scalaVersion) {
+    synchronized void add(PluginScalaVersion scalaVersion) {
         final String versionString = scalaVersion.getScalaVersion();
         scalaMap.putIfAbsent(versionString, scalaVersion);
         final ScalaRelease compatVersion = scalaVersion.getCompatRelease();
@@ -49,7 +53,7 @@ class ScalaCompatMap {
      * @param scalaVersion the version of Scala
      * @return the latest compatible version of Scala
      */
-    PluginScalaVersion getLatestVersion(final PluginScalaVersion scalaVersion) {
+    synchronized PluginScalaVersion getLatestVersion(final PluginScalaVersion scalaVersion) {
         final String versionString = scalaVersion.getScalaVersion();
         final ScalaRelease compatVersion = scalaVersion.getCompatRelease();
 
@@ -69,7 +73,7 @@ class ScalaCompatMap {
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         final StringJoiner sj = new StringJoiner(", ", "[", "]");
         for (Entry<ScalaRelease, String> compatLatestEntry : compatReleaseToLatestVersionMap.entrySet()) {
             final ScalaRelease compatVersion = compatLatestEntry.getKey();
@@ -2,8 +2,6 @@ package xyz.janboerman.scalaloader.plugin;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Server;
-import org.bukkit.configuration.serialization.ConfigurationSerializable;
-import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.plugin.java.JavaPluginLoader;
@@ -15,19 +13,30 @@ import org.objectweb.asm.*;
 //import org.objectweb.asm.tree.analysis.SimpleVerifier;
 import org.objectweb.asm.util.*;
 import xyz.janboerman.scalaloader.DebugSettings;
+import xyz.janboerman.scalaloader.ScalaLoader;
 import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
 import xyz.janboerman.scalaloader.ScalaRelease;
 import xyz.janboerman.scalaloader.bytecode.AsmConstants;
 import xyz.janboerman.scalaloader.bytecode.Called;
 import xyz.janboerman.scalaloader.dependency.LibraryClassLoader;
 import xyz.janboerman.scalaloader.util.ClassLoaderUtils;
+import xyz.janboerman.scalaloader.util.ClassLookupResult;
+import xyz.janboerman.scalaloader.util.ClassNameIndex;
+import xyz.janboerman.scalaloader.util.NegativeLookupCache;
+import xyz.janboerman.scalaloader.util.StartupTimings;
+import xyz.janboerman.scalaloader.util.TransformedClassCache;
 import xyz.janboerman.scalaloader.bytecode.TransformerRegistry;
 import xyz.janboerman.scalaloader.compat.Compat;
+import xyz.janboerman.scalaloader.compat.FlightRecording;
 import xyz.janboerman.scalaloader.compat.Platform;
 import xyz.janboerman.scalaloader.plugin.description.ApiVersion;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterClassLoader;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterDescription;
+import xyz.janboerman.scalaloader.plugin.runtime.AdapterGenerator;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassDefineResult;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassFile;
 import xyz.janboerman.scalaloader.plugin.runtime.ClassGenerator;
+import xyz.janboerman.scalaloader.plugin.runtime.PersistedClassAliases;
 import xyz.janboerman.scalaloader.plugin.runtime.PersistentClasses;
 
 import java.io.*;
@@ -42,8 +51,9 @@ import java.security.CodeSigner;
 import java.security.CodeSource;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.jar.*;
+import java.util.logging.Level;
 
 /**
  * ClassLoader that loads {@link ScalaPlugin}s.
@@ -56,6 +66,8 @@ public class ScalaPluginClassLoader extends URLClassLoader {
         registerAsParallelCapable();
     }
 
+    private static final int MAX_MISSING_CLASSES = 4096;
+
     private final String scalaVersion;
     private final ScalaRelease scalaRelease;
     private final ScalaPluginLoader pluginLoader;
@@ -63,14 +75,25 @@ public class ScalaPluginClassLoader extends URLClassLoader {
     private final Map<String, Object> extraPluginYaml;
     private final File pluginJarFile;
     private final JarFile jarFile;
+    private final ClassNameIndex classNameIndex;
     private final ApiVersion apiVersion;
     private final String mainClassName;
     private final TransformerRegistry transformerRegistry;
 
     private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final NegativeLookupCache missingClasses = new NegativeLookupCache(MAX_MISSING_CLASSES);
     private final ScalaPlugin plugin;
     private final PersistentClasses persistentClasses;
+    //the names of the classes that were persisted by an earlier run. they are defined when they are needed.
+    private Set<String> persistedClassNames = Compat.emptySet();
+    private final Map<String, Supplier<Class<?>>> persistedClassAliases = new HashMap<>();
     private final LibraryClassLoader libraryLoader;
+    //generated adapters that don't depend on the plugin are shared with other plugins that use the same scala library.
+    private final AdapterClassLoader adapterLoader;
+    private final TransformedClassCache.Scope transformedClassCache;
+    //the code signers of a class in a signed jar are only known once its entry is read, so those classes are not taken from the cache.
+    private final boolean signed;
+    private final StartupTimings startupTimings;
 
     /**
      * Construct a ClassLoader that loads classes for {@link ScalaPlugin}s.
@@ -97,6 +120,8 @@ public class ScalaPluginClassLoader extends URLClassLoader {
                                      TransformerRegistry transformerRegistry,
                                      Collection<File> dependencies) throws IOException, ScalaPluginLoaderException {
         super(urls, parent);
+        this.startupTimings = StartupTimings.of(pluginJarFile);
+        long start = System.nanoTime();
 
         this.pluginLoader = pluginLoader;
         this.scalaVersion = parent.getScalaVersion();
@@ -106,34 +131,120 @@ public class ScalaPluginClassLoader extends URLClassLoader {
         this.extraPluginYaml = extraPluginYaml;
         this.pluginJarFile = pluginJarFile;
         this.jarFile = Compat.jarFile(pluginJarFile);
+        this.classNameIndex = ClassNameIndex.of(jarFile);
+        this.signed = ClassLoaderUtils.isSigned(jarFile);
         this.apiVersion = apiVersion;
         this.mainClassName = mainClassName;
         this.transformerRegistry = transformerRegistry;
+        this.transformedClassCache = createTransformedClassCache(pluginLoader.getScalaLoader(), server, pluginJarFile, apiVersion, dependencies);
 
-        this.libraryLoader = new LibraryClassLoader(dependencies.toArray(new File[dependencies.size()]),
+        if (!dependencies.isEmpty() && pluginLoader.getScalaLoader().isSharingLibraries()) {
+            //plugins that use the same libraries share the classes of those libraries
+            this.libraryLoader = pluginLoader.getSharedLibraryClassLoaders().acquire(dependencies.toArray(new File[dependencies.size()]),
+                                                    parent,
+                                                    apiVersion,
+                                                    pluginLoader.getScalaLoader().getLogger(),
+                                                    server,
+                                                    createTransformedClassCache(pluginLoader.getScalaLoader(), server, null, apiVersion, dependencies));
+        } else {
+            this.libraryLoader = new LibraryClassLoader(dependencies.toArray(new File[dependencies.size()]),
                                                     parent,
                                                     pluginLoader.getScalaLoader().getLogger(),
                                                     this,
-                                                    transformerRegistry);
-        try {
-            this.plugin = createPluginInstance((Class<? extends ScalaPlugin>) Class.forName(mainClassName, true, this));
-        } catch (ClassNotFoundException e) {
-            throw new ScalaPluginLoaderException("Could not find plugin's main class: " + mainClassName, e);
+                                                    transformerRegistry,
+                                                    transformedClassCache,
+                                                    startupTimings);
         }
-        this.persistentClasses = new PersistentClasses(plugin);
-        for (ClassFile classFile : this.persistentClasses.load()) {
-            ClassDefineResult cdr = getOrDefineClass(classFile.getClassName(), name -> classFile.getByteCode(false), false);
-            if (cdr.isNew()) {
-                Class<?> clazz = cdr.getClassDefinition();
-                if (ConfigurationSerializable.class.isAssignableFrom(clazz)) {
-                    Class<? extends ConfigurationSerializable> cls = (Class<? extends ConfigurationSerializable>) clazz;
-                    ConfigurationSerialization.registerClass(cls, ConfigurationSerialization.getAlias(cls));
+
+        AdapterClassLoader acquiredAdapterLoader = null;
+        try {
+            this.adapterLoader = acquiredAdapterLoader = pluginLoader.getSharedAdapterClassLoaders().acquire(parent,
+                                                    pluginLoader.getScalaLoader().getDataFolder(),
+                                                    pluginLoader.getScalaLoader().getLogger());
+            startupTimings.record(StartupTimings.Phase.CLASSLOADER, start);
+
+            try {
+                start = System.nanoTime();
+                Class<? extends ScalaPlugin> mainClass = (Class<? extends ScalaPlugin>) Class.forName(mainClassName, true, this);
+                startupTimings.record(StartupTimings.Phase.MAIN_CLASS_LOAD, start);
+
+                start = System.nanoTime();
+                this.plugin = createPluginInstance(mainClass);
+                startupTimings.record(StartupTimings.Phase.CONSTRUCTOR, start);
+            } catch (ClassNotFoundException e) {
+                throw new ScalaPluginLoaderException("Could not find plugin's main class: " + mainClassName, e);
+            }
+
+            start = System.nanoTime();
+            this.persistentClasses = new PersistentClasses(plugin);
+            Map<String, String> persistedClasses = this.persistentClasses.load();
+            //only register the aliases now, ConfigurationSerialization needs them before any config is loaded.
+            for (Map.Entry<String, String> entry : persistedClasses.entrySet()) {
+                String className = entry.getKey();
+                String alias = entry.getValue();
+                if (alias != null) {
+                    Supplier<Class<?>> definer = () -> definePersistedClass(className);
+                    PersistedClassAliases.register(alias, definer);
+                    persistedClassAliases.put(alias, definer);
                 }
             }
+            this.persistedClassNames = persistedClasses.keySet();
+            startupTimings.record(StartupTimings.Phase.PERSISTENT_CLASSES, start);
+        } catch (Throwable e) {
+            //this classloader will never be closed, so give back the libraries and the adapters now, otherwise the shared classloaders are never closed.
+            if (acquiredAdapterLoader != null) {
+                pluginLoader.getSharedAdapterClassLoaders().release(acquiredAdapterLoader);
+            }
+            try {
+                pluginLoader.getSharedLibraryClassLoaders().release(libraryLoader);
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            //the classes that were defined already must not hide the classes of a classloader that is created for the same plugin later.
+            unpublishClasses();
+            try {
+                super.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            try {
+                jarFile.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
         }
     }
 
 
+    private TransformedClassCache.Scope createTransformedClassCache(ScalaLoader scalaLoader, Server server, File pluginJarFile, ApiVersion apiVersion, Collection<File> dependencies) {
+        TransformedClassCache cache = scalaLoader.getTransformedClassCache();
+        if (cache == null) return null;
+
+        //every component that can influence the outcome of the transformations is part of the key.
+        //the dependencies are included because the configurationserializable transformations inspect the types on the classpath.
+        List<String> components = new ArrayList<>();
+        components.add(scalaLoader.getDescription().getVersion());
+        components.add(server.getName() + " " + server.getVersion() + " " + server.getBukkitVersion());
+        components.add(String.valueOf(apiVersion));
+        components.add(scalaVersion);
+        try {
+            if (pluginJarFile != null) {
+                components.add(cache.hashJar(pluginJarFile));
+            } else {
+                //the libraries are shared by multiple plugins
+                components.add("shared-libraries");
+            }
+            for (File dependency : dependencies) {
+                components.add(cache.hashJar(dependency));
+            }
+        } catch (IOException e) {
+            scalaLoader.getLogger().log(Level.WARNING, "Could not compute hash of plugin jar file or its dependencies, transformed classes of " + (pluginJarFile != null ? pluginJarFile.getName() : "shared libraries") + " will not be cached.", e);
+            return null;
+        }
+        return cache.scope(components.toArray(new String[0]));
+    }
+
     /**
      * Get the ScalaPlugin loaded by this class loader.
      * @return the plugin
@@ -142,6 +253,14 @@ public class ScalaPluginClassLoader extends URLClassLoader {
         return plugin;
     }
 
+    /**
+     * Get the timings of the phases of loading the plugin.
+     * @return the timings
+     */
+    StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+
     /**
      * Get the version of Scala used for the plugin loaded by this class loader.
      * @return the scala version
@@ -166,6 +285,22 @@ public class ScalaPluginClassLoader extends URLClassLoader {
         return pluginLoader;
     }
 
+    /**
+     * Get the index of the classes in the plugin's jar file.
+     * @return the class name index
+     */
+    ClassNameIndex getClassNameIndex() {
+        return classNameIndex;
+    }
+
+    /**
+     * Get the index of the classes in the plugin's library jar files.
+     * @return the class name index
+     */
+    ClassNameIndex getLibraryClassNameIndex() {
+        return libraryLoader.getClassNameIndex();
+    }
+
     /**
      * Get the server the plugin runs on.
      * @return the server
@@ -243,18 +378,14 @@ public class ScalaPluginClassLoader extends URLClassLoader {
             }
         }
 
-        ClassNotFoundException fallback = new ClassNotFoundException(name);
-        Class<?> clazz;
+        //lookupClass tries to find the class in the ScalaPlugin's jar first,
+        //if that fails, it attempts to find the class in one of the library dependencies using LibraryClassLoader,
+        //if that fails, it attempts to find the class in other ScalaPlugins using the ScalaPluginLoader,
+        ClassLookupResult lookupResult = lookupClass(name, true);
+        if (lookupResult.isFound()) return lookupResult.getClassDefinition();
 
-        try {
-            //findClass tries to find the class in the ScalaPlugin's jar first,
-            //if that fails, it attempts to find the class in one of the library dependencies using LibraryClassLoader,
-            //if that fails, it attempts to find the class in other ScalaPlugins using the ScalaPluginLoader,
-            clazz = findClass(name, true);
-            if (clazz != null) return clazz;
-        } catch (ClassNotFoundException e) {
-            fallback.addSuppressed(e);
-        }
+        ClassNotFoundException fallback = lookupResult.toException(name);
+        Class<?> clazz;
 
         try {
             if (name.startsWith("xyz.janboerman.scalaloader")) {
@@ -266,6 +397,10 @@ public class ScalaPluginClassLoader extends URLClassLoader {
                         || name.startsWith("xyz.janboerman.scalaloader.commands")
                         || name.startsWith("xyz.janboerman.scalaloader.dependency")
                         || name.equals("xyz.janboerman.scalaloader.plugin.runtime.PersistentClasses")
+                        || name.equals("xyz.janboerman.scalaloader.plugin.runtime.ClassFileArchive")
+                        || name.equals("xyz.janboerman.scalaloader.plugin.runtime.PersistedClassAliases")
+                        || name.equals("xyz.janboerman.scalaloader.plugin.runtime.AdapterClassLoader")
+                        || name.equals("xyz.janboerman.scalaloader.plugin.runtime.SharedAdapterClassLoaders")
                 ) throw new ClassNotFoundException("Can't access internal class: " + name);
             }
 
@@ -316,51 +451,66 @@ public class ScalaPluginClassLoader extends URLClassLoader {
      * @apiNote this method never returns null, it either returns a class, or throws an exception or error
      */
     public Class<?> findClass(final String name, final boolean searchInScalaPluginLoader) throws ClassNotFoundException {
+        ClassLookupResult lookupResult = lookupClass(name, searchInScalaPluginLoader);
+        if (lookupResult.isFound()) return lookupResult.getClassDefinition();
+
+        //unfortunately all hope is lost if we get here
+        throw lookupResult.toException(name);
+    }
+
+    /**
+     * Finds and loads a class used by the ScalaPlugin loaded by this ClassLoader, without throwing an exception when the class can't be found.
+     *
+     * @param name the name of the class to be found
+     * @param searchInScalaPluginLoader whether or not to search in the 'global' classes cache of the {@link ScalaPluginLoader}.
+     * @return the result of the lookup
+     * @see #findClass(String, boolean)
+     */
+    ClassLookupResult lookupClass(final String name, final boolean searchInScalaPluginLoader) {
+        Object event = FlightRecording.beginFindClass();
+
         //search in cache
         Class<?> found = classes.get(name);
-        if (found != null) return found;
+        if (found != null) {
+            FlightRecording.endFindClass(event, startupTimings.getPluginName(), name, true, "cache");
+            return ClassLookupResult.found(found);
+        }
+
+        Throwable failure = null;
+        String servedBy = null;
+
+        //fail fast for classes that were not found in our own jar and our libraries before.
+        //only those misses are cached: other plugins and the parent classloader can gain classes without us noticing.
+        final long generation = pluginLoader.getClassPathGeneration();
+        final boolean knownMissing = missingClasses.isMissing(name, generation);
 
         //search in our own jar
-        try {
+        if (!knownMissing) {
             //do a manual search so that we can transform the class bytes.
-            String path = name.replace('.', '/') + ".class";
-            JarEntry jarEntry = jarFile.getJarEntry(path);  //if running on Paper and Java 11 or higher, this will find the class meant for the newest compatible release of Java. (Multi-Release JARs ftw!)
+            String internalName = name.replace('.', '/');
+            String path = internalName + ".class";
+            //consult the index first so that classes that are not in our jar don't need a lookup in the jar's central directory.
+            JarEntry jarEntry = classNameIndex.contains(internalName) ? jarFile.getJarEntry(path) : null;  //if running on Paper and Java 11 or higher, this will find the class meant for the newest compatible release of Java. (Multi-Release JARs ftw!)
             // issue link: https://github.com/PaperMC/Paper/issues/4841
             // commit that introduced the patch: https://github.com/PaperMC/Paper/commit/f15abda5627005fcdf6da4b43f2636b17d41c96c
 
             if (jarEntry != null) {
                 //a classfile exists for the given class name
 
-                try (InputStream inputStream = jarFile.getInputStream(jarEntry)) {
-                    byte[] classBytes = Compat.readAllBytes(inputStream);
-
-                    //apply generic transformations
-                    classBytes = ClassLoaderUtils.transform(name, classBytes, this, transformerRegistry, this, getPluginLoader().getScalaLoader().getLogger());
-
-                    //apply main class transformations
-                    {
-                        ClassWriter classWriter = new ClassWriter(0) {
-                            @Override
-                            protected ClassLoader getClassLoader() {
-                                return ScalaPluginClassLoader.this;
-                            }
-                        };
-
-                        ClassVisitor classVisitor = classWriter;
-
-                        //apply main class transformations
-                        if (name.equals(mainClassName)) {
-                            for (BiFunction<ClassVisitor, String, ClassVisitor> mainClassTransformer : transformerRegistry.mainClassTransformers) {
-                                classVisitor = mainClassTransformer.apply(classVisitor, mainClassName);
-                            }
+                try {
+                    //classes that were transformed before don't need to be read from the jar at all.
+                    final TransformedClassCache.Scope cache = signed ? null : transformedClassCache;
+                    byte[] classBytes = ClassLoaderUtils.getCachedTransformation(name, this, startupTimings, cache);
+                    long start;
+                    if (classBytes == null) {
+                        start = System.nanoTime();
+                        try (InputStream inputStream = jarFile.getInputStream(jarEntry)) {
+                            classBytes = Compat.readAllBytes(inputStream);
                         }
+                        startupTimings.record(StartupTimings.Phase.CLASS_READ, start);
 
-                        //if there were any transformers, then apply the transformations!
-                        if (classVisitor != classWriter) {
-                            ClassReader classreader = new ClassReader(classBytes);
-                            classreader.accept(classVisitor, 0);
-                            classBytes = classWriter.toByteArray();
-                        }
+                        //apply generic and main class transformations
+                        classBytes = ClassLoaderUtils.transform(name, classBytes, this, transformerRegistry, this, getPluginLoader().getScalaLoader().getLogger(), mainClassName, cache, startupTimings);
                     }
 
                     //dump the class to the log in case classloading debugging was enabled for this class
@@ -395,42 +545,64 @@ public class ScalaPluginClassLoader extends URLClassLoader {
                     //define the class
                     CodeSigner[] codeSigners = jarEntry.getCodeSigners();
                     CodeSource codeSource = new CodeSource(getURLs()[0], codeSigners);
+                    start = System.nanoTime();
                     found = defineClass(name, classBytes, 0, classBytes.length, codeSource);
+                    startupTimings.record(StartupTimings.Phase.DEFINE_CLASS, start);
+                    servedBy = "plugin jar";
                 } catch (IOException e) {
-                    throw new ClassNotFoundException(name, e);
+                    failure = e;    //continue onwards
                 }
             }
+        }
 
-
-        } catch (ClassNotFoundException e) { /*ignored - continue onwards*/ }
+        //search in the generated classes that were persisted by an earlier run
+        if (found == null && !knownMissing) {
+            found = definePersistedClass(name);
+            if (found != null) {
+                servedBy = "persisted classes";
+            }
+        }
 
         //search in library dependencies
-        if (found == null) {
-            try {
-                /* It is important here that we call libraryLoader.findClass(name) and not libraryLoader.loadClass(name)
-                 * because we don't want to find classes from the parent classloader of the libraryLoader!
-                 */
-                found = libraryLoader.findClass(name);
-            } catch (ClassNotFoundException e) { /*ignored - continue onwards*/ }
+        if (found == null && !knownMissing) {
+            /* It is important here that we call libraryLoader.lookupClass(name) and not libraryLoader.loadClass(name)
+             * because we don't want to find classes from the parent classloader of the libraryLoader!
+             */
+            ClassLookupResult libraryResult = libraryLoader.lookupClass(name);
+            if (libraryResult.isFound()) {
+                found = libraryResult.getClassDefinition();
+                servedBy = "libraries";
+            } else if (failure == null) {
+                failure = libraryResult.getCause();
+            }
+
+            if (found == null && failure == null) {
+                missingClasses.markMissing(name, generation);
+            }
         }
 
         //search in other ScalaPlugins
         if (found == null && searchInScalaPluginLoader) {
-            try {
-                found = pluginLoader.getScalaPluginClass(getScalaRelease(), name); /*Do I want this here? not in the loadClass method?*/
-            } catch (ClassNotFoundException e) { /*ignored - continue onwards*/ }
+            ClassLookupResult pluginResult = pluginLoader.lookupScalaPluginClass(getScalaRelease(), name); /*Do I want this here? not in the loadClass method?*/
+            if (pluginResult.isFound()) {
+                found = pluginResult.getClassDefinition();
+                servedBy = "other scalaplugin";
+            } else if (failure == null) {
+                failure = pluginResult.getCause();
+            }
         }
 
+        FlightRecording.endFindClass(event, startupTimings.getPluginName(), name, false, servedBy);
+
         if (found == null) {
-            //unfortunately all hope is lost if we get here
-            throw new ClassNotFoundException(name);
+            return failure == null ? ClassLookupResult.notFound() : ClassLookupResult.failed(failure);
         }
 
         //cache the class, possibly racing against other threads that try to load the same class.
         found = addClass(found);
 
         //we don't search in the parent classloader explicitly - this is done by the loadClass method.
-        return found;
+        return ClassLookupResult.found(found);
     }
 
     /**
@@ -473,7 +645,57 @@ public class ScalaPluginClassLoader extends URLClassLoader {
             return ClassDefineResult.oldClass(oldClass);
         }
 
-        byte[] byteCode = classGenerator.generate(className);
+        Object event = FlightRecording.beginGenerateClass();
+        //classes that were persisted by an earlier run don't need to be generated or persisted again.
+        byte[] byteCode = persistedClassNames.contains(className) ? persistentClasses.read(className) : null;
+        if (byteCode != null) {
+            return defineGeneratedClass(event, className, byteCode, false);
+        }
+
+        byteCode = classGenerator.generate(className);
+        return defineGeneratedClass(event, className, byteCode, persist);
+    }
+
+    /**
+     * Generates an adapter class, or gets a cached version if the adapter was already defined.
+     * Adapters that don't depend on the plugin are shared with the other ScalaPlugins that use the same Scala standard library,
+     * so that they are generated, defined and persisted only once. Other adapters are generated for this plugin only,
+     * using the class name {@link AdapterDescription#getClassName()}.
+     *
+     * @param description the description of the adapter
+     * @param adapterGenerator the generator for the adapter
+     * @return the result of a class definition
+     */
+    public ClassDefineResult getOrDefineAdapterClass(AdapterDescription description, AdapterGenerator adapterGenerator) {
+        if (description.isShareable(getParent())) {
+            return adapterLoader.getOrDefineClass(description, adapterGenerator);
+        } else {
+            return getOrDefineClass(description.getClassName(), className -> adapterGenerator.generate(className, this), true);
+        }
+    }
+
+    /**
+     * Defines a class that was persisted by an earlier run.
+     *
+     * @param className the name of the class
+     * @return the class, or null if the class was not persisted or could not be read
+     */
+    private Class<?> definePersistedClass(String className) {
+        if (!persistedClassNames.contains(className)) return null;
+
+        final Class<?> oldClass = classes.get(className);
+        if (oldClass != null) {
+            return oldClass;
+        }
+
+        Object event = FlightRecording.beginGenerateClass();
+        byte[] byteCode = persistentClasses.read(className);
+        if (byteCode == null) return null;
+
+        return defineGeneratedClass(event, className, byteCode, false).getClassDefinition();
+    }
+
+    private ClassDefineResult defineGeneratedClass(Object event, String className, byte[] byteCode, boolean persist) {
         debugClass(className, byteCode);
 
         boolean isNew;
@@ -482,7 +704,9 @@ public class ScalaPluginClassLoader extends URLClassLoader {
         synchronized (getClassLoadingLock(className)) {
             Class<?> existingClass = classes.get(className);
             if (existingClass == null) {
+                long start = System.nanoTime();
                 Class<?> definition = defineClass(className, byteCode, 0, byteCode.length);
+                startupTimings.record(StartupTimings.Phase.DEFINE_CLASS, start);
                 clazz = addClass(definition);
                 isNew = true;
             } else {
@@ -491,8 +715,11 @@ public class ScalaPluginClassLoader extends URLClassLoader {
             }
         }
 
+        FlightRecording.endGenerateClass(event, startupTimings.getPluginName(), className, isNew, persist, byteCode.length);
+
         if (isNew) {
             if (persist) {
+                //only queues the class, this may run on the main thread.
                 persistentClasses.save(new ClassFile(className, byteCode));
             }
             return ClassDefineResult.newClass(clazz);
@@ -741,7 +968,13 @@ public class ScalaPluginClassLoader extends URLClassLoader {
     @Deprecated
     //in the future when the dependency api is added, annotate this with @Deprecated and @Replaced and redirect calls at class-load time
     public final void addUrl(URL url) {
+        if (pluginLoader.getSharedLibraryClassLoaders().isShared(libraryLoader)) {
+            getPluginLoader().getScalaLoader().getLogger().warning("Plugin " + pluginJarFile.getName() + " adds url " + url + " to its libraries which are shared with other plugins. "
+                    + "Classes from this url will also be visible to those plugins.");
+        }
         libraryLoader.addURL(url);
+        //classes that could not be found before might be in the new jar.
+        pluginLoader.invalidateMissingClasses();
     }
 
     /**
@@ -758,6 +991,32 @@ public class ScalaPluginClassLoader extends URLClassLoader {
 
     @Override
     public void close() throws IOException {
+        //write the generated classes that are still queued, the background writer won't get another chance.
+        if (persistentClasses != null) {
+            persistentClasses.flush();
+        }
+        unpublishClasses();
+
+        try {
+            super.close();
+        } finally {
+            try {
+                pluginLoader.getSharedLibraryClassLoaders().release(libraryLoader);
+            } finally {
+                if (adapterLoader != null) {
+                    pluginLoader.getSharedAdapterClassLoaders().release(adapterLoader);
+                }
+                jarFile.close();
+            }
+        }
+    }
+
+    //removes the classes of this classloader from the places where other classloaders can find them.
+    private void unpublishClasses() {
+        for (Map.Entry<String, Supplier<Class<?>>> entry : persistedClassAliases.entrySet()) {
+            PersistedClassAliases.unregister(entry.getKey(), entry.getValue());
+        }
+
         for (Map.Entry<String, Class<?>> entry : classes.entrySet()) {
             String className = entry.getKey();
             Class<?> clazz = entry.getValue();
@@ -768,11 +1027,5 @@ public class ScalaPluginClassLoader extends URLClassLoader {
             }
         }
         classes.clear();
-
-        try {
-            super.close();
-        } finally {
-            jarFile.close();
-        }
     }
-}
\ No newline at end of file
+}
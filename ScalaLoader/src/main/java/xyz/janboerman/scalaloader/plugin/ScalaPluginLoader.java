@@ -6,7 +6,6 @@ import org.bukkit.event.Event;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.*;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.objectweb.asm.ClassReader;
 import org.yaml.snakeyaml.Yaml;
 import xyz.janboerman.scalaloader.DebugSettings;
 import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
@@ -20,11 +19,17 @@ import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScan
 import xyz.janboerman.scalaloader.configurationserializable.transform.GlobalScanner;
 import xyz.janboerman.scalaloader.configurationserializable.transform.PluginTransformer;
 import xyz.janboerman.scalaloader.dependency.PluginYamlLibraryLoader;
+import xyz.janboerman.scalaloader.dependency.SharedLibraryClassLoaders;
 import xyz.janboerman.scalaloader.event.EventBus;
 import xyz.janboerman.scalaloader.event.plugin.ScalaPluginDisableEvent;
 import xyz.janboerman.scalaloader.event.plugin.ScalaPluginEnableEvent;
 import xyz.janboerman.scalaloader.plugin.description.ApiVersion;
 import xyz.janboerman.scalaloader.plugin.description.DescriptionScanner;
+import xyz.janboerman.scalaloader.plugin.runtime.SharedAdapterClassLoaders;
+import xyz.janboerman.scalaloader.util.ClassLookupResult;
+import xyz.janboerman.scalaloader.util.ClassNameIndex;
+import xyz.janboerman.scalaloader.util.StartupTimings;
+import xyz.janboerman.scalaloader.util.TransformedClassCache;
 
 import java.io.*;
 import java.lang.reflect.Field;
@@ -32,15 +37,24 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BinaryOperator;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class ScalaPluginLoader implements PluginLoader {
@@ -55,16 +69,30 @@ public class ScalaPluginLoader implements PluginLoader {
 
     private final ConcurrentMap<ScalaRelease, ConcurrentMap<String, Class<?>>> sharedScalaPluginClasses = new ConcurrentHashMap<>();
     private final ConcurrentMap<ScalaRelease, CopyOnWriteArrayList<ScalaPluginClassLoader>> sharedScalaPluginClassLoaders = new ConcurrentHashMap<>();
+    //the classloaders of the scala plugins, indexed by the names of the classes and packages in their jars and library jars, in the order in which they were indexed
+    private final ConcurrentMap<ScalaRelease, ConcurrentMap<String, ScalaPluginClassLoader[]>> scalaPluginClassOwners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ScalaRelease, ConcurrentMap<String, ScalaPluginClassLoader[]>> scalaPluginPackageOwners = new ConcurrentHashMap<>();
+    //incremented whenever classes that could not be found before may have become available
+    private final AtomicLong classPathGeneration = new AtomicLong();
     private final ScalaCompatMap scalaCompatMap = new ScalaCompatMap();
     private final Map<Path, PluginJarScanResult> preScannedPluginJars = new ConcurrentHashMap<>();
+    private final Map<Path, CompletableFuture<PreparedPlugin>> preparedPluginJars = new ConcurrentHashMap<>();
+    private PluginJarScanCache pluginJarScanCache;
 
     private final Map<String, ScalaPlugin> scalaPlugins = new HashMap<>();
     private final Map<Path, ScalaPlugin> scalaPluginsByAbsolutePath = new HashMap<>();  //if the value is null, that means it's a JavaPlugin
     private final Collection<ScalaPlugin> scalaPluginsView = Collections.unmodifiableCollection(scalaPlugins.values());
-    private final Set<File> scalapluginsWaitingForDependencies = new LinkedHashSet<>();
+    //the scala plugins whose descriptions were derived from their bytecode, but which are not instantiated yet
+    private final Map<Path, DescribedScalaPlugin> describedScalaPlugins = new HashMap<>();
+    private final WaitingPlugins scalapluginsWaitingForDependencies = new WaitingPlugins();
 
     private EventBus eventBus;
     private PluginYamlLibraryLoader pluginYamlLibraryLoader;
+    private final SharedLibraryClassLoaders sharedLibraryClassLoaders = new SharedLibraryClassLoaders();
+    private final SharedAdapterClassLoaders sharedAdapterClassLoaders = new SharedAdapterClassLoaders();
+
+    //created lazily, and shut down when ScalaLoader is disabled so that its threads don't outlive a reload.
+    private ForkJoinPool scanPool;
 
     private static final Comparator<DescriptionScanner> descriptionComparator;
     static {
@@ -109,7 +137,11 @@ public class ScalaPluginLoader implements PluginLoader {
         //set fields
         ScalaLoader scalaLoader = getScalaLoader();
         this.eventBus = new EventBus(server.getPluginManager());
-        this.pluginYamlLibraryLoader = new PluginYamlLibraryLoader(scalaLoader.getLogger(), new File(scalaLoader.getDataFolder(), "libraries"));
+        this.pluginYamlLibraryLoader = new PluginYamlLibraryLoader(scalaLoader.getLogger(), new File(scalaLoader.getDataFolder(), "libraries"),
+                scalaLoader.isUsingLibraryLockFiles() ? new File(scalaLoader.getDataFolder(), "library-locks") : null,
+                scalaLoader.getMavenCentralUrl());
+        this.pluginJarScanCache = new PluginJarScanCache(new File(scalaLoader.getDataFolder(), "cache" + File.separator + "plugin-scans.yml"),
+                scalaLoader.getDescription().getVersion(), scalaLoader.getLogger());
 
         //pre-scan plugins so that scala-versions can be detected BEFORE the main classes are instantiated!
         //this is just a best-effort thing because the PluginManager may load plugins at arbitrary points in time.
@@ -120,18 +152,35 @@ public class ScalaPluginLoader implements PluginLoader {
             File[] pluginJarFiles = pluginsFolder.listFiles((dir, name) -> Arrays.stream(getPluginFileFilters())
                     .anyMatch(pattern -> pattern.matcher(name).find()));
             if (pluginJarFiles != null) {
-                for (File pluginJarFile : pluginJarFiles) {
-                    try {
-                        PluginJarScanResult scanResult = scanJar(pluginJarFile);
+                //scan the jars in parallel, but process the results in the same order as the files were listed.
+                List<Object/*PluginJarScanResult | IOException*/> scanResults = inScanPool(() -> Arrays.stream(pluginJarFiles)
+                        .parallel()
+                        .map(pluginJarFile -> {
+                            try {
+                                return scanJarCached(pluginJarFile);
+                            } catch (IOException e) {
+                                return e;
+                            }
+                        })
+                        .collect(Collectors.toList()));
+
+                for (int i = 0; i < pluginJarFiles.length; i++) {
+                    File pluginJarFile = pluginJarFiles[i];
+                    Object scanResultOrError = scanResults.get(i);
+                    if (scanResultOrError instanceof PluginJarScanResult) {
+                        PluginJarScanResult scanResult = (PluginJarScanResult) scanResultOrError;
                         if (!scanResult.isJavaPluginExplicitly) {
                             preScannedPluginJars.put(pluginJarFile.toPath().toAbsolutePath(), scanResult);
                             scanResult.mainClassCandidate.getScalaVersion().ifPresent(scalaCompatMap::add);
                         }
-                    } catch (IOException e) {
+                    } else {
+                        IOException e = (IOException) scanResultOrError;
                         getScalaLoader().getLogger().log(Level.SEVERE, "Could not read plugin jar file: " + pluginJarFile.getName(), e);
                         //not much else we can do here, throwing an exception would be inappropriate.
                     }
                 }
+
+                pluginJarScanCache.save();
             }
         }
     }
@@ -183,14 +232,117 @@ public class ScalaPluginLoader implements PluginLoader {
     }
 
 
-    private static PluginJarScanResult scanJar(File file) throws IOException {
-        Logger logger = getInstance().getScalaLoader().getLogger();
+    private synchronized ForkJoinPool getScanPool() {
+        if (scanPool == null || scanPool.isShutdown()) {
+            scanPool = new ForkJoinPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8)), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("ScalaLoader-Scan-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return scanPool;
+    }
+
+    /**
+     * Writes the results of the plugin jar scans to disk, if any jars were scanned since the last time they were written.
+     * Called by ScalaLoader once the plugins are loaded, so that the cache is written once instead of once per scanned jar.
+     */
+    public void savePluginJarScanCache() {
+        pluginJarScanCache.save();
+    }
+
+    /**
+     * Shuts down the threads that are used to scan plugin jars. Called by ScalaLoader when it is disabled.
+     * If plugins are scanned afterwards, new threads are started.
+     */
+    public synchronized void shutdownScanPool() {
+        if (scanPool != null) {
+            scanPool.shutdown();
+            scanPool = null;
+        }
+    }
+
+    /**
+     * Runs a task in the pool that is used to scan plugin jars. Parallel streams used by the task will use the same pool.
+     * The pool is bounded so that scanning doesn't starve the rest of the server.
+     * If the current thread already belongs to the pool, then the task is run directly.
+     */
+    private <T> T inScanPool(Callable<T> task) {
+        ForkJoinPool pool = getScanPool();
+        try {
+            if (ForkJoinTask.getPool() == pool) return task.call();
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning plugin jars", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class ClassEntryScanResult {
+        private final String entryName;
+        private final DescriptionScanner descriptionScanner;
+        private final GlobalScanResult globalScanResult;
+
+        private ClassEntryScanResult(String entryName, DescriptionScanner descriptionScanner, GlobalScanResult globalScanResult) {
+            this.entryName = entryName;
+            this.descriptionScanner = descriptionScanner;
+            this.globalScanResult = globalScanResult;
+        }
+    }
+
+    private static ClassEntryScanResult scanClassEntry(JarFile jarFile, JarEntry jarEntry) {
+        try (InputStream classBytesInputStream = jarFile.getInputStream(jarEntry)) {
+            byte[] classBytes = Compat.readAllBytes(classBytesInputStream);
+
+            //scan class to see if this class is the best candidate for the main class
+            DescriptionScanner descriptionScanner = new DescriptionScanner(classBytes);
+            //scan class to see if this class is configurationserializable and wants to register a plugin transformer:
+            GlobalScanResult configSerResult = new GlobalScanner().scan(classBytes);
+
+            return new ClassEntryScanResult(jarEntry.getName(), descriptionScanner, configSerResult);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private PluginJarScanResult scanJarCached(File file) throws IOException {
+        long start = System.nanoTime();
+        PluginJarScanResult result = pluginJarScanCache.get(file);
+        if (result == null) {
+            result = scanJar(file);
+            pluginJarScanCache.put(file, result);
+        }
+        //don't create timings for jars that are not ScalaPlugins.
+        if (!result.isJavaPluginExplicitly && result.mainClassCandidate != null) {
+            StartupTimings.of(file).record(StartupTimings.Phase.JAR_SCAN, start);
+        }
+        return result;
+    }
+
+    private PluginJarScanResult scanJar(File file) throws IOException {
+        try (JarFile jarFile = Compat.jarFile(file)) {
+            return scanJar(jarFile);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private PluginJarScanResult scanJar(JarFile jarFile) throws IOException {
+        Logger logger = getScalaLoader().getLogger();
 
         PluginJarScanResult result = new PluginJarScanResult();
         Map<String, Object> pluginYamlData = null;
 
-        JarFile jarFile = Compat.jarFile(file);
-
         {   //short-circuit: check whether the Plugin extends JavaPlugin
             JarEntry pluginYmlEntry = jarFile.getJarEntry("plugin.yml");
             //If it contains a main class and it doesn't extend ScalaPlugin directly we should try to delegate to the JavaPluginLoader
@@ -208,9 +360,7 @@ public class ScalaPluginLoader implements PluginLoader {
 
                     if (pluginYamlDefinedMainJarEntry != null) {
                         InputStream classBytesInputStream = jarFile.getInputStream(pluginYamlDefinedMainJarEntry);
-                        DescriptionScanner yamlMainScanner = new DescriptionScanner(classBytesInputStream); //TODO use a less powerful scanner implementation here?
-
-                        if (yamlMainScanner.extendsJavaPlugin()) {
+                        if (DescriptionScanner.extendsJavaPlugin(classBytesInputStream)) {
                             result.isJavaPluginExplicitly = true;
                         }
                     }
@@ -220,38 +370,40 @@ public class ScalaPluginLoader implements PluginLoader {
 
         if (!result.isJavaPluginExplicitly) {
             TransformerRegistry transformerRegistry = new TransformerRegistry();
+            List<GlobalScanResult> globalScanResults = new ArrayList<>();
             DescriptionScanner mainClassCandidate = null;
             if (pluginYamlData == null) pluginYamlData = new HashMap<>();
 
-            Enumeration<JarEntry> entryEnumeration = jarFile.entries();
-            while (entryEnumeration.hasMoreElements()) {
-                JarEntry jarEntry = entryEnumeration.nextElement();
-                if (jarEntry.getName().endsWith(".class")) {
+            //scan the class entries in parallel.
+            List<JarEntry> classEntries = jarFile.stream()
+                    .filter(jarEntry -> jarEntry.getName().endsWith(".class"))
+                    .collect(Collectors.toList());
+            List<ClassEntryScanResult> classEntryScanResults = inScanPool(() -> classEntries.parallelStream().map(jarEntry -> scanClassEntry(jarFile, jarEntry)).collect(Collectors.toList()));
 
-                    InputStream classBytesInputStream = jarFile.getInputStream(jarEntry);
-                    byte[] classBytes = Compat.readAllBytes(classBytesInputStream);
+            //merge the results in the order of the jar entries, so that the outcome does not depend on thread scheduling.
+            for (ClassEntryScanResult classEntryScanResult : classEntryScanResults) {
+                DescriptionScanner descriptionScanner = classEntryScanResult.descriptionScanner;
 
-                    //scan class to see if this class is the best candidate for the main class
-                    DescriptionScanner descriptionScanner = new DescriptionScanner(classBytes);
-
-                    //Emit a warning when the class does extend ScalaPlugin, but does not have de @Scala or @CustomScala annotation
-                    if (descriptionScanner.extendsScalaPlugin() && !descriptionScanner.getScalaVersion().isPresent()) {
-                        logger.warning("Class " + jarEntry.getName() + " extends ScalaPlugin but does not have the @Scala or @CustomScala annotation.");
-                        //this is just a soft warning and not a hard error because this class itself may be subclassed by the actual main class
-                    }
+                //Emit a warning when the class does extend ScalaPlugin, but does not have de @Scala or @CustomScala annotation
+                if (descriptionScanner.extendsScalaPlugin() && !descriptionScanner.getScalaVersion().isPresent()) {
+                    logger.warning("Class " + classEntryScanResult.entryName + " extends ScalaPlugin but does not have the @Scala or @CustomScala annotation.");
+                    //this is just a soft warning and not a hard error because this class itself may be subclassed by the actual main class
+                }
 
-                    //The smallest element is the best candidate!
-                    mainClassCandidate = BinaryOperator.minBy(descriptionComparator).apply(mainClassCandidate, descriptionScanner);
+                //The smallest element is the best candidate!
+                mainClassCandidate = BinaryOperator.minBy(descriptionComparator).apply(mainClassCandidate, descriptionScanner);
 
-                    //scan class to see if this class is configurationserializable and wants to register a plugin transformer:
-                    final GlobalScanResult configSerResult = new GlobalScanner().scan(new ClassReader(classBytes));
-                    PluginTransformer.addTo(transformerRegistry, configSerResult);
-                    AddVariantTransformer.addTo(transformerRegistry, configSerResult);
+                final GlobalScanResult configSerResult = classEntryScanResult.globalScanResult;
+                PluginTransformer.addTo(transformerRegistry, configSerResult);
+                AddVariantTransformer.addTo(transformerRegistry, configSerResult);
+                if (configSerResult.registersTransformers()) {
+                    globalScanResults.add(configSerResult);
                 }
             }
 
             result.mainClassCandidate = mainClassCandidate;
             result.transformerRegistry = transformerRegistry;
+            result.globalScanResults = globalScanResults;
             result.pluginYaml = pluginYamlData;
         }
 
@@ -272,11 +424,17 @@ public class ScalaPluginLoader implements PluginLoader {
             // this means we are dealing with a JavaPlugin!
             return getJavaPluginLoader().getPluginDescription(file);
         }
+        final DescribedScalaPlugin alreadyDescribed = describedScalaPlugins.get(path);
+        if (alreadyDescribed != null) {
+            // a ScalaPlugin which is not instantiated yet
+            return alreadyDescribed.descriptionFile;
+        }
 
         PluginJarScanResult jarScanResult = preScannedPluginJars.get(path);
         if (jarScanResult == null) {
             try {
-                jarScanResult = scanJar(file);
+                //the scan cache is written once all plugins are loaded, see #savePluginJarScanCache().
+                jarScanResult = scanJarCached(file);
                 if (jarScanResult.isJavaPluginExplicitly) {
                     scalaPluginsByAbsolutePath.put(path, null);
                     return getJavaPluginLoader().getPluginDescription(file);
@@ -288,7 +446,6 @@ public class ScalaPluginLoader implements PluginLoader {
 
         DescriptionScanner mainClassCandidate = jarScanResult.mainClassCandidate;
         Map<String, Object> pluginYamlData = jarScanResult.pluginYaml;
-        TransformerRegistry transformerRegistry = jarScanResult.transformerRegistry;
 
         if (mainClassCandidate == null || !mainClassCandidate.getMainClass().isPresent()) {
             getScalaLoader().getLogger().warning("Could not find main class in file " + file.getName() + ". Did you annotate your main class with @Scala and is it public?");
@@ -301,47 +458,121 @@ public class ScalaPluginLoader implements PluginLoader {
 
         //assume latest if unspecified
         ApiVersion apiVersion = mainClassCandidate.getBukkitApiVersion().orElseGet(ApiVersion::latest);
+        final String mainClass = mainClassCandidate.getMainClass().get();
 
-        PluginScalaVersion scalaVersion = mainClassCandidate.getScalaVersion().get();
+        //if the main class passes a constant description to the ScalaPlugin constructor, then we don't need to instantiate the plugin yet.
+        ScalaPluginDescription constantDescription = readConstantDescription(file, mainClass, pluginYamlData, apiVersion);
+        if (constantDescription != null) {
+            if (isPluginNameTaken(constantDescription.getName())) {
+                throw new InvalidDescriptionException("Duplicate plugin names found: " + constantDescription.getName());
+            }
 
-        try {
-            final String mainClass = mainClassCandidate.getMainClass().get();
+            DescribedScalaPlugin describedScalaPlugin = new DescribedScalaPlugin(jarScanResult, mainClass, apiVersion, constantDescription);
+            describedScalaPlugins.put(path, describedScalaPlugin);
+            return describedScalaPlugin.descriptionFile;
+        }
+
+        return instantiatePlugin(file, jarScanResult, mainClass, apiVersion).getDescription();
+    }
+
+    private static final class DescribedScalaPlugin {
+        private final PluginJarScanResult jarScanResult;
+        private final String mainClass;
+        private final ApiVersion apiVersion;
+        private final ScalaPluginDescription description;
+        private final PluginDescriptionFile descriptionFile;
+
+        private DescribedScalaPlugin(PluginJarScanResult jarScanResult, String mainClass, ApiVersion apiVersion, ScalaPluginDescription description) {
+            this.jarScanResult = jarScanResult;
+            this.mainClass = mainClass;
+            this.apiVersion = apiVersion;
+            this.description = description;
+            this.descriptionFile = description.toPluginDescriptionFile();
+        }
+    }
+
+    /**
+     * Derives the description of a ScalaPlugin from the bytecode of its main class.
+     * @return the description, or null if the plugin needs to be instantiated to get its description
+     */
+    private ScalaPluginDescription readConstantDescription(File file, String mainClass, Map<String, Object> pluginYamlData, ApiVersion apiVersion) {
+        try (JarFile jarFile = Compat.jarFile(file)) {
+            JarEntry mainClassEntry = jarFile.getJarEntry(mainClass.replace('.', '/') + ".class");
+            if (mainClassEntry == null) return null;
+
+            byte[] mainClassBytes;
+            try (InputStream inputStream = jarFile.getInputStream(mainClassEntry)) {
+                mainClassBytes = Compat.readAllBytes(inputStream);
+            }
+            return ConstantDescriptionReader.read(mainClassBytes, mainClass, pluginYamlData, apiVersion.getVersionString());
+        } catch (IOException | RuntimeException e) {
+            //instantiating the plugin will report the error, if it is an actual error.
+            return null;
+        }
+    }
+
+    private boolean isPluginNameTaken(String pluginName) {
+        if (scalaPlugins.containsKey(pluginName.toLowerCase())) return true;
+        for (DescribedScalaPlugin describedScalaPlugin : describedScalaPlugins.values()) {
+            if (describedScalaPlugin.description.getName().equalsIgnoreCase(pluginName)) return true;
+        }
+        return false;
+    }
 
-            //get the latest compatible scala version - best effort
-            scalaVersion = scalaCompatMap.getLatestVersion(scalaVersion);
-            //load scala version if not already present
-            ScalaLibraryClassLoader scalaLibraryClassLoader = getScalaLoader().loadOrGetScalaVersion(scalaVersion);
+    /**
+     * Get the description of a ScalaPlugin, which may not be instantiated yet.
+     * @param path the absolute path of the plugin's jar file
+     * @return the description, or null if the file does not contain a ScalaPlugin, or if it was not read yet
+     */
+    private ScalaPluginDescription getScalaDescription(Path path) {
+        DescribedScalaPlugin describedScalaPlugin = describedScalaPlugins.get(path);
+        if (describedScalaPlugin != null) return describedScalaPlugin.description;
+        ScalaPlugin scalaPlugin = scalaPluginsByAbsolutePath.get(path);
+        if (scalaPlugin != null) return scalaPlugin.getScalaDescription();
+        return null;
+    }
+
+    /**
+     * Creates the classloader of a ScalaPlugin, and instantiates the plugin's main class.
+     */
+    private ScalaPlugin instantiatePlugin(File file, PluginJarScanResult jarScanResult, String mainClass, ApiVersion apiVersion) throws InvalidDescriptionException {
+        final Path path = file.toPath().toAbsolutePath();
+        Map<String, Object> pluginYamlData = jarScanResult.pluginYaml;
+        TransformerRegistry transformerRegistry = jarScanResult.transformerRegistry;
 
-            //download or get the maven dependencies defined in the plugin.yml
-            Collection<File> dependencies = pluginYamlLibraryLoader.getJarFiles(pluginYamlData);
+        try {
+            //resolve the scala version and the libraries, or use the result of preparePlugins if it already did that.
+            PreparedPlugin preparedPlugin = getPreparedPlugin(file, jarScanResult);
+            PluginScalaVersion scalaVersion = preparedPlugin.scalaVersion;
+            ScalaLibraryClassLoader scalaLibraryClassLoader = preparedPlugin.scalaLibraryClassLoader;
+            Collection<File> dependencies = preparedPlugin.dependencies;
             //TODO scan dependencies?
 
             //create plugin classloader using the resolved scala classloader
             ScalaPluginClassLoader scalaPluginClassLoader =
                     new ScalaPluginClassLoader(this, new URL[] { file.toURI().toURL() }, scalaLibraryClassLoader,
                             server, pluginYamlData, file, apiVersion, mainClass, transformerRegistry, dependencies);
-            sharedScalaPluginClassLoaders.computeIfAbsent(scalaVersion.getCompatRelease(), v -> new CopyOnWriteArrayList<>()).add(scalaPluginClassLoader);
+            indexClassLoader(scalaVersion.getCompatRelease(), scalaPluginClassLoader);
 
             //get the ScalaPlugin from the class loader!
             ScalaPlugin plugin = scalaPluginClassLoader.getPlugin();
+            scalaPluginClassLoader.getStartupTimings().setPluginName(plugin.getName());
 
-            if (scalaPlugins.putIfAbsent(plugin.getName().toLowerCase(), plugin) != null) {
+            //the plugin is no longer just described, it is instantiated now.
+            describedScalaPlugins.remove(path);
+            if (isPluginNameTaken(plugin.getName())) {
                 throw new InvalidDescriptionException("Duplicate plugin names found: " + plugin.getName());
             }
+            scalaPlugins.put(plugin.getName().toLowerCase(), plugin);
 
             //be sure to cache the plugin - later in #loadPlugin(File) we just return the cached instance!
-            //TODO this is actually a work-around that should not be needed anymore once plugin-loading is refactored
-            scalaPluginsByAbsolutePath.put(path.toAbsolutePath(), plugin);
+            scalaPluginsByAbsolutePath.put(path, plugin);
 
-            //it is so stupid bukkit doesn't let me extend PluginDescriptionFile.
-            return plugin.getDescription();
+            if (preparedPlugin.warmUpClasses) {
+                warmUpClasses(scalaPluginClassLoader);
+            }
 
-            //Ideally I would use ScalaPluginDescription.toPluginDescriptionFile().
-            //but the ScalaPluginDescription requires a live ScalaPlugin instance (for now)
-            //So I need to give up on this idea, or analyze the bytecode (that is going to be hard o.0)
-            //TODO when I implement the library loading api, implement plugin-loading in such a way that a ScalaPlugin instance does not have to be created
-            //TODO for getting the ScalaPluginDescription.
-            //TODO make sure that currently-compiled plugins can still load (possibly with the help of some extra bytecode transformations!)
+            return plugin;
 
         } catch (NoClassDefFoundError | ExceptionInInitializerError e) {
             throw new InvalidDescriptionException(e,
@@ -356,6 +587,177 @@ public class ScalaPluginLoader implements PluginLoader {
         }
     }
 
+    /**
+     * Prepares the ScalaPlugins in the given files concurrently, and sorts the files such that plugins come after their dependencies.
+     * Preparing a plugin means resolving its Scala version, downloading the libraries from its plugin.yml,
+     * and hashing its jar files for the transformed class cache. These steps don't depend on other plugins.
+     * <p>
+     * The main classes of plugins that don't pass a constant description to their super constructor are instantiated on the calling thread,
+     * one after another, because that is the only way to get the full description of such a plugin.
+     * Plugins with a constant description are instantiated when they are loaded, after their dependencies are checked.
+     * Once a prepared plugin is instantiated, its other classes are loaded concurrently, see {@link #warmUpClasses(ScalaPluginClassLoader)}.
+     * Files that do not contain a ScalaPlugin are not prepared, but they are sorted based on their plugin.yml.
+     * If the dependencies of plugins are cyclic, then those plugins are placed last, in their original order.
+     *
+     * @param files the plugin jar files
+     * @return the same files, ordered such that the dependencies of a plugin come before the plugin itself
+     */
+    public File[] preparePlugins(File[] files) {
+        //prepare the plugins concurrently, in the same pool that scanned their jars.
+        ForkJoinPool pool = getScanPool();
+        for (File file : files) {
+            Path path = file.toPath().toAbsolutePath();
+            PluginJarScanResult scanResult = preScannedPluginJars.get(path);
+            if (scanResult == null || scanResult.mainClassCandidate == null || !scanResult.mainClassCandidate.getMainClass().isPresent()) continue;
+            if (scalaPluginsByAbsolutePath.containsKey(path) || describedScalaPlugins.containsKey(path) || preparedPluginJars.containsKey(path)) continue;
+
+            preparedPluginJars.put(path, CompletableFuture.supplyAsync(() -> {
+                try {
+                    PreparedPlugin preparedPlugin = preparePlugin(file, scanResult);
+                    preparedPlugin.warmUpClasses = true;
+                    return preparedPlugin;
+                } catch (ScalaPluginLoaderException e) {
+                    throw new CompletionException(e);
+                }
+            }, pool));
+        }
+
+        //get the descriptions on this thread, this instantiates the main classes of the ScalaPlugins whose descriptions are not constant.
+        List<File> describedFiles = new ArrayList<>(files.length);
+        List<PluginDescriptionFile> descriptions = new ArrayList<>(files.length);
+        List<File> undescribedFiles = new ArrayList<>();
+        for (File file : files) {
+            try {
+                descriptions.add(getPluginDescription(file));
+                describedFiles.add(file);
+            } catch (InvalidDescriptionException | RuntimeException e) {
+                //this will be reported when the plugin is loaded.
+                undescribedFiles.add(file);
+            }
+        }
+
+        //topological sort, in which ties are broken by the original order of the files
+        int size = describedFiles.size();
+        Map<String, Integer> indicesByName = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            PluginDescriptionFile description = descriptions.get(i);
+            indicesByName.putIfAbsent(description.getName(), i);
+            for (String provided : description.getProvides()) {
+                indicesByName.putIfAbsent(provided, i);
+            }
+        }
+        List<List<Integer>> dependents = new ArrayList<>(size);
+        int[] unmetDependencies = new int[size];
+        for (int i = 0; i < size; i++) dependents.add(new ArrayList<>());
+        for (int i = 0; i < size; i++) {
+            PluginDescriptionFile description = descriptions.get(i);
+            Set<String> dependencies = new LinkedHashSet<>(description.getDepend());
+            dependencies.addAll(description.getSoftDepend());
+            for (String dependency : dependencies) {
+                Integer dependencyIndex = indicesByName.get(dependency);
+                if (dependencyIndex != null && dependencyIndex != i) {
+                    dependents.get(dependencyIndex).add(i);
+                    unmetDependencies[i] += 1;
+                }
+            }
+            for (String loadBefore : description.getLoadBefore()) {
+                Integer dependentIndex = indicesByName.get(loadBefore);
+                if (dependentIndex != null && dependentIndex != i) {
+                    dependents.get(i).add(dependentIndex);
+                    unmetDependencies[dependentIndex] += 1;
+                }
+            }
+        }
+
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < size; i++) {
+            if (unmetDependencies[i] == 0) ready.add(i);
+        }
+        boolean[] sorted = new boolean[size];
+        List<File> result = new ArrayList<>(files.length);
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            sorted[i] = true;
+            result.add(describedFiles.get(i));
+            for (int dependent : dependents.get(i)) {
+                if (--unmetDependencies[dependent] == 0) ready.add(dependent);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (!sorted[i]) result.add(describedFiles.get(i));
+        }
+        result.addAll(undescribedFiles);
+
+        return result.toArray(new File[0]);
+    }
+
+    private PreparedPlugin getPreparedPlugin(File file, PluginJarScanResult jarScanResult) throws ScalaPluginLoaderException {
+        CompletableFuture<PreparedPlugin> future = preparedPluginJars.remove(file.toPath().toAbsolutePath());
+        if (future == null) return preparePlugin(file, jarScanResult);
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ScalaPluginLoaderException) throw (ScalaPluginLoaderException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ScalaPluginLoaderException("Could not prepare plugin " + file.getName(), cause);
+        }
+    }
+
+    /**
+     * Loads the classes of an instantiated plugin in the scan pool, without initializing them,
+     * so that they are read, transformed and defined before the plugin needs them.
+     * No code of the plugin runs in the scan pool: class initializers, and the main class's constructor, run on the thread that uses them.
+     * Classes that can't be loaded yet, for example because they extend a class of a plugin that is not loaded yet,
+     * are loaded again when they are needed, and then the error is reported.
+     */
+    private void warmUpClasses(ScalaPluginClassLoader classLoader) {
+        List<String> classNames = classLoader.getClassNameIndex().getClassNames();
+        getScanPool().execute(() -> {
+            for (String internalName : classNames) {
+                if (internalName.endsWith("package-info")) continue;
+                try {
+                    Class.forName(internalName.replace('/', '.'), false, classLoader);
+                } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+                    //also thrown when the plugin is disabled while its classes are loaded.
+                }
+            }
+        });
+    }
+
+    private PreparedPlugin preparePlugin(File file, PluginJarScanResult jarScanResult) throws ScalaPluginLoaderException {
+        PreparedPlugin preparedPlugin = new PreparedPlugin();
+        StartupTimings startupTimings = StartupTimings.of(file);
+
+        //get the latest compatible scala version - best effort
+        long start = System.nanoTime();
+        preparedPlugin.scalaVersion = scalaCompatMap.getLatestVersion(jarScanResult.mainClassCandidate.getScalaVersion().get());
+        //load scala version if not already present
+        preparedPlugin.scalaLibraryClassLoader = getScalaLoader().loadOrGetScalaVersion(preparedPlugin.scalaVersion);
+        startupTimings.record(StartupTimings.Phase.SCALA_LIBRARY, start);
+        //download or get the maven dependencies defined in the plugin.yml
+        start = System.nanoTime();
+        preparedPlugin.dependencies = pluginYamlLibraryLoader.getJarFiles(jarScanResult.pluginYaml);
+        startupTimings.record(StartupTimings.Phase.LIBRARIES, start);
+
+        //warm up: the transformed class cache remembers the hashes of the jar files, so the ScalaPluginClassLoader won't have to hash them again.
+        TransformedClassCache transformedClassCache = getScalaLoader().getTransformedClassCache();
+        if (transformedClassCache != null) {
+            try {
+                transformedClassCache.hashJar(file);
+                for (File dependency : preparedPlugin.dependencies) {
+                    transformedClassCache.hashJar(dependency);
+                }
+            } catch (IOException e) {
+                //the ScalaPluginClassLoader will try again, and report the error.
+            }
+        }
+
+        return preparedPlugin;
+    }
+
     /**
      * Get the jar file of a ScalaPlugin.
      * @param scalaPlugin the plugin
@@ -419,15 +821,14 @@ public class ScalaPluginLoader implements PluginLoader {
                 .filter(Objects::nonNull)
                 .map(inputStream -> {
                     try {
-                        return new DescriptionScanner(inputStream); //TODO create a smaller Scanner class?
+                        return DescriptionScanner.readClassName(inputStream);
                     } catch (IOException e) {
                         e.printStackTrace();
-                        return null;
+                        return Optional.<String>empty();
                     }
                 })
-                .filter(Objects::nonNull)
-                .filter(DescriptionScanner::hasClass)
-                .map(DescriptionScanner::getClassName)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
                 .map(className -> {
                     try {
                         return Class.forName(className, false, scalaPlugin.getClassLoader());
@@ -460,7 +861,35 @@ public class ScalaPluginLoader implements PluginLoader {
 
     @Override
     public Plugin loadPlugin(File file) throws InvalidPluginException, UnknownDependencyException {
+        //the PluginManager has registered the plugins that were loaded before this one, so their waiting dependents can find them now.
+        loadWaitingDependents();
+        Plugin plugin = loadPluginWithoutDependents(file);
+        //the dependents of the newly-loaded plugin are loaded once the PluginManager has registered it.
+        scalapluginsWaitingForDependencies.loaded(plugin, names(plugin));
+        return plugin;
+    }
+
+    private Plugin loadPluginWithoutDependents(File file) throws InvalidPluginException, UnknownDependencyException {
         Path path = file.toPath().toAbsolutePath();
+
+        DescribedScalaPlugin describedScalaPlugin = describedScalaPlugins.get(path);
+        if (describedScalaPlugin != null) {
+            // The description was derived from the bytecode, so the plugin is not instantiated yet.
+            // Check the dependencies first so that plugins that can't be loaded are not instantiated at all.
+            for (String dependency : describedScalaPlugin.description.getHardDependencies()) {
+                boolean dependencyFound = server.getPluginManager().getPlugin(dependency) != null;
+                if (!dependencyFound) {
+                    throw new UnknownDependencyException("Dependency " + dependency + " not found while loading plugin " + describedScalaPlugin.description.getName());
+                }
+            }
+
+            try {
+                instantiatePlugin(file, describedScalaPlugin.jarScanResult, describedScalaPlugin.mainClass, describedScalaPlugin.apiVersion);
+            } catch (InvalidDescriptionException e) {
+                throw new InvalidPluginException(e);
+            }
+        }
+
         ScalaPlugin scalaPlugin = scalaPluginsByAbsolutePath.get(path);
         Plugin plugin = scalaPlugin;
 
@@ -474,7 +903,9 @@ public class ScalaPluginLoader implements PluginLoader {
             }
 
             scalaPlugin.getLogger().info("Loading " + scalaPlugin.getScalaDescription().getFullName());
+            long start = System.nanoTime();
             scalaPlugin.onLoad();
+            scalaPlugin.getClassLoader().getStartupTimings().record(StartupTimings.Phase.ON_LOAD, start);
         } else if (scalaPluginsByAbsolutePath.containsKey(path)) {
             // A null value was put into the map! This means it is a JavaPlugin!
             // A ScalaPlugin was not loaded by getPluginDescription - try to load a JavaPlugin.
@@ -485,32 +916,51 @@ public class ScalaPluginLoader implements PluginLoader {
             try {
                 getPluginDescription(file);
                 assert scalaPluginsByAbsolutePath.containsKey(path) : "Expected an already-scanned jar on path: " + path;
-                return loadPlugin(file);
+                return loadPluginWithoutDependents(file);
             } catch (InvalidDescriptionException e) {
                 throw new InvalidPluginException(e);
             }
         }
 
-        //if the newly-loaded plugin is a dependency of a waiting ScalaPlugin, then try to load the ScalaPlugin again.
-        Iterator<File> fileIterator = scalapluginsWaitingForDependencies.iterator();
-        while (fileIterator.hasNext()) {
-            File dependentFile = fileIterator.next();
-            ScalaPlugin dependent = scalaPluginsByAbsolutePath.get(path);
-            if (dependent != null) {
-                ScalaPluginDescription desc = dependent.getScalaDescription();
-                if (desc.getHardDependencies().contains(plugin.getName())) {
-                    try {
-                        ScalaPlugin lateScalaPlugin = (ScalaPlugin) loadPlugin(dependentFile);
-                        addPluginToPluginManager(lateScalaPlugin);
-                        fileIterator.remove();
-                    } catch (UnknownDependencyException thereAreMoreDependenciesLeft) {
-                        //ignore
-                    }
+        return plugin;
+    }
+
+    /**
+     * Loads the waiting ScalaPlugins whose last missing dependencies are loaded and registered to the PluginManager,
+     * and then the ones whose last missing dependencies are among those plugins, and so on.
+     * Called by ScalaLoader after it has loaded the plugins in its plugins folder, so that the dependents of the last one are loaded too.
+     */
+    public void loadWaitingDependents() {
+        List<File> dependentFiles;
+        while (!(dependentFiles = scalapluginsWaitingForDependencies.releaseRegistered(this::isRegistered)).isEmpty()) {
+            for (File dependentFile : dependentFiles) {
+                try {
+                    ScalaPlugin lateScalaPlugin = (ScalaPlugin) loadPluginWithoutDependents(dependentFile);
+                    addPluginToPluginManager(lateScalaPlugin);
+                    scalapluginsWaitingForDependencies.loaded(lateScalaPlugin, names(lateScalaPlugin));
+                } catch (UnknownDependencyException e) {
+                    //still missing a dependency, keep waiting for it.
+                    loadWhenDependenciesComeAvailable(dependentFile);
+                } catch (InvalidPluginException e) {
+                    getScalaLoader().getLogger().log(Level.SEVERE, "Could not load plugin from file: " + dependentFile.getAbsolutePath(), e);
                 }
             }
         }
+    }
 
-        return plugin;
+    private boolean isRegistered(Plugin plugin) {
+        return server.getPluginManager().getPlugin(plugin.getName()) == plugin;
+    }
+
+    private static Set<String> names(Plugin plugin) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(plugin.getName());
+        if (plugin instanceof ScalaPlugin) {
+            names.addAll(((ScalaPlugin) plugin).getScalaDescription().getProvides());
+        } else {
+            names.addAll(plugin.getDescription().getProvides());
+        }
+        return names;
     }
 
     private void addPluginToPluginManager(ScalaPlugin plugin) {
@@ -524,18 +974,17 @@ public class ScalaPluginLoader implements PluginLoader {
                 getScalaLoader().getLogger().severe("Could not register plugin to PluginManager: " + plugin.getName());
             }
 
+            //register the name even if the plugin provides nothing else, so that the plugins that depend on it can find it.
             Set<String> provides = plugin.getScalaDescription().getProvides();
-            if (!provides.isEmpty()) {
-                try {
-                    Field lookupNamesField = SimplePluginManager.class.getDeclaredField("lookupNames");
-                    lookupNamesField.setAccessible(true);
-                    Map<String, Plugin> lookupNames = (Map) lookupNamesField.get(server.getPluginManager());
-                    lookupNames.put(plugin.getName(), plugin);
-                    for (String provide : provides)
-                        lookupNames.putIfAbsent(provide, plugin);
-                } catch (Exception tooBad) {
-                    getScalaLoader().getLogger().severe("Could not register plugin lookupNames to PluginManager: " + plugin.getName());
-                }
+            try {
+                Field lookupNamesField = SimplePluginManager.class.getDeclaredField("lookupNames");
+                lookupNamesField.setAccessible(true);
+                Map<String, Plugin> lookupNames = (Map) lookupNamesField.get(server.getPluginManager());
+                lookupNames.put(plugin.getName(), plugin);
+                for (String provide : provides)
+                    lookupNames.putIfAbsent(provide, plugin);
+            } catch (Exception tooBad) {
+                getScalaLoader().getLogger().severe("Could not register plugin lookupNames to PluginManager: " + plugin.getName());
             }
 
             Set<String> hardDeps = plugin.getScalaDescription().getHardDependencies(),
@@ -563,11 +1012,14 @@ public class ScalaPluginLoader implements PluginLoader {
     }
 
     public void loadWhenDependenciesComeAvailable(File file) {
-        scalapluginsWaitingForDependencies.add(file);
+        ScalaPluginDescription description = getScalaDescription(file.toPath().toAbsolutePath());
+        //JavaPlugins are not loaded late, their dependencies are resolved by the PluginManager.
+        Collection<String> hardDependencies = description == null ? Collections.emptySet() : description.getHardDependencies();
+        scalapluginsWaitingForDependencies.add(file, hardDependencies, dependency -> server.getPluginManager().getPlugin(dependency) != null);
     }
 
     public Set<File> getPluginsWaitingForDependencies() {
-        return Collections.unmodifiableSet(scalapluginsWaitingForDependencies);
+        return scalapluginsWaitingForDependencies.getFiles();
     }
 
     public void clearPluginsWaitingForDependencies() {
@@ -586,7 +1038,9 @@ public class ScalaPluginLoader implements PluginLoader {
 
             plugin.getLogger().info("Enabling " + scalaPlugin.getScalaDescription().getFullName());
             scalaPlugin.setEnabled(true);
+            long start = System.nanoTime();
             scalaPlugin.onEnable();
+            scalaPlugin.getClassLoader().getStartupTimings().record(StartupTimings.Phase.ON_ENABLE, start);
         } else {
             //delegate unknown plugin types
             getJavaPluginLoader().enablePlugin(plugin);
@@ -625,12 +1079,7 @@ public class ScalaPluginLoader implements PluginLoader {
                 }
             }
 
-            CopyOnWriteArrayList<ScalaPluginClassLoader> classLoaders = sharedScalaPluginClassLoaders.get(scalaCompatRelease);
-            if (classLoaders != null) {
-                classLoaders.remove(scalaPluginClassLoader);
-                //noinspection SuspiciousMethodCalls - Thank IntelliJ but this is how you do an atomic removeIfEmpty.
-                sharedScalaPluginClassLoaders.remove(scalaCompatRelease, Compat.emptyList());
-            }
+            unindexClassLoader(scalaCompatRelease, scalaPluginClassLoader);
 
             try {
                 scalaPluginClassLoader.close();
@@ -690,6 +1139,110 @@ public class ScalaPluginLoader implements PluginLoader {
                 .putIfAbsent(className, clazz);
     }
 
+    /**
+     * Makes the classes of a {@link ScalaPluginClassLoader} findable for {@link ScalaPlugin}s with a binary compatible version of Scala.
+     * If multiple plugins contain a class with the same name, then they are all owners of that class, and the plugin that was indexed first is asked first.
+     * @param scalaCompatRelease the compatibility-release version of Scala
+     * @param classLoader the classloader
+     */
+    private void indexClassLoader(ScalaRelease scalaCompatRelease, ScalaPluginClassLoader classLoader) {
+        sharedScalaPluginClassLoaders.computeIfAbsent(scalaCompatRelease, v -> new CopyOnWriteArrayList<>()).add(classLoader);
+        ConcurrentMap<String, ScalaPluginClassLoader[]> classOwners = scalaPluginClassOwners.computeIfAbsent(scalaCompatRelease, v -> new ConcurrentHashMap<>());
+        ConcurrentMap<String, ScalaPluginClassLoader[]> packageOwners = scalaPluginPackageOwners.computeIfAbsent(scalaCompatRelease, v -> new ConcurrentHashMap<>());
+
+        //the plugin's own jar goes first, just like in ScalaPluginClassLoader#findClass
+        for (ClassNameIndex classNameIndex : new ClassNameIndex[] {classLoader.getClassNameIndex(), classLoader.getLibraryClassNameIndex()}) {
+            for (String internalName : classNameIndex.getClassNames()) {
+                classOwners.compute(internalName.replace('/', '.'), (className, owners) -> addOwner(owners, classLoader));
+            }
+            for (String packageName : classNameIndex.getPackages()) {
+                packageOwners.compute(packageName, (name, owners) -> addOwner(owners, classLoader));
+            }
+        }
+    }
+
+    /**
+     * Removes a {@link ScalaPluginClassLoader} from the index. Classes and packages that are also in the jars of other plugins are now owned by those plugins only.
+     * @param scalaCompatRelease the compatibility-release version of Scala
+     * @param classLoader the classloader
+     */
+    private void unindexClassLoader(ScalaRelease scalaCompatRelease, ScalaPluginClassLoader classLoader) {
+        CopyOnWriteArrayList<ScalaPluginClassLoader> classLoaders = sharedScalaPluginClassLoaders.get(scalaCompatRelease);
+        if (classLoaders != null) {
+            classLoaders.remove(classLoader);
+            //noinspection SuspiciousMethodCalls - Thank IntelliJ but this is how you do an atomic removeIfEmpty.
+            sharedScalaPluginClassLoaders.remove(scalaCompatRelease, Compat.emptyList());
+        }
+
+        ConcurrentMap<String, ScalaPluginClassLoader[]> classOwners = scalaPluginClassOwners.get(scalaCompatRelease);
+        ConcurrentMap<String, ScalaPluginClassLoader[]> packageOwners = scalaPluginPackageOwners.get(scalaCompatRelease);
+        for (ClassNameIndex classNameIndex : new ClassNameIndex[] {classLoader.getClassNameIndex(), classLoader.getLibraryClassNameIndex()}) {
+            if (classOwners != null) {
+                for (String internalName : classNameIndex.getClassNames()) {
+                    classOwners.computeIfPresent(internalName.replace('/', '.'), (className, owners) -> removeOwner(owners, classLoader));
+                }
+            }
+            if (packageOwners != null) {
+                for (String packageName : classNameIndex.getPackages()) {
+                    packageOwners.computeIfPresent(packageName, (name, owners) -> removeOwner(owners, classLoader));
+                }
+            }
+        }
+    }
+
+    private static ScalaPluginClassLoader[] addOwner(ScalaPluginClassLoader[] owners, ScalaPluginClassLoader owner) {
+        if (owners == null) return new ScalaPluginClassLoader[] {owner};
+        for (ScalaPluginClassLoader existing : owners) {
+            if (existing == owner) return owners;
+        }
+        ScalaPluginClassLoader[] result = Arrays.copyOf(owners, owners.length + 1);
+        result[owners.length] = owner;
+        return result;
+    }
+
+    private static ScalaPluginClassLoader[] removeOwner(ScalaPluginClassLoader[] owners, ScalaPluginClassLoader owner) {
+        int count = 0;
+        ScalaPluginClassLoader[] result = new ScalaPluginClassLoader[owners.length];
+        for (ScalaPluginClassLoader existing : owners) {
+            if (existing != owner) result[count++] = existing;
+        }
+        //returning null removes the mapping
+        return count == 0 ? null : count == owners.length ? owners : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Makes {@link ScalaPluginClassLoader}s forget which classes they could not find in their own jars and libraries.
+     * This needs to be called when classes become available there that were not available before,
+     * for example because a url was added to the (possibly shared) libraries of a plugin.
+     * Classes of other plugins and of the parent classloader are never cached as missing, so loading a plugin does not need to call this.
+     */
+    public void invalidateMissingClasses() {
+        classPathGeneration.incrementAndGet();
+    }
+
+    SharedLibraryClassLoaders getSharedLibraryClassLoaders() {
+        return sharedLibraryClassLoaders;
+    }
+
+    SharedAdapterClassLoaders getSharedAdapterClassLoaders() {
+        return sharedAdapterClassLoaders;
+    }
+
+    long getClassPathGeneration() {
+        return classPathGeneration.get();
+    }
+
+    /**
+     * Get a class from the 'global' classes cache.
+     * @param scalaCompatRelease the Scala version the plugin uses
+     * @param className the name of the class
+     * @return the class, or null if no scala plugin with a compatible version of Scala has loaded the class yet
+     */
+    Class<?> getCachedScalaPluginClass(final ScalaRelease scalaCompatRelease, final String className) {
+        Map<String, Class<?>> scalaPluginClasses = sharedScalaPluginClasses.get(scalaCompatRelease);
+        return scalaPluginClasses == null ? null : scalaPluginClasses.get(className);
+    }
+
     /**
      * Finds classes from {@link ScalaPlugin}s. This method can possibly be called by multiple threads concurrently
      * since {@link ScalaPluginClassLoader}s are parallel capable.
@@ -700,28 +1253,80 @@ public class ScalaPluginLoader implements PluginLoader {
      * @throws ClassNotFoundException if no scala plugin has a class with the given name, or the Scala version is incompatible
      */
     protected Class<?> getScalaPluginClass(final ScalaRelease scalaCompatRelease, final String className) throws ClassNotFoundException {
-        //try load from 'global' cache
-        Map<String, Class<?>> scalaPluginClasses = sharedScalaPluginClasses.get(scalaCompatRelease);
-        Class<?> found = scalaPluginClasses == null ? null : scalaPluginClasses.get(className);
-        if (found != null) return found;
+        ClassLookupResult lookupResult = lookupScalaPluginClass(scalaCompatRelease, className);
+        if (lookupResult.isFound()) return lookupResult.getClassDefinition();
+
+        throw new ClassNotFoundException("Couldn't find class " + className + " in any of the loaded ScalaPlugins.", lookupResult.getCause());
+    }
 
-        //try load from classloaders - check all scala plugins that use compatible versions of scala.
+    /**
+     * Finds classes from {@link ScalaPlugin}s, without throwing an exception when the class can't be found.
+     *
+     * @param scalaCompatRelease the Scala version the plugin uses
+     * @param className the name of the class
+     * @return the result of the lookup
+     * @see #getScalaPluginClass(ScalaRelease, String)
+     */
+    ClassLookupResult lookupScalaPluginClass(final ScalaRelease scalaCompatRelease, final String className) {
+        //try load from 'global' cache
+        Class<?> found = getCachedScalaPluginClass(scalaCompatRelease, className);
+        if (found != null) return ClassLookupResult.found(found);
+
+        //try load from the classloaders of the scala plugins that have the class in their jars
+        Map<String, ScalaPluginClassLoader[]> classOwners = scalaPluginClassOwners.get(scalaCompatRelease);
+        ScalaPluginClassLoader[] owners = classOwners == null ? null : classOwners.get(className);
+        ClassLookupResult lookupResult = lookupInClassLoaders(scalaCompatRelease, className, owners, null);
+        if (lookupResult.isFound()) return lookupResult;
+
+        //the class is not in any of the jars, but it might be generated at runtime or come from a url that was added later.
+        //try the classloaders of the scala plugins that have the class's package first.
+        Map<String, ScalaPluginClassLoader[]> packageOwners = scalaPluginPackageOwners.get(scalaCompatRelease);
+        int dotIndex = className.lastIndexOf('.');
+        ScalaPluginClassLoader[] packageOwnerLoaders = packageOwners == null ? null : packageOwners.get(dotIndex == -1 ? "" : className.substring(0, dotIndex));
+        lookupResult = lookupInClassLoaders(scalaCompatRelease, className, packageOwnerLoaders, lookupResult);
+        if (lookupResult.isFound()) return lookupResult;
+
+        //not in the index at all: fall back to asking every scala plugin with a compatible version of scala.
         CopyOnWriteArrayList<ScalaPluginClassLoader> classLoaders = sharedScalaPluginClassLoaders.get(scalaCompatRelease);
         if (classLoaders != null) {
-            for (ScalaPluginClassLoader scalaPluginClassLoader : classLoaders) {
-                try {
-                    found = scalaPluginClassLoader.findClass(className, false);
-                    //ScalaPluginLoader#findClass calls ScalaPluginLoader#addClassGlobally, but we might race against other threads.
-                    Class<?> classLoadedByOtherThread = cacheClass(scalaCompatRelease, className, found);
-                    if (classLoadedByOtherThread != null) found = classLoadedByOtherThread;
+            for (ScalaPluginClassLoader classLoader : classLoaders) {
+                if (contains(owners, classLoader) || contains(packageOwnerLoaders, classLoader)) continue;   //asked already
+                lookupResult = lookupInClassLoaders(scalaCompatRelease, className, new ScalaPluginClassLoader[] {classLoader}, lookupResult);
+                if (lookupResult.isFound()) return lookupResult;
+            }
+        }
 
-                    return found;
-                } catch (ClassNotFoundException justContinueOn) {
-                }
+        return lookupResult;
+    }
+
+    private ClassLookupResult lookupInClassLoaders(ScalaRelease scalaCompatRelease, String className, ScalaPluginClassLoader[] classLoaders, ClassLookupResult previousResult) {
+        ClassLookupResult result = previousResult == null ? ClassLookupResult.notFound() : previousResult;
+        if (classLoaders == null) return result;
+
+        for (ScalaPluginClassLoader classLoader : classLoaders) {
+            ClassLookupResult lookupResult = classLoader.lookupClass(className, false);
+            if (lookupResult.isFound()) {
+                Class<?> found = lookupResult.getClassDefinition();
+                //ScalaPluginLoader#findClass calls ScalaPluginLoader#addClassGlobally, but we might race against other threads.
+                Class<?> classLoadedByOtherThread = cacheClass(scalaCompatRelease, className, found);
+                if (classLoadedByOtherThread != null) found = classLoadedByOtherThread;
+
+                return ClassLookupResult.found(found);
+            } else if (lookupResult.getCause() != null) {
+                //remember the error, so that it can be reported if none of the classloaders has the class.
+                result = lookupResult;
             }
         }
 
-        throw new ClassNotFoundException("Couldn't find class " + className + " in any of the loaded ScalaPlugins.");
+        return result;
+    }
+
+    private static boolean contains(ScalaPluginClassLoader[] classLoaders, ScalaPluginClassLoader classLoader) {
+        if (classLoaders == null) return false;
+        for (ScalaPluginClassLoader candidate : classLoaders) {
+            if (candidate == classLoader) return true;
+        }
+        return false;
     }
 
 }
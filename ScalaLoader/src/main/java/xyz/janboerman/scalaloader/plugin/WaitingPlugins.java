@@ -0,0 +1,116 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Keeps track of the plugin files that could not be loaded yet because some of their hard dependencies were missing.
+ * A file is ready to be loaded once all of its missing dependencies are loaded <em>and</em> registered to the PluginManager:
+ * the PluginManager only registers a plugin after the PluginLoader returned it, and until then the dependents would not find it.
+ */
+class WaitingPlugins {
+
+    private final Set<File> files = new LinkedHashSet<>();
+    private final Map<String, Set<File>> filesByDependency = new HashMap<>();
+    private final Map<File, Integer> unmetDependencyCounts = new HashMap<>();
+    private final Map<Plugin, Collection<String>> unregisteredDependencies = new LinkedHashMap<>();
+
+    WaitingPlugins() {
+    }
+
+    /**
+     * Lets a file wait for its missing hard dependencies.
+     * @param file the plugin file
+     * @param hardDependencies the hard dependencies of the plugin
+     * @param isPresent tests whether a dependency is already loaded
+     */
+    void add(File file, Collection<String> hardDependencies, Predicate<String> isPresent) {
+        if (!files.add(file)) return;
+
+        int unmetDependencies = 0;
+        for (String dependency : hardDependencies) {
+            if (!isPresent.test(dependency)) {
+                filesByDependency.computeIfAbsent(dependency, k -> new LinkedHashSet<>()).add(file);
+                unmetDependencies += 1;
+            }
+        }
+        if (unmetDependencies > 0) {
+            unmetDependencyCounts.put(file, unmetDependencies);
+        }
+    }
+
+    /**
+     * Remembers a plugin that was just loaded, if files are waiting for it.
+     * @param plugin the plugin
+     * @param names the name of the plugin and the names it provides
+     */
+    void loaded(Plugin plugin, Collection<String> names) {
+        for (String name : names) {
+            if (filesByDependency.containsKey(name)) {
+                unregisteredDependencies.put(plugin, names);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the files whose last missing dependencies are registered now. Those files no longer wait.
+     * @param isRegistered tests whether a plugin that was loaded is registered to the PluginManager
+     * @return the files that can be loaded, in the order in which they started waiting
+     */
+    List<File> releaseRegistered(Predicate<Plugin> isRegistered) {
+        Set<File> ready = new LinkedHashSet<>();
+        for (Iterator<Map.Entry<Plugin, Collection<String>>> iterator = unregisteredDependencies.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Plugin, Collection<String>> entry = iterator.next();
+            if (!isRegistered.test(entry.getKey())) continue;
+            iterator.remove();
+
+            for (String name : entry.getValue()) {
+                Set<File> dependentFiles = filesByDependency.remove(name);
+                if (dependentFiles == null) continue;
+
+                for (File dependentFile : dependentFiles) {
+                    Integer unmetDependencies = unmetDependencyCounts.get(dependentFile);
+                    if (unmetDependencies == null) continue;    //already released because of another name of the same plugin
+                    if (unmetDependencies > 1) {
+                        unmetDependencyCounts.put(dependentFile, unmetDependencies - 1);
+                    } else {
+                        unmetDependencyCounts.remove(dependentFile);
+                        ready.add(dependentFile);
+                    }
+                }
+            }
+        }
+
+        List<File> result = new ArrayList<>();
+        for (File file : files) {
+            if (ready.contains(file)) result.add(file);
+        }
+        files.removeAll(ready);
+        return result;
+    }
+
+    Set<File> getFiles() {
+        return Collections.unmodifiableSet(files);
+    }
+
+    void clear() {
+        files.clear();
+        filesByDependency.clear();
+        unmetDependencyCounts.clear();
+        unregisteredDependencies.clear();
+    }
+
+}
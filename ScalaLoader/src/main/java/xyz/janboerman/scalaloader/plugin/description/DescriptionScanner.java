@@ -3,6 +3,7 @@ package xyz.janboerman.scalaloader.plugin.description;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.objectweb.asm.*;
 import xyz.janboerman.scalaloader.bytecode.AsmConstants;
+import xyz.janboerman.scalaloader.compat.Compat;
 import xyz.janboerman.scalaloader.plugin.PluginScalaVersion;
 import xyz.janboerman.scalaloader.plugin.ScalaPlugin;
 import xyz.janboerman.scalaloader.plugin.description.Version.ScalaLibrary;
@@ -30,6 +31,9 @@ public class DescriptionScanner extends ClassVisitor {
     private static final String API_ANNOTATION_DESCRIPTOR = Type.getDescriptor(Api.class);
     private static final String SCALALIBRARY_ANNOTATION_DESCRIPTOR = Type.getDescriptor(ScalaLibrary.class);
 
+    //the scanner only looks at the class declaration, its annotations, and the declarations of its fields and methods.
+    static final int HEADER_ONLY = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
     private String asmClassName;
     private String mainClassCandidate;  //runtime class name format. e.g.: com.mydomain.project.ProjectPlugin
     private PluginScalaVersion scalaVersion;
@@ -55,9 +59,7 @@ public class DescriptionScanner extends ClassVisitor {
      * @throws IOException if something goes wrong with the InputStream
      */
     public DescriptionScanner(InputStream classBytes) throws IOException {
-        this();
-        ClassReader classReader = new ClassReader(classBytes);
-        classReader.accept(this, 0);
+        this(Compat.readAllBytes(classBytes), HEADER_ONLY);
     }
 
     /**
@@ -65,9 +67,69 @@ public class DescriptionScanner extends ClassVisitor {
      * @param classBytes the class's bytecode
      */
     public DescriptionScanner(byte[] classBytes) {
+        this(classBytes, HEADER_ONLY);
+    }
+
+    DescriptionScanner(byte[] classBytes, int parsingOptions) {
         this();
         ClassReader classReader = new ClassReader(classBytes);
-        classReader.accept(this, 0);
+        if ((parsingOptions & HEADER_ONLY) == HEADER_ONLY && !referencesDescriptionAnnotation(classReader)) {
+            //stop early: without @Scala, @CustomScala or @Api annotation this class can never be the main class,
+            //so the information in the header is all we need to rank it against the other classes.
+            visit(0, classReader.getAccess(), classReader.getClassName(), null, classReader.getSuperName(), classReader.getInterfaces());
+        } else {
+            classReader.accept(this, parsingOptions);
+        }
+    }
+
+    //annotation descriptors are always present as their own CONSTANT_Utf8 entry, so we can look for them without decoding the constant pool.
+    private static boolean referencesDescriptionAnnotation(ClassReader classReader) {
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            if (offset == 0 || classReader.readByte(offset - 1) != 1 /*CONSTANT_Utf8*/) continue;
+
+            int length = classReader.readUnsignedShort(offset);
+            if (utf8Equals(classReader, offset + 2, length, SCALA_ANNOTATION_DESCRIPTOR)
+                    || utf8Equals(classReader, offset + 2, length, CUSTOMSCALA_ANNOTATION_DESCRIPTOR)
+                    || utf8Equals(classReader, offset + 2, length, API_ANNOTATION_DESCRIPTOR)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean utf8Equals(ClassReader classReader, int offset, int length, String ascii) {
+        if (length != ascii.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (classReader.readByte(offset + i) != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads only the header of a class file to check whether the class extends {@link JavaPlugin} directly.
+     * This is a lot cheaper than constructing a {@link DescriptionScanner}.
+     * @param classBytes the inputstream that provides the class's bytecode
+     * @return true if the super class of the class is JavaPlugin, otherwise false
+     * @throws IOException if something goes wrong with the InputStream
+     */
+    public static boolean extendsJavaPlugin(InputStream classBytes) throws IOException {
+        return JAVAPLUGIN_CLASS_NAME.equals(new ClassReader(classBytes).getSuperName());
+    }
+
+    /**
+     * Reads only the header of a class file to get the name of the class.
+     * This is a lot cheaper than constructing a {@link DescriptionScanner}.
+     * @param classBytes the inputstream that provides the class's bytecode
+     * @return the name of the class (e.g. com.mydomain.project.ProjectPlugin), or the empty Optional if the class file declares a module
+     * @throws IOException if something goes wrong with the InputStream
+     * @see #hasClass()
+     * @see #getClassName()
+     */
+    public static Optional<String> readClassName(InputStream classBytes) throws IOException {
+        ClassReader classReader = new ClassReader(classBytes);
+        if ((classReader.getAccess() & Opcodes.ACC_MODULE) == Opcodes.ACC_MODULE) return Optional.empty();
+        return Optional.of(classReader.getClassName().replace('/', '.'));
     }
 
     @Override
@@ -172,6 +234,49 @@ public class DescriptionScanner extends ClassVisitor {
         return extendsJavaPlugin;
     }
 
+    /**
+     * Converts the outcome of the scan to plain data, so that it can be cached.
+     * @return the data
+     * @see #deserialize(Map)
+     */
+    public Map<String, Object> serialize() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("class-name", asmClassName);
+        if (scalaVersion != null) map.put("scala-version", scalaVersion.serialize());
+        if (bukkitApiVersion != null) map.put("api-version", bukkitApiVersion.name());
+        map.put("extends-scala-plugin", extendsScalaPlugin);
+        map.put("extends-java-plugin", extendsJavaPlugin);
+        map.put("extends-java-lang-object", extendsJavaLangObject);
+        map.put("abstract", isAbstract);
+        map.put("module", isModule);
+        map.put("public-no-args-constructor", hasPublicNoArgsConstructor);
+        map.put("object", isObject);
+        return map;
+    }
+
+    /**
+     * Recreates a scanner from data produced by {@link #serialize()}, without reading a class file.
+     * @param map the data
+     * @return the scanner
+     */
+    public static DescriptionScanner deserialize(Map<String, Object> map) {
+        DescriptionScanner scanner = new DescriptionScanner();
+        scanner.asmClassName = (String) map.get("class-name");
+        scanner.mainClassCandidate = scanner.asmClassName == null ? null : scanner.asmClassName.replace('/', '.');
+        Object scalaVersion = map.get("scala-version");
+        if (scalaVersion != null) scanner.scalaVersion = PluginScalaVersion.deserialize(new HashMap<>((Map<String, Object>) scalaVersion));
+        Object apiVersion = map.get("api-version");
+        if (apiVersion != null) scanner.bukkitApiVersion = ApiVersion.valueOf(apiVersion.toString());
+        scanner.extendsScalaPlugin = Boolean.TRUE.equals(map.get("extends-scala-plugin"));
+        scanner.extendsJavaPlugin = Boolean.TRUE.equals(map.get("extends-java-plugin"));
+        scanner.extendsJavaLangObject = Boolean.TRUE.equals(map.get("extends-java-lang-object"));
+        scanner.isAbstract = Boolean.TRUE.equals(map.get("abstract"));
+        scanner.isModule = Boolean.TRUE.equals(map.get("module"));
+        scanner.hasPublicNoArgsConstructor = Boolean.TRUE.equals(map.get("public-no-args-constructor"));
+        scanner.isObject = Boolean.TRUE.equals(map.get("object"));
+        return scanner;
+    }
+
     // ======================= class annotation visitors =======================
 
     // custom scala
@@ -49,10 +49,10 @@ public enum ScalaVersion {
     v3_1_0("3.1.0"),
     v3_1_1("3.1.1");
 
-    //TODO include hashes of the jars! so that the loader can verify the integrity of the jars!
+    //must be a compile-time constant, because the constructors of the Scala 3 versions use it before the static initializer runs.
+    private static final String LATEST_2_13 = "2.13.8";
 
     private static Map<String, ScalaVersion> byVersion = new HashMap<>();
-    private static final ScalaVersion latest_2_13;
     static {
         ScalaVersion latest_2_13_version = null;
         for (ScalaVersion version : ScalaVersion.values()) {
@@ -62,10 +62,61 @@ public enum ScalaVersion {
                 latest_2_13_version = version;
             }
         }
-        assert latest_2_13_version != null : "latest Scala 2.13 version cannot be null";
-        latest_2_13 = latest_2_13_version;
+        assert latest_2_13_version != null && LATEST_2_13.equals(latest_2_13_version.getVersion()) : "LATEST_2_13 must be the latest Scala 2.13 version";
     }
 
+    //the SHA-256 hashes of the jar files on maven central, by file name
+    private static final Map<String, String> SHA256_HASHES = mapOf(
+            mapEntry("scala-library-2.11.12.jar", "0b3d6fd42958ee98715ba2ec5fe221f4ca1e694d7c981b0ae0cd68e97baf6dce"),
+            mapEntry("scala-library-2.12.6.jar", "f81d7144f0ce1b8123335b72ba39003c4be2870767aca15dd0888ba3dab65e98"),
+            mapEntry("scala-library-2.12.7.jar", "8f3dc6091db688464ad8b1ee6c7343d7aa5940d474ee8b90406c71e45dd74fc0"),
+            mapEntry("scala-library-2.12.8.jar", "321fb55685635c931eba4bc0d7668349da3f2c09aee2de93a70566066ff25c28"),
+            mapEntry("scala-library-2.12.9.jar", "364ee6ffd45f4fb8f9de40d1473d266ed5c199a44c1d4e2bdc895b1fbe35c75f"),
+            mapEntry("scala-library-2.12.10.jar", "0a57044d10895f8d3dd66ad4286891f607169d948845ac51e17b4c1cf0ab569d"),
+            mapEntry("scala-library-2.12.11.jar", "dbfe77a3fc7a16c0c7cb6cb2b91fecec5438f2803112a744cb1b187926a138be"),
+            mapEntry("scala-library-2.12.12.jar", "1673ffe8792021f704caddfe92067ed1ec75229907f84380ad68fe621358c925"),
+            mapEntry("scala-library-2.12.13.jar", "1bb415cff43f792636556a1137b213b192ab0246be003680a3b006d01235dd89"),
+            mapEntry("scala-library-2.12.14.jar", "0451dce8322903a6c2aa7d31232b54daa72a61ced8ade0b4c5022442a3f6cb57"),
+            mapEntry("scala-library-2.12.15.jar", "e518bb640e2175de5cb1f8e326679b8d975376221f1b547757de429bbf4563f0"),
+            mapEntry("scala-library-2.13.0.jar", "bd3b2fa8b922295ccf1537aba1850d455f82003c10484df509d29ff177cc1edc"),
+            mapEntry("scala-library-2.13.1.jar", "711dcb0ba3d8d8392a52162c1f251d89787148981d2823e30697bc08282521ae"),
+            mapEntry("scala-library-2.13.2.jar", "6a1c9846feb8f5d7d33b91e61e056d272215a79747a2b7b5e5ece690bf151d5d"),
+            mapEntry("scala-library-2.13.3.jar", "cb0eb1a33a6056b2e652f26923bfa361348ae72a2119da7b78dc1f673d1a93b1"),
+            mapEntry("scala-library-2.13.4.jar", "fbc1de27c46b46c4edaddb808f57afa2b0e016da12cb0abe4289ee69c42f2c8e"),
+            mapEntry("scala-library-2.13.5.jar", "52aafeef8e0d104433329b1bc31463d1b4a9e2b8f24f85432c8cfaed9fad2587"),
+            mapEntry("scala-library-2.13.6.jar", "f19ed732e150d3537794fd3fe42ee18470a3f707efd499ecd05a99e727ff6c8a"),
+            mapEntry("scala-library-2.13.7.jar", "a8bc08f3b9ff93d0496032bf2677163071b8d212992f41dbf04212e07d91616b"),
+            mapEntry("scala-library-2.13.8.jar", "a0882b82514190c2bac7d1a459872a75f005fc0f3e88b2bc0390367146e35db7"),
+            mapEntry("scala-reflect-2.11.12.jar", "6ba385b450a6311a15c918cf8688b9af9327c6104f0ecbd35933cfcd3095fe04"),
+            mapEntry("scala-reflect-2.12.6.jar", "ffa70d522fc9f9deec14358aa674e6dd75c9dfa39d4668ef15bb52f002ce99fa"),
+            mapEntry("scala-reflect-2.12.7.jar", "7427d7ee5771e8c36c1db5a09368fa3078f6eceb77d7c797a322a088c5dddb76"),
+            mapEntry("scala-reflect-2.12.8.jar", "4d6405395c4599ce04cea08ba082339e3e42135de9aae2923c9f5367e957315a"),
+            mapEntry("scala-reflect-2.12.9.jar", "4285ba64044d1a62b19304fe3ddd0088da240649c9fe2a6571c989feda1d0829"),
+            mapEntry("scala-reflect-2.12.10.jar", "56b609e1bab9144fb51525bfa01ccd72028154fc40a58685a1e9adcbe7835730"),
+            mapEntry("scala-reflect-2.12.11.jar", "5f9e156aeba45ef2c4d24b303405db259082739015190b3b334811843bd90d6a"),
+            mapEntry("scala-reflect-2.12.12.jar", "3c502791757c0c8208f00033d8c4d778ed446efa6f49a6f89b59c6f92b347774"),
+            mapEntry("scala-reflect-2.12.13.jar", "2bd46318d87945e72eb186a7b5ea496c43cf8f0aabc6ff11b3e7962f8635e669"),
+            mapEntry("scala-reflect-2.12.14.jar", "497f4603e9d19dc4fa591cd467de5e32238d240bbd955d3dac6390b270889522"),
+            mapEntry("scala-reflect-2.12.15.jar", "d5a21ab16b35dbe1fa9f50267d3c198d4797084a61557874ca53c85f15747e48"),
+            mapEntry("scala-reflect-2.13.0.jar", "aef72378abbc8b05cfdc7144fc0e55904dd87bf46ce2e973ae667dc3ed2fcee8"),
+            mapEntry("scala-reflect-2.13.1.jar", "c8acaef84ae06ad83416a7e121ba8cb3da83c8581106be0695b8066c5d7c38ae"),
+            mapEntry("scala-reflect-2.13.2.jar", "21a7288874f186d6049e8b14a986011ffd96cb587f206eccf946624f2d476815"),
+            mapEntry("scala-reflect-2.13.3.jar", "959dc9ab8aad84e2fc7adacfb84f2ed908caee22c4c2d291dd818f0c40c6ed5b"),
+            mapEntry("scala-reflect-2.13.4.jar", "6a85f568bb38ca0a04506de5e92aaf208e850b0ab3134782b1d62cc0cf93d086"),
+            mapEntry("scala-reflect-2.13.5.jar", "808c44b8adb3205e91d417bf57406715ca2508ad6952f6e2132ff8099b78bd73"),
+            mapEntry("scala-reflect-2.13.6.jar", "f713593809b387c60935bb9a940dfcea53bd0dbf8fdc8d10739a2896f8ac56fa"),
+            mapEntry("scala-reflect-2.13.7.jar", "a7bc4eca6970083d426a8d081aec313c7b7207d5f83b6724995e34078edc5cbb"),
+            mapEntry("scala-reflect-2.13.8.jar", "fdfbcc92e87f424578b303bcb47e0f55fee990c4b6da0006c9e75879d1e442e4"),
+            mapEntry("scala3-library_3-3.0.1.jar", "43584226adb12326b8a81287f4c607993b3316764e63034c7748576ccb11bf8e"),
+            mapEntry("scala3-library_3-3.0.2.jar", "853b6ab4056cdcb57831860ac62112e59717db11127e31c833b0573171a11134"),
+            mapEntry("scala3-library_3-3.1.0.jar", "5b513c97181d22c393cf32a51902fce27b9f698d246c7a92df7775f0bb04bec0"),
+            mapEntry("scala3-library_3-3.1.1.jar", "b4531b6618bb264114dddad361800d62c79a4f9ad8494c318b1176b3d592b775"),
+            mapEntry("tasty-core_3-3.0.1.jar", "3fcf45b6f5f1a390e9d2ca519f4877be27c4b2caf8c0f78d68d95a303f7b6fa0"),
+            mapEntry("tasty-core_3-3.0.2.jar", "3250e9b2ed1ca5ad8a870070fd219130c11e7c001c2e627015de3c6440b161c1"),
+            mapEntry("tasty-core_3-3.1.0.jar", "80c9d1ac1630a22b3b62e0d482f91552397be22eac3ea0e61104c5ca67287647"),
+            mapEntry("tasty-core_3-3.1.1.jar", "2ec5ce4be6e7668e9bee47456faf52e03a09f45a549b4a4e64efc9405aae2433")
+    );
+
     private final String version;
     private final boolean stable;
     private final Map<String, String> urls;
@@ -88,8 +139,8 @@ public enum ScalaVersion {
             );
         } else if (scalaVersion.startsWith("3.0.") || scalaVersion.startsWith("3.1.")) {
             return mapOf(
-                    mapEntry(PluginScalaVersion.SCALA2_LIBRARY_URL, mavenCentralSearchScalaLibrary(latest_2_13.getVersion())),
-                    mapEntry(PluginScalaVersion.SCALA2_REFLECT_URL, mavenCentralSearchScalaReflect(latest_2_13.getVersion())),
+                    mapEntry(PluginScalaVersion.SCALA2_LIBRARY_URL, mavenCentralSearchScalaLibrary(LATEST_2_13)),
+                    mapEntry(PluginScalaVersion.SCALA2_REFLECT_URL, mavenCentralSearchScalaReflect(LATEST_2_13)),
                     mapEntry(PluginScalaVersion.SCALA3_LIBRARY_URL, mavenCentralScala3LibraryAdditions(scalaVersion)),
                     mapEntry(PluginScalaVersion.TASTY_CORE_URL, mavenCentralScala3TastyCoreAdditions(scalaVersion))
             );
@@ -130,6 +181,21 @@ public enum ScalaVersion {
         return Collections.unmodifiableMap(urls);
     }
 
+    /**
+     * Get the SHA-256 hashes of the Scala runtime jar files, so that the downloaded jar files can be verified.
+     * The keys of this map are the same as the keys of {@link #getUrls()}. Jar files of which the hash is not known are absent.
+     * @return a map containing the hashes in hexadecimal form as values
+     */
+    public Map<String, String> getSha256Hashes() {
+        Map<String, String> sha256Hashes = new HashMap<>();
+        for (Map.Entry<String, String> entry : urls.entrySet()) {
+            String url = entry.getValue();
+            String hash = SHA256_HASHES.get(url.substring(url.lastIndexOf('/') + 1));
+            if (hash != null) sha256Hashes.put(entry.getKey(), hash);
+        }
+        return Collections.unmodifiableMap(sha256Hashes);
+    }
+
     /**
      * Get a url on which the standard library is hosted.
      * @return a url, usually to some maven repository
@@ -0,0 +1,157 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
+import xyz.janboerman.scalaloader.compat.Compat;
+import xyz.janboerman.scalaloader.compat.FlightRecording;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * ClassLoader that defines the generated adapters which are shared by all ScalaPlugins that use the same Scala standard library.
+ * Its parent is the {@link ScalaLibraryClassLoader}, so the adapters can see the Scala standard library and ScalaLoader, but not the classes of any plugin.
+ * The adapters are persisted in ScalaLoader's data folder, so that they don't need to be generated again the next time the server starts.
+ *
+ * @see SharedAdapterClassLoaders
+ */
+public final class AdapterClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final String name;
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+    //so that the name of the adapter (which contains a hash of the description) does not need to be computed every time the adapter is used.
+    private final ConcurrentMap<AdapterDescription, Class<?>> adapters = new ConcurrentHashMap<>();
+    private final PersistentClasses persistentClasses;
+    //the names of the adapters that were persisted by an earlier run. they are defined when they are needed.
+    private final Set<String> persistedClassNames;
+    private final Map<String, Supplier<Class<?>>> persistedClassAliases = new HashMap<>();
+
+    AdapterClassLoader(ScalaLibraryClassLoader parent, File dataFolder, Logger logger) {
+        super(parent);
+        this.name = "Shared adapters (Scala " + parent.getScalaVersion() + ")";
+        this.persistentClasses = new PersistentClasses(new File(dataFolder, parent.getScalaVersion()), name, logger);
+
+        Map<String, String> persistedClasses = persistentClasses.load();
+        for (Map.Entry<String, String> entry : persistedClasses.entrySet()) {
+            String className = entry.getKey();
+            String alias = entry.getValue();
+            if (alias != null) {
+                Supplier<Class<?>> definer = () -> definePersistedClass(className);
+                PersistedClassAliases.register(alias, definer);
+                persistedClassAliases.put(alias, definer);
+            }
+        }
+        this.persistedClassNames = persistedClasses.isEmpty() ? Compat.emptySet() : persistedClasses.keySet();
+    }
+
+    /**
+     * Generates a shared adapter, or gets the adapter if it was defined already.
+     *
+     * @param description the description of the adapter
+     * @param generator the generator for the adapter, which is called without a plugin
+     * @return the result of the class definition
+     */
+    public ClassDefineResult getOrDefineClass(AdapterDescription description, AdapterGenerator generator) {
+        Class<?> oldClass = adapters.get(description);
+        if (oldClass != null) {
+            return ClassDefineResult.oldClass(oldClass);
+        }
+
+        String className = description.getSharedClassName();
+        oldClass = classes.get(className);
+        if (oldClass != null) {
+            adapters.putIfAbsent(description, oldClass);
+            return ClassDefineResult.oldClass(oldClass);
+        }
+
+        Object event = FlightRecording.beginGenerateClass();
+        //adapters that were persisted by an earlier run don't need to be generated or persisted again.
+        byte[] byteCode = persistedClassNames.contains(className) ? persistentClasses.read(className) : null;
+        ClassDefineResult result = byteCode != null
+                ? defineGeneratedClass(event, className, byteCode, false)
+                : defineGeneratedClass(event, className, generator.generate(className, null), true);
+        adapters.putIfAbsent(description, result.getClassDefinition());
+        return result;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> clazz = classes.get(name);
+        if (clazz == null) clazz = definePersistedClass(name);
+        if (clazz == null) throw new ClassNotFoundException(name);
+        return clazz;
+    }
+
+    private Class<?> definePersistedClass(String className) {
+        if (!persistedClassNames.contains(className)) return null;
+
+        final Class<?> oldClass = classes.get(className);
+        if (oldClass != null) {
+            return oldClass;
+        }
+
+        Object event = FlightRecording.beginGenerateClass();
+        byte[] byteCode = persistentClasses.read(className);
+        if (byteCode == null) return null;
+
+        return defineGeneratedClass(event, className, byteCode, false).getClassDefinition();
+    }
+
+    private ClassDefineResult defineGeneratedClass(Object event, String className, byte[] byteCode, boolean persist) {
+        boolean isNew;
+        Class<?> clazz;
+
+        synchronized (getClassLoadingLock(className)) {
+            Class<?> existingClass = classes.get(className);
+            if (existingClass == null) {
+                clazz = defineClass(className, byteCode, 0, byteCode.length);
+                classes.put(className, clazz);
+                isNew = true;
+            } else {
+                clazz = existingClass;
+                isNew = false;
+            }
+        }
+
+        FlightRecording.endGenerateClass(event, name, className, isNew, persist, byteCode.length);
+
+        if (isNew) {
+            if (persist) {
+                persistentClasses.save(new ClassFile(className, byteCode));
+            }
+            return ClassDefineResult.newClass(clazz);
+        } else {
+            return ClassDefineResult.oldClass(clazz);
+        }
+    }
+
+    /**
+     * Writes the adapters that are still queued, and unregisters the aliases of the persisted adapters that were never defined.
+     * Called when the last plugin that uses this classloader is unloaded.
+     */
+    void close() {
+        persistentClasses.flush();
+        for (Map.Entry<String, Supplier<Class<?>>> entry : persistedClassAliases.entrySet()) {
+            PersistedClassAliases.unregister(entry.getKey(), entry.getValue());
+        }
+        classes.clear();
+        adapters.clear();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
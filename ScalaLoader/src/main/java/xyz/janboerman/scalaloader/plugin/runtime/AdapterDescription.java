@@ -0,0 +1,304 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.ArrayParameterType;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.ParameterType;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.ParameterizedParameterType;
+import xyz.janboerman.scalaloader.util.Hashing;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Describes a generated adapter class: the name of the class, the type that it wraps, and the types of the elements that it (de)serializes.
+ * Two adapters with the same description have the same bytecode, unless the adapter refers to the plugin that generated it.
+ * Adapters that don't need the plugin can be shared by all ScalaPlugins that use the same Scala standard library.
+ *
+ * @see xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader#getOrDefineAdapterClass(AdapterDescription, AdapterGenerator)
+ */
+public final class AdapterDescription {
+
+    //increment this when the bytecode of the generated adapters changes, so that shared adapters which were persisted by an older version are not used.
+    private static final int GENERATOR_VERSION = 1;
+
+    //adapters are requested every time a value is serialized, so the descriptions are reused.
+    //they are attached to the type that is defined by the most specific classloader, so that they don't keep the classes of unloaded plugins alive.
+    private static final ClassValue<ConcurrentMap<List<Object>, AdapterDescription>> DESCRIPTIONS = new ClassValue<ConcurrentMap<List<Object>, AdapterDescription>>() {
+        @Override
+        protected ConcurrentMap<List<Object>, AdapterDescription> computeValue(Class<?> wrappedType) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final String className;
+    private final Class<?> wrappedType;
+    private final List<? extends ParameterType> elementTypes;
+    private String canonicalDescription;
+    private String sharedClassName;
+    private volatile Shareability shareability;
+
+    /**
+     * Construct the description of an adapter.
+     *
+     * @param className the name of the adapter class when it is generated for a single plugin
+     * @param wrappedType the type of the objects that are wrapped by the adapter
+     * @param elementTypes the types that the adapter passes to RuntimeConversions
+     */
+    public AdapterDescription(String className, Class<?> wrappedType, List<? extends ParameterType> elementTypes) {
+        this.className = className;
+        this.wrappedType = wrappedType;
+        this.elementTypes = Collections.unmodifiableList(elementTypes);
+    }
+
+    /**
+     * Construct the description of an adapter.
+     *
+     * @param className the name of the adapter class when it is generated for a single plugin
+     * @param wrappedType the type of the objects that are wrapped by the adapter
+     * @param elementTypes the types that the adapter passes to RuntimeConversions
+     */
+    public AdapterDescription(String className, Class<?> wrappedType, ParameterType... elementTypes) {
+        this(className, wrappedType, Arrays.asList(elementTypes));
+    }
+
+    /**
+     * Get the description of an adapter. Equal descriptions are only created once,
+     * so that the outcome of {@link #isShareable(ClassLoader)} and the canonical description are only computed once.
+     *
+     * @param className the name of the adapter class when it is generated for a single plugin
+     * @param wrappedType the type of the objects that are wrapped by the adapter
+     * @param elementTypes the types that the adapter passes to RuntimeConversions
+     * @return the description
+     */
+    public static AdapterDescription of(String className, Class<?> wrappedType, List<? extends ParameterType> elementTypes) {
+        Class<?> anchor = wrappedType;
+        for (ParameterType elementType : elementTypes) {
+            anchor = anchor(anchor, elementType);
+            if (anchor == null) {
+                //the types come from plugins that can't see each other's classes.
+                return new AdapterDescription(className, wrappedType, elementTypes);
+            }
+        }
+
+        ConcurrentMap<List<Object>, AdapterDescription> descriptions = DESCRIPTIONS.get(anchor);
+        AdapterDescription description = descriptions.get(Arrays.asList(className, elementTypes));
+        if (description == null) {
+            //copy the element types, the caller could still modify its list.
+            description = new AdapterDescription(className, wrappedType, new ArrayList<>(elementTypes));
+            AdapterDescription existing = descriptions.putIfAbsent(Arrays.asList(className, description.getElementTypes()), description);
+            if (existing != null) description = existing;
+        }
+        return description;
+    }
+
+    //finds the type that can see both the anchor and the type, or null if there is no such type.
+    private static Class<?> anchor(Class<?> anchor, ParameterType type) {
+        Class<?> rawType = type.getRawType();
+        while (rawType.isArray()) rawType = rawType.getComponentType();
+
+        if (!isVisible(rawType, anchor.getClassLoader())) {
+            if (!isVisible(anchor, rawType.getClassLoader())) return null;
+            anchor = rawType;
+        }
+
+        if (type instanceof ArrayParameterType) {
+            return anchor(anchor, ((ArrayParameterType) type).getComponentType());
+        } else if (type instanceof ParameterizedParameterType) {
+            for (ParameterType typeArgument : ((ParameterizedParameterType) type).getTypeParameters()) {
+                anchor = anchor(anchor, typeArgument);
+                if (anchor == null) return null;
+            }
+        }
+        return anchor;
+    }
+
+    /**
+     * Get the description of an adapter. Equal descriptions are only created once.
+     *
+     * @param className the name of the adapter class when it is generated for a single plugin
+     * @param wrappedType the type of the objects that are wrapped by the adapter
+     * @param elementTypes the types that the adapter passes to RuntimeConversions
+     * @return the description
+     * @see #of(String, Class, List)
+     */
+    public static AdapterDescription of(String className, Class<?> wrappedType, ParameterType... elementTypes) {
+        return of(className, wrappedType, Arrays.asList(elementTypes));
+    }
+
+    /**
+     * Get the name of the adapter class when it is generated for a single plugin.
+     * @return the name of the class
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Get the name of the adapter class when it is shared by multiple plugins.
+     * The name is unique for every description, so that adapters for different element types can be shared at the same time.
+     * @return the name of the class
+     */
+    public String getSharedClassName() {
+        if (sharedClassName == null) {
+            String hash = Hashing.sha256(getCanonicalDescription().getBytes(StandardCharsets.UTF_8));
+            sharedClassName = className + "$" + hash.substring(0, 16);
+        }
+        return sharedClassName;
+    }
+
+    /**
+     * Get the type of the objects that are wrapped by the adapter.
+     * @return the wrapped type
+     */
+    public Class<?> getWrappedType() {
+        return wrappedType;
+    }
+
+    /**
+     * Get the types that the adapter passes to RuntimeConversions.
+     * @return the element types
+     */
+    public List<? extends ParameterType> getElementTypes() {
+        return elementTypes;
+    }
+
+    /**
+     * Describes the adapter without annotations, because the generated adapters don't retain the annotations of the element types.
+     * @return the canonical description
+     */
+    String getCanonicalDescription() {
+        if (canonicalDescription != null) return canonicalDescription;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('v').append(GENERATOR_VERSION).append(';').append(className).append(';').append(wrappedType.getName()).append(';');
+        for (int i = 0; i < elementTypes.size(); i++) {
+            if (i > 0) sb.append(',');
+            describe(sb, elementTypes.get(i));
+        }
+        return canonicalDescription = sb.toString();
+    }
+
+    private static void describe(StringBuilder sb, ParameterType type) {
+        if (type instanceof ArrayParameterType) {
+            describe(sb, ((ArrayParameterType) type).getComponentType());
+            sb.append("[]");
+        } else if (type instanceof ParameterizedParameterType) {
+            List<? extends ParameterType> typeArguments = ((ParameterizedParameterType) type).getTypeParameters();
+            sb.append(type.getRawType().getName()).append('<');
+            for (int i = 0; i < typeArguments.size(); i++) {
+                if (i > 0) sb.append(',');
+                describe(sb, typeArguments.get(i));
+            }
+            sb.append('>');
+        } else {
+            sb.append(type.getRawType().getName());
+        }
+    }
+
+    /**
+     * Tests whether the adapter can be shared by all plugins whose classloaders have the given classloader as their parent.
+     * That is the case when every type in the description is visible from that classloader,
+     * and every element type is (de)serialized by RuntimeConversions without consulting the plugin (codecs, logging, nested adapters).
+     *
+     * @param sharedParent the common parent classloader of the plugins
+     * @return true if the adapter can be shared, otherwise false
+     */
+    public boolean isShareable(ClassLoader sharedParent) {
+        //plugins of the same Scala version have the same parent, so remembering the last outcome is enough.
+        Shareability shareability = this.shareability;
+        if (shareability == null || shareability.sharedParent != sharedParent) {
+            this.shareability = shareability = new Shareability(sharedParent, computeShareable(sharedParent));
+        }
+        return shareability.shareable;
+    }
+
+    private boolean computeShareable(ClassLoader sharedParent) {
+        if (!isVisible(wrappedType, sharedParent)) return false;
+
+        for (ParameterType elementType : elementTypes) {
+            if (!isPluginIndependent(elementType, sharedParent)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPluginIndependent(ParameterType type, ClassLoader sharedParent) {
+        Class<?> rawType = type.getRawType();
+        if (!isVisible(rawType, sharedParent)) return false;
+
+        if (type instanceof ArrayParameterType) {
+            return isPluginIndependent(((ArrayParameterType) type).getComponentType(), sharedParent);
+        } else if (type instanceof ParameterizedParameterType) {
+            if (!Collection.class.isAssignableFrom(rawType) && !Map.class.isAssignableFrom(rawType)) return false;
+            for (ParameterType typeArgument : ((ParameterizedParameterType) type).getTypeParameters()) {
+                if (!isPluginIndependent(typeArgument, sharedParent)) return false;
+            }
+            return true;
+        } else {
+            return isBuiltIn(rawType);
+        }
+    }
+
+    //the types that RuntimeConversions handles before it looks at the codecs of the plugin.
+    //java.lang.Object is not one of them: the live objects could be of any type, including types that need a codec.
+    private static boolean isBuiltIn(Class<?> rawType) {
+        return rawType.isPrimitive()
+                || rawType == String.class
+                || rawType == Byte.class || rawType == Short.class || rawType == Integer.class || rawType == Long.class
+                || rawType == Float.class || rawType == Double.class || rawType == Character.class || rawType == Boolean.class
+                || rawType == UUID.class || rawType == BigInteger.class || rawType == BigDecimal.class
+                || rawType.isEnum()
+                || ConfigurationSerializable.class.isAssignableFrom(rawType);
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader sharedParent) {
+        while (type.isArray()) type = type.getComponentType();
+
+        ClassLoader definingLoader = type.getClassLoader();
+        if (definingLoader == null) return true;    //bootstrap classes are visible from everywhere
+
+        for (ClassLoader loader = sharedParent; loader != null; loader = loader.getParent()) {
+            if (loader == definingLoader) return true;
+        }
+        return false;
+    }
+
+    private static final class Shareability {
+        private final ClassLoader sharedParent;
+        private final boolean shareable;
+
+        private Shareability(ClassLoader sharedParent, boolean shareable) {
+            this.sharedParent = sharedParent;
+            this.shareable = shareable;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof AdapterDescription)) return false;
+
+        AdapterDescription that = (AdapterDescription) o;
+        return this.getCanonicalDescription().equals(that.getCanonicalDescription());
+    }
+
+    @Override
+    public int hashCode() {
+        return getCanonicalDescription().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getCanonicalDescription();
+    }
+
+}
@@ -0,0 +1,21 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+
+/**
+ * A factory that generates the class definition of an adapter given the class' name.
+ *
+ * @see AdapterDescription
+ */
+public interface AdapterGenerator {
+
+    /**
+     * Generates the class definition.
+     *
+     * @param className the name of the class
+     * @param plugin the classloader of the plugin that the adapter is generated for, or null if the adapter is shared by all plugins
+     * @return the classfile's bytecode
+     */
+    public byte[] generate(String className, ScalaPluginClassLoader plugin);
+
+}
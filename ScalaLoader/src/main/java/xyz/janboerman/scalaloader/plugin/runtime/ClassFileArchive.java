@@ -0,0 +1,368 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * An append-only archive of class files. The bytecode of the classes is appended to a data file,
+ * and for every class an entry is appended to an index file: the name of the class, its ConfigurationSerialization alias,
+ * the offset and length of its bytecode in the data file, and the CRC-32 checksum of its bytecode. The bytecode is always appended before the index entry, so an entry never refers to bytecode that was not written.
+ * <p>
+ * Both files start with a header consisting of a magic number and the version of the format.
+ * If a class is appended again, then its newest entry is used. Bytecode that is no longer referred to by the index is removed by compaction,
+ * which happens when the archive is opened and it contains more unused bytes than used bytes,
+ * or when the archive was written using an older version of the format. An incomplete entry at the end of the index is cut off.
+ * <p>
+ * Opening the archive only reads the index. The bytecode of a class is read when it is needed.
+ * Entries whose bytecode does not match their checksum are removed.
+ * <p>
+ * Bytecode is read using positional reads on a {@link FileChannel}, not from a memory-mapped view of the data file.
+ * Classes are read one at a time now, so mapping the whole data file for every class would cost more than it saves.
+ * Keeping a mapping around is not an option either: a {@link java.nio.MappedByteBuffer} can't be unmapped explicitly,
+ * and on Windows compaction can't replace a data file that is still mapped.
+ */
+final class ClassFileArchive {
+
+    static final int MAGIC = 0x53434C41; //"SCLA"
+    static final int FORMAT_VERSION = 2;   //version 2 added the alias
+    private static final int HEADER_SIZE = 8;
+
+    private final Path indexFile;
+    private final Path dataFile;
+    private final Logger logger;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long dataSize;
+
+    ClassFileArchive(Path indexFile, Path dataFile, Logger logger) {
+        this.indexFile = indexFile;
+        this.dataFile = dataFile;
+        this.logger = logger;
+    }
+
+    static final class Entry {
+        final String className;
+        final String alias;     //null if the class has no alias, or if the alias is not known yet
+        final long offset;
+        final int length;
+        final int checksum;
+
+        Entry(String className, String alias, long offset, int length, int checksum) {
+            this.className = className;
+            this.alias = alias;
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    boolean exists() {
+        return Files.exists(indexFile);
+    }
+
+    boolean contains(String className) {
+        return entries.containsKey(className);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the names of the classes in the archive, and their aliases.
+     * @return a map from class names to ConfigurationSerialization aliases, classes without an alias are mapped to null
+     */
+    Map<String, String> getAliases() {
+        Map<String, String> aliases = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            aliases.put(entry.className, entry.alias);
+        }
+        return aliases;
+    }
+
+    long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Reads the index of the archive, and compacts the archive if needed. If the archive is not recognised, it is deleted.
+     * @throws IOException if the archive could not be read
+     */
+    void open() throws IOException {
+        entries.clear();
+        dataSize = 0L;
+
+        if (!Files.exists(indexFile) || !Files.exists(dataFile)) {
+            //without an index the bytecode can't be found, and without bytecode the index is useless.
+            reset();
+            return;
+        }
+
+        boolean outdated = false;
+        //the index is small, so just read it entirely.
+        byte[] index = Files.readAllBytes(indexFile);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(index))) {
+            int version = readHeader(in, indexFile);
+            if (version == -1) {
+                reset();
+                return;
+            } else if (version < FORMAT_VERSION) {
+                //rewrite the archive in the current format
+                outdated = true;
+            }
+
+            while (in.available() > 0) {
+                int entryStart = index.length - in.available();
+                try {
+                    String className = in.readUTF();
+                    String alias = null;
+                    if (version >= 2) {
+                        alias = in.readUTF();
+                        if (alias.isEmpty()) alias = null;
+                    }
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    //newer entries replace older entries
+                    entries.put(className, new Entry(className, alias, offset, length, checksum));
+                } catch (IOException incompleteEntry) {
+                    //the server stopped while an entry was being written. cut it off so that new entries can be appended.
+                    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                        channel.truncate(entryStart);
+                    }
+                    break;
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) != -1);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() > FORMAT_VERSION) {
+                logger.warning("Generated classes data file " + dataFile + " is not recognised, discarding it.");
+                reset();
+                return;
+            }
+            dataSize = channel.size();
+        }
+
+        long usedBytes = 0L;
+        for (Entry entry : entries.values()) {
+            usedBytes += entry.length;
+        }
+        long unusedBytes = dataSize - HEADER_SIZE - usedBytes;
+
+        if (outdated || unusedBytes > usedBytes) {
+            boolean compacted = compact();
+            //an archive that could not be compacted is still usable, it just contains some unused bytes.
+            //but entries in the current format can't be appended to an index in an older format.
+            if (!compacted && outdated) {
+                reset();
+            }
+        }
+    }
+
+    private int readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.available() < HEADER_SIZE || in.readInt() != MAGIC) {
+            logger.warning("Generated classes index file " + file + " is not recognised, discarding it.");
+            return -1;
+        }
+
+        int version = in.readInt();
+        if (version > FORMAT_VERSION) {
+            logger.warning("Generated classes index file " + file + " was written by a newer version of ScalaLoader, discarding it.");
+            return -1;
+        }
+        return version;
+    }
+
+    private void reset() throws IOException {
+        entries.clear();
+        dataSize = 0L;
+        Files.deleteIfExists(indexFile);
+        Files.deleteIfExists(dataFile);
+    }
+
+    /**
+     * Reads the bytecode of a class in the archive.
+     * @param className the name of the class
+     * @return the bytecode, or null if the class is not in the archive or if its bytecode is corrupt
+     * @throws IOException if the data file could not be read
+     */
+    byte[] read(String className) throws IOException {
+        Entry entry = entries.get(className);
+        if (entry == null) return null;
+
+        byte[] byteCode;
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            byteCode = read(channel, entry);
+        }
+
+        if (byteCode == null) {
+            logger.warning("Bytecode of generated class " + className + " is corrupt, it will be generated again.");
+            //the class will be appended again when it is generated.
+            entries.remove(className);
+        }
+        return byteCode;
+    }
+
+    private static byte[] read(FileChannel channel, Entry entry) throws IOException {
+        if (entry.offset < HEADER_SIZE || entry.length < 0 || entry.offset + entry.length > channel.size()) return null;
+
+        ByteBuffer byteCode = ByteBuffer.allocate(entry.length);
+        while (byteCode.hasRemaining() && channel.read(byteCode, entry.offset + byteCode.position()) != -1);
+
+        CRC32 crc = new CRC32();
+        crc.update(byteCode.array(), 0, entry.length);
+        return (int) crc.getValue() == entry.checksum ? byteCode.array() : null;
+    }
+
+    /**
+     * Appends classes to the archive. Classes that are in the archive already are skipped.
+     * @param classFiles the classes
+     * @throws IOException if the classes could not be written
+     */
+    void append(Collection<ClassFile> classFiles) throws IOException {
+        List<ClassFile> newClassFiles = new ArrayList<>(classFiles.size());
+        for (ClassFile classFile : classFiles) {
+            if (!entries.containsKey(classFile.getClassName())) {
+                newClassFiles.add(classFile);
+            }
+        }
+        if (newClassFiles.isEmpty()) return;
+
+        Files.createDirectories(dataFile.getParent());
+
+        //first the bytecode
+        List<Entry> newEntries = new ArrayList<>(newClassFiles.size());
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            channel.position(offset);
+            if (offset == 0L) {
+                writeFully(channel, header());
+                offset = HEADER_SIZE;
+            }
+
+            CRC32 crc = new CRC32();
+            for (ClassFile classFile : newClassFiles) {
+                byte[] byteCode = classFile.getByteCode(false);
+                crc.reset();
+                crc.update(byteCode, 0, byteCode.length);
+                writeFully(channel, ByteBuffer.wrap(byteCode));
+                newEntries.add(new Entry(classFile.getClassName(), PersistedClassAliases.readAlias(byteCode), offset, byteCode.length, (int) crc.getValue()));
+                offset += byteCode.length;
+            }
+            dataSize = offset;
+        }
+
+        //then the index
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (!Files.exists(indexFile)) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+            }
+            for (Entry entry : newEntries) {
+                writeEntry(out, entry);
+            }
+        }
+        Files.write(indexFile, bytes.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        for (Entry entry : newEntries) {
+            entries.put(entry.className, entry);
+        }
+    }
+
+    /**
+     * Rewrites the archive such that it only contains the bytecode that is referred to by the index, in the current format.
+     * @return true if the archive was rewritten, false if it could not be rewritten
+     * @throws IOException if the temporary files could not be created or deleted
+     */
+    boolean compact() throws IOException {
+        Path folder = dataFile.getParent();
+        Path tempDataFile = Files.createTempFile(folder, dataFile.getFileName().toString(), ".tmp");
+        Path tempIndexFile = Files.createTempFile(folder, indexFile.getFileName().toString(), ".tmp");
+        Map<String, Entry> compacted = new LinkedHashMap<>();
+
+        try {
+            long offset = HEADER_SIZE;
+            try (FileChannel source = FileChannel.open(dataFile, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(tempDataFile, StandardOpenOption.WRITE);
+                 DataOutputStream index = new DataOutputStream(Files.newOutputStream(tempIndexFile))) {
+                writeFully(target, header());
+                index.writeInt(MAGIC);
+                index.writeInt(FORMAT_VERSION);
+
+                for (Entry entry : entries.values()) {
+                    byte[] byteCode = read(source, entry);
+                    if (byteCode == null) continue;
+
+                    writeFully(target, ByteBuffer.wrap(byteCode));
+                    //archives in an older format don't know the alias yet
+                    String alias = entry.alias != null ? entry.alias : PersistedClassAliases.readAlias(byteCode);
+                    Entry moved = new Entry(entry.className, alias, offset, entry.length, entry.checksum);
+                    writeEntry(index, moved);
+                    compacted.put(moved.className, moved);
+                    offset += entry.length;
+                }
+            }
+
+            //if we crash between these two moves then the checksums no longer match, in which case the classes will just be generated again.
+            Files.move(tempDataFile, dataFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempIndexFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+
+            entries.clear();
+            entries.putAll(compacted);
+            dataSize = offset;
+            return true;
+        } catch (IOException e) {
+            Files.deleteIfExists(tempDataFile);
+            Files.deleteIfExists(tempIndexFile);
+            logger.log(Level.WARNING, "Could not compact generated classes archive " + dataFile, e);
+            return false;
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.flip();
+        return header;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.className);
+        out.writeUTF(entry.alias == null ? "" : entry.alias);
+        out.writeLong(entry.offset);
+        out.writeInt(entry.length);
+        out.writeInt(entry.checksum);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import xyz.janboerman.scalaloader.bytecode.AsmConstants;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Registers the ConfigurationSerialization aliases of persisted generated classes, without defining those classes.
+ * This class is registered with ConfigurationSerialization in place of each of those classes.
+ * When ConfigurationSerialization deserializes an object of one of the aliases, the generated class is defined and registered,
+ * and the object is deserialized by the generated class.
+ */
+public final class PersistedClassAliases implements ConfigurationSerializable {
+
+    private static final String SERIALIZABLE_AS_DESCRIPTOR = "Lorg/bukkit/configuration/serialization/SerializableAs;";
+
+    private static final ConcurrentMap<String, Supplier<Class<?>>> DEFINERS = new ConcurrentHashMap<>();
+
+    private PersistedClassAliases() {
+    }
+
+    /**
+     * Registers an alias of a generated class that is not defined yet.
+     * @param alias the alias
+     * @param definer defines the generated class, or returns null if it can't be defined
+     */
+    public static void register(String alias, Supplier<Class<?>> definer) {
+        DEFINERS.put(alias, definer);
+        ConfigurationSerialization.registerClass(PersistedClassAliases.class, alias);
+    }
+
+    /**
+     * Unregisters an alias, unless it was registered again by a different definer, or unless the generated class was registered for the alias already.
+     * @param alias the alias
+     * @param definer the definer of the generated class
+     */
+    public static void unregister(String alias, Supplier<Class<?>> definer) {
+        if (DEFINERS.remove(alias, definer) && ConfigurationSerialization.getClassByAlias(alias) == PersistedClassAliases.class) {
+            ConfigurationSerialization.unregisterClass(alias);
+        }
+    }
+
+    public static ConfigurationSerializable deserialize(Map<String, ?> map) {
+        String alias = (String) map.get(ConfigurationSerialization.SERIALIZED_TYPE_KEY);
+        Supplier<Class<?>> definer = alias == null ? null : DEFINERS.get(alias);
+        Class<?> clazz = definer == null ? null : definer.get();
+        if (clazz == null || !ConfigurationSerializable.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("Specified class does not exist ('" + alias + "')");
+        }
+
+        //from now on, ConfigurationSerialization can use the generated class directly.
+        Class<? extends ConfigurationSerializable> generatedClass = (Class<? extends ConfigurationSerializable>) clazz;
+        ConfigurationSerialization.registerClass(generatedClass, alias);
+        DEFINERS.remove(alias, definer);
+
+        return ConfigurationSerialization.deserializeObject(map, generatedClass);
+    }
+
+    @Override
+    public Map<String, Object> serialize() {
+        throw new UnsupportedOperationException("PersistedClassAliases is never instantiated");
+    }
+
+    /**
+     * Reads the alias of a class from its {@link org.bukkit.configuration.serialization.SerializableAs} annotation, without loading the class.
+     * @param byteCode the bytecode of the class
+     * @return the alias, or null if the class is not annotated
+     */
+    static String readAlias(byte[] byteCode) {
+        String[] alias = new String[1];
+        new ClassReader(byteCode).accept(new ClassVisitor(AsmConstants.ASM_API) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                if (!SERIALIZABLE_AS_DESCRIPTOR.equals(descriptor)) return null;
+                return new AnnotationVisitor(AsmConstants.ASM_API) {
+                    @Override
+                    public void visit(String name, Object value) {
+                        if ("value".equals(name)) alias[0] = (String) value;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return alias[0];
+    }
+
+}
@@ -1,71 +1,175 @@
 package xyz.janboerman.scalaloader.plugin.runtime;
 
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import xyz.janboerman.scalaloader.compat.Compat;
+import xyz.janboerman.scalaloader.compat.FlightRecording;
 import xyz.janboerman.scalaloader.plugin.ScalaPlugin;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores the classes that a ScalaPlugin generated at runtime, so that they can be defined again the next time the plugin loads.
+ * The classes are stored in a binary append-only archive (see {@link ClassFileArchive}), so saving a class does not rewrite the classes that were saved earlier.
+ * Loading only reads which classes were persisted. The bytecode of a class is read when the class is needed.
+ * Plugins that still have a generated-classes.yml file from an older version of ScalaLoader get their classes migrated to the archive.
+ * <p>
+ * Saving a class does not touch the disk. The class is queued, and shortly afterwards a background thread writes all queued classes in one batch.
+ * {@link #flush()} writes the queued classes immediately.
+ */
 public class PersistentClasses {
 
-    private static final String FILE_NAME = "generated-classes.yml";
+    private static final String LEGACY_FILE_NAME = "generated-classes.yml";
+    private static final String INDEX_FILE_NAME = "generated-classes.idx";
+    private static final String DATA_FILE_NAME = "generated-classes.dat";
     private static final String CLASS_FILES = "class-files";
 
-    private final ScalaPlugin plugin;
-    private File saveFile;
+    //wait a little before writing, so that classes which are generated shortly after each other are written in one batch.
+    private static final long FLUSH_DELAY_MILLIS = 500L;
+    //one thread writes the generated classes of all ScalaPlugins. it stops when it has nothing to do, so that it does not keep ScalaLoader loaded.
+    private static final ScheduledThreadPoolExecutor WRITER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "ScalaLoader PersistentClasses Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    static {
+        WRITER.setKeepAliveTime(10L, TimeUnit.SECONDS);
+        WRITER.allowCoreThreadTimeOut(true);
+    }
+
+    private final File dataFolder;
+    private final String pluginName;
+    private final Logger logger;
 
-    //this set is not meant to be accessible from the outside world.
+    //the archive is not meant to be accessible from the outside world.
     //the only entity that is allowed to interact with PersistentClasses is the ScalaPluginClassLoader.
     //and it does so through the #save and #load methods.
-    private final Set<ClassFile> classFiles = new HashSet<>();
+    private final ClassFileArchive archive;
+    private boolean opened;
+
+    //classes that are waiting to be written. a class that is saved twice before it is written is only written once.
+    private final Object pendingLock = new Object();
+    private Map<String, ClassFile> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
 
     public PersistentClasses(ScalaPlugin plugin) {
-        assert plugin != null : "plugin cannot be null";
+        this(plugin.getDataFolder(), plugin.getName(), plugin.getLogger());
+    }
+
+    public PersistentClasses(File dataFolder, String pluginName, Logger logger) {
+        assert dataFolder != null : "dataFolder cannot be null";
 
-        this.plugin = plugin;
-        this.saveFile = new File(plugin.getDataFolder(), FILE_NAME);
+        this.dataFolder = dataFolder;
+        this.pluginName = pluginName;
+        this.logger = logger;
+        this.archive = new ClassFileArchive(new File(dataFolder, INDEX_FILE_NAME).toPath(), new File(dataFolder, DATA_FILE_NAME).toPath(), logger);
     }
 
+    /**
+     * Queues a class to be written to disk. The class is written by a background thread, or by the next call to {@link #flush()}.
+     * @param classFile the generated class
+     */
     public void save(ClassFile classFile) {
-        this.classFiles.add(classFile);
-
-        if (!saveFile.exists()) {
-            if (!plugin.getDataFolder().exists()) {
-                plugin.getDataFolder().mkdirs();
-            }
-            try {
-                saveFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        synchronized (pendingLock) {
+            pending.putIfAbsent(classFile.getClassName(), classFile);
+            if (flushScheduled) return;
+            flushScheduled = true;
         }
 
-        FileConfiguration config = YamlConfiguration.loadConfiguration(saveFile);
-        List<ClassFile> classFiles = (List<ClassFile>) config.get(CLASS_FILES, Compat.emptyList());
+        try {
+            WRITER.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all queued classes to disk, on the calling thread.
+     */
+    public synchronized void flush() {
+        Collection<ClassFile> batch;
+        synchronized (pendingLock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = pending.values();
+            pending = new LinkedHashMap<>();
+        }
 
-        this.classFiles.addAll(classFiles);
-        config.set(CLASS_FILES, Compat.listCopy(this.classFiles));
+        Object event = FlightRecording.beginPersistentClasses();
         try {
-            config.save(saveFile);
+            open();
+            archive.append(batch);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.log(Level.WARNING, "Could not save " + batch.size() + " generated classes", e);
         }
+        FlightRecording.endPersistentClasses(event, pluginName, "save", batch.size(), archive.getDataSize());
     }
 
-    public Collection<ClassFile> load() {
-        if (!saveFile.exists()) return Compat.emptySet();
+    /**
+     * Reads which classes were persisted, without reading their bytecode.
+     * @return a map from the names of the persisted classes to their ConfigurationSerialization aliases, classes without an alias are mapped to null
+     */
+    public synchronized Map<String, String> load() {
+        Object event = FlightRecording.beginPersistentClasses();
+        Map<String, String> aliases;
+        try {
+            open();
+            aliases = archive.getAliases();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not load generated classes", e);
+            aliases = Compat.emptyMap();
+        }
+        FlightRecording.endPersistentClasses(event, pluginName, "load", aliases.size(), archive.getDataSize());
 
-        YamlConfiguration config = YamlConfiguration.loadConfiguration(saveFile);
-        List<ClassFile> classFiles = (List<ClassFile>) config.get(CLASS_FILES, Compat.emptyList());
+        return aliases;
+    }
+
+    /**
+     * Reads the bytecode of a persisted class.
+     * @param className the name of the class
+     * @return the bytecode, or null if the class was not persisted or could not be read
+     */
+    public synchronized byte[] read(String className) {
+        Object event = FlightRecording.beginPersistentClasses();
+        byte[] byteCode = null;
+        try {
+            open();
+            byteCode = archive.read(className);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read generated class " + className, e);
+        }
+        FlightRecording.endPersistentClasses(event, pluginName, "read", byteCode == null ? 0 : 1, archive.getDataSize());
+
+        return byteCode;
+    }
+
+    private void open() throws IOException {
+        if (opened) return;
+
+        archive.open();
+        opened = true;
+        migrate();
+    }
 
-        this.classFiles.addAll(classFiles);
+    private void migrate() throws IOException {
+        File legacyFile = new File(dataFolder, LEGACY_FILE_NAME);
+        if (!legacyFile.exists()) return;
 
-        return classFiles;
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(legacyFile);
+        List<ClassFile> classFiles = (List<ClassFile>) config.get(CLASS_FILES, Compat.emptyList());
+        archive.append(classFiles);
+
+        if (legacyFile.delete()) {
+            logger.info("Migrated " + classFiles.size() + " generated classes from " + LEGACY_FILE_NAME + " to " + DATA_FILE_NAME + ".");
+        }
     }
 }
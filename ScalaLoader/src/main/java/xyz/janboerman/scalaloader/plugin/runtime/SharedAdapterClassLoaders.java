@@ -0,0 +1,71 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import xyz.janboerman.scalaloader.ScalaLibraryClassLoader;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Keeps track of the {@link AdapterClassLoader}s that are shared by ScalaPlugins which use the same Scala standard library.
+ * There is one AdapterClassLoader per {@link ScalaLibraryClassLoader}, because the adapters refer to the classes of the Scala standard library,
+ * and those classes are different for every ScalaLibraryClassLoader.
+ * <p>
+ * The AdapterClassLoader is closed when the last plugin that uses it releases it.
+ */
+public final class SharedAdapterClassLoaders {
+
+    private static final String FOLDER_NAME = "generated-adapters";
+
+    private final Map<ScalaLibraryClassLoader, Shared> sharedLoaders = new IdentityHashMap<>();
+
+    /**
+     * Gets the AdapterClassLoader for a Scala standard library, or creates it if no plugin uses this Scala standard library yet.
+     * Every call to this method must be paired with a call to {@link #release(AdapterClassLoader)}.
+     *
+     * @param scalaLibrary the classloader of the Scala standard library
+     * @param scalaLoaderDataFolder the data folder of ScalaLoader, in which the shared adapters are persisted
+     * @param logger the logger used to report errors
+     * @return the AdapterClassLoader
+     */
+    public synchronized AdapterClassLoader acquire(ScalaLibraryClassLoader scalaLibrary, File scalaLoaderDataFolder, Logger logger) {
+        Shared shared = sharedLoaders.get(scalaLibrary);
+        if (shared == null) {
+            shared = new Shared(new AdapterClassLoader(scalaLibrary, new File(scalaLoaderDataFolder, FOLDER_NAME), logger));
+            sharedLoaders.put(scalaLibrary, shared);
+        }
+        shared.references += 1;
+        return shared.adapterClassLoader;
+    }
+
+    /**
+     * Releases an AdapterClassLoader. If this was the last plugin that used it, then it is closed.
+     * @param adapterClassLoader the AdapterClassLoader
+     */
+    public void release(AdapterClassLoader adapterClassLoader) {
+        synchronized (this) {
+            ClassLoader scalaLibrary = adapterClassLoader.getParent();
+            Shared shared = sharedLoaders.get(scalaLibrary);
+            if (shared == null || shared.adapterClassLoader != adapterClassLoader) return;
+
+            shared.references -= 1;
+            if (shared.references > 0) return;
+
+            sharedLoaders.remove(scalaLibrary);
+        }
+
+        adapterClassLoader.close();
+    }
+
+    private static final class Shared {
+        private final AdapterClassLoader adapterClassLoader;
+        private int references;
+
+        private Shared(AdapterClassLoader adapterClassLoader) {
+            this.adapterClassLoader = adapterClassLoader;
+        }
+    }
+}
@@ -1,20 +1,32 @@
 package xyz.janboerman.scalaloader.util;
 
+import org.bukkit.Server;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import xyz.janboerman.scalaloader.bytecode.TransformerRegistry;
+import xyz.janboerman.scalaloader.compat.FlightRecording;
 import xyz.janboerman.scalaloader.compat.Migration;
 import xyz.janboerman.scalaloader.compat.Platform;
 import xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableError;
 import xyz.janboerman.scalaloader.configurationserializable.transform.ConfigurationSerializableTransformations;
+import xyz.janboerman.scalaloader.configurationserializable.transform.LocalScanner;
 import xyz.janboerman.scalaloader.event.transform.EventError;
+import xyz.janboerman.scalaloader.event.transform.EventScanner;
 import xyz.janboerman.scalaloader.event.transform.EventTransformations;
 import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+import xyz.janboerman.scalaloader.plugin.description.ApiVersion;
 
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.logging.Logger;
 
 public class ClassLoaderUtils {
@@ -23,9 +35,267 @@ public class ClassLoaderUtils {
     }
 
     public static byte[] transform(final String className, byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final Logger logger) {
+        return transform(className, classBytes, definer, registry, plugin, logger, null);
+    }
+
+    /**
+     * Applies all of ScalaLoader's bytecode transformations to a class.
+     * The migration, event, configurationserializable, targeted and main class transformations are fused together so that the class is only
+     * parsed once for scanning and once for transforming. Stages that cannot apply according to {@link TransformationPrefilter} are left out,
+     * and if none of them apply then the class is not parsed at all. The server implementation's transformation is applied separately afterwards.
+     *
+     * @param className the name of the class
+     * @param classBytes the bytecode of the class
+     * @param definer the classloader that will define the class
+     * @param registry the transformers that were registered by other classes
+     * @param plugin the classloader of the plugin
+     * @param logger the logger used to report errors
+     * @param mainClassName the name of the plugin's main class, or null if main class transformations should not be applied
+     * @return the transformed bytecode
+     */
+    public static byte[] transform(final String className, byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final Logger logger, final String mainClassName) {
+        return transform(className, classBytes, definer, registry, plugin, logger, mainClassName, null, null);
+    }
+
+    /**
+     * Looks up the transformed bytecode of a class in the cache of previously transformed classes.
+     * Call this before reading the class bytes, so that cache hits don't need to read the class from the jar at all.
+     *
+     * @param className the name of the class
+     * @param plugin the classloader of the plugin, through which the transformations resolve other classes
+     * @param timings the timings of the plugin, to which the time spent is attributed, or null if no timings should be recorded
+     * @param cache the cache of transformed classes, or null if no caching should be done
+     * @return the transformed bytecode, or null if the class is not in the cache
+     */
+    public static byte[] getCachedTransformation(final String className, final ScalaPluginClassLoader plugin, final StartupTimings timings, final TransformedClassCache.Scope cache) {
+        if (cache == null) return null;
+
+        return lookupCachedTransformation(className, plugin, timings, cache);
+    }
+
+    /**
+     * Looks up the transformed bytecode of a class of a shared library in the cache of previously transformed classes.
+     *
+     * @param className the name of the class
+     * @param definer the classloader that defines the shared library classes
+     * @param cache the cache of transformed classes, or null if no caching should be done
+     * @return the transformed bytecode, or null if the class is not in the cache
+     * @see #transformSharedLibraryClass(String, byte[], ClassLoader, Server, ApiVersion, Logger, TransformedClassCache.Scope)
+     */
+    public static byte[] getCachedSharedLibraryTransformation(final String className, final ClassLoader definer, final TransformedClassCache.Scope cache) {
+        if (cache == null) return null;
+
+        return lookupCachedTransformation(className, definer, null, cache);
+    }
+
+    private static byte[] lookupCachedTransformation(final String className, final ClassLoader dependencyResolver, final StartupTimings timings, final TransformedClassCache.Scope cache) {
+        final String path = className.replace('.', '/') + ".class";
+        Object event = FlightRecording.beginTransform();
+        long start = System.nanoTime();
+        byte[] cached = cache.get(path, dependencyResolver);
+        record(timings, StartupTimings.Phase.TRANSFORM_CACHE, start);
+        FlightRecording.endTransform(event, pluginName(dependencyResolver, timings), className, cached != null ? "cache hit" : "cache miss", 0, cached != null ? cached.length : 0);
+        return cached;
+    }
+
+    /**
+     * Applies all of ScalaLoader's bytecode transformations to a class, and stores the result in a cache of transformed classes.
+     * Callers should first look up the class using {@link #getCachedTransformation(String, ScalaPluginClassLoader, StartupTimings, TransformedClassCache.Scope)}.
+     * Classes whose transformation reported an error are not cached, so that the error is reported again the next time the class is loaded.
+     * The classes that the transformations resolved through the plugin's classloader are stored alongside the transformed class,
+     * so that the cached class is not used when those classes change.
+     *
+     * @param className the name of the class
+     * @param classBytes the bytecode of the class
+     * @param definer the classloader that will define the class
+     * @param registry the transformers that were registered by other classes
+     * @param plugin the classloader of the plugin
+     * @param logger the logger used to report errors
+     * @param mainClassName the name of the plugin's main class, or null if main class transformations should not be applied
+     * @param cache the cache of transformed classes, or null if no caching should be done
+     * @param timings the timings of the plugin, to which the time spent is attributed, or null if no timings should be recorded
+     * @return the transformed bytecode
+     */
+    public static byte[] transform(final String className, byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final Logger logger, final String mainClassName, final TransformedClassCache.Scope cache, final StartupTimings timings) {
+        return transform(className, classBytes, definer, registry, plugin, plugin.getServer(), plugin.getApiVersion(), logger, mainClassName, cache, timings);
+    }
+
+    /**
+     * Applies ScalaLoader's bytecode transformations to a class of a library that is shared by multiple plugins.
+     * The transformations don't depend on any of those plugins: plugin-specific transformers are not applied,
+     * and neither are the configurationserializable transformations, because the code that they generate refers to the plugin.
+     * The time spent is not attributed to any plugin.
+     *
+     * @param className the name of the class
+     * @param classBytes the bytecode of the class
+     * @param definer the classloader that will define the class, through which the transformations resolve other classes
+     * @param server the server
+     * @param apiVersion bukkit's api version that's used by the plugins that share the library
+     * @param logger the logger used to report errors
+     * @param cache the cache of transformed classes, or null if no caching should be done
+     * @return the transformed bytecode
+     */
+    public static byte[] transformSharedLibraryClass(final String className, byte[] classBytes, final ClassLoader definer, final Server server, final ApiVersion apiVersion, final Logger logger, final TransformedClassCache.Scope cache) {
+        return transform(className, classBytes, definer, new TransformerRegistry(), null, server, apiVersion, logger, null, cache, null);
+    }
+
+    //plugin and timings are null for classes of shared libraries.
+    private static byte[] transform(final String className, byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final Server server, final ApiVersion apiVersion,
+                                    final Logger logger, final String mainClassName, final TransformedClassCache.Scope cache, final StartupTimings timings) {
         final String path = className.replace('.', '/') + ".class";
-        final Platform platform = Platform.detect(plugin.getServer());
+        final String pluginName = pluginName(plugin, timings);
+        final ClassLoader dependencyResolver = plugin != null ? plugin : definer;
+        long start;
+        Object event;
+
+        final Platform platform = Platform.detect(server);
+        boolean cacheable = true;
+        List<String> dependencies = Collections.emptyList();
+
+        //find out which stages can apply at all, without parsing the class
+        event = FlightRecording.beginTransform();
+        start = System.nanoTime();
+        int scannedStages = TransformationPrefilter.scan(classBytes);
+        if (plugin == null) scannedStages &= ~TransformationPrefilter.CONFIGURATION_SERIALIZABLE;
+        final int stages = scannedStages;
+        final List<Function<ClassVisitor, ClassVisitor>> targetedTransformers = registry.byClassTransformers.get(className);
+        final boolean targeted = (targetedTransformers != null && !targetedTransformers.isEmpty())
+                || (className.equals(mainClassName) && !registry.mainClassTransformers.isEmpty());
+        TransformationPrefilter.record(stages, targeted);
+        record(timings, StartupTimings.Phase.TRANSFORM_PREFILTER, start);
+        FlightRecording.endTransform(event, pluginName, className, "prefilter", classBytes.length, classBytes.length);
+
+        if (stages != 0 || targeted) {
+            final int bytesIn = classBytes.length;
+            //remember which classes the transformations resolve, so that the cached class is not used anymore when those classes change.
+            final Set<String> outerRecording = cache != null ? TransformDependencies.start() : null;
+            try {
+                event = FlightRecording.beginTransform();
+                start = System.nanoTime();
+                try {
+                    classBytes = fusedTransform(className, classBytes, definer, registry, plugin, mainClassName, stages);
+                    record(timings, StartupTimings.Phase.TRANSFORM_FUSED, start);
+                    FlightRecording.endTransform(event, pluginName, className, "fused", bytesIn, classBytes.length);
+                } catch (Exception | EventError | ConfigurationSerializableError e) {
+                    record(timings, StartupTimings.Phase.TRANSFORM_FUSED, start);
+                    FlightRecording.endTransform(event, pluginName, className, "fused (failed)", bytesIn, bytesIn);
+                    //redo the stages one by one so that the failing stage gets reported and the other stages still get applied
+                    event = FlightRecording.beginTransform();
+                    start = System.nanoTime();
+                    classBytes = stagedTransform(className, classBytes, definer, registry, plugin, logger, mainClassName);
+                    record(timings, StartupTimings.Phase.TRANSFORM_STAGED, start);
+                    FlightRecording.endTransform(event, pluginName, className, "staged", bytesIn, classBytes.length);
+                    cacheable = false;
+                }
+            } finally {
+                if (cache != null) dependencies = TransformDependencies.stop(outerRecording);
+            }
+        }
+
+        //apply bukkit bytecode transformations
+        final int bytesIn = classBytes.length;
+        event = FlightRecording.beginTransform();
+        start = System.nanoTime();
+        try {
+            classBytes = platform.transform(path, classBytes, server, apiVersion);
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, "Server implementation could not transform class: " + path, e);
+            cacheable = false;
+        }
+        record(timings, StartupTimings.Phase.PLATFORM_TRANSFORM, start);
+        FlightRecording.endTransform(event, pluginName, className, "platform", bytesIn, classBytes.length);
+
+        if (cache != null && cacheable) {
+            event = FlightRecording.beginTransform();
+            start = System.nanoTime();
+            cache.put(path, classBytes, dependencies, dependencyResolver);
+            record(timings, StartupTimings.Phase.TRANSFORM_CACHE, start);
+            FlightRecording.endTransform(event, pluginName, className, "cache put", classBytes.length, classBytes.length);
+        }
+
+        return classBytes;
+    }
 
+    /**
+     * Tests whether a jar file is signed. The code signers of a jar entry are only known once the entry has been read,
+     * so classes from signed jars should not be taken from the cache of transformed classes.
+     *
+     * @param jarFile the jar file
+     * @return true if the jar contains a signature file, otherwise false
+     */
+    public static boolean isSigned(final JarFile jarFile) {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName().toUpperCase(Locale.ROOT);
+            if (entryName.startsWith("META-INF/") && entryName.endsWith(".SF") && entryName.indexOf('/', "META-INF/".length()) == -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void record(final StartupTimings timings, final StartupTimings.Phase phase, final long start) {
+        if (timings != null) timings.record(phase, start);
+    }
+
+    private static String pluginName(final ClassLoader plugin, final StartupTimings timings) {
+        if (timings != null) return timings.getPluginName();
+        return plugin instanceof ScalaPluginClassLoader ? ((ScalaPluginClassLoader) plugin).getPluginJarFile().getName() : "shared libraries";
+    }
+
+    private static byte[] fusedTransform(final String className, final byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final String mainClassName, final int stages) {
+        final ClassReader classReader = new ClassReader(classBytes);
+        final boolean migration = (stages & TransformationPrefilter.MIGRATION) != 0;
+        final boolean event = (stages & TransformationPrefilter.EVENT) != 0;
+        final boolean configurationSerializable = (stages & TransformationPrefilter.CONFIGURATION_SERIALIZABLE) != 0;
+
+        //pre-scan: the scanners only look at the class structure, so we can skip the debug info and the stack map frames.
+        //the migration remapper is included so that the scanners see the same names as they would have seen in the staged pipeline.
+        LocalScanner localScanner = null;
+        EventScanner eventScanner = null;
+        if (event || configurationSerializable) {
+            ClassVisitor scanner = null;
+            if (configurationSerializable) scanner = localScanner = ConfigurationSerializableTransformations.scanner();
+            if (event) scanner = eventScanner = EventTransformations.scanner(scanner);
+            if (migration) scanner = Migration.transformer(scanner);
+            classReader.accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+
+        ClassWriter classWriter = new ClassWriter(0) {
+            @Override
+            protected ClassLoader getClassLoader() {
+                return definer;
+            }
+        };
+
+        //build the chain from the inside out: the transformation that ran last in the staged pipeline is the closest to the writer.
+        ClassVisitor classVisitor = classWriter;
+
+        //apply main class transformations
+        if (className.equals(mainClassName)) {
+            for (BiFunction<ClassVisitor, String, ClassVisitor> mainClassTransformer : registry.mainClassTransformers) {
+                classVisitor = mainClassTransformer.apply(classVisitor, mainClassName);
+            }
+        }
+
+        //apply target transformations
+        List<Function<ClassVisitor, ClassVisitor>> targetedTransformers = registry.byClassTransformers.get(className);
+        if (targetedTransformers != null) {
+            for (Function<ClassVisitor, ClassVisitor> transformer : targetedTransformers) {
+                classVisitor = transformer.apply(classVisitor);
+            }
+        }
+
+        //apply configurationserializable, event and migration bytecode transformations
+        if (configurationSerializable) classVisitor = ConfigurationSerializableTransformations.transformer(localScanner, classVisitor, plugin);
+        if (event) classVisitor = EventTransformations.transformer(eventScanner, classVisitor);
+        if (migration) classVisitor = Migration.transformer(classVisitor);
+
+        classReader.accept(classVisitor, 0);
+        return classWriter.toByteArray();
+    }
+
+    private static byte[] stagedTransform(final String className, byte[] classBytes, final ClassLoader definer, final TransformerRegistry registry, final ScalaPluginClassLoader plugin, final Logger logger, final String mainClassName) {
         //apply migration bytecode transformations
         try {
             classBytes = Migration.transform(classBytes, definer);
@@ -41,10 +311,12 @@ public class ClassLoaderUtils {
         }
 
         //apply configurationserializable bytecode transformations
-        try {
-            classBytes = ConfigurationSerializableTransformations.transform(classBytes, definer, plugin);
-        } catch (ConfigurationSerializableError e) {
-            logger.log(Level.SEVERE, "ConfigurationSerializable class " + className + " is not valid", e);
+        if (plugin != null) {
+            try {
+                classBytes = ConfigurationSerializableTransformations.transform(classBytes, definer, plugin);
+            } catch (ConfigurationSerializableError e) {
+                logger.log(Level.SEVERE, "ConfigurationSerializable class " + className + " is not valid", e);
+            }
         }
 
         //apply transformations that were registered by other classes
@@ -58,7 +330,12 @@ public class ClassLoaderUtils {
 
             ClassVisitor classVisitor = classWriter;
 
-            //can't apply main class transformations, because the plugin's main class is never loaded through this classloader
+            //apply main class transformations (innermost, so that they see the result of the targeted transformations)
+            if (className.equals(mainClassName)) {
+                for (BiFunction<ClassVisitor, String, ClassVisitor> mainClassTransformer : registry.mainClassTransformers) {
+                    classVisitor = mainClassTransformer.apply(classVisitor, mainClassName);
+                }
+            }
 
             //apply target transformations
             List<Function<ClassVisitor, ClassVisitor>> targetedTransformers = registry.byClassTransformers.get(className);
@@ -76,13 +353,6 @@ public class ClassLoaderUtils {
             }
         }
 
-        //apply bukkit bytecode transformations
-        try {
-            classBytes = platform.transform(path, classBytes, plugin);
-        } catch (Throwable e) {
-            logger.log(Level.SEVERE, "Server implementation could not transform class: " + path, e);
-        }
-
         return classBytes;
     }
 
@@ -0,0 +1,88 @@
+package xyz.janboerman.scalaloader.util;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * The result of looking up a class in one of ScalaLoader's classloaders.
+ * Classloaders use this internally instead of throwing a {@link ClassNotFoundException} for every class they don't have,
+ * because capturing the stack trace of an exception is expensive and libraries often probe for classes that may not exist.
+ * The exception is only created at the public boundary, using {@link #toException(String)}.
+ */
+public final class ClassLookupResult {
+
+    private static final ClassLookupResult NOT_FOUND = new ClassLookupResult(null, null);
+
+    private final Class<?> clazz;
+    private final Throwable cause;
+
+    private ClassLookupResult(Class<?> clazz, Throwable cause) {
+        this.clazz = clazz;
+        this.cause = cause;
+    }
+
+    /**
+     * Creates a result for a class that was found.
+     * @param clazz the class
+     * @return the result
+     */
+    public static ClassLookupResult found(Class<?> clazz) {
+        return new ClassLookupResult(clazz, null);
+    }
+
+    /**
+     * Get the result for a class that does not exist.
+     * @return the result
+     */
+    public static ClassLookupResult notFound() {
+        return NOT_FOUND;
+    }
+
+    /**
+     * Creates a result for a class that exists, but could not be loaded.
+     * @param cause the reason why the class could not be loaded
+     * @return the result
+     */
+    public static ClassLookupResult failed(Throwable cause) {
+        return new ClassLookupResult(null, cause);
+    }
+
+    /**
+     * Tests whether the class was found.
+     * @return true if the class was found, otherwise false
+     */
+    public boolean isFound() {
+        return clazz != null;
+    }
+
+    /**
+     * Get the class that was found.
+     * @return the class, or null if it was not found
+     */
+    public Class<?> getClassDefinition() {
+        return clazz;
+    }
+
+    /**
+     * Get the reason why the class could not be loaded.
+     * @return the cause, or null if the class was found or simply does not exist
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Creates the exception that is thrown to callers of the public classloading methods.
+     * @param className the name of the class
+     * @return the exception
+     */
+    public ClassNotFoundException toException(String className) {
+        return cause == null ? new ClassNotFoundException(className) : new ClassNotFoundException(className, cause);
+    }
+
+    @Override
+    public String toString() {
+        if (clazz != null) return "Found(" + clazz + ")";
+        if (cause != null) return "Failed(" + cause + ")";
+        return "NotFound";
+    }
+}
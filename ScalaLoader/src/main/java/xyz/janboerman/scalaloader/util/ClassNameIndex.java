@@ -0,0 +1,172 @@
+package xyz.janboerman.scalaloader.util;
+
+import xyz.janboerman.scalaloader.compat.Compat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * An immutable set of the classes in a jar file, so that lookups for classes that are not in the jar don't need to go through the jar's central directory.
+ * The class names are stored in internal format (e.g. com/example/Foo) in an open-addressing hash table with linear probing.
+ */
+public final class ClassNameIndex {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+    private static final ClassNameIndex EMPTY = new ClassNameIndex(Compat.emptyList());
+
+    private final String[] table;
+    private final int[] hashes;
+    private final int mask;
+    private final int size;
+    private final Set<String> packages;
+
+    private ClassNameIndex(Collection<String> internalNames) {
+        int capacity = Integer.highestOneBit(Math.max(2, internalNames.size() * 2 - 1)) << 1; //load factor at most 0.5
+        this.table = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+
+        Set<String> packages = new LinkedHashSet<>();
+        int size = 0;
+        for (String internalName : internalNames) {
+            int hash = spread(internalName.hashCode());
+            int index = hash & mask;
+            boolean duplicate = false;
+            while (table[index] != null) {
+                if (hashes[index] == hash && table[index].equals(internalName)) {
+                    duplicate = true;
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            if (!duplicate) {
+                table[index] = internalName;
+                hashes[index] = hash;
+                size += 1;
+
+                int lastSlash = internalName.lastIndexOf('/');
+                packages.add(lastSlash == -1 ? "" : internalName.substring(0, lastSlash).replace('/', '.'));
+            }
+        }
+        this.size = size;
+        this.packages = Collections.unmodifiableSet(packages);
+    }
+
+    /**
+     * Get the index that contains no classes.
+     * @return the empty index
+     */
+    public static ClassNameIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates an index of the given class names.
+     * @param internalNames the class names in internal format (e.g. com/example/Foo)
+     * @return the index
+     */
+    public static ClassNameIndex of(Collection<String> internalNames) {
+        return new ClassNameIndex(internalNames);
+    }
+
+    /**
+     * Creates an index of all class files in a jar file.
+     * If the jar is a Multi-Release jar, then classes from the versioned directories are included
+     * for all versions up to and including {@link Compat#multiReleaseVersion(JarFile)}.
+     * @param jarFile the jar file
+     * @return the index
+     */
+    public static ClassNameIndex of(JarFile jarFile) {
+        int multiReleaseVersion = Compat.multiReleaseVersion(jarFile);
+
+        List<String> internalNames = new ArrayList<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName();
+            if (!entryName.endsWith(CLASS_SUFFIX)) continue;
+
+            if (entryName.startsWith(VERSIONS_PREFIX)) {
+                //META-INF/versions/<version>/com/example/Foo.class
+                int slash = entryName.indexOf('/', VERSIONS_PREFIX.length());
+                if (slash == -1) continue;
+                int version;
+                try {
+                    version = Integer.parseInt(entryName.substring(VERSIONS_PREFIX.length(), slash));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (version > multiReleaseVersion) continue;
+                entryName = entryName.substring(slash + 1);
+            } else if (entryName.startsWith("META-INF/")) {
+                continue;
+            }
+
+            String internalName = entryName.substring(0, entryName.length() - CLASS_SUFFIX.length());
+            if (!internalName.endsWith("module-info")) {
+                internalNames.add(internalName);
+            }
+        }
+
+        return new ClassNameIndex(internalNames);
+    }
+
+    /**
+     * Tests whether a class is in this index.
+     * @param internalName the name of the class in internal format (e.g. com/example/Foo)
+     * @return true if the class is in this index, otherwise false
+     */
+    public boolean contains(String internalName) {
+        int hash = spread(internalName.hashCode());
+        int index = hash & mask;
+        String candidate;
+        while ((candidate = table[index]) != null) {
+            if (hashes[index] == hash && candidate.equals(internalName)) return true;
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Get the packages of the classes in this index.
+     * @return the package names (e.g. com.example), or the empty string for the default package
+     */
+    public Set<String> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Get the classes in this index.
+     * @return the class names in internal format (e.g. com/example/Foo)
+     */
+    public List<String> getClassNames() {
+        List<String> classNames = new ArrayList<>(size);
+        for (String internalName : table) {
+            if (internalName != null) classNames.add(internalName);
+        }
+        return classNames;
+    }
+
+    /**
+     * Get the number of classes in this index.
+     * @return the number of classes
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int spread(int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+}
@@ -0,0 +1,87 @@
+package xyz.janboerman.scalaloader.util;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Remembers the names of classes that a classloader could not find, so that repeated lookups of the same name can fail fast.
+ * Only misses that the classloader is authoritative for should be remembered, such as misses in its own jar and its libraries;
+ * the contents of the parent classloader and other plugins can change without the owner of the cache noticing.
+ * <p>
+ * The cache is bounded: once it is full, it is cleared. Entries are also dropped when the generation of the cache changes;
+ * the owner of the cache is responsible for passing a new generation whenever new classes can become available
+ * (for example because a url was added to a classloader). The generation of the cache never goes backwards:
+ * a miss that was observed in an older generation than the current one is not remembered.
+ */
+public final class NegativeLookupCache {
+
+    private final int maxSize;
+    //the generation and the names that are missing in it are swapped together, so that a miss can never end up in the wrong generation.
+    private final AtomicReference<Generation> current = new AtomicReference<>(new Generation(Long.MIN_VALUE));
+
+    /**
+     * Creates the cache.
+     * @param maxSize the maximum number of class names in the cache
+     */
+    public NegativeLookupCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Tests whether a class was not found before.
+     * @param className the name of the class
+     * @param currentGeneration the current generation
+     * @return true if the class was not found in the current generation, otherwise false
+     */
+    public boolean isMissing(String className, long currentGeneration) {
+        Generation generation = current.get();
+        return generation.number == currentGeneration && generation.missing.contains(className);
+    }
+
+    /**
+     * Remembers that a class could not be found.
+     * @param className the name of the class
+     * @param currentGeneration the generation in which the class could not be found
+     */
+    public void markMissing(String className, long currentGeneration) {
+        while (true) {
+            Generation generation = current.get();
+            if (generation.number > currentGeneration) {
+                //the class may have become available since the lookup started.
+                return;
+            } else if (generation.number < currentGeneration) {
+                Generation newGeneration = new Generation(currentGeneration);
+                newGeneration.missing.add(className);
+                if (current.compareAndSet(generation, newGeneration)) return;
+            } else if (generation.missing.size() >= maxSize) {
+                //a simple eviction strategy, but it keeps the memory usage bounded when some library probes lots of different names.
+                Generation newGeneration = new Generation(currentGeneration);
+                newGeneration.missing.add(className);
+                if (current.compareAndSet(generation, newGeneration)) return;
+            } else {
+                generation.missing.add(className);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all class names from the cache.
+     */
+    public void clear() {
+        Generation generation = current.get();
+        current.compareAndSet(generation, new Generation(generation.number));
+    }
+
+    private static final class Generation {
+        private final long number;
+        private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+        private Generation(long number) {
+            this.number = number;
+        }
+    }
+}
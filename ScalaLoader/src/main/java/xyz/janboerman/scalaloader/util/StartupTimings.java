@@ -0,0 +1,207 @@
+package xyz.janboerman.scalaloader.util;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Records how much time is spent in each phase of loading a ScalaPlugin, per plugin jar.
+ * Durations are measured with {@link System#nanoTime()} and summed up in {@link LongAdder}s, so recording is cheap and thread-safe.
+ * <p>
+ * The class loading phases ({@link Phase#CLASS_READ} up to and including {@link Phase#DEFINE_CLASS}) overlap with the other phases,
+ * because classes are loaded while the main class is loaded, while the plugin is constructed, and in onLoad and onEnable.
+ */
+public final class StartupTimings {
+
+    private static final int FORMAT_VERSION = 1;
+
+    public enum Phase {
+        JAR_SCAN("jar scan"),
+        SCALA_LIBRARY("scala library resolution"),
+        LIBRARIES("library resolution"),
+        CLASSLOADER("classloader construction"),
+        MAIN_CLASS_LOAD("main class load"),
+        CONSTRUCTOR("constructor"),
+        PERSISTENT_CLASSES("persistent classes replay"),
+        ON_LOAD("onLoad"),
+        ON_ENABLE("onEnable"),
+
+        CLASS_READ("class read"),
+        TRANSFORM_CACHE("transformed class cache"),
+        TRANSFORM_PREFILTER("transformation prefilter"),
+        TRANSFORM_FUSED("fused transformation"),
+        TRANSFORM_STAGED("staged transformation"),
+        PLATFORM_TRANSFORM("platform conversion"),
+        DEFINE_CLASS("defineClass");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Get the key of this phase in the timings file.
+         * @return the key
+         */
+        public String getKey() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private static final ConcurrentMap<String, StartupTimings> timingsByJar = new ConcurrentHashMap<>();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final File pluginJarFile;
+    private volatile String pluginName;
+    private final LongAdder[] nanos = new LongAdder[PHASES.length];
+    private final LongAdder[] counts = new LongAdder[PHASES.length];
+
+    private StartupTimings(File pluginJarFile) {
+        this.pluginJarFile = pluginJarFile;
+        for (int i = 0; i < PHASES.length; i++) {
+            nanos[i] = new LongAdder();
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Get the timings of a plugin.
+     * @param pluginJarFile the plugin's jar file
+     * @return the timings
+     */
+    public static StartupTimings of(File pluginJarFile) {
+        return timingsByJar.computeIfAbsent(pluginJarFile.getAbsolutePath(), path -> new StartupTimings(pluginJarFile));
+    }
+
+    /**
+     * Get the timings of all plugins.
+     * @return an unmodifiable view of the timings
+     */
+    public static Collection<StartupTimings> all() {
+        return Collections.unmodifiableCollection(timingsByJar.values());
+    }
+
+    /**
+     * Records the time spent in a phase.
+     * @param phase the phase
+     * @param startNanos the value of {@link System#nanoTime()} when the phase started
+     */
+    public void record(Phase phase, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        nanos[phase.ordinal()].add(duration);
+        counts[phase.ordinal()].increment();
+    }
+
+    /**
+     * Remember the name of the plugin, once it is known.
+     * @param pluginName the name of the plugin
+     */
+    public void setPluginName(String pluginName) {
+        this.pluginName = pluginName;
+    }
+
+    /**
+     * Get the name of the plugin.
+     * @return the name of the plugin, or the name of its jar file if the plugin name is not known
+     */
+    public String getPluginName() {
+        String pluginName = this.pluginName;
+        return pluginName != null ? pluginName : pluginJarFile.getName();
+    }
+
+    public File getPluginJarFile() {
+        return pluginJarFile;
+    }
+
+    /**
+     * Get the total time spent in a phase.
+     * @param phase the phase
+     * @return the time in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Get how many times a phase was recorded, for example the number of classes that were defined.
+     * @param phase the phase
+     * @return the count
+     */
+    public long getCount(Phase phase) {
+        return counts[phase.ordinal()].sum();
+    }
+
+    /**
+     * Writes the timings of all plugins to a file in YAML format.
+     * @param file the file
+     * @param scalaLoaderVersion the version of ScalaLoader
+     * @param serverVersion the version of the server
+     * @throws IOException if the file could not be written
+     */
+    public static void write(File file, String scalaLoaderVersion, String serverVersion) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("format", FORMAT_VERSION);
+        data.put("timestamp", System.currentTimeMillis());
+        data.put("scalaloader-version", scalaLoaderVersion);
+        data.put("server-version", serverVersion);
+
+        List<Map<String, Object>> plugins = new ArrayList<>();
+        for (StartupTimings timings : all()) {
+            Map<String, Object> plugin = new LinkedHashMap<>();
+            plugin.put("name", timings.getPluginName());
+            plugin.put("jar", timings.getPluginJarFile().getName());
+            Map<String, Object> phases = new LinkedHashMap<>();
+            for (Phase phase : PHASES) {
+                long count = timings.getCount(phase);
+                if (count == 0L) continue;
+                Map<String, Object> phaseData = new LinkedHashMap<>();
+                phaseData.put("nanos", timings.getNanos(phase));
+                phaseData.put("count", count);
+                phases.put(phase.getKey(), phaseData);
+            }
+            plugin.put("phases", phases);
+            plugins.add(plugin);
+        }
+        data.put("plugins", plugins);
+
+        //the prefilter counts the transformation stages it skipped, for all plugins together
+        Map<String, Object> prefilter = new LinkedHashMap<>();
+        prefilter.put("classes-scanned", TransformationPrefilter.getClassesScanned());
+        prefilter.put("all-skipped", TransformationPrefilter.getAllSkipped());
+        prefilter.put("migration-skipped", TransformationPrefilter.getMigrationSkipped());
+        prefilter.put("event-skipped", TransformationPrefilter.getEventSkipped());
+        prefilter.put("configurationserializable-skipped", TransformationPrefilter.getConfigurationSerializableSkipped());
+        prefilter.put("targeted-skipped", TransformationPrefilter.getTargetedSkipped());
+        data.put("transformation-prefilter", prefilter);
+
+        file.getParentFile().mkdirs();
+        Path tempFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            new Yaml().dump(data, writer);
+        }
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,124 @@
+package xyz.janboerman.scalaloader.util;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Keeps track of the classes that are resolved while a class is being transformed.
+ * The configurationserializable transformations load classes through the plugin's classloader to find out whether they are collections or maps.
+ * Those classes can come from other plugins, so the output of the transformation depends on which plugins are installed.
+ * A transformed class is therefore cached together with the names of the classes that were resolved,
+ * and a fingerprint of where those classes came from, see {@link #fingerprint(Collection, ClassLoader)}.
+ */
+public final class TransformDependencies {
+
+    private static final ThreadLocal<Set<String>> RECORDING = new ThreadLocal<>();
+
+    private TransformDependencies() {
+    }
+
+    /**
+     * Loads a class (without initializing it) on behalf of a transformation.
+     * If the current thread is recording, then the name of the class is recorded, even if the class can't be found.
+     *
+     * @param className the name of the class
+     * @param classLoader the classloader that is used to load the class
+     * @return the class
+     * @throws ClassNotFoundException if the class could not be found
+     */
+    public static Class<?> forName(String className, ClassLoader classLoader) throws ClassNotFoundException {
+        record(className);
+        return Class.forName(className, false, classLoader);
+    }
+
+    /**
+     * Records that a transformation depends on a class, without loading it. Used when the class was resolved by an earlier transformation.
+     *
+     * @param className the name of the class
+     */
+    public static void record(String className) {
+        Set<String> recording = RECORDING.get();
+        if (recording != null) recording.add(className);
+    }
+
+    /**
+     * Starts recording the classes that are loaded using {@link #forName(String, ClassLoader)} on the current thread.
+     * Loading a class can cause another class to be transformed on the same thread, so recordings are nested.
+     *
+     * @return the recording that was active before, which must be passed to {@link #stop(Set)}
+     */
+    static Set<String> start() {
+        Set<String> previous = RECORDING.get();
+        RECORDING.set(new TreeSet<>());
+        return previous;
+    }
+
+    /**
+     * Stops the current recording.
+     *
+     * @param previous the recording that was active before the current recording was started
+     * @return the recorded class names, sorted
+     */
+    static List<String> stop(Set<String> previous) {
+        Set<String> recording = RECORDING.get();
+        if (previous == null) RECORDING.remove(); else RECORDING.set(previous);
+        return recording == null || recording.isEmpty() ? Collections.emptyList() : new ArrayList<>(recording);
+    }
+
+    /**
+     * Describes where the given classes currently come from: the location and modification stamp of the jar that contains them,
+     * or the fact that they can't be found. Two fingerprints are equal if the transformation would resolve the same classes.
+     *
+     * @param classNames the names of the classes that were resolved by a transformation
+     * @param classLoader the classloader that the transformation used to resolve the classes
+     * @return the fingerprint
+     */
+    static String fingerprint(Collection<String> classNames, ClassLoader classLoader) {
+        if (classNames.isEmpty()) return "";
+
+        StringBuilder sb = new StringBuilder();
+        for (String className : classNames) {
+            sb.append(className).append('=');
+            try {
+                describeOrigin(sb, Class.forName(className, false, classLoader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                sb.append("missing");
+            }
+            sb.append(';');
+        }
+        return Hashing.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void describeOrigin(StringBuilder sb, Class<?> clazz) {
+        ProtectionDomain protectionDomain = clazz.getProtectionDomain();
+        CodeSource codeSource = protectionDomain == null ? null : protectionDomain.getCodeSource();
+        URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location == null) {
+            //bootstrap classes, and classes that were generated at runtime.
+            ClassLoader classLoader = clazz.getClassLoader();
+            sb.append(classLoader == null ? "bootstrap" : classLoader.getClass().getName());
+            return;
+        }
+
+        sb.append(location);
+        try {
+            File file = new File(location.toURI());
+            sb.append('@').append(file.length()).append('@').append(file.lastModified());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            //not a file, the location will have to do.
+        }
+    }
+
+}
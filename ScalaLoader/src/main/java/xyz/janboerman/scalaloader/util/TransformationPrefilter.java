@@ -0,0 +1,166 @@
+package xyz.janboerman.scalaloader.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Decides which of ScalaLoader's bytecode transformations can apply to a class, by looking at the raw bytes of its constant pool.
+ * Every transformation only acts on classes that reference a specific ScalaLoader type,
+ * and every referenced type must appear as a CONSTANT_Utf8 entry in the constant pool.
+ */
+public final class TransformationPrefilter {
+
+    public static final int MIGRATION = 1;
+    public static final int EVENT = 2;
+    public static final int CONFIGURATION_SERIALIZABLE = 4;
+    public static final int ALL = MIGRATION | EVENT | CONFIGURATION_SERIALIZABLE;
+
+    private static final byte[] MIGRATION_NEEDLE = utf8("xyz/janboerman/scalaloader/configurationserializable/runtime/NumericRange");
+    private static final byte[] EVENT_NEEDLE = utf8("xyz/janboerman/scalaloader/event/");
+    private static final byte[] CONFIGURATION_SERIALIZABLE_NEEDLE = utf8("Lxyz/janboerman/scalaloader/configurationserializable/ConfigurationSerializable;");
+    private static final byte[] DELEGATE_SERIALIZATION_NEEDLE = utf8("Lxyz/janboerman/scalaloader/configurationserializable/DelegateSerialization;");
+
+    private static final AtomicLong classesScanned = new AtomicLong();
+    private static final AtomicLong migrationSkipped = new AtomicLong();
+    private static final AtomicLong eventSkipped = new AtomicLong();
+    private static final AtomicLong configurationSerializableSkipped = new AtomicLong();
+    private static final AtomicLong targetedSkipped = new AtomicLong();
+    private static final AtomicLong allSkipped = new AtomicLong();
+
+    private TransformationPrefilter() {
+    }
+
+    /**
+     * Scans the constant pool of a class.
+     *
+     * @param classBytes the bytecode of the class
+     * @return a bitmask of {@link #MIGRATION}, {@link #EVENT} and {@link #CONFIGURATION_SERIALIZABLE},
+     *          indicating which transformations may apply. If the constant pool could not be read then {@link #ALL} is returned.
+     */
+    public static int scan(byte[] classBytes) {
+        int stages = 0;
+
+        try {
+            //magic (4), minor version (2), major version (2)
+            int constantPoolCount = readUnsignedShort(classBytes, 8);
+            int offset = 10;
+            for (int index = 1; index < constantPoolCount; index++) {
+                int tag = classBytes[offset];
+                switch (tag) {
+                    case 1: //Utf8
+                        int length = readUnsignedShort(classBytes, offset + 1);
+                        int start = offset + 3;
+                        if ((stages & MIGRATION) == 0 && contains(classBytes, start, length, MIGRATION_NEEDLE)) {
+                            stages |= MIGRATION;
+                        }
+                        if ((stages & EVENT) == 0 && contains(classBytes, start, length, EVENT_NEEDLE)) {
+                            stages |= EVENT;
+                        }
+                        if ((stages & CONFIGURATION_SERIALIZABLE) == 0
+                                && (contains(classBytes, start, length, CONFIGURATION_SERIALIZABLE_NEEDLE) || contains(classBytes, start, length, DELEGATE_SERIALIZATION_NEEDLE))) {
+                            stages |= CONFIGURATION_SERIALIZABLE;
+                        }
+                        if (stages == ALL) return ALL;
+                        offset = start + length;
+                        break;
+                    case 7: //Class
+                    case 8: //String
+                    case 16: //MethodType
+                    case 19: //Module
+                    case 20: //Package
+                        offset += 3;
+                        break;
+                    case 15: //MethodHandle
+                        offset += 4;
+                        break;
+                    case 3: //Integer
+                    case 4: //Float
+                    case 9: //Fieldref
+                    case 10: //Methodref
+                    case 11: //InterfaceMethodref
+                    case 12: //NameAndType
+                    case 17: //Dynamic
+                    case 18: //InvokeDynamic
+                        offset += 5;
+                        break;
+                    case 5: //Long
+                    case 6: //Double
+                        offset += 9;
+                        index++; //takes up two slots
+                        break;
+                    default:
+                        //a constant that we don't know about. better safe than sorry.
+                        return ALL;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException malformed) {
+            //let the transformations report the problem.
+            return ALL;
+        }
+
+        return stages;
+    }
+
+    /**
+     * Records which stages of the transformation pipeline were skipped for a class.
+     *
+     * @param stages the stages that were applied, as computed by {@link #scan(byte[])}
+     * @param targeted whether targeted or main class transformers were applied
+     */
+    static void record(int stages, boolean targeted) {
+        classesScanned.incrementAndGet();
+        if ((stages & MIGRATION) == 0) migrationSkipped.incrementAndGet();
+        if ((stages & EVENT) == 0) eventSkipped.incrementAndGet();
+        if ((stages & CONFIGURATION_SERIALIZABLE) == 0) configurationSerializableSkipped.incrementAndGet();
+        if (!targeted) targetedSkipped.incrementAndGet();
+        if (stages == 0 && !targeted) allSkipped.incrementAndGet();
+    }
+
+    public static long getClassesScanned() {
+        return classesScanned.get();
+    }
+
+    public static long getMigrationSkipped() {
+        return migrationSkipped.get();
+    }
+
+    public static long getEventSkipped() {
+        return eventSkipped.get();
+    }
+
+    public static long getConfigurationSerializableSkipped() {
+        return configurationSerializableSkipped.get();
+    }
+
+    public static long getTargetedSkipped() {
+        return targetedSkipped.get();
+    }
+
+    public static long getAllSkipped() {
+        return allSkipped.get();
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static boolean contains(byte[] haystack, int start, int length, byte[] needle) {
+        int last = start + length - needle.length;
+        outer:
+        for (int i = start; i <= last; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] utf8(String string) {
+        //all needles are ASCII, so the modified UTF-8 encoding used by class files is the same as the standard UTF-8 encoding.
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
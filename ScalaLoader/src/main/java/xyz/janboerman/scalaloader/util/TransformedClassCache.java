@@ -0,0 +1,312 @@
+package xyz.janboerman.scalaloader.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * An on-disk cache of transformed class files. Entries are content-addressed: the file name of an entry is the SHA-256 hash of its key.
+ * Keys are derived from everything that can influence the output of the transformations
+ * (see {@link #scope(String...)}), so a changed jar, ScalaLoader version, server version or api version simply results in different keys.
+ * The classes that a transformation resolved through the plugin's classloader can come from other plugins, so they can't be part of the key.
+ * Instead they are stored in the entry together with a fingerprint of their origin (see {@link TransformDependencies}),
+ * and an entry is only used if the classes still resolve to the same origin.
+ * Entries that are no longer used are evicted once the cache grows beyond its maximum size, least recently used first.
+ */
+public final class TransformedClassCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x534C5443; //"SLTC"
+    private static final String VERSION_FILE = "version";
+    private static final String ENTRY_SUFFIX = ".class";
+
+    private final File directory;
+    private final long maxSize;
+    private final Logger logger;
+    private final AtomicLong currentSize = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final ConcurrentHashMap<JarStamp, String> jarHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Opens (or creates) the cache.
+     * If the cache on disk was written using a different format, it is invalidated.
+     *
+     * @param directory the directory in which the cache entries are stored
+     * @param maxSize the maximum size of the cache in bytes
+     * @param logger the logger used to report I/O errors
+     */
+    public TransformedClassCache(File directory, long maxSize, Logger logger) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.logger = logger;
+
+        directory.mkdirs();
+        File versionFile = new File(directory, VERSION_FILE);
+        try {
+            String version = versionFile.exists() ? new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.UTF_8).trim() : null;
+            if (!String.valueOf(FORMAT_VERSION).equals(version)) {
+                invalidate();
+                Files.write(versionFile.toPath(), String.valueOf(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not check the version of the transformed class cache.", e);
+        }
+
+        long size = 0L;
+        for (File entry : entries()) {
+            size += entry.length();
+        }
+        currentSize.set(size);
+        evictIfNecessary();
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidate() {
+        synchronized (evictionLock) {
+            for (File entry : entries()) {
+                entry.delete();
+            }
+            currentSize.set(0L);
+        }
+    }
+
+    /**
+     * Creates a view of the cache in which every key is prefixed by the given components.
+     *
+     * @param components the components that influence the output of the transformations, such as jar hashes and versions
+     * @return the scope
+     */
+    public Scope scope(String... components) {
+        return new Scope(String.join("\u0000", components));
+    }
+
+    /**
+     * Computes the SHA-256 hash of a jar file. Hashes are remembered for as long as the file's size and modification time stay the same.
+     *
+     * @param jarFile the jar file
+     * @return the hash, in hexadecimal form
+     * @throws IOException if the file could not be read
+     */
+    public String hashJar(File jarFile) throws IOException {
+        JarStamp stamp = new JarStamp(jarFile.getAbsolutePath(), jarFile.length(), jarFile.lastModified());
+        String hash = jarHashes.get(stamp);
+        if (hash != null) return hash;
+
+        hash = Hashing.sha256(jarFile);
+        jarHashes.put(stamp, hash);
+        return hash;
+    }
+
+    /**
+     * A view on the cache in which all keys share a common prefix.
+     */
+    public final class Scope {
+        private final String prefix;
+
+        private Scope(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Looks up a transformed class.
+         *
+         * @param entryName the key of the entry, usually the name of the jar entry
+         * @param dependencyResolver the classloader through which the transformation resolved its dependencies
+         * @return the transformed bytecode, or null if it was not cached or if its dependencies have changed
+         */
+        public byte[] get(String entryName, ClassLoader dependencyResolver) {
+            return TransformedClassCache.this.get(prefix + '\u0000' + entryName, dependencyResolver);
+        }
+
+        /**
+         * Stores a transformed class.
+         *
+         * @param entryName the key of the entry, usually the name of the jar entry
+         * @param classBytes the transformed bytecode
+         * @param dependencies the names of the classes that the transformation resolved, see {@link TransformDependencies}
+         * @param dependencyResolver the classloader through which the transformation resolved its dependencies
+         */
+        public void put(String entryName, byte[] classBytes, List<String> dependencies, ClassLoader dependencyResolver) {
+            TransformedClassCache.this.put(prefix + '\u0000' + entryName, classBytes, dependencies, TransformDependencies.fingerprint(dependencies, dependencyResolver));
+        }
+
+        /**
+         * Creates a narrower scope.
+         *
+         * @param components extra components of the key prefix
+         * @return the narrower scope
+         */
+        public Scope scope(String... components) {
+            return new Scope(prefix + '\u0000' + String.join("\u0000", components));
+        }
+    }
+
+    private byte[] get(String key, ClassLoader dependencyResolver) {
+        File file = fileFor(key);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return discard(file);
+            long checksum = in.readLong();
+            int dependencyCount = in.readInt();
+            List<String> dependencies = new ArrayList<>(dependencyCount);
+            for (int i = 0; i < dependencyCount; i++) {
+                dependencies.add(in.readUTF());
+            }
+            String fingerprint = in.readUTF();
+            byte[] classBytes = new byte[in.readInt()];
+            in.readFully(classBytes);
+            if (checksum != crc32(classBytes)) return discard(file);
+
+            //the classes that the transformation resolved come from a different place now, the entry will be overwritten.
+            if (!fingerprint.equals(TransformDependencies.fingerprint(dependencies, dependencyResolver))) return null;
+
+            //remember that this entry was used recently
+            file.setLastModified(System.currentTimeMillis());
+            return classBytes;
+        } catch (IOException e) {
+            //truncated or otherwise corrupt.
+            return discard(file);
+        }
+    }
+
+    private void put(String key, byte[] classBytes, List<String> dependencies, String fingerprint) {
+        File file = fileFor(key);
+        File parent = file.getParentFile();
+        parent.mkdirs();
+
+        try {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(classBytes.length + 20);
+            DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(crc32(classBytes));
+            out.writeInt(dependencies.size());
+            for (String dependency : dependencies) {
+                out.writeUTF(dependency);
+            }
+            out.writeUTF(fingerprint);
+            out.writeInt(classBytes.length);
+            out.write(classBytes);
+            out.flush();
+
+            //write to a temporary file first, so that readers never observe a partially written entry.
+            Path tempFile = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+            Files.write(tempFile, byteArrayOutputStream.toByteArray());
+            long oldSize = file.length();
+            try {
+                Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            currentSize.addAndGet(byteArrayOutputStream.size() - oldSize);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write transformed class to the cache: " + file, e);
+        }
+
+        evictIfNecessary();
+    }
+
+    private byte[] discard(File file) {
+        long size = file.length();
+        if (file.delete()) {
+            currentSize.addAndGet(-size);
+        }
+        return null;
+    }
+
+    private void evictIfNecessary() {
+        if (currentSize.get() <= maxSize) return;
+
+        synchronized (evictionLock) {
+            if (currentSize.get() <= maxSize) return;
+
+            //evict until we are at 90% of the maximum size, so that we don't have to evict again on the next write.
+            long target = maxSize / 10 * 9;
+            List<File> entries = entries();
+            long size = 0L;
+            for (File entry : entries) size += entry.length();
+            entries.sort(Comparator.comparingLong(File::lastModified));
+
+            for (File entry : entries) {
+                if (size <= target) break;
+                long length = entry.length();
+                if (entry.delete()) {
+                    size -= length;
+                }
+            }
+            currentSize.set(size);
+        }
+    }
+
+    private List<File> entries() {
+        List<File> result = new ArrayList<>();
+        File[] buckets = directory.listFiles(File::isDirectory);
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                File[] files = bucket.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+                if (files != null) {
+                    for (File file : files) result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    private File fileFor(String key) {
+        String hash = Hashing.sha256(key.getBytes(StandardCharsets.UTF_8));
+        return new File(new File(directory, hash.substring(0, 2)), hash.substring(2) + ENTRY_SUFFIX);
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+        return crc32.getValue();
+    }
+
+    private static final class JarStamp {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private JarStamp(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof JarStamp)) return false;
+
+            JarStamp that = (JarStamp) o;
+            return this.path.equals(that.path) && this.size == that.size && this.lastModified == that.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(size) * 17 + Long.hashCode(lastModified);
+        }
+    }
+}
@@ -81,6 +81,10 @@ public class Compat {
         return new JarFile(jarFile, true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
     }
 
+    public static int multiReleaseVersion(JarFile jarFile) {
+        return jarFile.isMultiRelease() ? jarFile.getVersion().feature() : 8;
+    }
+
     public static String getPackageName(Class<?> clazz) {
         return clazz.getPackageName();
     }
@@ -0,0 +1,259 @@
+package xyz.janboerman.scalaloader.compat;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is NOT part of the public API!
+ * <br>
+ * Emits JDK Flight Recorder events for class loading, bytecode transformation, class generation, runtime (de)serialization
+ * and persistent class I/O.
+ * <p>
+ * Every begin method returns a handle that must be passed to the corresponding end method.
+ * The handle is null when the event is not being recorded, in which case the end method returns immediately.
+ * The fields of an event are only filled in when the event passes the recording's threshold.
+ * If the jdk.jfr module is not available, then no events are emitted.
+ */
+public final class FlightRecording {
+
+    //jdk.jfr is an optional module, a custom runtime image may leave it out.
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private FlightRecording() {}
+
+    public static Object beginFindClass() {
+        return AVAILABLE ? Recorder.beginFindClass() : null;
+    }
+
+    public static void endFindClass(Object event, String plugin, String className, boolean cacheHit, String servedBy) {
+        if (event == null) return;
+        Recorder.endFindClass(event, plugin, className, cacheHit, servedBy);
+    }
+
+    public static Object beginTransform() {
+        return AVAILABLE ? Recorder.beginTransform() : null;
+    }
+
+    public static void endTransform(Object event, String plugin, String className, String stage, int bytesIn, int bytesOut) {
+        if (event == null) return;
+        Recorder.endTransform(event, plugin, className, stage, bytesIn, bytesOut);
+    }
+
+    public static Object beginGenerateClass() {
+        return AVAILABLE ? Recorder.beginGenerateClass() : null;
+    }
+
+    public static void endGenerateClass(Object event, String plugin, String className, boolean isNew, boolean persist, int byteCodeSize) {
+        if (event == null) return;
+        Recorder.endGenerateClass(event, plugin, className, isNew, persist, byteCodeSize);
+    }
+
+    public static Object beginConversion() {
+        return AVAILABLE ? Recorder.beginConversion() : null;
+    }
+
+    public static void endConversion(Object event, String plugin, boolean serialize, String type, Object input, Object output) {
+        if (event == null) return;
+        Recorder.endConversion(event, plugin, serialize, type, input, output);
+    }
+
+    public static Object beginPersistentClasses() {
+        return AVAILABLE ? Recorder.beginPersistentClasses() : null;
+    }
+
+    public static void endPersistentClasses(Object event, String plugin, String operation, int classCount, long fileSize) {
+        if (event == null) return;
+        Recorder.endPersistentClasses(event, plugin, operation, classCount, fileSize);
+    }
+
+    //the only class that refers to jdk.jfr, so that it is only loaded when jdk.jfr is available.
+    private static final class Recorder {
+
+        private Recorder() {}
+
+        private static Object begin(Event event) {
+            if (!event.isEnabled()) return null;
+            event.begin();
+            return event;
+        }
+
+        private static boolean end(Event event) {
+            event.end();
+            return event.shouldCommit();
+        }
+
+        static Object beginFindClass() {
+            return begin(new FindClassEvent());
+        }
+
+        static void endFindClass(Object event, String plugin, String className, boolean cacheHit, String servedBy) {
+            FindClassEvent findClassEvent = (FindClassEvent) event;
+            if (end(findClassEvent)) {
+                findClassEvent.plugin = plugin;
+                findClassEvent.className = className;
+                findClassEvent.cacheHit = cacheHit;
+                findClassEvent.servedBy = servedBy;
+                findClassEvent.commit();
+            }
+        }
+
+        static Object beginTransform() {
+            return begin(new TransformEvent());
+        }
+
+        static void endTransform(Object event, String plugin, String className, String stage, int bytesIn, int bytesOut) {
+            TransformEvent transformEvent = (TransformEvent) event;
+            if (end(transformEvent)) {
+                transformEvent.plugin = plugin;
+                transformEvent.className = className;
+                transformEvent.stage = stage;
+                transformEvent.bytesIn = bytesIn;
+                transformEvent.bytesOut = bytesOut;
+                transformEvent.commit();
+            }
+        }
+
+        static Object beginGenerateClass() {
+            return begin(new GenerateClassEvent());
+        }
+
+        static void endGenerateClass(Object event, String plugin, String className, boolean isNew, boolean persist, int byteCodeSize) {
+            GenerateClassEvent generateClassEvent = (GenerateClassEvent) event;
+            if (end(generateClassEvent)) {
+                generateClassEvent.plugin = plugin;
+                generateClassEvent.className = className;
+                generateClassEvent.isNew = isNew;
+                generateClassEvent.persist = persist;
+                generateClassEvent.byteCodeSize = byteCodeSize;
+                generateClassEvent.commit();
+            }
+        }
+
+        static Object beginConversion() {
+            return begin(new ConversionEvent());
+        }
+
+        static void endConversion(Object event, String plugin, boolean serialize, String type, Object input, Object output) {
+            ConversionEvent conversionEvent = (ConversionEvent) event;
+            if (end(conversionEvent)) {
+                conversionEvent.plugin = plugin;
+                conversionEvent.direction = serialize ? "serialize" : "deserialize";
+                conversionEvent.type = type;
+                conversionEvent.inputClass = input == null ? null : input.getClass();
+                conversionEvent.outputClass = output == null ? null : output.getClass();
+                conversionEvent.commit();
+            }
+        }
+
+        static Object beginPersistentClasses() {
+            return begin(new PersistentClassesEvent());
+        }
+
+        static void endPersistentClasses(Object event, String plugin, String operation, int classCount, long fileSize) {
+            PersistentClassesEvent persistentClassesEvent = (PersistentClassesEvent) event;
+            if (end(persistentClassesEvent)) {
+                persistentClassesEvent.plugin = plugin;
+                persistentClassesEvent.operation = operation;
+                persistentClassesEvent.classCount = classCount;
+                persistentClassesEvent.fileSize = fileSize;
+                persistentClassesEvent.commit();
+            }
+        }
+    }
+
+    @Name("xyz.janboerman.scalaloader.FindClass")
+    @Label("Find Class")
+    @Description("A ScalaPluginClassLoader looks up a class")
+    @Category({"ScalaLoader", "Class Loading"})
+    @StackTrace(false)
+    static final class FindClassEvent extends Event {
+        @Label("Plugin")
+        String plugin;
+        @Label("Class Name")
+        String className;
+        @Label("Cache Hit")
+        @Description("Whether the class was already loaded by the ScalaPluginClassLoader")
+        boolean cacheHit;
+        @Label("Served By")
+        @Description("Where the class was found: cache, plugin jar, persisted classes, libraries or other scalaplugin")
+        String servedBy;
+    }
+
+    @Name("xyz.janboerman.scalaloader.Transform")
+    @Label("Transform Class")
+    @Description("A stage of ScalaLoader's bytecode transformations")
+    @Category({"ScalaLoader", "Class Loading"})
+    @StackTrace(false)
+    static final class TransformEvent extends Event {
+        @Label("Plugin")
+        String plugin;
+        @Label("Class Name")
+        String className;
+        @Label("Stage")
+        String stage;
+        @Label("Bytes In")
+        @DataAmount
+        int bytesIn;
+        @Label("Bytes Out")
+        @DataAmount
+        int bytesOut;
+    }
+
+    @Name("xyz.janboerman.scalaloader.GenerateClass")
+    @Label("Generate Class")
+    @Description("A ScalaPluginClassLoader generates and defines a class at runtime")
+    @Category({"ScalaLoader", "Class Loading"})
+    static final class GenerateClassEvent extends Event {
+        @Label("Plugin")
+        String plugin;
+        @Label("Class Name")
+        String className;
+        @Label("New")
+        @Description("Whether the class was defined, or whether another thread defined it first")
+        boolean isNew;
+        @Label("Persist")
+        boolean persist;
+        @Label("Bytecode Size")
+        @DataAmount
+        int byteCodeSize;
+    }
+
+    @Name("xyz.janboerman.scalaloader.Conversion")
+    @Label("Runtime Conversion")
+    @Description("A value without a built-in conversion is serialized or deserialized by RuntimeConversions, using a codec or a fallback")
+    @Category({"ScalaLoader", "Configuration Serialization"})
+    static final class ConversionEvent extends Event {
+        @Label("Plugin")
+        String plugin;
+        @Label("Direction")
+        String direction;
+        @Label("Type")
+        String type;
+        @Label("Input Class")
+        Class<?> inputClass;
+        @Label("Output Class")
+        Class<?> outputClass;
+    }
+
+    @Name("xyz.janboerman.scalaloader.PersistentClasses")
+    @Label("Persistent Classes I/O")
+    @Description("The generated classes of a ScalaPlugin are read from or written to disk")
+    @Category({"ScalaLoader", "Configuration Serialization"})
+    static final class PersistentClassesEvent extends Event {
+        @Label("Plugin")
+        String plugin;
+        @Label("Operation")
+        String operation;
+        @Label("Class Count")
+        int classCount;
+        @Label("File Size")
+        @DataAmount
+        long fileSize;
+    }
+
+}
@@ -0,0 +1,115 @@
+package xyz.janboerman.scalaloader.configurationserializable.runtime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.RuntimeConversions.DeserializeStrategy;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.RuntimeConversions.SerializeStrategy;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.types.JavaCollection;
+import xyz.janboerman.scalaloader.configurationserializable.runtime.types.JavaMap;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class RuntimeConversionsTest {
+
+    private static final Object[] LIVE_VALUES = {
+            new ArrayList<>(), new LinkedList<>(), new HashSet<>(), new TreeSet<>(), new ArrayDeque<>(), EnumSet.noneOf(TimeUnit.class),
+            new HashMap<>(), new TreeMap<>(), new ConcurrentHashMap<>(), new EnumMap<>(TimeUnit.class),
+            "string", 1, (byte) 1, 1L, 'c', UUID.randomUUID(), BigInteger.ONE, TimeUnit.SECONDS, TimeUnit.class,
+            new Object(), new int[0], new String[0], new Object[0][0],
+    };
+
+    private static final Class<?>[] RAW_TYPES = {
+            Object.class, String.class, Collection.class, List.class, Set.class, ArrayList.class, EnumSet.class,
+            Map.class, SortedMap.class, HashMap.class, EnumMap.class, Iterable.class, Optional.class,
+    };
+
+    private static List<ParameterType> parameterTypes(Class<?> rawType) {
+        ParameterType objectType = ParameterType.from(Object.class);
+        return Arrays.asList(
+                ParameterType.from(rawType),
+                ArrayParameterType.from(ParameterType.from(rawType), false),
+                ParameterizedParameterType.from(rawType, objectType),
+                ParameterizedParameterType.from(rawType, objectType, objectType));
+    }
+
+    //the dispatch as it was done before the strategies were cached. none of the live values are scala types.
+    private static SerializeStrategy serializeChain(Object live, ParameterType type) {
+        if (type instanceof ArrayParameterType) {
+            return SerializeStrategy.ARRAY;
+        } else if (type instanceof ParameterizedParameterType && live instanceof Collection) {
+            return SerializeStrategy.COLLECTION;
+        } else if (type instanceof ParameterizedParameterType && live instanceof Map) {
+            return SerializeStrategy.MAP;
+        } else if (JavaCollection.isRawtypeCollection(live, type)) {
+            return SerializeStrategy.RAW_COLLECTION;
+        } else if (JavaMap.isRawtypeMap(live, type)) {
+            return SerializeStrategy.RAW_MAP;
+        } else {
+            return SerializeStrategy.CODEC;
+        }
+    }
+
+    private static DeserializeStrategy deserializeChain(ParameterType type) {
+        if (type instanceof ArrayParameterType) {
+            return DeserializeStrategy.ARRAY;
+        } else if (type instanceof ParameterizedParameterType && Collection.class.isAssignableFrom(type.getRawType())) {
+            return DeserializeStrategy.COLLECTION;
+        } else if (type instanceof ParameterizedParameterType && Map.class.isAssignableFrom(type.getRawType())) {
+            return DeserializeStrategy.MAP;
+        } else {
+            return DeserializeStrategy.OTHER;
+        }
+    }
+
+    @Test
+    public void testSerializeDispatchMatchesChain() {
+        for (Object live : LIVE_VALUES) {
+            for (Class<?> rawType : RAW_TYPES) {
+                for (ParameterType type : parameterTypes(rawType)) {
+                    //ask twice, the second time the strategy comes from the cache.
+                    assertEquals(serializeChain(live, type), RuntimeConversions.serializeStrategy(live.getClass(), type), live.getClass().getName() + " as " + type);
+                    assertEquals(serializeChain(live, type), RuntimeConversions.serializeStrategy(live.getClass(), type), live.getClass().getName() + " as " + type);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeserializeDispatchMatchesChain() {
+        for (Class<?> rawType : RAW_TYPES) {
+            for (ParameterType type : parameterTypes(rawType)) {
+                assertEquals(deserializeChain(type), RuntimeConversions.deserializeStrategy(type.getRawType(), type), type.toString());
+                assertEquals(deserializeChain(type), RuntimeConversions.deserializeStrategy(type.getRawType(), type), type.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testSerializeWithoutPlugin() {
+        //adapters that are shared by multiple plugins don't pass a plugin.
+        ParameterType longList = ParameterizedParameterType.from(List.class, ParameterType.from(Long.class));
+        assertEquals(Arrays.asList("1", "2"), RuntimeConversions.serialize(Arrays.asList(1L, 2L), longList, null));
+        assertEquals(Arrays.asList(1L, 2L), RuntimeConversions.deserialize(Arrays.asList("1", "2"), longList, null));
+    }
+
+    @Test
+    public void testMultiDimensionalArrays() {
+        int[][] ints = {{1, 2}, {}, {3}};
+        ParameterType intsType = ParameterType.from(int[][].class);
+        Object serializedInts = RuntimeConversions.serialize(ints, intsType, null);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(), Arrays.asList(3)), serializedInts);
+        Object deserializedInts = RuntimeConversions.deserialize(serializedInts, intsType, null);
+        assertEquals(int[][].class, deserializedInts.getClass());
+        assertTrue(Arrays.deepEquals(ints, (int[][]) deserializedInts));
+
+        String[][][] strings = {{{"a", "b"}, {"c"}}, {{}}};
+        ParameterType stringsType = ParameterType.from(String[][][].class);
+        Object deserializedStrings = RuntimeConversions.deserialize(RuntimeConversions.serialize(strings, stringsType, null), stringsType, null);
+        assertEquals(String[][][].class, deserializedStrings.getClass());
+        assertTrue(Arrays.deepEquals(strings, (String[][][]) deserializedStrings));
+    }
+
+}
@@ -0,0 +1,104 @@
+package xyz.janboerman.scalaloader.dependency;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class PluginYamlLibraryLoaderTest {
+
+    private static final Logger LOGGER = Logger.getLogger(PluginYamlLibraryLoaderTest.class.getName());
+    private static final List<String> LIBRARIES = Collections.singletonList("com.example:library:1.0");
+
+    @TempDir
+    public Path folder;
+
+    private File localRepo() throws IOException {
+        return Files.createDirectories(folder.resolve("libraries")).toFile();
+    }
+
+    private File lockFile() {
+        return folder.resolve("locks").resolve("TestPlugin.lock.yml").toFile();
+    }
+
+    private Artifact library(File localRepo, String content) throws IOException {
+        Path jarPath = localRepo.toPath().resolve("com/example/library/1.0/library-1.0.jar");
+        Files.createDirectories(jarPath.getParent());
+        Files.write(jarPath, content.getBytes(StandardCharsets.UTF_8));
+        return new DefaultArtifact("com.example:library:1.0").setFile(jarPath.toFile());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File localRepo = localRepo();
+        PluginYamlLibraryLoader loader = new PluginYamlLibraryLoader(LOGGER, localRepo, lockFile().getParentFile(), PluginYamlLibraryLoader.MAVEN_CENTRAL_URL);
+        Artifact library = library(localRepo, "library");
+
+        loader.writeLockFile(lockFile(), LIBRARIES, Collections.singletonList(library));
+        assertEquals(Collections.singletonList(library.getFile()), loader.readLockFile(lockFile(), LIBRARIES));
+        assertNull(loader.readLockFile(lockFile(), Collections.singletonList("com.example:library:2.0")));
+    }
+
+    @Test
+    public void testRepositoryChanged() throws IOException {
+        File localRepo = localRepo();
+        Artifact library = library(localRepo, "library");
+        new PluginYamlLibraryLoader(LOGGER, localRepo, lockFile().getParentFile(), PluginYamlLibraryLoader.MAVEN_CENTRAL_URL)
+                .writeLockFile(lockFile(), LIBRARIES, Collections.singletonList(library));
+
+        PluginYamlLibraryLoader mirrorLoader = new PluginYamlLibraryLoader(LOGGER, localRepo, lockFile().getParentFile(), "https://mirror.example.com/maven2");
+        assertNull(mirrorLoader.readLockFile(lockFile(), LIBRARIES));
+        assertTrue(library.getFile().exists());
+    }
+
+    @Test
+    public void testHashMismatch() throws IOException {
+        File localRepo = localRepo();
+        PluginYamlLibraryLoader loader = new PluginYamlLibraryLoader(LOGGER, localRepo, lockFile().getParentFile(), PluginYamlLibraryLoader.MAVEN_CENTRAL_URL);
+        Artifact library = library(localRepo, "library");
+        loader.writeLockFile(lockFile(), LIBRARIES, Collections.singletonList(library));
+
+        //a jar in the local repository that was changed is removed, so that it is downloaded again.
+        Files.write(library.getFile().toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        assertNull(loader.readLockFile(lockFile(), LIBRARIES));
+        assertFalse(library.getFile().exists());
+    }
+
+    @Test
+    public void testHashMismatchOutsideLocalRepository() throws IOException {
+        File localRepo = localRepo();
+        PluginYamlLibraryLoader loader = new PluginYamlLibraryLoader(LOGGER, localRepo, lockFile().getParentFile(), PluginYamlLibraryLoader.MAVEN_CENTRAL_URL);
+
+        Path outsideRelative = folder.resolve("outside-relative.jar");
+        Path outsideAbsolute = folder.resolve("outside-absolute.jar");
+        Files.write(outsideRelative, "outside".getBytes(StandardCharsets.UTF_8));
+        Files.write(outsideAbsolute, "outside".getBytes(StandardCharsets.UTF_8));
+
+        //the lockfile refers to files outside of the local repository, and their hashes don't match.
+        for (String path : new String[] {"../outside-relative.jar", outsideAbsolute.toAbsolutePath().toString().replace(File.separatorChar, '/')}) {
+            Files.createDirectories(lockFile().toPath().getParent());
+            Files.write(lockFile().toPath(), ("format: 2\n"
+                    + "libraries: ['com.example:library:1.0']\n"
+                    + "repositories: ['" + PluginYamlLibraryLoader.MAVEN_CENTRAL_URL + "', 'https://repo.codemc.org/repository/maven-public/']\n"
+                    + "artifacts:\n"
+                    + "- coordinates: com.example:library:jar:1.0\n"
+                    + "  path: '" + path + "'\n"
+                    + "  sha256: '0000'\n").getBytes(StandardCharsets.UTF_8));
+            assertNull(loader.readLockFile(lockFile(), LIBRARIES), path);
+        }
+
+        assertTrue(Files.exists(outsideRelative));
+        assertTrue(Files.exists(outsideAbsolute));
+    }
+
+}
@@ -0,0 +1,116 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.bukkit.permissions.PermissionDefault;
+import org.junit.jupiter.api.Test;
+import xyz.janboerman.scalaloader.compat.Compat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConstantDescriptionReaderTest {
+
+    public static class ConstantPlugin extends ScalaPlugin {
+        public ConstantPlugin() {
+            super(new ScalaPluginDescription("ConstantPlugin", "1.0")
+                    .addHardDepend("Dependency")
+                    .softDepend("SoftDependency")
+                    .commands(new ScalaPluginDescription.Command("foo").permission("constant.foo").aliases("f"))
+                    .permissionDefault(PermissionDefault.TRUE));
+            if (System.nanoTime() > 0L) {
+                getLogger();
+            }
+        }
+    }
+
+    public static class NonConstantPlugin extends ScalaPlugin {
+        public NonConstantPlugin() {
+            super(new ScalaPluginDescription("NonConstantPlugin", String.valueOf(System.nanoTime())));
+        }
+    }
+
+    public static class PluginYamlPlugin extends ScalaPlugin {
+        public PluginYamlPlugin() {
+            super();
+        }
+    }
+
+    public static class ChangingPlugin extends ScalaPlugin {
+        public ChangingPlugin() {
+            super(new ScalaPluginDescription("ChangingPlugin", "1.0"));
+            getScalaDescription().addHardDepend("Dependency");
+        }
+    }
+
+    public static class HelperPlugin extends ScalaPlugin {
+        public HelperPlugin() {
+            super(new ScalaPluginDescription("HelperPlugin", "1.0"));
+            init();
+        }
+
+        private void init() {
+            getScalaDescription().addHardDepend("Dependency");
+        }
+    }
+
+    public static class OverridingPlugin extends ScalaPlugin {
+        public OverridingPlugin() {
+            super(new ScalaPluginDescription("OverridingPlugin", "1.0"));
+        }
+
+        @Override
+        public String getName() {
+            return "SomethingElse";
+        }
+    }
+
+    private static byte[] classBytes(Class<?> clazz) throws IOException {
+        try (InputStream inputStream = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            return Compat.readAllBytes(inputStream);
+        }
+    }
+
+    @Test
+    public void testConstantDescription() throws IOException {
+        ScalaPluginDescription description = ConstantDescriptionReader.read(classBytes(ConstantPlugin.class), ConstantPlugin.class.getName(), new HashMap<>(), "1.18");
+
+        assertNotNull(description);
+        assertEquals("ConstantPlugin", description.getName());
+        assertEquals("1.0", description.getVersion());
+        assertEquals(Compat.singletonSet("Dependency"), description.getHardDependencies());
+        assertTrue(description.getSoftDependencies().contains("SoftDependency"));
+        assertEquals(1, description.getCommands().size());
+        assertEquals(PermissionDefault.TRUE, description.getPermissionDefault());
+        assertEquals("1.18", description.getApiVersion());
+    }
+
+    @Test
+    public void testNonConstantDescription() throws IOException {
+        assertNull(ConstantDescriptionReader.read(classBytes(NonConstantPlugin.class), NonConstantPlugin.class.getName(), new HashMap<>(), "1.18"));
+    }
+
+    @Test
+    public void testDescriptionChangedAfterSuperConstructor() throws IOException {
+        assertNull(ConstantDescriptionReader.read(classBytes(ChangingPlugin.class), ChangingPlugin.class.getName(), new HashMap<>(), "1.18"));
+        assertNull(ConstantDescriptionReader.read(classBytes(HelperPlugin.class), HelperPlugin.class.getName(), new HashMap<>(), "1.18"));
+        assertNull(ConstantDescriptionReader.read(classBytes(OverridingPlugin.class), OverridingPlugin.class.getName(), new HashMap<>(), "1.18"));
+    }
+
+    @Test
+    public void testPluginYamlDescription() throws IOException {
+        Map<String, Object> pluginYaml = new HashMap<>();
+        pluginYaml.put("name", "PluginYamlPlugin");
+        pluginYaml.put("version", "2.0");
+        pluginYaml.put("depend", Compat.singletonList("Dependency"));
+
+        ScalaPluginDescription description = ConstantDescriptionReader.read(classBytes(PluginYamlPlugin.class), PluginYamlPlugin.class.getName(), pluginYaml, "1.18");
+
+        assertNotNull(description);
+        assertEquals("PluginYamlPlugin", description.getName());
+        assertEquals("2.0", description.getVersion());
+        assertEquals(Compat.singletonSet("Dependency"), description.getHardDependencies());
+    }
+
+}
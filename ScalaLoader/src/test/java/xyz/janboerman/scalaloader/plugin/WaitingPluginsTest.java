@@ -0,0 +1,87 @@
+package xyz.janboerman.scalaloader.plugin;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class WaitingPluginsTest {
+
+    private static Plugin plugin(String name) {
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] {Plugin.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName": return name;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                case "toString": return name;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @Test
+    public void testDependentLoadsBeforeDependency() {
+        Set<String> registered = new HashSet<>();
+        WaitingPlugins waitingPlugins = new WaitingPlugins();
+        File dependentFile = new File("Dependent.jar");
+
+        //the dependent is loaded first, its dependency is not present yet.
+        waitingPlugins.add(dependentFile, Collections.singleton("Dependency"), registered::contains);
+        assertEquals(Collections.singleton(dependentFile), waitingPlugins.getFiles());
+
+        //the dependency is loaded, but the PluginManager did not register it yet.
+        Plugin dependency = plugin("Dependency");
+        waitingPlugins.loaded(dependency, Collections.singleton("Dependency"));
+        assertEquals(Collections.emptyList(), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+        assertEquals(Collections.singleton(dependentFile), waitingPlugins.getFiles());
+
+        //once it is registered, the dependent no longer waits.
+        registered.add("Dependency");
+        assertEquals(Collections.singletonList(dependentFile), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+        assertEquals(Collections.emptySet(), waitingPlugins.getFiles());
+        assertEquals(Collections.emptyList(), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+    }
+
+    @Test
+    public void testWaitForAllDependencies() {
+        Set<String> registered = new HashSet<>();
+        WaitingPlugins waitingPlugins = new WaitingPlugins();
+        File first = new File("First.jar");
+        File second = new File("Second.jar");
+
+        waitingPlugins.add(first, Arrays.asList("A", "B", "Present"), name -> name.equals("Present") || registered.contains(name));
+        waitingPlugins.add(second, Collections.singleton("B"), registered::contains);
+
+        //B is provided by the same plugin as A
+        registered.add("A");
+        registered.add("B");
+        waitingPlugins.loaded(plugin("A"), Arrays.asList("A", "B"));
+        assertEquals(Arrays.asList(first, second), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+    }
+
+    @Test
+    public void testWaitAgain() {
+        Set<String> registered = new HashSet<>();
+        WaitingPlugins waitingPlugins = new WaitingPlugins();
+        File dependentFile = new File("Dependent.jar");
+
+        waitingPlugins.add(dependentFile, Collections.singleton("A"), registered::contains);
+        registered.add("A");
+        waitingPlugins.loaded(plugin("A"), Collections.singleton("A"));
+        assertEquals(Collections.singletonList(dependentFile), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+
+        //loading the dependent found out that it needs B as well, so it waits again.
+        waitingPlugins.add(dependentFile, Arrays.asList("A", "B"), registered::contains);
+        assertEquals(Collections.singleton(dependentFile), waitingPlugins.getFiles());
+        registered.add("B");
+        waitingPlugins.loaded(plugin("B"), Collections.singleton("B"));
+        assertEquals(Collections.singletonList(dependentFile), waitingPlugins.releaseRegistered(plugin -> registered.contains(plugin.getName())));
+    }
+
+}
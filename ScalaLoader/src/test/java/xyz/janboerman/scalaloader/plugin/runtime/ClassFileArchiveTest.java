@@ -0,0 +1,205 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public class ClassFileArchiveTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassFileArchiveTest.class.getName());
+
+    @TempDir
+    public Path folder;
+
+    static byte[] generateClass(String className, String alias) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className.replace('.', '/'), null, "java/lang/Object", null);
+        if (alias != null) {
+            AnnotationVisitor annotationVisitor = classWriter.visitAnnotation("Lorg/bukkit/configuration/serialization/SerializableAs;", true);
+            annotationVisitor.visit("value", alias);
+            annotationVisitor.visitEnd();
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private ClassFileArchive archive() {
+        return new ClassFileArchive(folder.resolve("generated-classes.idx"), folder.resolve("generated-classes.dat"), LOGGER);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] foo = generateClass("com.example.Foo", "Foo");
+        byte[] bar = generateClass("com.example.Bar", null);
+
+        ClassFileArchive archive = archive();
+        archive.open();
+        assertFalse(archive.exists());
+        archive.append(Arrays.asList(new ClassFile("com.example.Foo", foo), new ClassFile("com.example.Bar", bar)));
+
+        ClassFileArchive reopened = archive();
+        reopened.open();
+        assertEquals(2, reopened.size());
+        Map<String, String> expectedAliases = new LinkedHashMap<>();
+        expectedAliases.put("com.example.Foo", "Foo");
+        expectedAliases.put("com.example.Bar", null);
+        assertEquals(expectedAliases, reopened.getAliases());
+        assertArrayEquals(foo, reopened.read("com.example.Foo"));
+        assertArrayEquals(bar, reopened.read("com.example.Bar"));
+        assertNull(reopened.read("com.example.Baz"));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        byte[] foo = generateClass("com.example.Foo", null);
+        byte[] bar = generateClass("com.example.Bar", null);
+
+        ClassFileArchive archive = archive();
+        archive.open();
+        archive.append(Arrays.asList(new ClassFile("com.example.Foo", foo), new ClassFile("com.example.Bar", bar)));
+
+        //flip a byte in the bytecode of Foo, which comes right after the header of the data file.
+        try (RandomAccessFile dataFile = new RandomAccessFile(folder.resolve("generated-classes.dat").toFile(), "rw")) {
+            dataFile.seek(8 + foo.length / 2);
+            int b = dataFile.read();
+            dataFile.seek(8 + foo.length / 2);
+            dataFile.write(b ^ 0xFF);
+        }
+
+        ClassFileArchive reopened = archive();
+        reopened.open();
+        assertNull(reopened.read("com.example.Foo"));
+        assertFalse(reopened.contains("com.example.Foo"));
+        assertArrayEquals(bar, reopened.read("com.example.Bar"));
+
+        //the corrupt class can be appended again
+        reopened.append(Collections.singletonList(new ClassFile("com.example.Foo", foo)));
+        assertArrayEquals(foo, reopened.read("com.example.Foo"));
+    }
+
+    @Test
+    public void testTruncatedEntry() throws IOException {
+        byte[] foo = generateClass("com.example.Foo", "Foo");
+        byte[] bar = generateClass("com.example.Bar", "Bar");
+        Path indexFile = folder.resolve("generated-classes.idx");
+
+        ClassFileArchive archive = archive();
+        archive.open();
+        archive.append(Collections.singletonList(new ClassFile("com.example.Foo", foo)));
+        long completeSize = Files.size(indexFile);
+
+        //the server stopped while the next entry was being written: the name, alias and part of the offset made it to disk.
+        ByteArrayOutputStream partialEntry = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(partialEntry)) {
+            out.writeUTF("com.example.Bar");
+            out.writeUTF("Bar");
+            out.writeInt(0);
+        }
+        Files.write(indexFile, partialEntry.toByteArray(), StandardOpenOption.APPEND);
+
+        ClassFileArchive reopened = archive();
+        reopened.open();
+        assertEquals(Collections.singletonMap("com.example.Foo", "Foo"), reopened.getAliases());
+        assertEquals(completeSize, Files.size(indexFile));
+
+        //new entries are appended after the last complete entry
+        reopened.append(Collections.singletonList(new ClassFile("com.example.Bar", bar)));
+        ClassFileArchive again = archive();
+        again.open();
+        assertEquals(2, again.size());
+        assertArrayEquals(foo, again.read("com.example.Foo"));
+        assertArrayEquals(bar, again.read("com.example.Bar"));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        byte[] foo = generateClass("com.example.Foo", "Foo");
+        Path dataFile = folder.resolve("generated-classes.dat");
+
+        //archives that don't read the index first append the same class again, which leaves unused bytecode in the data file.
+        for (int i = 0; i < 3; i++) {
+            archive().append(Collections.singletonList(new ClassFile("com.example.Foo", foo)));
+        }
+        assertEquals(8 + 3 * foo.length, Files.size(dataFile));
+
+        //more unused bytes than used bytes, so opening compacts the archive.
+        ClassFileArchive archive = archive();
+        archive.open();
+        assertEquals(8 + foo.length, Files.size(dataFile));
+        assertEquals(8 + foo.length, archive.getDataSize());
+        assertEquals(Collections.singletonMap("com.example.Foo", "Foo"), archive.getAliases());
+        assertArrayEquals(foo, archive.read("com.example.Foo"));
+
+        ClassFileArchive reopened = archive();
+        reopened.open();
+        assertArrayEquals(foo, reopened.read("com.example.Foo"));
+    }
+
+    @Test
+    public void testVersion1Format() throws IOException {
+        byte[] foo = generateClass("com.example.Foo", "Foo");
+        byte[] bar = generateClass("com.example.Bar", null);
+        Path indexFile = folder.resolve("generated-classes.idx");
+
+        //version 1 did not store the alias in the index.
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (DataOutputStream dataOut = new DataOutputStream(data); DataOutputStream indexOut = new DataOutputStream(index)) {
+            dataOut.writeInt(ClassFileArchive.MAGIC);
+            dataOut.writeInt(1);
+            indexOut.writeInt(ClassFileArchive.MAGIC);
+            indexOut.writeInt(1);
+            long offset = 8;
+            for (ClassFile classFile : Arrays.asList(new ClassFile("com.example.Foo", foo), new ClassFile("com.example.Bar", bar))) {
+                byte[] byteCode = classFile.getByteCode(false);
+                CRC32 crc = new CRC32();
+                crc.update(byteCode, 0, byteCode.length);
+                dataOut.write(byteCode);
+                indexOut.writeUTF(classFile.getClassName());
+                indexOut.writeLong(offset);
+                indexOut.writeInt(byteCode.length);
+                indexOut.writeInt((int) crc.getValue());
+                offset += byteCode.length;
+            }
+        }
+        Files.write(folder.resolve("generated-classes.dat"), data.toByteArray());
+        Files.write(indexFile, index.toByteArray());
+
+        Map<String, String> expectedAliases = new LinkedHashMap<>();
+        expectedAliases.put("com.example.Foo", "Foo");
+        expectedAliases.put("com.example.Bar", null);
+
+        //the aliases are read from the bytecode, and the archive is rewritten in the current format.
+        ClassFileArchive archive = archive();
+        archive.open();
+        assertEquals(expectedAliases, archive.getAliases());
+        try (RandomAccessFile in = new RandomAccessFile(indexFile.toFile(), "r")) {
+            assertEquals(ClassFileArchive.MAGIC, in.readInt());
+            assertEquals(ClassFileArchive.FORMAT_VERSION, in.readInt());
+        }
+
+        ClassFileArchive reopened = archive();
+        reopened.open();
+        assertEquals(expectedAliases, reopened.getAliases());
+        assertArrayEquals(foo, reopened.read("com.example.Foo"));
+        assertArrayEquals(bar, reopened.read("com.example.Bar"));
+    }
+
+}
@@ -0,0 +1,63 @@
+package xyz.janboerman.scalaloader.plugin.runtime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+public class PersistentClassesTest {
+
+    private static final Logger LOGGER = Logger.getLogger(PersistentClassesTest.class.getName());
+
+    @TempDir
+    public Path folder;
+
+    @Test
+    public void testSaveAndLoad() {
+        byte[] foo = ClassFileArchiveTest.generateClass("com.example.Foo", "Foo");
+
+        PersistentClasses persistentClasses = new PersistentClasses(folder.toFile(), "TestPlugin", LOGGER);
+        persistentClasses.save(new ClassFile("com.example.Foo", foo));
+        persistentClasses.flush();
+
+        PersistentClasses reloaded = new PersistentClasses(folder.toFile(), "TestPlugin", LOGGER);
+        assertEquals(Collections.singletonMap("com.example.Foo", "Foo"), reloaded.load());
+        assertArrayEquals(foo, reloaded.read("com.example.Foo"));
+    }
+
+    @Test
+    public void testMigrateFromYaml() throws IOException {
+        byte[] foo = ClassFileArchiveTest.generateClass("com.example.Foo", "Foo");
+        byte[] bar = ClassFileArchiveTest.generateClass("com.example.Bar", null);
+
+        ClassFile.register();
+        YamlConfiguration legacy = new YamlConfiguration();
+        legacy.set("class-files", Arrays.asList(new ClassFile("com.example.Foo", foo), new ClassFile("com.example.Bar", bar)));
+        File legacyFile = new File(folder.toFile(), "generated-classes.yml");
+        legacy.save(legacyFile);
+
+        PersistentClasses persistentClasses = new PersistentClasses(folder.toFile(), "TestPlugin", LOGGER);
+        Map<String, String> expectedAliases = new LinkedHashMap<>();
+        expectedAliases.put("com.example.Foo", "Foo");
+        expectedAliases.put("com.example.Bar", null);
+        assertEquals(expectedAliases, persistentClasses.load());
+        assertFalse(legacyFile.exists());
+        assertTrue(new File(folder.toFile(), "generated-classes.idx").exists());
+        assertArrayEquals(foo, persistentClasses.read("com.example.Foo"));
+
+        //the next load reads the archive only
+        PersistentClasses reloaded = new PersistentClasses(folder.toFile(), "TestPlugin", LOGGER);
+        assertEquals(expectedAliases, reloaded.load());
+        assertArrayEquals(bar, reloaded.read("com.example.Bar"));
+    }
+
+}
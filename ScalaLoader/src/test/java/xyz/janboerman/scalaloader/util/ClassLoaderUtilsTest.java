@@ -0,0 +1,62 @@
+package xyz.janboerman.scalaloader.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.janboerman.scalaloader.plugin.ScalaPluginClassLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClassLoaderUtilsTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassLoaderUtilsTest.class.getName());
+
+    @TempDir
+    public Path folder;
+
+    @Test
+    public void testCacheMissThenHit() {
+        TransformedClassCache.Scope cache = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("TestPlugin.jar");
+        StartupTimings timings = StartupTimings.of(folder.resolve("TestPlugin.jar").toFile());
+        byte[] classBytes = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 1, 2, 3};
+
+        assertNull(ClassLoaderUtils.getCachedTransformation("com.example.Foo", (ScalaPluginClassLoader) null, timings, cache));
+        cache.put("com/example/Foo.class", classBytes, Collections.emptyList(), null);
+        assertArrayEquals(classBytes, ClassLoaderUtils.getCachedTransformation("com.example.Foo", (ScalaPluginClassLoader) null, timings, cache));
+        assertEquals(2, timings.getCount(StartupTimings.Phase.TRANSFORM_CACHE));
+
+        assertArrayEquals(classBytes, ClassLoaderUtils.getCachedSharedLibraryTransformation("com.example.Foo", null, cache));
+        assertNull(ClassLoaderUtils.getCachedTransformation("com.example.Bar", (ScalaPluginClassLoader) null, null, cache));
+        assertNull(ClassLoaderUtils.getCachedTransformation("com.example.Foo", (ScalaPluginClassLoader) null, null, null));
+    }
+
+    private File jar(String name, String... entries) throws IOException {
+        File file = folder.resolve(name).toFile();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file.toPath()))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testIsSigned() throws IOException {
+        try (JarFile unsigned = new JarFile(jar("unsigned.jar", "META-INF/MANIFEST.MF", "com/example/Foo.class", "META-INF/maven/Foo.SF"))) {
+            assertFalse(ClassLoaderUtils.isSigned(unsigned));
+        }
+        try (JarFile signed = new JarFile(jar("signed.jar", "META-INF/MANIFEST.MF", "META-INF/SIGNER.SF", "META-INF/SIGNER.RSA", "com/example/Foo.class"))) {
+            assertTrue(ClassLoaderUtils.isSigned(signed));
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package xyz.janboerman.scalaloader.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+
+public class TransformationPrefilterTest {
+
+    private static final String EVENT = "xyz/janboerman/scalaloader/event/Event";
+    private static final String CONFIGURATION_SERIALIZABLE = "Lxyz/janboerman/scalaloader/configurationserializable/ConfigurationSerializable;";
+    private static final String DELEGATE_SERIALIZATION = "Lxyz/janboerman/scalaloader/configurationserializable/DelegateSerialization;";
+    private static final String NUMERIC_RANGE = "Lxyz/janboerman/scalaloader/configurationserializable/runtime/NumericRange;";
+
+    private static ClassWriter classWriter(String superName) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "com/example/Foo", null, superName, null);
+        return classWriter;
+    }
+
+    //a method that puts long, double, float and int constants in the constant pool, which come before the constants that the prefilter looks for.
+    private static void visitConstants(ClassWriter classWriter) {
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "constants", "()V", null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitLdcInsn(Long.MAX_VALUE);
+        methodVisitor.visitInsn(Opcodes.POP2);
+        methodVisitor.visitLdcInsn(Math.PI);
+        methodVisitor.visitInsn(Opcodes.POP2);
+        methodVisitor.visitLdcInsn(1.5F);
+        methodVisitor.visitInsn(Opcodes.POP);
+        methodVisitor.visitLdcInsn(Integer.MAX_VALUE);
+        methodVisitor.visitInsn(Opcodes.POP);
+        methodVisitor.visitLdcInsn("a string");
+        methodVisitor.visitInsn(Opcodes.POP);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitMaxs(2, 0);
+        methodVisitor.visitEnd();
+    }
+
+    @Test
+    public void testNoStages() {
+        ClassWriter classWriter = classWriter("java/lang/Object");
+        visitConstants(classWriter);
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null).visitEnd();
+        classWriter.visitEnd();
+        assertEquals(0, TransformationPrefilter.scan(classWriter.toByteArray()));
+    }
+
+    @Test
+    public void testEvent() {
+        ClassWriter classWriter = classWriter(EVENT);
+        visitConstants(classWriter);
+        classWriter.visitEnd();
+        assertEquals(TransformationPrefilter.EVENT, TransformationPrefilter.scan(classWriter.toByteArray()));
+
+        //the event type only occurs in a method descriptor
+        classWriter = classWriter("java/lang/Object");
+        visitConstants(classWriter);
+        classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "onEvent", "(L" + EVENT + ";)V", null, null).visitEnd();
+        classWriter.visitEnd();
+        assertEquals(TransformationPrefilter.EVENT, TransformationPrefilter.scan(classWriter.toByteArray()));
+    }
+
+    @Test
+    public void testConfigurationSerializable() {
+        for (String annotation : Arrays.asList(CONFIGURATION_SERIALIZABLE, DELEGATE_SERIALIZATION)) {
+            ClassWriter classWriter = classWriter("java/lang/Object");
+            visitConstants(classWriter);
+            classWriter.visitAnnotation(annotation, true).visitEnd();
+            classWriter.visitEnd();
+            assertEquals(TransformationPrefilter.CONFIGURATION_SERIALIZABLE, TransformationPrefilter.scan(classWriter.toByteArray()), annotation);
+        }
+    }
+
+    @Test
+    public void testMigration() {
+        ClassWriter classWriter = classWriter("java/lang/Object");
+        visitConstants(classWriter);
+        FieldVisitor fieldVisitor = classWriter.visitField(Opcodes.ACC_PRIVATE, "range", NUMERIC_RANGE, null, null);
+        fieldVisitor.visitEnd();
+        classWriter.visitEnd();
+        assertEquals(TransformationPrefilter.MIGRATION, TransformationPrefilter.scan(classWriter.toByteArray()));
+    }
+
+    @Test
+    public void testAllStages() {
+        ClassWriter classWriter = classWriter(EVENT);
+        visitConstants(classWriter);
+        classWriter.visitAnnotation(CONFIGURATION_SERIALIZABLE, true).visitEnd();
+        classWriter.visitField(Opcodes.ACC_PRIVATE, "range", NUMERIC_RANGE, null, null).visitEnd();
+        classWriter.visitEnd();
+        assertEquals(TransformationPrefilter.ALL, TransformationPrefilter.scan(classWriter.toByteArray()));
+    }
+
+    @Test
+    public void testMalformed() {
+        ClassWriter classWriter = classWriter(EVENT);
+        classWriter.visitEnd();
+        byte[] classBytes = classWriter.toByteArray();
+
+        //the constant pool is cut off
+        assertEquals(TransformationPrefilter.ALL, TransformationPrefilter.scan(Arrays.copyOf(classBytes, 12)));
+        //an unknown constant pool tag
+        byte[] unknownTag = classBytes.clone();
+        unknownTag[10] = 99;
+        assertEquals(TransformationPrefilter.ALL, TransformationPrefilter.scan(unknownTag));
+    }
+
+    @Test
+    public void testRecord() {
+        long scanned = TransformationPrefilter.getClassesScanned();
+        long allSkipped = TransformationPrefilter.getAllSkipped();
+        long eventSkipped = TransformationPrefilter.getEventSkipped();
+        long targetedSkipped = TransformationPrefilter.getTargetedSkipped();
+
+        TransformationPrefilter.record(0, false);
+        TransformationPrefilter.record(TransformationPrefilter.EVENT, false);
+        TransformationPrefilter.record(0, true);
+
+        assertEquals(scanned + 3, TransformationPrefilter.getClassesScanned());
+        assertEquals(allSkipped + 1, TransformationPrefilter.getAllSkipped());
+        assertEquals(eventSkipped + 2, TransformationPrefilter.getEventSkipped());
+        assertEquals(targetedSkipped + 2, TransformationPrefilter.getTargetedSkipped());
+    }
+
+}
@@ -0,0 +1,164 @@
+package xyz.janboerman.scalaloader.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TransformedClassCacheTest {
+
+    private static final Logger LOGGER = Logger.getLogger(TransformedClassCacheTest.class.getName());
+
+    @TempDir
+    public Path folder;
+
+    private static byte[] classBytes(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) bytes[i] = (byte) (seed + i);
+        return bytes;
+    }
+
+    private List<File> entries() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            return files.filter(path -> path.toString().endsWith(".class")).map(Path::toFile).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        TransformedClassCache cache = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER);
+        TransformedClassCache.Scope scope = cache.scope("plugin-hash", "1.0");
+        byte[] foo = classBytes(100, 1);
+
+        assertNull(scope.get("com/example/Foo.class", null));
+        scope.put("com/example/Foo.class", foo, Collections.emptyList(), null);
+        assertArrayEquals(foo, scope.get("com/example/Foo.class", null));
+
+        //other scopes don't see the entry
+        assertNull(cache.scope("other-hash", "1.0").get("com/example/Foo.class", null));
+        assertNull(scope.scope("narrower").get("com/example/Foo.class", null));
+
+        //the entry survives a restart
+        TransformedClassCache reopened = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER);
+        assertArrayEquals(foo, reopened.scope("plugin-hash", "1.0").get("com/example/Foo.class", null));
+    }
+
+    @Test
+    public void testFingerprintMismatch() throws IOException {
+        TransformedClassCache.Scope scope = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("plugin-hash");
+        byte[] foo = classBytes(100, 1);
+        List<String> dependencies = Collections.singletonList("com.example.Dependency");
+
+        //the transformation could not find the dependency
+        ClassLoader without = new URLClassLoader(new URL[0], null);
+        scope.put("com/example/Foo.class", foo, dependencies, without);
+        assertArrayEquals(foo, scope.get("com/example/Foo.class", without));
+
+        //the dependency can be found now, so the class has to be transformed again
+        Path dependencyFolder = Files.createDirectories(folder.resolve("classes").resolve("com").resolve("example"));
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "com/example/Dependency", null, "java/lang/Object", null);
+        classWriter.visitEnd();
+        Files.write(dependencyFolder.resolve("Dependency.class"), classWriter.toByteArray());
+        ClassLoader with = new URLClassLoader(new URL[] {folder.resolve("classes").toUri().toURL()}, null);
+        assertNull(scope.get("com/example/Foo.class", with));
+
+        //the entry is kept, it is overwritten once the class is transformed again
+        assertArrayEquals(foo, scope.get("com/example/Foo.class", without));
+        byte[] transformedAgain = classBytes(100, 2);
+        scope.put("com/example/Foo.class", transformedAgain, dependencies, with);
+        assertArrayEquals(transformedAgain, scope.get("com/example/Foo.class", with));
+    }
+
+    @Test
+    public void testCorruptEntry() throws IOException {
+        TransformedClassCache.Scope scope = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("plugin-hash");
+        byte[] foo = classBytes(100, 1);
+        scope.put("com/example/Foo.class", foo, Collections.emptyList(), null);
+        List<File> entries = entries();
+        assertEquals(1, entries.size());
+        File entry = entries.get(0);
+
+        //flip the last byte of the bytecode, the checksum doesn't match anymore
+        try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+            file.seek(file.length() - 1);
+            int b = file.read();
+            file.seek(file.length() - 1);
+            file.write(b ^ 0xFF);
+        }
+        assertNull(scope.get("com/example/Foo.class", null));
+        assertFalse(entry.exists());
+
+        //truncated entries are discarded as well
+        scope.put("com/example/Foo.class", foo, Collections.emptyList(), null);
+        try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertNull(scope.get("com/example/Foo.class", null));
+        assertFalse(entry.exists());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        //every entry is a little over 1000 bytes, so 5 entries don't fit.
+        TransformedClassCache.Scope scope = new TransformedClassCache(folder.toFile(), 4500, LOGGER).scope("plugin-hash");
+        List<String> names = new ArrayList<>();
+        long lastUsed = System.currentTimeMillis() - 60_000L;
+        for (int i = 0; i < 5; i++) {
+            String name = "com/example/Foo" + i + ".class";
+            names.add(name);
+            Set<File> before = new HashSet<>(entries());
+            scope.put(name, classBytes(1000, i), Collections.emptyList(), null);
+            //entries are evicted least recently used first, based on their modification time
+            for (File entry : entries()) {
+                if (!before.contains(entry)) entry.setLastModified(lastUsed + i * 1000L);
+            }
+        }
+
+        long size = 0;
+        for (File entry : entries()) size += entry.length();
+        assertTrue(size <= 4500 / 10 * 9, "cache size " + size + " is over 90% of the maximum size");
+
+        //the oldest entries are gone, the newest one is still there
+        assertNull(scope.get(names.get(0), null));
+        assertNull(scope.get(names.get(1), null));
+        assertArrayEquals(classBytes(1000, 4), scope.get(names.get(4), null));
+    }
+
+    @Test
+    public void testFormatVersionReset() throws IOException {
+        TransformedClassCache.Scope scope = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("plugin-hash");
+        byte[] foo = classBytes(100, 1);
+        scope.put("com/example/Foo.class", foo, Collections.emptyList(), null);
+
+        //the same format version keeps the entries
+        scope = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("plugin-hash");
+        assertArrayEquals(foo, scope.get("com/example/Foo.class", null));
+
+        //a cache that was written in another format is cleared
+        Files.write(folder.resolve("version"), "1".getBytes(StandardCharsets.UTF_8));
+        scope = new TransformedClassCache(folder.toFile(), 1024 * 1024, LOGGER).scope("plugin-hash");
+        assertNull(scope.get("com/example/Foo.class", null));
+        assertEquals(Collections.emptyList(), entries());
+        assertEquals("2", new String(Files.readAllBytes(folder.resolve("version")), StandardCharsets.UTF_8));
+    }
+
+}